@@ -109,9 +109,18 @@ public abstract class BaseScimClient<T extends ScimResource> implements AutoClos
   }
 
   public ListResponse<T> query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, Filter filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count) throws ScimException {
+    return query(attributes, excludedAttributes, filter, sortBy, sortOrder, startIndex, count, null);
+  }
+
+  /**
+   * Queries a page of resources, with {@code cursor} instead of {@code startIndex} when the service provider supports
+   * cursor-based pagination. An empty cursor requests the first page, the cursor of the next page is returned as
+   * {@link ListResponse#getNextCursor()}.
+   */
+  public ListResponse<T> query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, Filter filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count, String cursor) throws ScimException {
     ListResponse<T> listResponse;
     FilterWrapper filterWrapper = new FilterWrapper(filter);
-    Response response = this.scimClient.query(attributes, excludedAttributes, filterWrapper, sortBy, sortOrder, startIndex, count);
+    Response response = this.scimClient.query(attributes, excludedAttributes, filterWrapper, sortBy, sortOrder, startIndex, count, cursor);
     listResponse = handleResponse(response, scimResourceListResponseGenericType, response::readEntity);
 
     return listResponse;
@@ -213,6 +222,7 @@ public abstract class BaseScimClient<T extends ScimResource> implements AutoClos
     private static final String SORT_BY_QUERY_PARAM = "sortBy";
     private static final String SORT_ORDER_QUERY_PARAM = "sortOrder";
     private static final String START_INDEX_QUERY_PARAM = "startIndex";
+    private static final String CURSOR_QUERY_PARAM = "cursor";
     private static final String COUNT_QUERY_PARAM = "count";
 
     @Override
@@ -235,7 +245,7 @@ public abstract class BaseScimClient<T extends ScimResource> implements AutoClos
     }
 
     @Override
-    public Response query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, FilterWrapper filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count) throws ScimException {
+    public Response query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, FilterWrapper filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count, String cursor) throws ScimException {
       Response response;
       Invocation request = BaseScimClient.this.target
           .queryParam(ATTRIBUTES_QUERY_PARAM, nullOutQueryParamIfListIsNullOrEmpty(attributes))
@@ -245,6 +255,7 @@ public abstract class BaseScimClient<T extends ScimResource> implements AutoClos
           .queryParam(SORT_ORDER_QUERY_PARAM, sortOrder != null ? sortOrder.name() : null)
           .queryParam(START_INDEX_QUERY_PARAM, startIndex)
           .queryParam(COUNT_QUERY_PARAM, count)
+          .queryParam(CURSOR_QUERY_PARAM, cursor)
           .request(getContentType())
           .buildGet();
 
@@ -0,0 +1,62 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.apache.directory.scim.spec.exception.ResourceException;
+
+/**
+ * The outcome of one item of a batch {@link Repository} call, either the
+ * resulting value or the exception the item failed with.
+ *
+ * @param <T> the type of the resulting value
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class BatchResult<T> {
+
+  T value;
+
+  ResourceException exception;
+
+  public static <T> BatchResult<T> success(T value) {
+    return new BatchResult<>(value, null);
+  }
+
+  public static <T> BatchResult<T> failure(ResourceException exception) {
+    return new BatchResult<>(null, exception);
+  }
+
+  public boolean isFailure() {
+    return exception != null;
+  }
+
+  /**
+   * Returns the resulting value, or throws the exception the item failed with.
+   */
+  public T get() throws ResourceException {
+    if (exception != null) {
+      throw exception;
+    }
+    return value;
+  }
+}
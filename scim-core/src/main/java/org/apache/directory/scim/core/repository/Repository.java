@@ -19,8 +19,11 @@
 
 package org.apache.directory.scim.core.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.directory.scim.spec.exception.ResourceException;
@@ -28,6 +31,7 @@ import org.apache.directory.scim.spec.filter.FilterResponse;
 import org.apache.directory.scim.spec.filter.Filter;
 import org.apache.directory.scim.spec.filter.PageRequest;
 import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.StreamingFilterResponse;
 import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
 import org.apache.directory.scim.spec.patch.PatchOperation;
 import org.apache.directory.scim.spec.resources.ScimExtension;
@@ -103,6 +107,22 @@ public interface Repository<T extends ScimResource> {
    *         retrieved.
    */
   T get(String id) throws ResourceException;
+
+  /**
+   * Returns the current version of the ScimResource associated with the
+   * provided identifier, the value the repository sets as its
+   * {@code meta.version}. Repositories that can look up a version without
+   * loading the whole resource should implement this, it allows conditional
+   * requests to be answered without calling {@link #get(String)}.
+   *
+   * @param id The identifier of the target ScimResource.
+   * @return The version of the ScimResource, or null if the resource doesn't
+   *         exist or the repository can't tell without loading it.
+   * @throws ResourceException When the version cannot be retrieved.
+   */
+  default String getVersion(String id) throws ResourceException {
+    return null;
+  }
   
   /**
    * Finds and retrieves all ScimResource objects known to the persistence
@@ -125,6 +145,47 @@ public interface Repository<T extends ScimResource> {
    *         cannot be retrieved.
    */
   FilterResponse<T> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws ResourceException;
+
+  /**
+   * Finds the ScimResource objects matching the passed Filter like
+   * {@link #find(Filter, PageRequest, SortRequest)}, but returns them as a
+   * stream the SCIM server reads while it writes the response. Repositories
+   * that can read results incrementally, e.g. from a database cursor, should
+   * implement this so large pages are never held in memory at once, the
+   * default returns the results of {@link #find(Filter, PageRequest, SortRequest)}.
+   * <br>
+   * The returned stream is closed after the response has been written, and
+   * the total number of results is only computed once it's needed.
+   *
+   * @param filter The filter that determines the ScimResources that will be
+   *        part of the results
+   * @param pageRequest For paged requests, this object specifies the start
+   *        index and number of ScimResources that should be returned.
+   * @param sortRequest Specifies which fields the returned ScimResources
+   *        should be sorted by and whether the sort order is ascending or
+   *        descending.
+   * @return The requested "page" of ScimResources that pass the filter
+   *         criteria, sorted according to the provided requirements.
+   * @throws ResourceException If one or more ScimResources
+   *         cannot be retrieved.
+   */
+  default StreamingFilterResponse<T> stream(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws ResourceException {
+    return StreamingFilterResponse.of(find(filter, pageRequest, sortRequest));
+  }
+
+  /**
+   * Returns whether this repository serves cursor-based pagination, see
+   * <a href="https://datatracker.ietf.org/doc/draft-ietf-scim-cursor-pagination/">SCIM Cursor Pagination</a>.
+   * Repositories that return this must read {@link PageRequest#getCursor()}
+   * and set the {@code nextCursor} of their responses, the SCIM server
+   * rejects requests with a cursor for the others.
+   *
+   * @return true if {@link #find(Filter, PageRequest, SortRequest)} and
+   *         {@link #stream(Filter, PageRequest, SortRequest)} page by cursor.
+   */
+  default boolean supportsCursorPagination() {
+    return false;
+  }
   
   /**
    * Deletes the ScimResource with the provided identifier (if it exists).
@@ -137,6 +198,78 @@ public interface Repository<T extends ScimResource> {
    */
   void delete(String id) throws ResourceException;
 
+  /**
+   * Creates several resources at once, the SCIM server's Bulk implementation
+   * calls this for consecutive independent POST operations. Repositories
+   * backed by a database can override it to use a single transaction or a
+   * multi-row insert, the default creates each resource with
+   * {@link #create(ScimResource)}.
+   *
+   * @param resources The ScimResources to create and persist.
+   * @return One result per resource, in the order of {@code resources}.
+   * @throws ResourceException When none of the ScimResources can be created.
+   */
+  default List<BatchResult<T>> createAll(List<T> resources) throws ResourceException {
+    List<BatchResult<T>> results = new ArrayList<>(resources.size());
+    for (T resource : resources) {
+      try {
+        results.add(BatchResult.success(create(resource)));
+      } catch (ResourceException e) {
+        results.add(BatchResult.failure(e));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Replaces several resources at once, the SCIM server's Bulk implementation
+   * calls this for consecutive independent PUT operations. The default
+   * updates each resource with
+   * {@link #update(String, String, ScimResource, Set, Set)}.
+   *
+   * @param resources The updated ScimResources keyed by their identifier, in
+   *        the order they should be updated.
+   * @param versions The version each resource is expected to have, keyed by
+   *        its identifier, like the {@code version} passed to
+   *        {@link #update(String, String, ScimResource, Set, Set)}. Resources
+   *        without a version are updated whatever their current version.
+   * @return One result per resource, in the iteration order of {@code resources}.
+   * @throws ResourceException When none of the ScimResources can be updated.
+   */
+  default List<BatchResult<T>> updateAll(Map<String, T> resources, Map<String, String> versions) throws ResourceException {
+    List<BatchResult<T>> results = new ArrayList<>(resources.size());
+    for (Map.Entry<String, T> entry : resources.entrySet()) {
+      try {
+        results.add(BatchResult.success(update(entry.getKey(), versions.get(entry.getKey()), entry.getValue(), Collections.emptySet(), Collections.emptySet())));
+      } catch (ResourceException e) {
+        results.add(BatchResult.failure(e));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Deletes several resources at once, the SCIM server's Bulk implementation
+   * calls this for consecutive independent DELETE operations. The default
+   * deletes each resource with {@link #delete(String)}.
+   *
+   * @param ids The identifiers of the ScimResources to delete.
+   * @return One result per identifier, in the iteration order of {@code ids}.
+   * @throws ResourceException When none of the ScimResources can be deleted.
+   */
+  default List<BatchResult<Void>> deleteAll(Collection<String> ids) throws ResourceException {
+    List<BatchResult<Void>> results = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      try {
+        delete(id);
+        results.add(BatchResult.success(null));
+      } catch (ResourceException e) {
+        results.add(BatchResult.failure(e));
+      }
+    }
+    return results;
+  }
+
   /**
    * Returns a list of the SCIM Extensions that this repository considers to be
    * associated with the ScimResource of type T.
@@ -19,16 +19,26 @@
 
 package org.apache.directory.scim.core.repository;
 
+import jakarta.enterprise.inject.spi.CDI;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.core.repository.annotations.ScimProcessingExtension;
+import org.apache.directory.scim.core.repository.extensions.AttributeFilterExtension;
+import org.apache.directory.scim.core.repository.extensions.ProcessingExtension;
 import org.apache.directory.scim.spec.exception.ScimResourceInvalidException;
 import org.apache.directory.scim.spec.resources.ScimExtension;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 @Data
 @Slf4j
@@ -38,6 +48,22 @@ public class RepositoryRegistry {
 
   private Map<Class<? extends ScimResource>, Repository<? extends ScimResource>> repositoryMap = new HashMap<>();
 
+  /**
+   * Looks up the {@link ProcessingExtension}s listed in a repository's {@link ScimProcessingExtension} annotations,
+   * defaults to CDI.
+   */
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private Function<Class<? extends ProcessingExtension>, ? extends ProcessingExtension> processingExtensionResolver = type -> CDI.current().select(type).get();
+
+  /**
+   * The declared processing extension types that may resolve to an {@link AttributeFilterExtension}, per resource
+   * type.
+   */
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private final Map<Class<? extends ScimResource>, List<Class<? extends ProcessingExtension>>> attributeFilterExtensionTypes = new ConcurrentHashMap<>();
+
   public RepositoryRegistry() {
     // CDI
   }
@@ -64,6 +90,45 @@ public class RepositoryRegistry {
     log.debug("Calling addSchema on the base class: {}", clazz);
     schemaRegistry.addSchema(clazz, extensionList);
     repositoryMap.put(clazz, repository);
+
+    List<Class<? extends ProcessingExtension>> extensionTypes = new ArrayList<>();
+    for (ScimProcessingExtension annotation : repository.getClass().getAnnotationsByType(ScimProcessingExtension.class)) {
+      for (Class<? extends ProcessingExtension> extensionType : annotation.value()) {
+        // other extensions are never looked up
+        if (AttributeFilterExtension.class.isAssignableFrom(extensionType) || extensionType.isAssignableFrom(AttributeFilterExtension.class)) {
+          extensionTypes.add(extensionType);
+        }
+      }
+    }
+    attributeFilterExtensionTypes.put(clazz, List.copyOf(extensionTypes));
+  }
+
+  /**
+   * Returns whether the repository registered for {@code clazz} declares {@link AttributeFilterExtension}s, without
+   * looking them up.
+   */
+  public boolean hasAttributeFilterExtensions(Class<? extends ScimResource> clazz) {
+    return !attributeFilterExtensionTypes.getOrDefault(clazz, Collections.emptyList()).isEmpty();
+  }
+
+  /**
+   * Returns the {@link AttributeFilterExtension}s of the repository registered for {@code clazz}, in the order they
+   * are declared. The extension types are found once, the extensions are looked up on every call so they keep their
+   * scope, a {@code @Dependent} extension is a new instance each time.
+   */
+  public List<AttributeFilterExtension> getAttributeFilterExtensions(Class<? extends ScimResource> clazz) {
+    List<Class<? extends ProcessingExtension>> extensionTypes = attributeFilterExtensionTypes.get(clazz);
+    if (extensionTypes == null || extensionTypes.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<AttributeFilterExtension> extensions = new ArrayList<>(extensionTypes.size());
+    for (Class<? extends ProcessingExtension> extensionType : extensionTypes) {
+      ProcessingExtension processingExtension = processingExtensionResolver.apply(extensionType);
+      if (processingExtension instanceof AttributeFilterExtension) {
+        extensions.add((AttributeFilterExtension) processingExtension);
+      }
+    }
+    return extensions;
   }
 
   @SuppressWarnings("unchecked")
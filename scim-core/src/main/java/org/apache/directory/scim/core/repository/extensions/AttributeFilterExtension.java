@@ -22,8 +22,24 @@ package org.apache.directory.scim.core.repository.extensions;
 import org.apache.directory.scim.spec.filter.attribute.ScimRequestContext;
 import org.apache.directory.scim.spec.resources.ScimResource;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface AttributeFilterExtension extends ProcessingExtension {
 
   ScimResource filterAttributes(ScimResource scimResource, ScimRequestContext scimRequestContext) throws ClientFilterException;
-  
+
+  /**
+   * Filters a page of resources, all sharing the same {@code scimRequestContext}. Implementations that need to call
+   * a backend can override this to make one call per page, by default every resource is filtered on its own.
+   *
+   * @return the filtered resources, in the same order as {@code scimResources}.
+   */
+  default List<ScimResource> filterAttributes(List<? extends ScimResource> scimResources, ScimRequestContext scimRequestContext) throws ClientFilterException {
+    List<ScimResource> filtered = new ArrayList<>(scimResources.size());
+    for (ScimResource scimResource : scimResources) {
+      filtered.add(filterAttributes(scimResource, scimRequestContext));
+    }
+    return filtered;
+  }
 }
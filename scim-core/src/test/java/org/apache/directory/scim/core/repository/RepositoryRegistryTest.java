@@ -19,17 +19,29 @@
 
 package org.apache.directory.scim.core.repository;
 
+import org.apache.directory.scim.core.repository.annotations.ScimProcessingExtension;
+import org.apache.directory.scim.core.repository.extensions.AttributeFilterExtension;
+import org.apache.directory.scim.core.repository.extensions.ProcessingExtension;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
 import org.apache.directory.scim.spec.annotation.ScimExtensionType;
 import org.apache.directory.scim.spec.annotation.ScimResourceType;
 import org.apache.directory.scim.spec.exception.ResourceException;
 import org.apache.directory.scim.spec.exception.ScimResourceInvalidException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.filter.attribute.ScimRequestContext;
+import org.apache.directory.scim.spec.patch.PatchOperation;
 import org.apache.directory.scim.spec.resources.ScimExtension;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import org.apache.directory.scim.spec.resources.ScimUser;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -61,6 +73,77 @@ public class RepositoryRegistryTest {
     assertThat(repositoryRegistry.getRepository(StubResource.class)).isEqualTo(repository);
   }
 
+  @Test
+  public void attributeFilterExtensionsAreResolvedPerLookup() throws InvalidRepositoryException {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+    Function<Class<? extends ProcessingExtension>, ProcessingExtension> resolver = mock(Function.class);
+    StubFilterExtension filterExtension = new StubFilterExtension();
+    when(resolver.apply(StubFilterExtension.class)).thenReturn(filterExtension);
+    repositoryRegistry.setProcessingExtensionResolver(resolver);
+
+    repositoryRegistry.registerRepository(StubResource.class, new StubRepository());
+
+    assertThat(repositoryRegistry.getAttributeFilterExtensions(StubResource.class)).containsExactly(filterExtension);
+    assertThat(repositoryRegistry.getAttributeFilterExtensions(StubResource.class)).containsExactly(filterExtension);
+    assertThat(repositoryRegistry.hasAttributeFilterExtensions(StubResource.class)).isTrue();
+    // looked up again each time, never for the other extensions
+    verify(resolver, times(2)).apply(StubFilterExtension.class);
+    verify(resolver, never()).apply(StubProcessingExtension.class);
+
+    assertThat(repositoryRegistry.getAttributeFilterExtensions(ScimUser.class)).isEmpty();
+    assertThat(repositoryRegistry.hasAttributeFilterExtensions(ScimUser.class)).isFalse();
+  }
+
+  @ScimProcessingExtension({StubProcessingExtension.class, StubFilterExtension.class})
+  static class StubRepository implements Repository<StubResource> {
+
+    @Override
+    public Class<StubResource> getResourceClass() {
+      return StubResource.class;
+    }
+
+    @Override
+    public StubResource create(StubResource resource) {
+      return resource;
+    }
+
+    @Override
+    public StubResource update(String id, String version, StubResource resource, Set<AttributeReference> includedAttributeReferences, Set<AttributeReference> excludedAttributeReferences) {
+      return resource;
+    }
+
+    @Override
+    public StubResource patch(String id, String version, List<PatchOperation> patchOperations, Set<AttributeReference> includedAttributeReferences, Set<AttributeReference> excludedAttributeReferences) {
+      return null;
+    }
+
+    @Override
+    public StubResource get(String id) {
+      return null;
+    }
+
+    @Override
+    public FilterResponse<StubResource> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) {
+      return null;
+    }
+
+    @Override
+    public void delete(String id) {
+    }
+  }
+
+  static class StubProcessingExtension implements ProcessingExtension {
+  }
+
+  static class StubFilterExtension implements AttributeFilterExtension {
+
+    @Override
+    public ScimResource filterAttributes(ScimResource scimResource, ScimRequestContext scimRequestContext) {
+      return scimResource;
+    }
+  }
+
   @ScimResourceType(id = StubResource.NAME, endpoint = "/Stub", schema = StubResource.URN)
   static class StubResource extends ScimResource {
 
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.memory;
+
+import org.apache.directory.scim.spec.filter.FilterExpression;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * How an {@link InMemoryRepository} finds the resources matching a filter, returned by
+ * {@link InMemoryRepository#explain(org.apache.directory.scim.spec.filter.Filter)}.
+ * <p>
+ * A plan reads its candidates either from the repository's {@link UniqueIndex unique indexes} or, when the filter
+ * can't be answered from them, by scanning every resource.  The {@link #getResidual() residual} filter is then evaluated
+ * against the candidates only, for the terms the indexes can't answer exactly.
+ */
+public final class FilterPlan {
+
+  /**
+   * How the candidates of a plan are read.
+   */
+  public enum Access {
+    /** Every resource is a candidate. */
+    SCAN,
+    /** The resources holding a value of a unique index, for an {@code eq} term. */
+    INDEX_LOOKUP,
+    /** The resources holding a value of a unique index starting with a prefix, for an {@code sw} term. */
+    INDEX_RANGE,
+    /** The resources that are candidates of every child plan, for an {@code and} expression. */
+    INTERSECT,
+    /** The resources that are candidates of any child plan, for an {@code or} expression. */
+    UNION
+  }
+
+  private final Access access;
+
+  private final FilterExpression expression;
+
+  private final List<FilterPlan> children;
+
+  private final int estimatedCardinality;
+
+  private final FilterExpression residual;
+
+  // the candidate ids in id order, null when scanning
+  private final Supplier<Set<String>> candidates;
+
+  // rechecks the index terms against the keys an entry was indexed with, null if there are none
+  private final Predicate<InMemoryRepository.Entry<?>> indexCheck;
+
+  FilterPlan(Access access, FilterExpression expression, List<FilterPlan> children, int estimatedCardinality, FilterExpression residual,
+             Supplier<Set<String>> candidates, Predicate<InMemoryRepository.Entry<?>> indexCheck) {
+    this.access = access;
+    this.expression = expression;
+    this.children = children;
+    this.estimatedCardinality = estimatedCardinality;
+    this.residual = residual;
+    this.candidates = candidates;
+    this.indexCheck = indexCheck;
+  }
+
+  static FilterPlan scan(FilterExpression expression, int size) {
+    return new FilterPlan(Access.SCAN, expression, Collections.emptyList(), size, expression, null, null);
+  }
+
+  public Access getAccess() {
+    return access;
+  }
+
+  /**
+   * Returns the part of the filter this plan answers, {@code null} for the plan of a missing filter.
+   */
+  public FilterExpression getExpression() {
+    return expression;
+  }
+
+  public List<FilterPlan> getChildren() {
+    return children;
+  }
+
+  /**
+   * Returns the estimated number of candidates, an upper bound of the number of matching resources.
+   */
+  public int getEstimatedCardinality() {
+    return estimatedCardinality;
+  }
+
+  /**
+   * Returns the filter evaluated against each candidate, {@code null} if the indexes answer the whole filter.
+   */
+  public FilterExpression getResidual() {
+    return residual;
+  }
+
+  boolean isScan() {
+    return candidates == null;
+  }
+
+  Set<String> candidates() {
+    return candidates.get();
+  }
+
+  Predicate<InMemoryRepository.Entry<?>> indexCheck() {
+    return indexCheck;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    append(sb, 0);
+    if (residual != null) {
+      sb.append("\nresidual: ").append(residual.toFilter());
+    }
+    return sb.toString();
+  }
+
+  private void append(StringBuilder sb, int depth) {
+    sb.append("  ".repeat(depth)).append(access);
+    if (children.isEmpty() && expression != null) {
+      sb.append(' ').append(expression.toFilter());
+    }
+    sb.append(" (estimated ").append(estimatedCardinality).append(')');
+    for (FilterPlan child : children) {
+      sb.append('\n');
+      child.append(sb, depth + 1);
+    }
+  }
+}
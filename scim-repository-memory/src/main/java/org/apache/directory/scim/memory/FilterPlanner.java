@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.memory;
+
+import org.apache.directory.scim.memory.FilterPlan.Access;
+import org.apache.directory.scim.spec.filter.AttributeComparisonExpression;
+import org.apache.directory.scim.spec.filter.AttributePresentExpression;
+import org.apache.directory.scim.spec.filter.BaseFilterExpressionMapper;
+import org.apache.directory.scim.spec.filter.CompareOperator;
+import org.apache.directory.scim.spec.filter.FilterExpression;
+import org.apache.directory.scim.spec.filter.GroupExpression;
+import org.apache.directory.scim.spec.filter.LogicalExpression;
+import org.apache.directory.scim.spec.filter.LogicalOperator;
+import org.apache.directory.scim.spec.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.schema.AttributeContainer;
+import org.apache.directory.scim.spec.schema.Schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Plans how an {@link InMemoryRepository} answers a filter, {@code eq} and {@code sw} terms on an attribute with a
+ * {@link UniqueIndex} are read from the index instead of scanning every resource.
+ * <p>
+ * An {@code and} reads the candidates of its most selective indexed term and probes them against the keys of the other
+ * indexed terms, an {@code or} of indexed terms is the union of their candidates.  Terms that can't be answered from an
+ * index make up the residual filter, evaluated against the candidates only.  Index terms are rechecked against the keys
+ * a resource was stored with, a resource replaced after its id was read from the index is not returned by mistake.
+ */
+final class FilterPlanner<T> extends BaseFilterExpressionMapper<FilterPlan> {
+
+  private final List<UniqueIndex<T>> indexes;
+
+  private final List<? extends NavigableMap<String, String>> indexedIds;
+
+  private final String schemaUrn;
+
+  private final int size;
+
+  /**
+   * @param indexes The unique indexes of the repository.
+   * @param indexedIds The ids holding each value of {@code indexes}.
+   * @param schemaUrn The URN of the resources' schema.
+   * @param size The number of stored resources, the cardinality of a scan.
+   */
+  FilterPlanner(List<UniqueIndex<T>> indexes, List<? extends NavigableMap<String, String>> indexedIds, String schemaUrn, int size) {
+    this.indexes = indexes;
+    this.indexedIds = indexedIds;
+    this.schemaUrn = schemaUrn;
+    this.size = size;
+  }
+
+  @Override
+  protected FilterPlan apply(AttributeComparisonExpression expression, AttributeContainer attributeContainer) {
+    CompareOperator operation = expression.getOperation();
+    if ((operation != CompareOperator.EQ && operation != CompareOperator.SW) || !(expression.getCompareValue() instanceof String)) {
+      return FilterPlan.scan(expression, size);
+    }
+    int index = indexOf(expression.getAttributePath());
+    if (index < 0) {
+      return FilterPlan.scan(expression, size);
+    }
+    Schema.Attribute attribute = attribute(attributeContainer, expression.getAttributePath());
+    UniqueIndex<T> uniqueIndex = indexes.get(index);
+    // a case exact index can't find the values of a case-insensitive attribute
+    if (attribute == null || (uniqueIndex.isCaseExact() && !attribute.isCaseExact())) {
+      return FilterPlan.scan(expression, size);
+    }
+    // a case-insensitive index finds more values than a case exact attribute matches, those are removed by the residual
+    boolean exact = uniqueIndex.isCaseExact() == attribute.isCaseExact();
+
+    NavigableMap<String, String> ids = indexedIds.get(index);
+    String key = uniqueIndex.key((String) expression.getCompareValue());
+    if (operation == CompareOperator.EQ) {
+      String id = ids.get(key);
+      return new FilterPlan(Access.INDEX_LOOKUP, expression, Collections.emptyList(), id != null ? 1 : 0, exact ? null : expression,
+        () -> id != null ? new TreeSet<>(Set.of(id)) : new TreeSet<>(),
+        exact ? entry -> entry.keys.get(index).contains(key) : null);
+    }
+
+    int count = 0;
+    for (String indexed : ids.tailMap(key).keySet()) {
+      if (!indexed.startsWith(key)) {
+        break;
+      }
+      count++;
+    }
+    return new FilterPlan(Access.INDEX_RANGE, expression, Collections.emptyList(), count, exact ? null : expression,
+      () -> prefixIds(ids, key),
+      exact ? entry -> startsWithAny(entry.keys.get(index), key) : null);
+  }
+
+  @Override
+  protected FilterPlan apply(LogicalOperator op, FilterPlan left, FilterPlan right) {
+    FilterExpression expression = new LogicalExpression(left.getExpression(), op, right.getExpression());
+    return op == LogicalOperator.AND
+      ? intersect(expression, left, right)
+      : union(expression, left, right);
+  }
+
+  @Override
+  protected FilterPlan negate(FilterPlan expression) {
+    return FilterPlan.scan(new GroupExpression(true, expression.getExpression()), size);
+  }
+
+  @Override
+  protected FilterPlan apply(AttributePresentExpression expression, AttributeContainer attributeContainer) {
+    return FilterPlan.scan(expression, size);
+  }
+
+  @Override
+  protected FilterPlan apply(ValuePathExpression expression, AttributeContainer attributeContainer) {
+    if (expression.getAttributeExpression() == null) {
+      return FilterPlan.scan(expression, size);
+    }
+    FilterPlan plan = apply(expression.getAttributeExpression(), attributeContainer);
+    if (plan.isScan()) {
+      return FilterPlan.scan(expression, size);
+    }
+    // the terms of a value path must match the same value, the candidates of the index are checked by the residual
+    return new FilterPlan(plan.getAccess(), plan.getExpression(), plan.getChildren(), plan.getEstimatedCardinality(), expression,
+      plan::candidates, null);
+  }
+
+  @Override
+  protected FilterPlan unhandledExpression(FilterExpression expression, AttributeContainer attributeContainer) {
+    return FilterPlan.scan(expression, size);
+  }
+
+  private FilterPlan intersect(FilterExpression expression, FilterPlan left, FilterPlan right) {
+    if (left.isScan() && right.isScan()) {
+      return FilterPlan.scan(expression, size);
+    }
+    FilterExpression residual = left.getResidual() == null ? right.getResidual()
+      : right.getResidual() == null ? left.getResidual()
+      : new LogicalExpression(left.getResidual(), LogicalOperator.AND, right.getResidual());
+    Predicate<InMemoryRepository.Entry<?>> indexCheck = left.indexCheck() == null ? right.indexCheck()
+      : right.indexCheck() == null ? left.indexCheck()
+      : left.indexCheck().and(right.indexCheck());
+
+    // a scanned term only adds to the residual
+    if (left.isScan() || right.isScan()) {
+      FilterPlan indexed = left.isScan() ? right : left;
+      return new FilterPlan(indexed.getAccess(), indexed.getExpression(), indexed.getChildren(), indexed.getEstimatedCardinality(), residual,
+        indexed::candidates, indexCheck);
+    }
+
+    // the most selective term's candidates are probed against the keys of the others by indexCheck
+    FilterPlan selective = left.getEstimatedCardinality() <= right.getEstimatedCardinality() ? left : right;
+    return new FilterPlan(Access.INTERSECT, expression, children(Access.INTERSECT, left, right), selective.getEstimatedCardinality(), residual,
+      selective::candidates, indexCheck);
+  }
+
+  private FilterPlan union(FilterExpression expression, FilterPlan left, FilterPlan right) {
+    if (left.isScan() || right.isScan()) {
+      return FilterPlan.scan(expression, size);
+    }
+    // a candidate only has to match one of the terms, when one of them has a residual the whole expression is checked
+    boolean exact = left.getResidual() == null && right.getResidual() == null;
+    return new FilterPlan(Access.UNION, expression, children(Access.UNION, left, right),
+      (int) Math.min(size, (long) left.getEstimatedCardinality() + right.getEstimatedCardinality()), exact ? null : expression,
+      () -> {
+        Set<String> ids = left.candidates();
+        ids.addAll(right.candidates());
+        return ids;
+      },
+      exact ? left.indexCheck().or(right.indexCheck()) : null);
+  }
+
+  /**
+   * Flattens the children of nested intersections and unions, {@code a and b and c} has three children.
+   */
+  private static List<FilterPlan> children(Access access, FilterPlan left, FilterPlan right) {
+    List<FilterPlan> children = new ArrayList<>();
+    for (FilterPlan plan : List.of(left, right)) {
+      if (plan.getAccess() == access && !plan.getChildren().isEmpty()) {
+        children.addAll(plan.getChildren());
+      } else {
+        children.add(plan);
+      }
+    }
+    return Collections.unmodifiableList(children);
+  }
+
+  private int indexOf(AttributeReference attributeReference) {
+    if (attributeReference.hasUrn() && !attributeReference.getUrn().equals(schemaUrn)) {
+      return -1;
+    }
+    String name = attributeReference.getFullAttributeName();
+    for (int i = 0; i < indexes.size(); i++) {
+      // attribute names are case-insensitive
+      if (indexes.get(i).getName().equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static Set<String> prefixIds(NavigableMap<String, String> ids, String prefix) {
+    Set<String> result = new TreeSet<>();
+    for (Map.Entry<String, String> entry : ids.tailMap(prefix).entrySet()) {
+      if (!entry.getKey().startsWith(prefix)) {
+        break;
+      }
+      result.add(entry.getValue());
+    }
+    return result;
+  }
+
+  private static boolean startsWithAny(Set<String> keys, String prefix) {
+    for (String key : keys) {
+      if (key.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
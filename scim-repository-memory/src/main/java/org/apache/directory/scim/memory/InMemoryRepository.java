@@ -0,0 +1,475 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.memory;
+
+import org.apache.directory.scim.core.repository.PatchHandler;
+import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.annotation.ScimResourceType;
+import org.apache.directory.scim.spec.exception.ConflictResourceException;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterExpression;
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.FilterResponses;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortComparators;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.StreamingFilterResponse;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.Meta;
+import org.apache.directory.scim.spec.schema.Schema;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A thread safe {@link Repository} that keeps its resources in memory, for caches, tests and small deployments.
+ * <p>
+ * Resources are kept in a lock-free map ordered by id, so pages of a {@link #find(Filter, PageRequest, SortRequest)}
+ * are stable between requests.  Each {@link UniqueIndex} is a concurrent sorted map from value to id, values are
+ * reserved with an atomic {@code putIfAbsent} before a resource is stored and released after it's replaced or
+ * deleted, two resources can never hold the same value even when they are written concurrently.  Writes to the same
+ * id are serialized with a striped lock, writes to different ids run in parallel.
+ * <p>
+ * Filters on indexed attributes are answered from the indexes, see {@link #explain(Filter)}.  Pages requested with a
+ * cursor are keyset pages in id order, the cursor is the id of the last resource of the previous page, resources
+ * created or deleted in between never shift a page.
+ * <p>
+ * The repository assigns the {@code id} of created resources and maintains their {@code meta.version},
+ * {@code meta.created} and {@code meta.lastModified}.  Stored resources are shared with the callers, they must not be
+ * modified without calling {@link #update(String, String, ScimResource, Set, Set)}.
+ *
+ * @param <T> The type of the resources.
+ */
+public class InMemoryRepository<T extends ScimResource> implements Repository<T> {
+
+  private static final int LOCK_STRIPES = 256;
+
+  private final Class<T> resourceClass;
+
+  private final SchemaRegistry schemaRegistry;
+
+  private final PatchHandler patchHandler;
+
+  private final List<UniqueIndex<T>> indexes;
+
+  private final ConcurrentNavigableMap<String, Entry<T>> resources = new ConcurrentSkipListMap<>();
+
+  private final List<ConcurrentNavigableMap<String, String>> indexedIds;
+
+  private final Object[] locks = new Object[LOCK_STRIPES];
+
+  /**
+   * @param resourceClass The type of the resources, its schema must be registered with {@code schemaRegistry}.
+   * @param schemaRegistry The registry used to evaluate filters.
+   * @param patchHandler Applies the operations of {@link #patch(String, String, List, Set, Set)}.
+   * @param indexes The unique attributes of the resources.
+   */
+  public InMemoryRepository(Class<T> resourceClass, SchemaRegistry schemaRegistry, PatchHandler patchHandler, List<UniqueIndex<T>> indexes) {
+    this.resourceClass = resourceClass;
+    this.schemaRegistry = schemaRegistry;
+    this.patchHandler = patchHandler;
+    this.indexes = List.copyOf(indexes);
+    List<ConcurrentNavigableMap<String, String>> indexedIds = new ArrayList<>(indexes.size());
+    for (int i = 0; i < indexes.size(); i++) {
+      indexedIds.add(new ConcurrentSkipListMap<>());
+    }
+    this.indexedIds = Collections.unmodifiableList(indexedIds);
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  @Override
+  public Class<T> getResourceClass() {
+    return resourceClass;
+  }
+
+  @Override
+  public T create(T resource) throws ResourceException {
+    // a new random id, no other write can target it yet
+    String id = UUID.randomUUID().toString();
+    List<Set<String>> keys = keys(resource);
+    reserve(id, keys, null);
+
+    LocalDateTime now = LocalDateTime.now();
+    resource.setId(id);
+    meta(resource).setCreated(now).setLastModified(now).setVersion("1");
+    resources.put(id, new Entry<>(resource, keys, 1));
+    return resource;
+  }
+
+  @Override
+  public T update(String id, String version, T resource, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    synchronized (lock(id)) {
+      return replace(id, version, existing(id, version), resource);
+    }
+  }
+
+  @Override
+  public T patch(String id, String version, List<PatchOperation> patchOperations, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    synchronized (lock(id)) {
+      Entry<T> existing = existing(id, version);
+      return replace(id, version, existing, patchHandler.apply(existing.resource, patchOperations));
+    }
+  }
+
+  @Override
+  public T get(String id) {
+    Entry<T> entry = resources.get(id);
+    return entry != null ? entry.resource : null;
+  }
+
+  @Override
+  public String getVersion(String id) {
+    Entry<T> entry = resources.get(id);
+    return entry != null ? Long.toString(entry.version) : null;
+  }
+
+  /**
+   * Returns the resource whose value of the unique index {@code indexName} is {@code value}, without scanning the
+   * stored resources.
+   *
+   * @return The resource, or {@code null} if no resource holds the value.
+   * @throws IllegalArgumentException If the repository has no index named {@code indexName}.
+   */
+  public T getByUniqueValue(String indexName, String value) {
+    int index = indexOf(indexName);
+    String id = indexedIds.get(index).get(indexes.get(index).key(value));
+    return id != null ? get(id) : null;
+  }
+
+  /**
+   * Returns the resources matching {@code filter}, the total number of results is exact and the requested page is
+   * applied after filtering.  Without a {@code sortRequest} pages are ordered by id.
+   *
+   * @throws ResourceException If a cursor is combined with a {@code sortRequest}, cursor pages are in id order.
+   */
+  @Override
+  public FilterResponse<T> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws ResourceException {
+    Schema schema = schemaRegistry.getSchema(schemaUrn());
+    FilterPlan plan = explain(filter);
+    Predicate<Entry<T>> matches = matches(plan, schema);
+
+    if (isCursorPage(pageRequest, sortRequest)) {
+      try (StreamingFilterResponse<T> entries = findAfter(plan, matches, pageRequest)) {
+        FilterResponse<T> response = new FilterResponse<>(entries.getResources().collect(Collectors.toList()), pageRequest, entries.getTotalResults());
+        response.setNextCursor(entries.getNextCursor());
+        return response;
+      }
+    }
+
+    Comparator<T> order = SortComparators.compile(sortRequest, schema);
+    FilterResponse<Entry<T>> entries = FilterResponses.page(
+      plan.isScan() ? resources.values() : candidates(plan.candidates()),
+      matches,
+      pageRequest,
+      order != null ? Comparator.comparing(entry -> entry.resource, order) : null);
+
+    List<T> page = new ArrayList<>(entries.getResources().size());
+    for (Entry<T> entry : entries.getResources()) {
+      page.add(entry.resource);
+    }
+    return new FilterResponse<>(page, pageRequest, entries.getTotalResults());
+  }
+
+  /**
+   * Returns the resources matching {@code filter} like {@link #find(Filter, PageRequest, SortRequest)}.  A page
+   * requested with a cursor only reads the matches it returns and one more, the total number of results is counted
+   * once it's asked for.
+   */
+  @Override
+  public StreamingFilterResponse<T> stream(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws ResourceException {
+    if (!isCursorPage(pageRequest, sortRequest)) {
+      return StreamingFilterResponse.of(find(filter, pageRequest, sortRequest));
+    }
+    FilterPlan plan = explain(filter);
+    return findAfter(plan, matches(plan, schemaRegistry.getSchema(schemaUrn())), pageRequest);
+  }
+
+  @Override
+  public boolean supportsCursorPagination() {
+    return true;
+  }
+
+  private static boolean isCursorPage(PageRequest pageRequest, SortRequest sortRequest) throws ResourceException {
+    if (pageRequest == null || pageRequest.getCursor() == null) {
+      return false;
+    }
+    if (sortRequest != null && sortRequest.getSortBy() != null) {
+      throw new ResourceException(400, "Cursor pagination cannot be combined with sortBy");
+    }
+    return true;
+  }
+
+  private static <T extends ScimResource> Predicate<Entry<T>> matches(FilterPlan plan, Schema schema) {
+    Predicate<Entry<?>> indexCheck = plan.indexCheck();
+    Predicate<ScimResource> residual = plan.getResidual() != null
+      ? FilterExpressions.compiled(plan.getResidual(), schema)
+      : resource -> true;
+    return entry -> (indexCheck == null || indexCheck.test(entry)) && residual.test(entry.resource);
+  }
+
+  /**
+   * Returns the keyset page after the id in the cursor of {@code pageRequest}, an empty cursor requests the first
+   * page.  One more match than requested is read to tell whether there's a next page, the matches are only all
+   * counted when the total number of results is asked for.
+   */
+  private StreamingFilterResponse<T> findAfter(FilterPlan plan, Predicate<Entry<T>> matches, PageRequest pageRequest) {
+    String cursor = pageRequest.getCursor();
+    Collection<Entry<T>> after;
+    if (plan.isScan()) {
+      after = cursor.isEmpty() ? resources.values() : resources.tailMap(cursor, false).values();
+    } else {
+      List<Entry<T>> candidates = new ArrayList<>();
+      for (Entry<T> entry : candidates(plan.candidates())) {
+        if (entry.resource.getId().compareTo(cursor) > 0) {
+          candidates.add(entry);
+        }
+      }
+      candidates.sort(Comparator.comparing(entry -> entry.resource.getId()));
+      after = candidates;
+    }
+
+    int count = pageRequest.getCount() != null ? Math.max(pageRequest.getCount(), 0) : Integer.MAX_VALUE;
+    List<T> page = new ArrayList<>();
+    boolean more = false;
+    for (Entry<T> entry : after) {
+      if (matches.test(entry)) {
+        if (page.size() == count) {
+          more = true;
+          break;
+        }
+        page.add(entry.resource);
+      }
+    }
+
+    StreamingFilterResponse<T> response = new StreamingFilterResponse<>(page.stream(), pageRequest, () -> count(plan, matches));
+    if (more && !page.isEmpty()) {
+      response.setNextCursor(page.get(page.size() - 1).getId());
+    }
+    return response;
+  }
+
+  private int count(FilterPlan plan, Predicate<Entry<T>> matches) {
+    int count = 0;
+    for (Entry<T> entry : plan.isScan() ? resources.values() : candidates(plan.candidates())) {
+      if (matches.test(entry)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns how {@link #find(Filter, PageRequest, SortRequest)} reads the resources matching {@code filter}, the
+   * indexes it looks up and the estimated number of candidates.
+   */
+  public FilterPlan explain(Filter filter) {
+    FilterExpression expression = filter != null ? filter.getExpression() : null;
+    if (expression == null) {
+      return FilterPlan.scan(null, resources.size());
+    }
+    return new FilterPlanner<>(indexes, indexedIds, schemaUrn(), resources.size())
+      .apply(expression, schemaRegistry.getSchema(schemaUrn()));
+  }
+
+  @Override
+  public void delete(String id) throws ResourceException {
+    synchronized (lock(id)) {
+      Entry<T> entry = resources.remove(id);
+      if (entry == null) {
+        throw notFound(id);
+      }
+      release(id, entry.keys, null);
+    }
+  }
+
+  /**
+   * Returns the number of stored resources.
+   */
+  public int size() {
+    return resources.size();
+  }
+
+  private T replace(String id, String version, Entry<T> existing, T resource) throws ResourceException {
+    List<Set<String>> keys = keys(resource);
+    reserve(id, keys, existing.keys);
+
+    long nextVersion = existing.version + 1;
+    Meta existingMeta = existing.resource.getMeta();
+    resource.setId(id);
+    meta(resource)
+      .setCreated(existingMeta != null ? existingMeta.getCreated() : null)
+      .setLastModified(LocalDateTime.now())
+      .setVersion(Long.toString(nextVersion));
+    resources.put(id, new Entry<>(resource, keys, nextVersion));
+
+    // the old values are only released once the new ones are held, a concurrent write can't take a value in between
+    release(id, existing.keys, keys);
+    return resource;
+  }
+
+  private Entry<T> existing(String id, String version) throws ResourceException {
+    Entry<T> existing = resources.get(id);
+    if (existing == null) {
+      throw notFound(id);
+    }
+    if (version != null && !version.equals(Long.toString(existing.version))) {
+      throw new ResourceException(412, "Resource " + id + " has been modified, version " + version + " is not current");
+    }
+    return existing;
+  }
+
+  /**
+   * Reserves the index values of resource {@code id} that it doesn't already hold in {@code held}, none are reserved
+   * if one of them is held by another resource.
+   */
+  private void reserve(String id, List<Set<String>> keys, List<Set<String>> held) throws ConflictResourceException {
+    for (int i = 0; i < indexes.size(); i++) {
+      ConcurrentNavigableMap<String, String> ids = indexedIds.get(i);
+      for (String key : keys.get(i)) {
+        if (held != null && held.get(i).contains(key)) {
+          continue;
+        }
+        String holder = ids.putIfAbsent(key, id);
+        if (holder != null && !holder.equals(id)) {
+          rollback(id, keys, held, i, key);
+          throw new ConflictResourceException(indexes.get(i).getName() + " '" + key + "' is already in use");
+        }
+      }
+    }
+  }
+
+  /**
+   * Releases the values reserved by {@link #reserve} before the conflicting {@code key} of index {@code failedIndex}.
+   */
+  private void rollback(String id, List<Set<String>> keys, List<Set<String>> held, int failedIndex, String failedKey) {
+    for (int i = 0; i <= failedIndex; i++) {
+      ConcurrentNavigableMap<String, String> ids = indexedIds.get(i);
+      for (String key : keys.get(i)) {
+        if (i == failedIndex && key.equals(failedKey)) {
+          return;
+        }
+        if (held == null || !held.get(i).contains(key)) {
+          ids.remove(key, id);
+        }
+      }
+    }
+  }
+
+  /**
+   * Releases the index values of resource {@code id} in {@code keys} that are not in {@code kept}.
+   */
+  private void release(String id, List<Set<String>> keys, List<Set<String>> kept) {
+    for (int i = 0; i < indexes.size(); i++) {
+      ConcurrentNavigableMap<String, String> ids = indexedIds.get(i);
+      for (String key : keys.get(i)) {
+        if (kept == null || !kept.get(i).contains(key)) {
+          ids.remove(key, id);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the entries of the candidate ids of a plan, skipping the ones deleted since the plan was made.
+   */
+  private List<Entry<T>> candidates(Set<String> ids) {
+    List<Entry<T>> entries = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      Entry<T> entry = resources.get(id);
+      if (entry != null) {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  private List<Set<String>> keys(T resource) {
+    List<Set<String>> keys = new ArrayList<>(indexes.size());
+    for (UniqueIndex<T> index : indexes) {
+      keys.add(index.keys(resource));
+    }
+    return keys;
+  }
+
+  private int indexOf(String indexName) {
+    for (int i = 0; i < indexes.size(); i++) {
+      if (indexes.get(i).getName().equals(indexName)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("No unique index named '" + indexName + "' for " + resourceClass.getSimpleName());
+  }
+
+  private String schemaUrn() {
+    return resourceClass.getAnnotation(ScimResourceType.class).schema();
+  }
+
+  private Object lock(String id) {
+    int hash = id.hashCode();
+    return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+  }
+
+  private static Meta meta(ScimResource resource) {
+    if (resource.getMeta() == null) {
+      resource.setMeta(new Meta());
+    }
+    return resource.getMeta();
+  }
+
+  private static ResourceException notFound(String id) {
+    return new ResourceException(404, "Resource " + id + " not found");
+  }
+
+  /**
+   * A stored resource with the index values it was stored with, they are released even if the resource is modified
+   * afterwards.
+   */
+  static final class Entry<T> {
+
+    final T resource;
+
+    final List<Set<String>> keys;
+
+    final long version;
+
+    private Entry(T resource, List<Set<String>> keys, long version) {
+      this.resource = resource;
+      this.keys = keys;
+      this.version = version;
+    }
+  }
+}
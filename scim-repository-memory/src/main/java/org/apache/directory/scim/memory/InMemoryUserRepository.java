@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.memory;
+
+import org.apache.directory.scim.core.repository.PatchHandler;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.ScimUser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An {@link InMemoryRepository} of Users, {@code userName} and {@code emails.value} are unique ignoring case,
+ * {@code externalId} is unique and case exact.
+ */
+public class InMemoryUserRepository extends InMemoryRepository<ScimUser> {
+
+  public static final String USER_NAME_INDEX = "userName";
+
+  public static final String EXTERNAL_ID_INDEX = "externalId";
+
+  public static final String EMAILS_VALUE_INDEX = "emails.value";
+
+  public InMemoryUserRepository(SchemaRegistry schemaRegistry, PatchHandler patchHandler) {
+    super(ScimUser.class, schemaRegistry, patchHandler, List.of(
+      UniqueIndex.of(USER_NAME_INDEX, ScimUser::getUserName, false),
+      UniqueIndex.of(EXTERNAL_ID_INDEX, ScimUser::getExternalId, true),
+      UniqueIndex.ofAll(EMAILS_VALUE_INDEX, InMemoryUserRepository::emailValues, false)));
+  }
+
+  private static List<String> emailValues(ScimUser user) {
+    List<Email> emails = user.getEmails();
+    if (emails == null || emails.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<String> values = new ArrayList<>(emails.size());
+    for (Email email : emails) {
+      if (email != null) {
+        values.add(email.getValue());
+      }
+    }
+    return values;
+  }
+}
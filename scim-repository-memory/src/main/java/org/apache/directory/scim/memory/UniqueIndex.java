@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.memory;
+
+import org.apache.directory.scim.spec.filter.CaseFolding;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Describes a unique attribute of the resources stored by an {@link InMemoryRepository}, e.g. a User's
+ * {@code userName}.  The repository keeps the values of each of its unique indexes in a sorted map, which answers
+ * {@code eq} filters with a lookup and {@code sw} filters with a range read.  Creates and updates that would store a
+ * value already used by another resource are rejected.
+ * <p>
+ * Values of an index that is not case exact are folded with the same rule as {@link String#equalsIgnoreCase(String)},
+ * so {@code "BJensen"} and {@code "bjensen"} conflict, like they match the same {@code eq} filter.
+ *
+ * @param <T> The type of the resources.
+ */
+public final class UniqueIndex<T> {
+
+  private final String name;
+
+  private final Function<? super T, ? extends Collection<String>> values;
+
+  private final boolean caseExact;
+
+  private UniqueIndex(String name, Function<? super T, ? extends Collection<String>> values, boolean caseExact) {
+    this.name = name;
+    this.values = values;
+    this.caseExact = caseExact;
+  }
+
+  /**
+   * An index of a single valued attribute.
+   *
+   * @param name The name of the index, usually the attribute's path like {@code userName}.
+   * @param value Reads the value of a resource, {@code null} values are not indexed.
+   * @param caseExact If values only conflict when they are equal including case.
+   */
+  public static <T> UniqueIndex<T> of(String name, Function<? super T, String> value, boolean caseExact) {
+    return new UniqueIndex<>(name, resource -> Collections.singleton(value.apply(resource)), caseExact);
+  }
+
+  /**
+   * An index of a multi-valued attribute, every value of a resource must be unique across all resources.
+   *
+   * @param name The name of the index, usually the attribute's path like {@code emails.value}.
+   * @param values Reads the values of a resource, a {@code null} collection or {@code null} values are not indexed.
+   * @param caseExact If values only conflict when they are equal including case.
+   */
+  public static <T> UniqueIndex<T> ofAll(String name, Function<? super T, ? extends Collection<String>> values, boolean caseExact) {
+    return new UniqueIndex<>(name, values, caseExact);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isCaseExact() {
+    return caseExact;
+  }
+
+  /**
+   * Returns the key {@code value} is indexed with.
+   */
+  public String key(String value) {
+    return caseExact ? value : CaseFolding.fold(value);
+  }
+
+  /**
+   * Returns the distinct keys of a resource.
+   */
+  Set<String> keys(T resource) {
+    Collection<String> resourceValues = values.apply(resource);
+    if (resourceValues == null || resourceValues.isEmpty()) {
+      return Collections.emptySet();
+    }
+    Set<String> keys = new LinkedHashSet<>(resourceValues.size());
+    for (String value : resourceValues) {
+      if (value != null) {
+        keys.add(key(value));
+      }
+    }
+    return keys;
+  }
+
+  @Override
+  public String toString() {
+    return "UniqueIndex(" + name + (caseExact ? ", caseExact" : "") + ")";
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.memory;
+
+import org.apache.directory.scim.core.repository.DefaultPatchHandler;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.memory.FilterPlan.Access;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterParseException;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilterPlannerTest {
+
+  private InMemoryUserRepository repository;
+
+  @BeforeEach
+  public void createUsers() throws ResourceException {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, null);
+    repository = new InMemoryUserRepository(schemaRegistry, new DefaultPatchHandler(schemaRegistry));
+
+    repository.create(user("bjensen", "e1", "bjensen@example.com", true));
+    repository.create(user("bjones", "e2", "bjones@example.com", false));
+    repository.create(user("jsmith", "e3", "jsmith@example.com", true));
+  }
+
+  @Test
+  public void equalityUsesIndexLookup() throws Exception {
+    FilterPlan plan = repository.explain(new Filter("userName eq \"BJensen\""));
+    assertThat(plan.getAccess()).isEqualTo(Access.INDEX_LOOKUP);
+    assertThat(plan.getEstimatedCardinality()).isEqualTo(1);
+    assertThat(plan.getResidual()).isNull();
+
+    assertThat(userNames("userName eq \"BJensen\"")).containsExactly("bjensen");
+    assertThat(userNames("userName eq \"nobody\"")).isEmpty();
+  }
+
+  @Test
+  public void prefixUsesIndexRange() throws Exception {
+    FilterPlan plan = repository.explain(new Filter("userName sw \"bj\""));
+    assertThat(plan.getAccess()).isEqualTo(Access.INDEX_RANGE);
+    assertThat(plan.getEstimatedCardinality()).isEqualTo(2);
+
+    assertThat(userNames("userName sw \"BJ\"")).containsExactlyInAnyOrder("bjensen", "bjones");
+  }
+
+  @Test
+  public void andAppliesResidualToIndexedCandidates() throws Exception {
+    FilterPlan plan = repository.explain(new Filter("externalId eq \"e2\" and active eq true"));
+    assertThat(plan.getAccess()).isEqualTo(Access.INDEX_LOOKUP);
+    assertThat(plan.getResidual().toFilter()).isEqualTo("active EQ true");
+    assertThat(userNames("externalId eq \"e2\" and active eq true")).isEmpty();
+    assertThat(userNames("externalId eq \"e1\" and active eq true")).containsExactly("bjensen");
+
+    plan = repository.explain(new Filter("userName sw \"b\" and emails.value eq \"bjones@example.com\""));
+    assertThat(plan.getAccess()).isEqualTo(Access.INTERSECT);
+    assertThat(plan.getChildren()).extracting(FilterPlan::getAccess).containsExactly(Access.INDEX_RANGE, Access.INDEX_LOOKUP);
+    assertThat(plan.getEstimatedCardinality()).isEqualTo(1);
+    assertThat(plan.getResidual()).isNull();
+    assertThat(userNames("userName sw \"b\" and emails.value eq \"bjones@example.com\"")).containsExactly("bjones");
+  }
+
+  @Test
+  public void orUnionsIndexedCandidates() throws Exception {
+    FilterPlan plan = repository.explain(new Filter("userName eq \"jsmith\" or externalId eq \"e1\" or userName eq \"nobody\""));
+    assertThat(plan.getAccess()).isEqualTo(Access.UNION);
+    assertThat(plan.getChildren()).hasSize(3);
+    assertThat(plan.getEstimatedCardinality()).isEqualTo(2);
+    assertThat(userNames("userName eq \"jsmith\" or externalId eq \"e1\" or userName eq \"nobody\"")).containsExactlyInAnyOrder("jsmith", "bjensen");
+
+    // one unindexed term makes the union a scan
+    assertThat(repository.explain(new Filter("userName eq \"jsmith\" or active eq false")).getAccess()).isEqualTo(Access.SCAN);
+    assertThat(userNames("userName eq \"jsmith\" or active eq false")).containsExactlyInAnyOrder("jsmith", "bjones");
+  }
+
+  @Test
+  public void caseExactAndNegatedTerms() throws Exception {
+    // externalId is case exact in both the schema and the index
+    assertThat(repository.explain(new Filter("externalId eq \"E1\"")).getAccess()).isEqualTo(Access.INDEX_LOOKUP);
+    assertThat(userNames("externalId eq \"E1\"")).isEmpty();
+
+    assertThat(repository.explain(new Filter("not (userName eq \"bjensen\")")).getAccess()).isEqualTo(Access.SCAN);
+    assertThat(userNames("not (userName eq \"bjensen\")")).containsExactlyInAnyOrder("bjones", "jsmith");
+  }
+
+  @Test
+  public void explainDescribesPlan() throws Exception {
+    assertThat(repository.explain(new Filter("userName eq \"bjensen\" and displayName co \"B\"")).toString())
+      .isEqualTo("INDEX_LOOKUP userName EQ \"bjensen\" (estimated 1)\nresidual: displayName CO \"B\"");
+    assertThat(repository.explain(null).toString()).isEqualTo("SCAN (estimated 3)");
+  }
+
+  @Test
+  public void pagesIndexedCandidates() throws Exception {
+    FilterResponse<ScimUser> response = repository.find(new Filter("userName sw \"b\""), new PageRequest().setStartIndex(2).setCount(1), null);
+    assertThat(response.getTotalResults()).isEqualTo(2);
+    assertThat(response.getResources()).hasSize(1);
+  }
+
+  private List<String> userNames(String filter) throws FilterParseException, ResourceException {
+    return repository.find(new Filter(filter), new PageRequest(), null).getResources().stream()
+      .map(ScimUser::getUserName)
+      .collect(Collectors.toList());
+  }
+
+  private static ScimUser user(String userName, String externalId, String email, boolean active) {
+    ScimUser user = new ScimUser();
+    user.setUserName(userName);
+    user.setExternalId(externalId);
+    user.setActive(active);
+    user.setEmails(List.of(new Email().setValue(email)));
+    return user;
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.memory;
+
+import org.apache.directory.scim.core.repository.DefaultPatchHandler;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.exception.ConflictResourceException;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.StreamingFilterResponse;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.patch.PatchOperationPath;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InMemoryUserRepositoryTest {
+
+  private final InMemoryUserRepository repository;
+
+  public InMemoryUserRepositoryTest() {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, null);
+    repository = new InMemoryUserRepository(schemaRegistry, new DefaultPatchHandler(schemaRegistry));
+  }
+
+  @Test
+  public void createRejectsDuplicateUniqueValues() throws ResourceException {
+    ScimUser created = repository.create(user("bjensen", "e1", "bjensen@example.com"));
+    assertThat(created.getId()).isNotNull();
+    assertThat(created.getMeta().getVersion()).isEqualTo("1");
+
+    assertThatThrownBy(() -> repository.create(user("BJensen", "e2", "other@example.com")))
+      .isInstanceOf(ConflictResourceException.class)
+      .hasMessageContaining("userName");
+    assertThatThrownBy(() -> repository.create(user("jsmith", "e1", "jsmith@example.com")))
+      .isInstanceOf(ConflictResourceException.class)
+      .hasMessageContaining("externalId");
+    assertThatThrownBy(() -> repository.create(user("jsmith", "e2", "BJENSEN@example.com")))
+      .isInstanceOf(ConflictResourceException.class)
+      .hasMessageContaining("emails.value");
+
+    // the values reserved before a conflict are released
+    assertThat(repository.create(user("jsmith", "e2", "jsmith@example.com")).getUserName()).isEqualTo("jsmith");
+    assertThat(repository.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void externalIdIsCaseExact() throws ResourceException {
+    repository.create(user("bjensen", "e1", null));
+    repository.create(user("jsmith", "E1", null));
+
+    assertThat(repository.getByUniqueValue(InMemoryUserRepository.EXTERNAL_ID_INDEX, "E1").getUserName()).isEqualTo("jsmith");
+    assertThat(repository.getByUniqueValue(InMemoryUserRepository.USER_NAME_INDEX, "BJENSEN").getExternalId()).isEqualTo("e1");
+  }
+
+  @Test
+  public void updateMaintainsIndexes() throws ResourceException {
+    String id = repository.create(user("bjensen", "e1", "bjensen@example.com")).getId();
+
+    ScimUser updated = repository.update(id, "1", user("babs", "e1", "babs@example.com"), Set.of(), Set.of());
+    assertThat(updated.getMeta().getVersion()).isEqualTo("2");
+    assertThat(repository.getByUniqueValue(InMemoryUserRepository.USER_NAME_INDEX, "babs").getId()).isEqualTo(id);
+    assertThat(repository.getByUniqueValue(InMemoryUserRepository.USER_NAME_INDEX, "bjensen")).isNull();
+    assertThat(repository.getByUniqueValue(InMemoryUserRepository.EMAILS_VALUE_INDEX, "bjensen@example.com")).isNull();
+
+    // the released values can be used again
+    repository.create(user("bjensen", "e2", "bjensen@example.com"));
+
+    assertThatThrownBy(() -> repository.update(id, "2", user("bjensen", "e1", null), Set.of(), Set.of()))
+      .isInstanceOf(ConflictResourceException.class);
+    assertThat(repository.get(id).getUserName()).isEqualTo("babs");
+    assertThat(repository.getByUniqueValue(InMemoryUserRepository.USER_NAME_INDEX, "babs").getId()).isEqualTo(id);
+
+    assertThatThrownBy(() -> repository.update(id, "1", user("babs", "e1", null), Set.of(), Set.of()))
+      .isInstanceOf(ResourceException.class)
+      .extracting("status").isEqualTo(412);
+  }
+
+  @Test
+  public void patchMaintainsIndexes() throws Exception {
+    String id = repository.create(user("bjensen", "e1", "bjensen@example.com")).getId();
+
+    PatchOperation op = new PatchOperation();
+    op.setOperation(PatchOperation.Type.REPLACE);
+    op.setPath(PatchOperationPath.fromString("userName"));
+    op.setValue("babs");
+    repository.patch(id, null, List.of(op), Set.of(), Set.of());
+
+    assertThat(repository.get(id).getUserName()).isEqualTo("babs");
+    assertThat(repository.getByUniqueValue(InMemoryUserRepository.USER_NAME_INDEX, "babs").getId()).isEqualTo(id);
+    assertThat(repository.getByUniqueValue(InMemoryUserRepository.USER_NAME_INDEX, "bjensen")).isNull();
+    assertThat(repository.getByUniqueValue(InMemoryUserRepository.EMAILS_VALUE_INDEX, "bjensen@example.com").getId()).isEqualTo(id);
+  }
+
+  @Test
+  public void deleteReleasesValues() throws ResourceException {
+    String id = repository.create(user("bjensen", "e1", "bjensen@example.com")).getId();
+    repository.delete(id);
+
+    assertThat(repository.get(id)).isNull();
+    assertThatThrownBy(() -> repository.delete(id))
+      .isInstanceOf(ResourceException.class)
+      .extracting("status").isEqualTo(404);
+    repository.create(user("bjensen", "e1", "bjensen@example.com"));
+  }
+
+  @Test
+  public void findFiltersBeforePaging() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      repository.create(user((i % 2 == 0 ? "even" : "odd") + i, null, null));
+    }
+
+    FilterResponse<ScimUser> response = repository.find(new Filter("userName sw \"odd\""), new PageRequest().setStartIndex(2).setCount(2), null);
+    assertThat(response.getTotalResults()).isEqualTo(5);
+    assertThat(response.getResources()).hasSize(2)
+      .allMatch(user -> user.getUserName().startsWith("odd"));
+  }
+
+  @Test
+  public void cursorPagesFollowIds() throws Exception {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      ids.add(repository.create(user("user" + i, null, null)).getId());
+    }
+    ids.sort(null);
+
+    FilterResponse<ScimUser> first = repository.find(null, new PageRequest().setCursor("").setCount(2), null);
+    assertThat(first.getTotalResults()).isEqualTo(5);
+    assertThat(first.getResources()).extracting(ScimUser::getId).containsExactly(ids.get(0), ids.get(1));
+    assertThat(first.getNextCursor()).isEqualTo(ids.get(1));
+
+    // deleting a resource of an earlier page doesn't shift the next one
+    repository.delete(ids.get(0));
+    FilterResponse<ScimUser> second = repository.find(null, new PageRequest().setCursor(first.getNextCursor()).setCount(2), null);
+    assertThat(second.getTotalResults()).isEqualTo(4);
+    assertThat(second.getResources()).extracting(ScimUser::getId).containsExactly(ids.get(2), ids.get(3));
+
+    FilterResponse<ScimUser> last = repository.find(null, new PageRequest().setCursor(second.getNextCursor()).setCount(2), null);
+    assertThat(last.getResources()).extracting(ScimUser::getId).containsExactly(ids.get(4));
+    assertThat(last.getNextCursor()).isNull();
+  }
+
+  @Test
+  public void cursorPagesOfIndexedCandidates() throws Exception {
+    for (int i = 0; i < 6; i++) {
+      repository.create(user((i % 2 == 0 ? "even" : "odd") + i, null, null));
+    }
+
+    List<String> userNames = new ArrayList<>();
+    String cursor = "";
+    do {
+      FilterResponse<ScimUser> response = repository.find(new Filter("userName sw \"odd\""), new PageRequest().setCursor(cursor).setCount(2), null);
+      assertThat(response.getTotalResults()).isEqualTo(3);
+      response.getResources().forEach(user -> userNames.add(user.getUserName()));
+      cursor = response.getNextCursor();
+    } while (cursor != null);
+
+    assertThat(userNames).containsExactlyInAnyOrder("odd1", "odd3", "odd5");
+  }
+
+  @Test
+  public void streamedCursorPagesCountTheTotalWhenAsked() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      repository.create(user("user" + i, null, null));
+    }
+
+    try (StreamingFilterResponse<ScimUser> response = repository.stream(null, new PageRequest().setCursor("").setCount(2), null)) {
+      repository.create(user("user3", null, null));
+
+      assertThat(response.getResources()).hasSize(2);
+      assertThat(response.getNextCursor()).isNotNull();
+      // counted after the page was read
+      assertThat(response.getTotalResults()).isEqualTo(4);
+    }
+  }
+
+  @Test
+  public void cursorCannotBeSorted() {
+    SortRequest sortRequest = new SortRequest().setSortBy(new AttributeReference("userName"));
+
+    assertThatThrownBy(() -> repository.find(null, new PageRequest().setCursor(""), sortRequest))
+      .isInstanceOf(ResourceException.class)
+      .extracting("status").isEqualTo(400);
+  }
+
+  @Test
+  public void concurrentWritesKeepIndexesConsistent() throws Exception {
+    int threads = 8;
+    int names = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Integer>> tasks = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        tasks.add(() -> {
+          int created = 0;
+          for (int i = 0; i < names; i++) {
+            try {
+              ScimUser user = repository.create(user("user" + i, null, null));
+              created++;
+              // rename half of the winners, which releases their name to the other threads
+              if (i % 2 == 0) {
+                repository.update(user.getId(), null, user("renamed" + i, null, null), Set.of(), Set.of());
+              }
+            } catch (ConflictResourceException e) {
+              // another thread holds the name
+            }
+          }
+          return created;
+        });
+      }
+      int created = 0;
+      for (Future<Integer> future : executor.invokeAll(tasks)) {
+        created += future.get();
+      }
+
+      assertThat(repository.size()).isEqualTo(created);
+      List<ScimUser> users = repository.find(null, new PageRequest(), null).getResources().stream().collect(Collectors.toList());
+      assertThat(users.stream().map(ScimUser::getUserName).distinct().count()).isEqualTo(users.size());
+      for (ScimUser user : users) {
+        assertThat(repository.getByUniqueValue(InMemoryUserRepository.USER_NAME_INDEX, user.getUserName()).getId()).isEqualTo(user.getId());
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  private static ScimUser user(String userName, String externalId, String email) {
+    ScimUser user = new ScimUser();
+    user.setUserName(userName);
+    user.setExternalId(externalId);
+    if (email != null) {
+      user.setEmails(List.of(new Email().setValue(email).setPrimary(true)));
+    }
+    return user;
+  }
+}
@@ -56,6 +56,8 @@ public class JerseyApplication extends Application {
       // Set any unique configuration bits
       .setId("scimple-jersey-example")
       .setDocumentationUri("https://github.com/apache/directory-scimple")
+      // the repositories sort with SortComparators
+      .setSupportsSort(true)
     // set the auth scheme too
      .addAuthenticationSchema(oauthBearer());
   }
@@ -34,6 +34,8 @@ public class RestApplication extends Application {
   ServerConfiguration serverConfiguration() {
     return new ServerConfiguration()
       .setId("scimple-in-memory-example")
+      // the repositories sort with SortComparators
+      .setSupportsSort(true)
       .addAuthenticationSchema(httpBasic());
   }
 }
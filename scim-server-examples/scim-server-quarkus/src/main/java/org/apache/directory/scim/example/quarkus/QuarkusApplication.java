@@ -46,6 +46,8 @@ public class QuarkusApplication extends Application {
       // Set any unique configuration bits
       .setId("scimple-quarkus-example")
       .setDocumentationUri("https://github.com/apache/directory-scimple")
+      // the repositories sort with SortComparators
+      .setSupportsSort(true)
       // set the auth scheme too
      .addAuthenticationSchema(oauthBearer());
   }
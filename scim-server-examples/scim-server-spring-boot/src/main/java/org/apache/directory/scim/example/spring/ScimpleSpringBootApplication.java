@@ -39,6 +39,8 @@ public class ScimpleSpringBootApplication {
     return new ServerConfiguration()
       .setId("scimple-spring-boot-example")
       .setDocumentationUri("https://github.com/apache/directory-scimple")
+      // the repositories sort with SortComparators
+      .setSupportsSort(true)
 
      // set the auth scheme
      .addAuthenticationSchema(httpBasic());
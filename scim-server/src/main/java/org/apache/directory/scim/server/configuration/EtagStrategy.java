@@ -0,0 +1,65 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.configuration;
+
+import jakarta.ws.rs.core.EntityTag;
+import org.apache.directory.scim.server.exception.EtagGenerationException;
+import org.apache.directory.scim.spec.resources.ScimResource;
+
+/**
+ * Computes the ETag returned for a resource, and maps the ETags clients send back to the {@code version} passed to
+ * {@link org.apache.directory.scim.core.repository.Repository#update Repository.update} and
+ * {@link org.apache.directory.scim.core.repository.Repository#patch Repository.patch}.
+ * <p>
+ * The strategy is configured with {@link org.apache.directory.scim.server.configuration.ServerConfiguration#setEtagStrategy
+ * ServerConfiguration.setEtagStrategy}, by default the version the repository sets in the resource's meta is used.
+ *
+ * @see RepositoryVersionEtagStrategy
+ * @see org.apache.directory.scim.server.rest.LastModifiedEtagStrategy
+ * @see org.apache.directory.scim.server.rest.ContentHashEtagStrategy
+ */
+public interface EtagStrategy {
+
+  /**
+   * Returns the ETag of {@code resource}, or null if it has none.
+   */
+  EntityTag getEtag(ScimResource resource) throws EtagGenerationException;
+
+  /**
+   * Returns the ETag of a resource from the version its repository reports with
+   * {@link org.apache.directory.scim.core.repository.Repository#getVersion Repository.getVersion}, or null if this
+   * strategy needs the resource itself. Used to answer conditional requests without loading the resource.
+   */
+  default EntityTag getEtag(String version) {
+    return null;
+  }
+
+  /**
+   * Returns the repository version an ETag sent by a client stands for, or null if this strategy's ETags aren't
+   * repository versions. The server then compares the ETag with the ETag of the current resource itself, and the
+   * repository is passed no version.
+   * <p>
+   * Only strategies whose ETags are the repository's {@code meta.version}, like {@link RepositoryVersionEtagStrategy},
+   * may return a version, repositories compare it with the version they store.
+   */
+  default String toVersion(EntityTag etag) {
+    return null;
+  }
+}
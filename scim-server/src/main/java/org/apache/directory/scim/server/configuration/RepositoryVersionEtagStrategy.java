@@ -0,0 +1,63 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.configuration;
+
+import jakarta.ws.rs.core.EntityTag;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.Meta;
+
+/**
+ * Uses the {@code meta.version} supplied by the repository, typically a row version or modification counter of the
+ * backing store, as the ETag. Nothing is computed per request.
+ */
+public class RepositoryVersionEtagStrategy implements EtagStrategy {
+
+  private final boolean weak;
+
+  public RepositoryVersionEtagStrategy() {
+    this(false);
+  }
+
+  /**
+   * @param weak return weak ({@code W/}) ETags, for versions that don't change with every byte of the representation.
+   */
+  public RepositoryVersionEtagStrategy(boolean weak) {
+    this.weak = weak;
+  }
+
+  @Override
+  public EntityTag getEtag(ScimResource resource) {
+    Meta meta = resource.getMeta();
+    if (meta != null) {
+      return getEtag(meta.getVersion());
+    }
+    return null;
+  }
+
+  @Override
+  public EntityTag getEtag(String version) {
+    return version != null ? new EntityTag(version, weak) : null;
+  }
+
+  @Override
+  public String toVersion(EntityTag etag) {
+    return etag.getValue();
+  }
+}
@@ -22,6 +22,7 @@ package org.apache.directory.scim.server.configuration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import lombok.AccessLevel;
 import lombok.Data;
@@ -29,6 +30,7 @@ import lombok.Setter;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.AuthenticationSchema;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.BulkConfiguration;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.FilterConfiguration;
+import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.PaginationConfiguration;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.SupportedConfiguration;
 
 /**
@@ -41,7 +43,9 @@ import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.Suppor
 public class ServerConfiguration {
   
   static final int BULK_MAXIMUM_OPERATIONS = 100;
-  static final int BULK_MAXIMUM_PAYLOAD_SIZE = 1024;
+  static final int BULK_MAXIMUM_PAYLOAD_SIZE = 1048576;
+  static final int BULK_MAXIMUM_PARALLELISM = 1;
+  static final int SEARCH_MAXIMUM_PARALLELISM = 1;
   
   static final int FILTER_MAXIMUM_RESULTS = 100;
 
@@ -52,10 +56,21 @@ public class ServerConfiguration {
   @Setter(AccessLevel.NONE)
   boolean supportsBulk = true;
   int bulkMaxOperations = BULK_MAXIMUM_OPERATIONS;
-  int bulkMaxPayloadSize = BULK_MAXIMUM_PAYLOAD_SIZE;  //TODO what should this be?
+  // in bytes, enforced while the bulk request is read
+  int bulkMaxPayloadSize = BULK_MAXIMUM_PAYLOAD_SIZE;
+  // number of independent bulk operations run concurrently, repositories must be thread safe and must not depend on
+  // request scoped state when this is greater than 1, unless the executor propagates it
+  int bulkMaxParallelism = BULK_MAXIMUM_PARALLELISM;
+  // number of repositories a search from the server root queries concurrently, the same applies as for
+  // bulkMaxParallelism
+  int searchMaxParallelism = SEARCH_MAXIMUM_PARALLELISM;
+  // runs concurrent bulk operations and searches, e.g. a container managed executor that propagates the request
+  // context, by default a bounded pool of daemon threads, see RequestExecutor
+  Executor executor;
   
   @Setter(AccessLevel.NONE)
   boolean supportsETag = true;
+  EtagStrategy etagStrategy = new RepositoryVersionEtagStrategy();
   
   boolean supportsFilter = false;
   int filterMaxResults = FILTER_MAXIMUM_RESULTS;
@@ -64,6 +79,13 @@ public class ServerConfiguration {
   boolean supportsPatch = true;
   
   boolean supportsSort = false;
+
+  // cursor-based pagination, requests with a cursor are still rejected for repositories that don't support it
+  boolean supportsCursorPagination = false;
+  @Setter(AccessLevel.NONE)
+  boolean supportsIndexPagination = true;
+  // in seconds, how long a cursor stays valid, null if cursors don't expire
+  Integer cursorTimeout;
   
   String documentationUri;
   
@@ -112,6 +134,18 @@ public class ServerConfiguration {
   public SupportedConfiguration getSortConfiguration() {
     return createSupportedConfiguration(isSupportsSort());
   }
+
+  public PaginationConfiguration getPaginationConfiguration() {
+    PaginationConfiguration paginationConfiguration = new PaginationConfiguration();
+    paginationConfiguration.setCursor(isSupportsCursorPagination());
+    paginationConfiguration.setIndex(isSupportsIndexPagination());
+    paginationConfiguration.setDefaultPaginationMethod(PaginationConfiguration.Method.INDEX);
+    paginationConfiguration.setMaxPageSize(getFilterMaxResults());
+    if (isSupportsCursorPagination()) {
+      paginationConfiguration.setCursorTimeout(getCursorTimeout());
+    }
+    return paginationConfiguration;
+  }
   
   private SupportedConfiguration createSupportedConfiguration(boolean supported) {
     SupportedConfiguration supportedConfiguration = new SupportedConfiguration();
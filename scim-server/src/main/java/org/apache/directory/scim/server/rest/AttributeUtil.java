@@ -19,228 +19,148 @@
 
 package org.apache.directory.scim.server.rest;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.directory.scim.core.json.ObjectMapperFactory;
 import org.apache.directory.scim.server.exception.AttributeDoesNotExistException;
 import org.apache.directory.scim.server.exception.AttributeException;
 import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
-import org.apache.directory.scim.spec.resources.ScimExtension;
 import org.apache.directory.scim.spec.resources.ScimGroup;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import org.apache.directory.scim.spec.resources.ScimUser;
-import org.apache.directory.scim.spec.schema.AttributeContainer;
 import org.apache.directory.scim.spec.schema.Schema;
 import org.apache.directory.scim.spec.schema.Schema.Attribute;
 import org.apache.directory.scim.spec.schema.Schema.Attribute.Returned;
 import org.apache.directory.scim.spec.schema.Schema.Attribute.Type;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
 
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map.Entry;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.function.Function;
 
 @Slf4j
 class AttributeUtil {
 
+  static final int MAXIMUM_CACHED_PROJECTIONS = 256;
+
+  private final Map<ProjectionKey, ProjectionPlan> projections = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<ProjectionKey, ProjectionPlan> eldest) {
+      return size() > MAXIMUM_CACHED_PROJECTIONS;
+    }
+  };
+
   SchemaRegistry schemaRegistry;
 
-  private final ObjectMapper objectMapper;
+  private final ShallowCopier copier;
 
   AttributeUtil(SchemaRegistry schemaRegistry) {
     this.schemaRegistry = schemaRegistry;
-    this.objectMapper = ObjectMapperFactory.createObjectMapper(schemaRegistry);
+    this.copier = new ShallowCopier(ObjectMapperFactory.createObjectMapper(schemaRegistry));
   }
 
   public <T extends ScimResource> T keepAlwaysAttributesForDisplay(T resource) throws AttributeException {
-    return setAttributesForDisplayInternal(resource, Returned.DEFAULT, Returned.REQUEST, Returned.NEVER);
+    return applyProjection(resource, getProjection(resource.getResourceType(), Projection.ALWAYS, Collections.emptySet()));
   }
   
   public <T extends ScimResource> T setAttributesForDisplay(T resource) throws AttributeException {
-    return setAttributesForDisplayInternal(resource, Returned.REQUEST, Returned.NEVER);
-  }
-  
-  private <T extends ScimResource> T setAttributesForDisplayInternal(T resource, Returned ... removeAttributesOfTypes) throws AttributeException {
-    T copy = cloneScimResource(resource);
-    String resourceType = copy.getResourceType();
-    Schema schema = schemaRegistry.getBaseSchemaOfResourceType(resourceType);
-
-    // return always and default, exclude never and requested
-    for (Returned removeAttributesOfType : removeAttributesOfTypes) {
-      removeAttributesOfType(copy, schema, removeAttributesOfType);
-    }
-
-    for (Entry<String, ScimExtension> extensionEntry : copy.getExtensions().entrySet()) {
-      String extensionUrn = extensionEntry.getKey();
-      ScimExtension scimExtension = extensionEntry.getValue();
-
-      Schema extensionSchema = schemaRegistry.getSchema(extensionUrn);
-
-      for (Returned removeAttributesOfType : removeAttributesOfTypes) {
-        removeAttributesOfType(scimExtension, extensionSchema, removeAttributesOfType);
-      }
-    }
-    return copy;
+    return applyProjection(resource, getProjection(resource.getResourceType(), Projection.DEFAULT, Collections.emptySet()));
   }
 
   public <T extends ScimResource> T setAttributesForDisplay(T resource, Set<AttributeReference> attributes) throws AttributeException {
-    if (attributes.isEmpty()) {
-      return setAttributesForDisplay(resource);
-    } else {
-      T copy = cloneScimResource(resource);
-      
-      String resourceType = copy.getResourceType();
-      Schema schema = schemaRegistry.getBaseSchemaOfResourceType(resourceType);
-
-      // return always and specified attributes, exclude never
-      Set<Attribute> attributesToKeep = resolveAttributeReferences(attributes, true);
-      Set<String> extensionsToRemove = new HashSet<>();
-      removeAttributesOfType(copy, schema, Returned.DEFAULT, attributesToKeep);
-      removeAttributesOfType(copy, schema, Returned.REQUEST, attributesToKeep);
-      removeAttributesOfType(copy, schema, Returned.NEVER);
-
-      for (Entry<String, ScimExtension> extensionEntry : copy.getExtensions().entrySet()) {
-        String extensionUrn = extensionEntry.getKey();
-        ScimExtension scimExtension = extensionEntry.getValue();
-        boolean removeExtension = true;
-
-        for (Attribute attributeToKeep : attributesToKeep) {
-          if (extensionUrn.equalsIgnoreCase(attributeToKeep.getUrn())) {
-            removeExtension = false;
-
-            break;
-          }
-        }
-        if (removeExtension) {
-          extensionsToRemove.add(extensionUrn);
-
-          continue;
-        }
-        Schema extensionSchema = schemaRegistry.getSchema(extensionUrn);
-
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.DEFAULT, attributesToKeep);
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.REQUEST, attributesToKeep);
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.NEVER);
-      }
-      for (String extensionUrn : extensionsToRemove) {
-        copy.removeExtension(extensionUrn);
-      }
-      return copy;
-    }
+    return applyProjection(resource, getProjection(resource.getResourceType(), attributes, Collections.emptySet()));
   }
 
   public <T extends ScimResource> T setExcludedAttributesForDisplay(T resource, Set<AttributeReference> excludedAttributes) throws AttributeException {
-
-    if (excludedAttributes.isEmpty()) {
-      return setAttributesForDisplay(resource);
-    } else {
-      T copy = cloneScimResource(resource);
-
-      String resourceType = copy.getResourceType();
-      Schema schema = schemaRegistry.getBaseSchemaOfResourceType(resourceType);
-
-      // return always and default, exclude never and specified attributes
-      Set<Attribute> attributesToRemove = resolveAttributeReferences(excludedAttributes, false);
-      removeAttributesOfType(copy, schema, Returned.REQUEST);
-      removeAttributesOfType(copy, schema, Returned.NEVER);
-      removeAttributes(copy, schema, attributesToRemove);
-
-      for (Entry<String, ScimExtension> extensionEntry : copy.getExtensions().entrySet()) {
-        String extensionUrn = extensionEntry.getKey();
-        ScimExtension scimExtension = extensionEntry.getValue();
-
-        Schema extensionSchema = schemaRegistry.getSchema(extensionUrn);
-
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.REQUEST);
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.NEVER);
-        removeAttributes(scimExtension, extensionSchema, attributesToRemove);
-      }
-      return copy;
-    }
+    return applyProjection(resource, getProjection(resource.getResourceType(), Collections.emptySet(), excludedAttributes));
   }
 
-  @SuppressWarnings("unchecked")
-  private <T extends ScimResource> T cloneScimResource(T original) {
-      return (T) this.objectMapper.convertValue(original, original.getClass());
+  /**
+   * Returns the projection for resources of {@code resourceType}, excluded attributes take precedence over included
+   * ones. Projections are cached, so a request that renders many resources resolves its attribute references once.
+   */
+  ProjectionPlan getProjection(String resourceType, Set<AttributeReference> attributes, Set<AttributeReference> excludedAttributes) throws AttributeException {
+    if (!excludedAttributes.isEmpty()) {
+      return getProjection(resourceType, Projection.EXCLUDE, excludedAttributes);
+    } else if (!attributes.isEmpty()) {
+      return getProjection(resourceType, Projection.INCLUDE, attributes);
+    }
+    return getProjection(resourceType, Projection.DEFAULT, Collections.emptySet());
   }
 
-  private void removeAttributesOfType(Object object, AttributeContainer attributeContainer, Returned returned) throws AttributeException {
-    Function<Attribute, Boolean> function = (attribute) -> returned == attribute.getReturned();
-    processAttributes(object, attributeContainer, function);
+  /**
+   * Returns {@code resource} with the attributes removed by {@code projection}, {@code resource} itself is left
+   * untouched.
+   */
+  <T extends ScimResource> T applyProjection(T resource, ProjectionPlan projection) throws AttributeException {
+    ProjectionKey key = projection.getKey();
+    if (!Objects.equals(key.getResourceType(), resource.getResourceType())) {
+      projection = getProjection(resource.getResourceType(), key.getProjection(), key.getAttributes());
+    }
+    return projection.project(resource, copier);
   }
 
-  private void removeAttributesOfType(Object object, AttributeContainer attributeContainer, Returned returned, Set<Attribute> attributesToKeep) throws AttributeException {
-    Function<Attribute, Boolean> function = (attribute) -> !attributesToKeep.contains(attribute) && returned == attribute.getReturned();
-    processAttributes(object, attributeContainer, function);
-  }
+  private ProjectionPlan getProjection(String resourceType, Projection projection, Set<AttributeReference> attributeReferences) throws AttributeException {
+    // copy the references, they are mutable and owned by the request
+    Set<AttributeReference> references = new HashSet<>();
+    for (AttributeReference attributeReference : attributeReferences) {
+      references.add(new AttributeReference(attributeReference.getUrn(), attributeReference.getAttributeName(), attributeReference.getSubAttributeName()));
+    }
+    ProjectionKey key = new ProjectionKey(resourceType, projection, references);
+    Schema schema = schemaRegistry.getBaseSchemaOfResourceType(resourceType);
 
-  private void removeAttributes(Object object, AttributeContainer attributeContainer, Set<Attribute> attributesToRemove) throws AttributeException {
-    Function<Attribute, Boolean> function = (attribute) -> attributesToRemove.contains(attribute);
-    processAttributes(object, attributeContainer, function);
+    ProjectionPlan plan;
+    synchronized (projections) {
+      plan = projections.get(key);
+    }
+    // a schema registered again after the plan was built, rebuild it
+    if (plan == null || plan.getSchema() != schema) {
+      plan = createProjection(key, schema);
+      synchronized (projections) {
+        projections.put(key, plan);
+      }
+    }
+    return plan;
   }
 
-  private void processAttributes(Object object, AttributeContainer attributeContainer, Function<Attribute, Boolean> function) throws AttributeException {
-    try {
-      if (attributeContainer != null && object != null) {
-        for (Attribute attribute : attributeContainer.getAttributes()) {
-
-          Schema.AttributeAccessor accessor = attribute.getAccessor();
-
-          if (function.apply(attribute)) {
-            if (!accessor.getType().isPrimitive()) {
-              Object obj = accessor.get(object);
-              if (obj == null) {
-                continue;
-              }
-
-              log.info("field to be set to null = " + accessor.getType().getName());
-              accessor.set(object, null);
-            }
-          } else if (!attribute.isMultiValued() && attribute.getType() == Type.COMPLEX) {
-            log.debug("### Processing single value complex field " + attribute.getName());
-            Object subObject = accessor.get(object);
-
-            if (subObject == null) {
-              continue;
-            }
-
-            Attribute subAttribute = attributeContainer.getAttribute(attribute.getName());
-            log.debug("### container type = " + attributeContainer.getClass().getName());
-            if (subAttribute == null) {
-              log.debug("#### subattribute == null");
-            }
-            processAttributes(subObject, subAttribute, function);
-          } else if (attribute.isMultiValued() && attribute.getType() == Type.COMPLEX) {
-            log.debug("### Processing multi-valued complex field " + attribute.getName());
-            Object subObject = accessor.get(object);
-
-            if (subObject == null) {
-              continue;
-            }
-
-            if (Collection.class.isAssignableFrom(subObject.getClass())) {
-              Collection<?> collection = (Collection<?>) subObject;
-              for (Object o : collection) {
-                Attribute subAttribute = attributeContainer.getAttribute(attribute.getName());
-                processAttributes(o, subAttribute, function);
-              }
-            } else if (accessor.getType().isArray()) {
-              Object[] array = (Object[]) subObject;
-
-              for (Object o : array) {
-                Attribute subAttribute = attributeContainer.getAttribute(attribute.getName());
-                processAttributes(o, subAttribute, function);
-              }
-            }
+  private ProjectionPlan createProjection(ProjectionKey key, Schema schema) throws AttributeException {
+    switch (key.getProjection()) {
+      case ALWAYS:
+        return new ProjectionPlan(key, schemaRegistry, schema, attribute -> {
+          Returned returned = attribute.getReturned();
+          return returned == Returned.DEFAULT || returned == Returned.REQUEST || returned == Returned.NEVER;
+        }, null);
+      case INCLUDE: {
+        // return always and specified attributes, exclude never
+        Set<Attribute> attributesToKeep = resolveAttributeReferences(key.getAttributes(), true);
+        Set<String> extensionsToKeep = new HashSet<>();
+        for (Attribute attributeToKeep : attributesToKeep) {
+          if (attributeToKeep.getUrn() != null) {
+            extensionsToKeep.add(attributeToKeep.getUrn().toLowerCase(Locale.ROOT));
           }
         }
+        return new ProjectionPlan(key, schemaRegistry, schema, attribute -> {
+          Returned returned = attribute.getReturned();
+          return returned == Returned.NEVER
+            || (returned == Returned.DEFAULT || returned == Returned.REQUEST) && !attributesToKeep.contains(attribute);
+        }, extensionsToKeep);
+      }
+      case EXCLUDE: {
+        // return always and default, exclude never and specified attributes
+        Set<Attribute> attributesToRemove = resolveAttributeReferences(key.getAttributes(), false);
+        return new ProjectionPlan(key, schemaRegistry, schema, attribute -> {
+          Returned returned = attribute.getReturned();
+          return returned == Returned.REQUEST || returned == Returned.NEVER || attributesToRemove.contains(attribute);
+        }, null);
       }
-    } catch (IllegalArgumentException e) {
-      throw new AttributeException(e);
+      default:
+        // return always and default, exclude never and requested
+        return new ProjectionPlan(key, schemaRegistry, schema, attribute -> attribute.getReturned() == Returned.REQUEST || attribute.getReturned() == Returned.NEVER, null);
     }
   }
 
@@ -333,4 +253,14 @@ class AttributeUtil {
     return attributes;
   }
 
+  enum Projection {
+    ALWAYS, DEFAULT, INCLUDE, EXCLUDE
+  }
+
+  @Value
+  static class ProjectionKey {
+    String resourceType;
+    Projection projection;
+    Set<AttributeReference> attributes;
+  }
 }
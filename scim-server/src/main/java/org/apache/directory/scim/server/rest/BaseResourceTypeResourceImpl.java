@@ -22,30 +22,29 @@ package org.apache.directory.scim.server.rest;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Objects;
 import java.util.Set;
 
-import jakarta.enterprise.inject.spi.CDI;
 import jakarta.ws.rs.core.*;
 import jakarta.ws.rs.core.Response.ResponseBuilder;
 import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.Response.Status.Family;
 
 import org.apache.directory.scim.protocol.exception.ScimException;
+import org.apache.directory.scim.server.configuration.EtagStrategy;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
 import org.apache.directory.scim.server.exception.*;
 import org.apache.directory.scim.core.repository.RepositoryRegistry;
 import org.apache.directory.scim.core.repository.Repository;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
 import org.apache.directory.scim.spec.exception.ResourceException;
-import org.apache.directory.scim.spec.schema.Meta;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.directory.scim.core.repository.annotations.ScimProcessingExtension;
 import org.apache.directory.scim.core.repository.extensions.AttributeFilterExtension;
-import org.apache.directory.scim.core.repository.extensions.ProcessingExtension;
 import org.apache.directory.scim.spec.filter.attribute.ScimRequestContext;
 import org.apache.directory.scim.core.repository.extensions.ClientFilterException;
 import org.apache.directory.scim.protocol.adapter.FilterWrapper;
@@ -55,11 +54,11 @@ import org.apache.directory.scim.spec.filter.attribute.AttributeReferenceListWra
 import org.apache.directory.scim.protocol.data.ListResponse;
 import org.apache.directory.scim.protocol.data.PatchRequest;
 import org.apache.directory.scim.protocol.data.SearchRequest;
-import org.apache.directory.scim.spec.filter.FilterResponse;
 import org.apache.directory.scim.spec.filter.Filter;
 import org.apache.directory.scim.spec.filter.PageRequest;
 import org.apache.directory.scim.spec.filter.SortOrder;
 import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.StreamingFilterResponse;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import lombok.extern.slf4j.Slf4j;
 
@@ -74,6 +73,8 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
 
   private final Class<T> resourceClass;
 
+  private final ServerConfiguration serverConfiguration;
+
   // TODO: Field injection of UriInfo, Request should work with all implementations
   // CDI can be used directly in Jakarta WS 4
   @Context
@@ -86,7 +87,12 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
   HttpHeaders headers;
 
   public BaseResourceTypeResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, Class<T> resourceClass) {
+    this(schemaRegistry, repositoryRegistry, null, resourceClass);
+  }
+
+  public BaseResourceTypeResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ServerConfiguration serverConfiguration, Class<T> resourceClass) {
     this.repositoryRegistry = repositoryRegistry;
+    this.serverConfiguration = serverConfiguration;
     this.resourceClass = resourceClass;
     this.attributeUtil = new AttributeUtil(schemaRegistry);
   }
@@ -111,6 +117,16 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
 
     Repository<T> repository = getRepositoryInternal();
 
+    // conditional requests can often be answered from the version alone, without loading the resource, plain reads
+    // load it right away instead of looking up the version first
+    if (isConditionalRequest()) {
+      EntityTag currentEtag = getEtagStrategy().getEtag(repository.getVersion(id));
+      ResponseBuilder evaluatePreconditionsResponse = currentEtag != null ? request.evaluatePreconditions(currentEtag) : null;
+      if (evaluatePreconditionsResponse != null) {
+        return evaluatePreconditionsResponse.tag(currentEtag).build();
+      }
+    }
+
     T resource = null;
     try {
       resource = repository.get(id);
@@ -129,7 +145,8 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     if (etag != null) {
       ResponseBuilder evaluatePreconditionsResponse = request.evaluatePreconditions(etag);
       if (evaluatePreconditionsResponse != null) {
-        return Response.status(Status.NOT_MODIFIED).build();
+        // 304 for a matching If-None-Match, 412 for a failed If-Match
+        return evaluatePreconditionsResponse.tag(etag).build();
       }
     }
 
@@ -138,7 +155,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     validateAttributes(attributeReferences, excludedAttributeReferences);
 
     // Process Attributes
-    resource = processFilterAttributeExtensions(repository, resource, attributeReferences, excludedAttributeReferences);
+    resource = processFilterAttributeExtensions(resource, attributeReferences, excludedAttributeReferences);
     resource = attributesForDisplayThrowOnError(resource, attributeReferences, excludedAttributeReferences);
     return Response.ok()
                    .entity(resource)
@@ -148,7 +165,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
   }
 
   @Override
-  public Response query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, FilterWrapper filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count) throws ScimException, ResourceException {
+  public Response query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, FilterWrapper filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count, String cursor) throws ScimException, ResourceException {
     SearchRequest searchRequest = new SearchRequest();
     searchRequest.setAttributes(AttributeReferenceListWrapper.getAttributeReferences(attributes));
     searchRequest.setExcludedAttributes(AttributeReferenceListWrapper.getAttributeReferences(excludedAttributes));
@@ -164,6 +181,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     searchRequest.setSortOrder(sortOrder);
     searchRequest.setStartIndex(startIndex);
     searchRequest.setCount(count);
+    searchRequest.setCursor(cursor);
 
     return find(searchRequest);
   }
@@ -181,7 +199,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     EntityTag etag = fromVersion(created);
 
     // Process Attributes
-    created = processFilterAttributeExtensions(repository, created, attributeReferences, excludedAttributeReferences);
+    created = processFilterAttributeExtensions(created, attributeReferences, excludedAttributeReferences);
 
     try {
       created = attributesForDisplay(created, attributeReferences, excludedAttributeReferences);
@@ -214,37 +232,69 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     Filter filter = request.getFilter();
     PageRequest pageRequest = request.getPageRequest();
     SortRequest sortRequest = request.getSortRequest();
+    validatePageRequest(pageRequest, repository);
 
     ListResponse<T> listResponse = new ListResponse<>();
 
-    FilterResponse<T> filterResp = repository.find(filter, pageRequest, sortRequest);
-
-    // If no resources are found, we should still return a ListResponse with
-    // the totalResults set to 0;
-    // (https://tools.ietf.org/html/rfc7644#section-3.4.2)
-    if (filterResp == null || filterResp.getResources() == null || filterResp.getResources()
-                                                                             .isEmpty()) {
-      listResponse.setTotalResults(0);
-    } else {
-      log.debug("Find returned " + filterResp.getResources()
-                                            .size());
-      listResponse.setItemsPerPage(filterResp.getResources()
-                                             .size());
-      int startIndex = Optional.ofNullable(filterResp.getPageRequest().getStartIndex()).orElse(1);
-      listResponse.setStartIndex(startIndex);
-      listResponse.setTotalResults(filterResp.getTotalResults());
-
-      List<T> results = new ArrayList<>();
-
-      for (T resource : filterResp.getResources()) {
-
-        // Process Attributes
-        resource = processFilterAttributeExtensions(repository, resource, attributeReferences, excludedAttributeReferences);
-        resource = attributesForDisplayThrowOnError(resource, attributeReferences, excludedAttributeReferences);
-        results.add(resource);
-      }
+    StreamingFilterResponse<T> filterResp = repository.stream(filter, pageRequest, sortRequest);
+    if (filterResp == null) {
+      filterResp = StreamingFilterResponse.of(null);
+    }
 
-      listResponse.setResources(results);
+    // the response is only closed here if it isn't streamed, otherwise it's closed once written
+    boolean streamed = false;
+    try {
+      Iterator<T> resources = filterResp.getResources().iterator();
+      listResponse.setNextCursor(filterResp.getNextCursor());
+      listResponse.setPreviousCursor(filterResp.getPreviousCursor());
+
+      // If no resources are found, we should still return a ListResponse with
+      // the totalResults set to 0;
+      // (https://tools.ietf.org/html/rfc7644#section-3.4.2)
+      if (!resources.hasNext()) {
+        listResponse.setTotalResults(0);
+      } else {
+        int startIndex = 1;
+        // cursor-based pages have no startIndex
+        if (pageRequest.getCursor() == null) {
+          startIndex = Optional.ofNullable(filterResp.getPageRequest()).map(PageRequest::getStartIndex).orElse(1);
+          listResponse.setStartIndex(startIndex);
+        }
+        listResponse.setTotalResults(filterResp.getTotalResults());
+
+        if (repositoryRegistry.hasAttributeFilterExtensions(resourceClass)) {
+          // attribute filter extensions process the whole page at once
+          List<T> results = new ArrayList<>();
+          resources.forEachRemaining(results::add);
+          log.debug("Find returned " + results.size());
+
+          // Process Attributes
+          results = processFilterAttributeExtensions(results, attributeReferences, excludedAttributeReferences);
+          listResponse.setItemsPerPage(results.size());
+          // the extensions may have filtered out every resource of the page
+          if (!results.isEmpty()) {
+            ProjectionPlan projection = projection(results.get(0), attributeReferences, excludedAttributeReferences);
+            listResponse.setResources(new ProjectedResourceList<>(project(results.get(0), projection), results, attributeUtil, projection));
+          }
+        } else {
+          // every resource of the page is projected the same way, resolve the attributes once and read and project
+          // each resource only as it's written, itemsPerPage is counted while writing
+          T first = resources.next();
+          ProjectionPlan projection = projection(first, attributeReferences, excludedAttributeReferences);
+          StreamedListResponse<T> streamedResponse = new StreamedListResponse<>(project(first, projection), resources, filterResp,
+            attributeUtil, projection);
+          streamedResponse.setTotalResults(listResponse.getTotalResults());
+          streamedResponse.setStartIndex(listResponse.getStartIndex());
+          streamedResponse.setNextCursor(listResponse.getNextCursor());
+          streamedResponse.setPreviousCursor(listResponse.getPreviousCursor());
+          listResponse = streamedResponse;
+          streamed = true;
+        }
+      }
+    } finally {
+      if (!streamed) {
+        filterResp.close();
+      }
     }
 
     return Response.ok()
@@ -254,13 +304,13 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
 
   @Override
   public Response update(T resource, String id, AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes) throws ScimException, ResourceException {
-    return update(attributes, excludedAttributes, (etag, includeAttributes, excludeAttributes, repository)
+    return update(id, attributes, excludedAttributes, (etag, includeAttributes, excludeAttributes, repository)
       -> repository.update(id, etag,resource, includeAttributes, excludeAttributes));
   }
 
   @Override
   public Response patch(PatchRequest patchRequest, String id, AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes) throws ScimException, ResourceException {
-    return update(attributes, excludedAttributes, (etag, includeAttributes, excludeAttributes, repository)
+    return update(id, attributes, excludedAttributes, (etag, includeAttributes, excludeAttributes, repository)
       -> repository.patch(id, etag, patchRequest.getPatchOperationList(), includeAttributes, excludeAttributes));
   }
 
@@ -272,18 +322,18 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         .build();
   }
 
-  private Response update(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, UpdateFunction<T> updateFunction) throws ScimException, ResourceException {
+  private Response update(String id, AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, UpdateFunction<T> updateFunction) throws ScimException, ResourceException {
     Repository<T> repository = getRepositoryInternal();
 
     Set<AttributeReference> attributeReferences = AttributeReferenceListWrapper.getAttributeReferences(attributes);
     Set<AttributeReference> excludedAttributeReferences = AttributeReferenceListWrapper.getAttributeReferences(excludedAttributes);
     validateAttributes(attributeReferences, excludedAttributeReferences);
 
-    String requestEtag = headers.getHeaderString("ETag");
-    T updated = updateFunction.update(requestEtag, attributeReferences, excludedAttributeReferences, repository);
+    String requestVersion = EtagPreconditions.requestVersion(requestEtag(), getEtagStrategy(), repository, id);
+    T updated = updateFunction.update(requestVersion, attributeReferences, excludedAttributeReferences, repository);
 
     // Process Attributes
-    updated = processFilterAttributeExtensions(repository, updated, attributeReferences, excludedAttributeReferences);
+    updated = processFilterAttributeExtensions(updated, attributeReferences, excludedAttributeReferences);
     updated = attributesForDisplayIgnoreErrors(updated, attributeReferences, excludedAttributeReferences);
 
     EntityTag etag = fromVersion(updated);
@@ -293,38 +343,55 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
       .build();
   }
 
+  private ProjectionPlan projection(T resource, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws ScimException {
+    try {
+      return attributeUtil.getProjection(resource.getResourceType(), attributeReferences, excludedAttributeReferences);
+    } catch (AttributeException e) {
+      throw attributeException(e);
+    }
+  }
+
+  /**
+   * Projects the first resource of a page before the response is returned, a projection that can't be applied fails
+   * the request with a SCIM error instead of aborting a partly written response.
+   */
+  private T project(T resource, ProjectionPlan projection) throws ScimException {
+    try {
+      return attributeUtil.applyProjection(resource, projection);
+    } catch (AttributeException e) {
+      throw attributeException(e);
+    }
+  }
+
+  private T processFilterAttributeExtensions(T resource, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws ScimException {
+    if (!repositoryRegistry.hasAttributeFilterExtensions(resourceClass)) {
+      return resource;
+    }
+    return processFilterAttributeExtensions(List.of(resource), attributeReferences, excludedAttributeReferences).get(0);
+  }
+
   @SuppressWarnings("unchecked")
-  private T processFilterAttributeExtensions(Repository<T> repository, T resource, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws ScimException {
-    ScimProcessingExtension annotation = repository.getClass()
-                                                 .getAnnotation(ScimProcessingExtension.class);
-    if (annotation != null) {
-      Class<? extends ProcessingExtension>[] value = annotation.value();
-      for (Class<? extends ProcessingExtension> class1 : value) {
-        ProcessingExtension processingExtension = CDI.current().select(class1).get();
-        if (processingExtension instanceof AttributeFilterExtension) {
-          AttributeFilterExtension attributeFilterExtension = (AttributeFilterExtension) processingExtension;
-          ScimRequestContext scimRequestContext = new ScimRequestContext(attributeReferences, excludedAttributeReferences);
-
-          try {
-            resource = (T) attributeFilterExtension.filterAttributes(resource, scimRequestContext);
-            log.debug("Resource now - " + resource.toString());
-          } catch (ClientFilterException e) {
-            throw new ScimException(Status.fromStatusCode(e.getStatus()), e.getMessage(), e);
-          }
-        }
-      }
+  private List<T> processFilterAttributeExtensions(List<T> resources, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws ScimException {
+    List<AttributeFilterExtension> attributeFilterExtensions = repositoryRegistry.getAttributeFilterExtensions(resourceClass);
+    if (attributeFilterExtensions.isEmpty()) {
+      return resources;
     }
 
-    return resource;
+    ScimRequestContext scimRequestContext = new ScimRequestContext(attributeReferences, excludedAttributeReferences);
+    for (AttributeFilterExtension attributeFilterExtension : attributeFilterExtensions) {
+      try {
+        resources = (List<T>) attributeFilterExtension.filterAttributes(resources, scimRequestContext);
+        log.debug("Resources now - {}", resources);
+      } catch (ClientFilterException e) {
+        throw new ScimException(Status.fromStatusCode(e.getStatus()), e.getMessage(), e);
+      }
+    }
+    return resources;
   }
 
   private <T extends ScimResource> T attributesForDisplay(T resource, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws AttributeException {
-    if (!excludedAttributes.isEmpty()) {
-      resource = attributeUtil.setExcludedAttributesForDisplay(resource, excludedAttributes);
-    } else {
-      resource = attributeUtil.setAttributesForDisplay(resource, includedAttributes);
-    }
-    return resource;
+    ProjectionPlan projection = attributeUtil.getProjection(resource.getResourceType(), includedAttributes, excludedAttributes);
+    return attributeUtil.applyProjection(resource, projection);
   }
 
   private T attributesForDisplayIgnoreErrors(T resource, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) {
@@ -344,29 +411,63 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     try {
       return attributesForDisplay(resource, includedAttributes, excludedAttributes);
     } catch (AttributeException e) {
-      throw new ScimException(Status.INTERNAL_SERVER_ERROR, "Failed to parse the attribute query value " + e.getMessage(), e);
+      throw attributeException(e);
     }
   }
 
+  private ScimException attributeException(AttributeException e) {
+    return new ScimException(Status.INTERNAL_SERVER_ERROR, "Failed to parse the attribute query value " + e.getMessage(), e);
+  }
+
   private ScimException notFoundException(String id) {
     return new ScimException(Status.NOT_FOUND, "Resource " + id + " not found");
   }
 
+  private void validatePageRequest(PageRequest pageRequest, Repository<T> repository) throws ScimException {
+    if (pageRequest.getCursor() == null) {
+      return;
+    }
+    // a repository that ignores the cursor would return the first page again
+    if (serverConfiguration == null || !serverConfiguration.isSupportsCursorPagination() || !repository.supportsCursorPagination()) {
+      throw new ScimException(Status.BAD_REQUEST, "Cursor pagination is not supported");
+    }
+    if (pageRequest.getStartIndex() != null) {
+      throw new ScimException(Status.BAD_REQUEST, "Cannot include both startIndex and cursor in a single request");
+    }
+  }
+
   private void validateAttributes(Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws ScimException {
     if (!attributeReferences.isEmpty() && !excludedAttributeReferences.isEmpty()) {
       throw new ScimException(Status.BAD_REQUEST, "Cannot include both attributes and excluded attributes in a single request");
     }
   }
 
-  private EntityTag fromVersion(ScimResource resource) {
-    Meta meta = resource.getMeta();
-    if (meta != null) {
-      String version = meta.getVersion();
-      if (version != null) {
-        return new EntityTag(version);
-      }
+  EtagStrategy getEtagStrategy() {
+    return EtagPreconditions.etagStrategy(serverConfiguration);
+  }
+
+  private EntityTag fromVersion(ScimResource resource) throws ScimException {
+    try {
+      return getEtagStrategy().getEtag(resource);
+    } catch (EtagGenerationException e) {
+      throw new ScimException(Status.INTERNAL_SERVER_ERROR, "Failed to generate the etag", e);
+    }
+  }
+
+  private boolean isConditionalRequest() {
+    return headers.getHeaderString(HttpHeaders.IF_NONE_MATCH) != null || headers.getHeaderString(HttpHeaders.IF_MATCH) != null;
+  }
+
+  /**
+   * Returns the ETag of the resource the client expects to modify, from the {@code If-Match} header or the legacy
+   * {@code ETag} request header.
+   */
+  private String requestEtag() {
+    String etag = headers.getHeaderString(HttpHeaders.IF_MATCH);
+    if (etag == null) {
+      etag = headers.getHeaderString("ETag");
     }
-    return null;
+    return etag;
   }
 
   @FunctionalInterface
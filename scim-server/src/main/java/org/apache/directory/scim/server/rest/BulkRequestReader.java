@@ -0,0 +1,254 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.directory.scim.server.rest;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.ext.MessageBodyReader;
+import jakarta.ws.rs.ext.Provider;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.protocol.Constants;
+import org.apache.directory.scim.protocol.data.BulkOperation;
+import org.apache.directory.scim.protocol.data.BulkRequest;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.spec.filter.FilterParseException;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.patch.PatchOperationPath;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a {@link BulkRequest} one operation at a time, rejecting it with a 413 as soon as it exceeds the configured
+ * {@code bulkMaxPayloadSize} or {@code bulkMaxOperations}, before the rest of the body is read.
+ * <p>
+ * The PatchOp message of a PATCH operation is read into {@link BulkOperation#getPatchOperations()}, each distinct
+ * patch path is parsed once per request and shared by all operations using it.
+ */
+@Provider
+@Consumes({Constants.SCIM_CONTENT_TYPE, MediaType.APPLICATION_JSON})
+@ApplicationScoped
+public class BulkRequestReader implements MessageBodyReader<BulkRequest> {
+
+  private static final String OPERATIONS = "Operations";
+
+  private static final String METHOD = "method";
+
+  private static final String DATA = "data";
+
+  private static final String PATH = "path";
+
+  private final ObjectMapper objectMapper;
+
+  private final ServerConfiguration serverConfiguration;
+
+  @Inject
+  public BulkRequestReader(SchemaRegistry schemaRegistry, ServerConfiguration serverConfiguration) {
+    this.objectMapper = ObjectMapperFactory.createObjectMapper(schemaRegistry);
+    this.serverConfiguration = serverConfiguration;
+  }
+
+  public BulkRequestReader() {
+    // CDI
+    this(null, null);
+  }
+
+  @Override
+  public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    return type == BulkRequest.class;
+  }
+
+  @Override
+  public BulkRequest readFrom(Class<BulkRequest> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+    int maxPayloadSize = serverConfiguration.getBulkMaxPayloadSize();
+    String contentLength = httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH);
+    if (contentLength != null && isLongerThan(contentLength, maxPayloadSize)) {
+      throw payloadTooLarge();
+    }
+
+    try (JsonParser parser = objectMapper.getFactory().createParser(new LimitedInputStream(entityStream, maxPayloadSize))) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new JsonParseException(parser, "Expected a JSON object for BulkRequest");
+      }
+      ObjectNode fields = objectMapper.createObjectNode();
+      List<BulkOperation> operations = null;
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+
+        if (OPERATIONS.equals(name) && value == JsonToken.START_ARRAY) {
+          operations = readOperations(parser);
+        } else {
+          fields.set(name, parser.readValueAsTree());
+        }
+      }
+
+      BulkRequest bulkRequest = objectMapper.treeToValue(fields, BulkRequest.class);
+      bulkRequest.setOperations(operations);
+      return bulkRequest;
+    } catch (PayloadTooLargeException e) {
+      throw payloadTooLarge();
+    }
+  }
+
+  private List<BulkOperation> readOperations(JsonParser parser) throws IOException {
+    int maxOperations = serverConfiguration.getBulkMaxOperations();
+    List<BulkOperation> operations = new ArrayList<>();
+    Map<String, PatchOperationPath> patchPaths = new HashMap<>();
+
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (operations.size() == maxOperations) {
+        throw new WebApplicationException("The number of operations exceeds the maxOperations (" + maxOperations + ")", Status.REQUEST_ENTITY_TOO_LARGE);
+      }
+      JsonNode operation = parser.readValueAsTree();
+
+      if (operation instanceof ObjectNode && BulkOperation.Method.PATCH.name().equalsIgnoreCase(operation.path(METHOD).asText())) {
+        // the data of a PATCH is a PatchOp message, not a resource
+        JsonNode data = ((ObjectNode) operation).remove(DATA);
+        BulkOperation bulkOperation = objectMapper.treeToValue(operation, BulkOperation.class);
+        bulkOperation.setPatchOperations(readPatchOperations(parser, data, patchPaths));
+        operations.add(bulkOperation);
+      } else {
+        operations.add(objectMapper.treeToValue(operation, BulkOperation.class));
+      }
+    }
+    return operations;
+  }
+
+  /**
+   * Reads the operations of a PatchOp message, returns {@code null} if there are none.
+   */
+  private List<PatchOperation> readPatchOperations(JsonParser parser, JsonNode data, Map<String, PatchOperationPath> patchPaths) throws IOException {
+    JsonNode operations = data != null ? data.get(OPERATIONS) : null;
+    if (operations == null || !operations.isArray()) {
+      return null;
+    }
+
+    List<PatchOperation> patchOperations = new ArrayList<>(operations.size());
+    for (JsonNode operation : operations) {
+      if (!(operation instanceof ObjectNode)) {
+        throw new JsonMappingException(parser, "Expected a JSON object for PatchOperation");
+      }
+      JsonNode path = ((ObjectNode) operation).remove(PATH);
+      PatchOperation patchOperation = objectMapper.treeToValue(operation, PatchOperation.class);
+
+      if (path != null && !path.isNull()) {
+        patchOperation.setPath(patchPath(parser, path.asText(), patchPaths));
+      }
+      patchOperations.add(patchOperation);
+    }
+    return patchOperations;
+  }
+
+  private static PatchOperationPath patchPath(JsonParser parser, String path, Map<String, PatchOperationPath> patchPaths) throws JsonMappingException {
+    PatchOperationPath patchPath = patchPaths.get(path);
+    if (patchPath == null) {
+      try {
+        patchPath = PatchOperationPath.fromString(path);
+      } catch (FilterParseException e) {
+        throw new JsonMappingException(parser, "Invalid patch path: " + path, e);
+      }
+      patchPaths.put(path, patchPath);
+    }
+    return patchPath;
+  }
+
+  private WebApplicationException payloadTooLarge() {
+    return new WebApplicationException("The size of the bulk operation exceeds the maxPayloadSize (" + serverConfiguration.getBulkMaxPayloadSize() + ")", Status.REQUEST_ENTITY_TOO_LARGE);
+  }
+
+  private static boolean isLongerThan(String contentLength, int maxPayloadSize) {
+    try {
+      return Long.parseLong(contentLength.trim()) > maxPayloadSize;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * An IOException so Jackson passes it through unwrapped, wherever in the body the limit is crossed.
+   */
+  private static class PayloadTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  private static class LimitedInputStream extends FilterInputStream {
+    private final long limit;
+    private long count;
+
+    LimitedInputStream(InputStream in, long limit) {
+      super(in);
+      this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        count(read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count(skipped);
+      return skipped;
+    }
+
+    private void count(long read) throws PayloadTooLargeException {
+      count += read;
+      if (count > limit) {
+        throw new PayloadTooLargeException();
+      }
+    }
+  }
+}
@@ -19,13 +19,18 @@
 
 package org.apache.directory.scim.server.rest;
 
+import java.net.URI;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.UriBuilder;
 import jakarta.ws.rs.core.UriInfo;
 
 import org.apache.commons.lang3.StringUtils;
@@ -34,8 +39,10 @@ import org.apache.directory.scim.server.exception.UnableToCreateResourceExceptio
 import org.apache.directory.scim.server.exception.UnableToDeleteResourceException;
 import org.apache.directory.scim.server.exception.UnableToRetrieveResourceException;
 import org.apache.directory.scim.server.exception.UnableToUpdateResourceException;
+import org.apache.directory.scim.core.repository.BatchResult;
 import org.apache.directory.scim.core.repository.Repository;
 import org.apache.directory.scim.core.repository.RepositoryRegistry;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
 import org.apache.directory.scim.protocol.BulkResource;
 import org.apache.directory.scim.protocol.data.BulkOperation;
 import org.apache.directory.scim.protocol.data.BulkOperation.Method;
@@ -43,6 +50,7 @@ import org.apache.directory.scim.protocol.data.BulkOperation.StatusWrapper;
 import org.apache.directory.scim.protocol.data.BulkRequest;
 import org.apache.directory.scim.protocol.data.BulkResponse;
 import org.apache.directory.scim.protocol.data.ErrorResponse;
+import org.apache.directory.scim.spec.patch.PatchOperation;
 import org.apache.directory.scim.spec.resources.BaseResource;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import org.apache.directory.scim.spec.schema.Schema;
@@ -92,27 +100,35 @@ public class BulkResourceImpl implements BulkResource {
 
   private final RepositoryRegistry repositoryRegistry;
 
-  @Inject
+  private final ServerConfiguration serverConfiguration;
+
+  private final RequestExecutor requestExecutor;
+
   public BulkResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry) {
+    this(schemaRegistry, repositoryRegistry, new ServerConfiguration(), new RequestExecutor());
+  }
+
+  @Inject
+  public BulkResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ServerConfiguration serverConfiguration, RequestExecutor requestExecutor) {
     this.schemaRegistry = schemaRegistry;
     this.repositoryRegistry = repositoryRegistry;
+    this.serverConfiguration = serverConfiguration;
+    this.requestExecutor = requestExecutor;
   }
 
   public BulkResourceImpl() {
     // CDI
-    this(null, null);
+    this(null, null, null, null);
   }
 
   @Override
   public Response doBulk(BulkRequest request, UriInfo uriInfo) {
     BulkResponse response;
-    int errorCount = 0;
     Integer requestFailOnErrors = request.getFailOnErrors();
     int maxErrorCount = requestFailOnErrors != null && requestFailOnErrors > 0 ? requestFailOnErrors : Integer.MAX_VALUE;
     int errorCountIncrement = requestFailOnErrors == null || requestFailOnErrors > 0 ? 1 : 0;
     List<BulkOperation> bulkOperations = request.getOperations();
     Map<String, BulkOperation> bulkIdKeyToOperationResult = new HashMap<>();
-    List<IWishJavaHadTuples> allUnresolveds = new ArrayList<>();
     Map<String, Set<String>> reverseDependenciesGraph = this.generateReverseDependenciesGraph(bulkOperations);
     Map<String, Set<String>> transitiveReverseDependencies = generateTransitiveDependenciesGraph(reverseDependenciesGraph);
 
@@ -160,7 +176,8 @@ public class BulkResourceImpl implements BulkResource {
         }
           break;
 
-        case DELETE: {
+        case DELETE:
+        case PATCH: {
           String path = operationRequest.getPath();
 
           if (path == null) {
@@ -180,18 +197,15 @@ public class BulkResourceImpl implements BulkResource {
               errorOccurred = true;
 
               createAndSetErrorResponse(operationRequest, Status.BAD_REQUEST, "path does not contain a recognized endpoint (e.g. \"/Groups/...\", \"/Users/...\", ...)");
+            } else if (method == Method.PATCH && (operationRequest.getPatchOperations() == null || operationRequest.getPatchOperations().isEmpty())) {
+              errorOccurred = true;
+
+              createAndSetErrorResponse(operationRequest, Status.BAD_REQUEST, "data not provided");
             }
           }
         }
           break;
 
-        case PATCH: {
-          errorOccurred = true;
-
-          createAndSetErrorResponse(operationRequest, Status.NOT_IMPLEMENTED, "Method not implemented: PATCH");
-        }
-          break;
-
         default: {
         }
           break;
@@ -221,57 +235,37 @@ public class BulkResourceImpl implements BulkResource {
       }
     }
 
-    boolean errorCountExceeded = false;
-
-    // do the operations
-    for (BulkOperation operationResult : bulkOperations) {
-
-      if (!errorCountExceeded && !(operationResult.getResponse() instanceof ErrorResponse)) {
-        try {
-          this.handleBulkOperationMethod(allUnresolveds, operationResult, bulkIdKeyToOperationResult, uriInfo);
-        } catch (ResourceException resourceException) {
-          log.error("Failed to do bulk operation", resourceException);
-
-          errorCount += errorCountIncrement;
-          errorCountExceeded = errorCount >= maxErrorCount;
+    Map<BulkOperation, Set<BulkOperation>> dependencies = generateDependencies(bulkOperations, bulkIdKeyToOperationResult);
+    BulkExecution execution = new BulkExecution(bulkIdKeyToOperationResult, transitiveReverseDependencies, uriInfo.getBaseUri(), maxErrorCount, errorCountIncrement);
+    List<List<BulkOperation>> layers = serverConfiguration.getBulkMaxParallelism() > 1 ? generateLayers(bulkOperations, dependencies) : null;
 
-          String detail = resourceException.getLocalizedMessage();
-          createAndSetErrorResponse(operationResult, resourceException.getStatus(), detail);
-
-          if (operationResult.getBulkId() != null) {
-            String bulkIdKey = "bulkId:" + operationResult.getBulkId();
-
-            this.cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
-            operationResult.setData(null);
-          }
-        } catch (UnresolvableOperationException unresolvableOperationException) {
-          log.error("Could not resolve bulkId during Bulk Operation method handling", unresolvableOperationException);
-
-          errorCount += errorCountIncrement;
-          String detail = unresolvableOperationException.getLocalizedMessage();
-
-          createAndSetErrorResponse(operationResult, Status.CONFLICT, detail);
-
-          if (operationResult.getBulkId() != null) {
-            String bulkIdKey = "bulkId:" + operationResult.getBulkId();
-
-            this.cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
-            operationResult.setData(null);
-          }
-        }
-      } else if (errorCountExceeded) {
-
-        // continue processing bulk operations to cleanup any dependencies
-
-        createAndSetErrorResponse(operationResult, Status.CONFLICT, "failOnErrors count reached");
-        if (operationResult.getBulkId() != null) {
-          String bulkIdKey = "bulkId:" + operationResult.getBulkId();
-
-          this.cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
+    // do the operations, referenced operations first so bulkIds are resolved before the first write
+    if (layers != null) {
+      for (List<BulkOperation> layer : layers) {
+        executeLayer(layer, execution);
+      }
+    } else {
+      List<BulkOperation> executionOrder = generateExecutionOrder(bulkOperations, dependencies);
+      int next = 0;
+      while (next < executionOrder.size()) {
+        BulkOperation operationResult = executionOrder.get(next);
+
+        if (execution.errorCountExceeded) {
+          execution.skipped(operationResult);
+          next++;
+        } else if (operationResult.getResponse() instanceof ErrorResponse) {
+          next++;
+        } else {
+          List<BulkOperation> batch = nextBatch(executionOrder, next, dependencies, execution.remainingErrors());
+          execution.completed(batch, executeBatch(batch, execution));
+          next += batch.size();
         }
       }
     }
-    // Resolve unresolved bulkIds
+    List<IWishJavaHadTuples> allUnresolveds = execution.unresolveds;
+    boolean errorCountExceeded = execution.errorCountExceeded;
+
+    // Resolve bulkIds of circular references, the only ones left unresolved
     for (IWishJavaHadTuples iwjht : allUnresolveds) {
       BulkOperation bulkOperationResult = iwjht.bulkOperationResult;
       String bulkIdKey = iwjht.bulkIdKey;
@@ -329,6 +323,406 @@ public class BulkResourceImpl implements BulkResource {
       .build();
   }
 
+  /**
+   * Runs the operations of one dependency layer, at most {@code bulkMaxParallelism} batches at a time. Operations are
+   * started in request order and never more than the remaining {@code failOnErrors} budget at once, so the same
+   * operations are skipped as when running them one by one.
+   *
+   * @param layer
+   * @param execution
+   */
+  private void executeLayer(List<BulkOperation> layer, BulkExecution execution) {
+    List<BulkOperation> pending = new ArrayList<>();
+
+    for (BulkOperation operationResult : layer) {
+      if (execution.errorCountExceeded) {
+        execution.skipped(operationResult);
+      } else if (!(operationResult.getResponse() instanceof ErrorResponse)) {
+        pending.add(operationResult);
+      }
+    }
+
+    int parallelism = serverConfiguration.getBulkMaxParallelism();
+    int next = 0;
+    while (next < pending.size() && !execution.errorCountExceeded) {
+      int size = Math.min(execution.remainingErrors(), pending.size() - next);
+      List<BulkOperation> chunk = pending.subList(next, next + size);
+
+      // operations of a layer don't depend on each other, batch consecutive ones of the same kind
+      List<List<BulkOperation>> batches = new ArrayList<>();
+      for (int start = 0; start < size; ) {
+        List<BulkOperation> batch = nextBatch(chunk, start, Collections.emptyMap(), Integer.MAX_VALUE);
+        batches.add(batch);
+        start += batch.size();
+      }
+
+      for (int start = 0; start < batches.size(); start += parallelism) {
+        List<List<BulkOperation>> wave = batches.subList(start, Math.min(start + parallelism, batches.size()));
+        List<List<Exception>> failures;
+
+        if (wave.size() == 1) {
+          failures = Collections.singletonList(executeBatch(wave.get(0), execution));
+        } else {
+          List<Callable<List<Exception>>> tasks = new ArrayList<>(wave.size());
+          for (List<BulkOperation> batch : wave) {
+            tasks.add(() -> executeBatch(batch, execution));
+          }
+          failures = invokeAll(tasks);
+        }
+        // handle failures on this thread and in request order, cleanup touches other operations
+        for (int i = 0; i < wave.size(); i++) {
+          execution.completed(wave.get(i), failures.get(i));
+        }
+      }
+      next += size;
+    }
+
+    for (BulkOperation operationResult : pending.subList(next, pending.size())) {
+      execution.skipped(operationResult);
+    }
+  }
+
+  /**
+   * Collects the operations starting at {@code start} that can be handed to the repository in one call: consecutive
+   * POST, PUT or DELETE operations of the same method and resource type, none of them depending on another one of the
+   * batch, and no more than {@code limit} of them.
+   *
+   * @param bulkOperations
+   * @param start
+   * @param dependencies
+   * @param limit
+   * @return
+   */
+  private List<BulkOperation> nextBatch(List<BulkOperation> bulkOperations, int start, Map<BulkOperation, Set<BulkOperation>> dependencies, int limit) {
+    BulkOperation first = bulkOperations.get(start);
+    Method method = first.getMethod();
+    List<BulkOperation> batch = new ArrayList<>();
+    batch.add(first);
+
+    if (method != Method.POST && method != Method.PUT && method != Method.DELETE) {
+      return batch;
+    }
+    Class<ScimResource> scimResourceClass = getScimResourceClass(first);
+    Set<BulkOperation> members = Collections.newSetFromMap(new IdentityHashMap<>());
+    members.add(first);
+
+    for (int i = start + 1; i < bulkOperations.size() && batch.size() < limit; i++) {
+      BulkOperation candidate = bulkOperations.get(i);
+
+      if (candidate.getMethod() != method
+          || candidate.getResponse() instanceof ErrorResponse
+          || getScimResourceClass(candidate) != scimResourceClass
+          || !Collections.disjoint(dependencies.getOrDefault(candidate, Collections.emptySet()), members)) {
+        break;
+      }
+      batch.add(candidate);
+      members.add(candidate);
+    }
+    return batch;
+  }
+
+  /**
+   * Invokes the operations of {@code batch}, returning the exception each of them failed with or {@code null}.
+   */
+  private List<Exception> executeBatch(List<BulkOperation> batch, BulkExecution execution) {
+    if (batch.size() == 1) {
+      return Collections.singletonList(execute(batch.get(0), execution));
+    }
+    List<Exception> failures = new ArrayList<>(Collections.nCopies(batch.size(), null));
+    Method method = batch.get(0).getMethod();
+    Repository<ScimResource> repository = repositoryRegistry.getRepository(getScimResourceClass(batch.get(0)));
+
+    // operations that still take part in the batch, operations with unresolvable bulkIds or ETags that don't match
+    // fail right away
+    List<Integer> included = new ArrayList<>(batch.size());
+    Map<String, String> versions = new HashMap<>();
+    for (int i = 0; i < batch.size(); i++) {
+      try {
+        if (method != Method.DELETE) {
+          this.resolveTopLevel(execution.unresolveds, batch.get(i), execution.bulkIdKeyToOperationResult);
+        }
+        if (method == Method.PUT) {
+          String id = getResourceId(batch.get(i));
+          String version = EtagPreconditions.requestVersion(batch.get(i).getVersion(), EtagPreconditions.etagStrategy(serverConfiguration), repository, id);
+          if (version != null) {
+            versions.put(id, version);
+          }
+        }
+        included.add(i);
+      } catch (UnresolvableOperationException | ResourceException e) {
+        failures.set(i, e);
+      }
+    }
+    if (included.isEmpty()) {
+      return failures;
+    }
+
+    try {
+      List<? extends BatchResult<?>> results;
+
+      if (method == Method.POST) {
+        List<ScimResource> resources = new ArrayList<>(included.size());
+        for (int i : included) {
+          resources.add(batch.get(i).getData());
+        }
+        log.debug("Creating {}", resources);
+        results = repository.createAll(resources);
+      } else if (method == Method.PUT) {
+        Map<String, ScimResource> resources = new LinkedHashMap<>();
+        for (int i : included) {
+          resources.put(getResourceId(batch.get(i)), batch.get(i).getData());
+        }
+        log.debug("Updating {}", resources);
+        results = repository.updateAll(resources, versions);
+      } else {
+        List<String> ids = new ArrayList<>(included.size());
+        for (int i : included) {
+          ids.add(getResourceId(batch.get(i)));
+        }
+        log.debug("Deleting {}", ids);
+        results = repository.deleteAll(ids);
+      }
+
+      if (results.size() != included.size()) {
+        throw new IllegalStateException("Repository " + repository.getClass().getName() + " returned " + results.size() + " results for " + included.size() + " resources");
+      }
+      for (int j = 0; j < included.size(); j++) {
+        int i = included.get(j);
+        BulkOperation operationResult = batch.get(i);
+        BatchResult<?> result = results.get(j);
+
+        if (!result.isFailure()) {
+          if (method == Method.POST) {
+            created(operationResult, (ScimResource) result.getValue(), execution.bulkIdKeyToOperationResult, execution.baseUri);
+          } else {
+            operationResult.setStatus(StatusWrapper.wrap(method == Method.PUT ? Status.OK : Status.NO_CONTENT));
+          }
+        } else if (method == Method.PUT && result.getException() instanceof UnableToRetrieveResourceException) {
+          operationResult.setStatus(StatusWrapper.wrap(Status.NOT_FOUND));
+        } else {
+          failures.set(i, result.getException());
+        }
+      }
+    } catch (ResourceException e) {
+      for (int i : included) {
+        failures.set(i, e);
+      }
+    }
+    return failures;
+  }
+
+  private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+    try {
+      List<T> failures = new ArrayList<>(tasks.size());
+      for (Future<T> future : requestExecutor.invokeAll(tasks)) {
+        failures.add(future.get());
+      }
+      return failures;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for bulk operations", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * Invokes the operation, returning the exception it failed with or {@code null}.
+   */
+  private Exception execute(BulkOperation operationResult, BulkExecution execution) {
+    try {
+      this.handleBulkOperationMethod(execution.unresolveds, operationResult, execution.bulkIdKeyToOperationResult, execution.baseUri);
+      return null;
+    } catch (ResourceException | UnresolvableOperationException e) {
+      return e;
+    }
+  }
+
+  /**
+   * Finds the operations each {@link BulkOperation} depends on, the operations whose bulkIds it references and the
+   * previous operation targeting the same path.
+   *
+   * @param bulkOperations
+   * @param bulkIdKeyToOperationResult
+   * @return
+   */
+  private Map<BulkOperation, Set<BulkOperation>> generateDependencies(List<BulkOperation> bulkOperations, Map<String, BulkOperation> bulkIdKeyToOperationResult) {
+    Map<BulkOperation, Set<BulkOperation>> dependencies = new IdentityHashMap<>();
+    Map<String, BulkOperation> lastOperationByPath = new HashMap<>();
+
+    for (BulkOperation bulkOperation : bulkOperations) {
+      Set<BulkOperation> operationDependencies = Collections.newSetFromMap(new IdentityHashMap<>());
+      ScimResource scimResource = bulkOperation.getData();
+
+      if (scimResource != null) {
+        Schema schema = this.schemaRegistry.getSchema(scimResource.getBaseUrn());
+
+        if (schema != null) {
+          Map<String, Set<String>> references = new HashMap<>();
+          generateReverseDependenciesGraph(references, "", scimResource, schema.getAttributes());
+
+          for (String reference : references.keySet()) {
+            BulkOperation dependency = bulkIdKeyToOperationResult.get(reference);
+            if (dependency != null && dependency != bulkOperation) {
+              operationDependencies.add(dependency);
+            }
+          }
+        }
+      }
+      if (bulkOperation.getPatchOperations() != null) {
+        Set<String> references = new HashSet<>();
+        generatePatchReferences(references, bulkOperation.getPatchOperations());
+
+        for (String reference : references) {
+          BulkOperation dependency = bulkIdKeyToOperationResult.get(reference);
+          if (dependency != null && dependency != bulkOperation) {
+            operationDependencies.add(dependency);
+          }
+        }
+      }
+      String path = bulkOperation.getPath();
+      if (path != null && bulkOperation.getMethod() != Method.POST) {
+        BulkOperation previous = lastOperationByPath.put(path, bulkOperation);
+        if (previous != null) {
+          operationDependencies.add(previous);
+        }
+      }
+      dependencies.put(bulkOperation, operationDependencies);
+    }
+    return dependencies;
+  }
+
+  /**
+   * Orders operations so that every operation comes after the operations it depends on, otherwise keeping request
+   * order. Operations with circular bulkId references keep their request order among each other, they are the only
+   * ones that need the final resolution pass.
+   *
+   * @param bulkOperations
+   * @param dependencies
+   * @return
+   */
+  private static List<BulkOperation> generateExecutionOrder(List<BulkOperation> bulkOperations, Map<BulkOperation, Set<BulkOperation>> dependencies) {
+    // strongly connected components, operations of a component can only run in request order
+    Map<BulkOperation, Integer> components = new IdentityHashMap<>();
+    StronglyConnectedComponents scc = new StronglyConnectedComponents(dependencies, components);
+    for (BulkOperation bulkOperation : bulkOperations) {
+      scc.visit(bulkOperation);
+    }
+    if (scc.count == bulkOperations.size() && isOrdered(bulkOperations, dependencies)) {
+      return bulkOperations;
+    }
+
+    List<List<BulkOperation>> members = new ArrayList<>();
+    for (int i = 0; i < scc.count; i++) {
+      members.add(new ArrayList<>());
+    }
+    for (BulkOperation bulkOperation : bulkOperations) {
+      members.get(components.get(bulkOperation)).add(bulkOperation);
+    }
+
+    // topological order of the components, the one holding the earliest operation first
+    Map<Integer, Integer> firstIndex = new HashMap<>();
+    for (int i = 0; i < bulkOperations.size(); i++) {
+      firstIndex.putIfAbsent(components.get(bulkOperations.get(i)), i);
+    }
+    int[] unresolvedDependencies = new int[scc.count];
+    List<Set<Integer>> dependents = new ArrayList<>();
+    for (int i = 0; i < scc.count; i++) {
+      dependents.add(new HashSet<>());
+    }
+    for (BulkOperation bulkOperation : bulkOperations) {
+      int component = components.get(bulkOperation);
+      for (BulkOperation dependency : dependencies.get(bulkOperation)) {
+        int dependencyComponent = components.get(dependency);
+        if (dependencyComponent != component && dependents.get(dependencyComponent).add(component)) {
+          unresolvedDependencies[component]++;
+        }
+      }
+    }
+    PriorityQueue<Integer> ready = new PriorityQueue<>(Comparator.comparing(firstIndex::get));
+    for (int i = 0; i < scc.count; i++) {
+      if (unresolvedDependencies[i] == 0) {
+        ready.add(i);
+      }
+    }
+    List<BulkOperation> executionOrder = new ArrayList<>(bulkOperations.size());
+    while (!ready.isEmpty()) {
+      int component = ready.poll();
+      executionOrder.addAll(members.get(component));
+      for (int dependent : dependents.get(component)) {
+        if (--unresolvedDependencies[dependent] == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    return executionOrder;
+  }
+
+  private static boolean isOrdered(List<BulkOperation> bulkOperations, Map<BulkOperation, Set<BulkOperation>> dependencies) {
+    Set<BulkOperation> done = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (BulkOperation bulkOperation : bulkOperations) {
+      if (!done.containsAll(dependencies.get(bulkOperation))) {
+        return false;
+      }
+      done.add(bulkOperation);
+    }
+    return true;
+  }
+
+  /**
+   * Groups operations into layers where every operation only depends on operations of earlier layers. Returns
+   * {@code null} when the bulkId references are circular, those are resolved by running the operations in request
+   * order.
+   *
+   * @param bulkOperations
+   * @param dependencies
+   * @return
+   */
+  private static List<List<BulkOperation>> generateLayers(List<BulkOperation> bulkOperations, Map<BulkOperation, Set<BulkOperation>> dependencies) {
+    Map<BulkOperation, Integer> depths = new IdentityHashMap<>();
+    List<List<BulkOperation>> layers = new ArrayList<>();
+
+    for (BulkOperation bulkOperation : bulkOperations) {
+      int depth = generateDepth(bulkOperation, dependencies, depths, Collections.newSetFromMap(new IdentityHashMap<>()));
+      if (depth < 0) {
+        return null;
+      }
+      while (layers.size() <= depth) {
+        layers.add(new ArrayList<>());
+      }
+      layers.get(depth).add(bulkOperation);
+    }
+    return layers;
+  }
+
+  private static int generateDepth(BulkOperation bulkOperation, Map<BulkOperation, Set<BulkOperation>> dependencies, Map<BulkOperation, Integer> depths, Set<BulkOperation> visiting) {
+    Integer known = depths.get(bulkOperation);
+    if (known != null) {
+      return known;
+    }
+    if (!visiting.add(bulkOperation)) {
+      return -1;
+    }
+    int depth = 0;
+    for (BulkOperation dependency : dependencies.get(bulkOperation)) {
+      int dependencyDepth = generateDepth(dependency, dependencies, depths, visiting);
+      if (dependencyDepth < 0) {
+        return -1;
+      }
+      depth = Math.max(depth, dependencyDepth + 1);
+    }
+    visiting.remove(bulkOperation);
+    depths.put(bulkOperation, depth);
+    return depth;
+  }
+
   /**
    * Delete resources that depend on {@code bulkIdKeyToCleanup}, remove
    * {@link BulkOperation}s data, and set their code and response
@@ -342,21 +736,30 @@ public class BulkResourceImpl implements BulkResource {
     BulkOperation operationResult = bulkIdKeyToOperationResult.get(bulkIdKeyToCleanup);
     String bulkId = operationResult.getBulkId();
     ScimResource scimResource = operationResult.getData();
-    @SuppressWarnings("unchecked")
-    Class<ScimResource> scimResourceClass = (Class<ScimResource>) scimResource.getClass();
-    Repository<ScimResource> repository = this.repositoryRegistry.getRepository(scimResourceClass);
 
-    try {
-      if (StringUtils.isNotBlank(scimResource.getId())) {
-        repository.delete(scimResource.getId());
+    // PATCH and DELETE operations have no resource of their own to delete
+    if (scimResource != null) {
+      @SuppressWarnings("unchecked")
+      Class<ScimResource> scimResourceClass = (Class<ScimResource>) scimResource.getClass();
+      Repository<ScimResource> repository = this.repositoryRegistry.getRepository(scimResourceClass);
+
+      try {
+        if (StringUtils.isNotBlank(scimResource.getId())) {
+          repository.delete(scimResource.getId());
+        }
+      } catch (ResourceException unableToDeleteResourceException) {
+        log.error("Could not delete ScimResource after failure: {}", scimResource);
       }
-    } catch (ResourceException unableToDeleteResourceException) {
-      log.error("Could not delete ScimResource after failure: {}", scimResource);
     }
     for (String dependentBulkIdKey : reverseDependencies) {
       BulkOperation dependentOperationResult = bulkIdKeyToOperationResult.get(dependentBulkIdKey);
 
-      if (!(dependentOperationResult.getResponse() instanceof ErrorResponse))
+      if (dependentOperationResult.getData() == null) {
+        // a PATCH, it has not been applied yet as it runs after the operations it references
+        if (!(dependentOperationResult.getResponse() instanceof ErrorResponse)) {
+          createAndSetErrorResponse(dependentOperationResult, Status.CONFLICT, String.format(OPERATION_DEPENDS_ON_FAILED_OPERATION, bulkId, dependentBulkIdKey));
+        }
+      } else if (!(dependentOperationResult.getResponse() instanceof ErrorResponse))
         try {
           ScimResource dependentResource = dependentOperationResult.getData();
           String dependentResourceId = dependentResource.getId();
@@ -367,7 +770,10 @@ public class BulkResourceImpl implements BulkResource {
           dependentOperationResult.setData(null);
           dependentOperationResult.setLocation(null);
           createAndSetErrorResponse(dependentOperationResult, Status.CONFLICT, String.format(OPERATION_DEPENDS_ON_FAILED_OPERATION, bulkId, dependentBulkIdKey));
-          dependentResourceRepository.delete(dependentResourceId);
+          // only a POST that already ran created a resource to roll back
+          if (dependentOperationResult.getMethod() == Method.POST && StringUtils.isNotBlank(dependentResourceId)) {
+            dependentResourceRepository.delete(dependentResourceId);
+          }
         } catch (ResourceException unableToDeleteResourceException) {
           log.error("Could not delete depenedent ScimResource after failing to update dependee", unableToDeleteResourceException);
         }
@@ -382,29 +788,16 @@ public class BulkResourceImpl implements BulkResource {
    * @param unresolveds
    * @param operationResult
    * @param bulkIdKeyToOperationResult
-   * @param uriInfo
+   * @param baseUri
    * @throws UnableToCreateResourceException
    * @throws UnableToDeleteResourceException
    * @throws UnableToUpdateResourceException
    * @throws UnresolvableOperationException
    */
-  private void handleBulkOperationMethod(List<IWishJavaHadTuples> unresolveds, BulkOperation operationResult, Map<String, BulkOperation> bulkIdKeyToOperationResult, UriInfo uriInfo) throws ResourceException, UnresolvableOperationException {
+  private void handleBulkOperationMethod(List<IWishJavaHadTuples> unresolveds, BulkOperation operationResult, Map<String, BulkOperation> bulkIdKeyToOperationResult, URI baseUri) throws ResourceException, UnresolvableOperationException {
     ScimResource scimResource = operationResult.getData();
     Method bulkOperationMethod = operationResult.getMethod();
-    String bulkId = operationResult.getBulkId();
-    Class<ScimResource> scimResourceClass;
-
-    if (scimResource == null) {
-      String path = operationResult.getPath();
-      String endPoint = path.substring(0, path.lastIndexOf('/'));
-      Class<ScimResource> clazz = (Class<ScimResource>) schemaRegistry.getScimResourceClassFromEndpoint(endPoint);
-      scimResourceClass = clazz;
-    } else {
-      @SuppressWarnings("unchecked")
-      Class<ScimResource> clazz = (Class<ScimResource>) scimResource.getClass();
-      scimResourceClass = clazz;
-    }
-    Repository<ScimResource> repository = repositoryRegistry.getRepository(scimResourceClass);
+    Repository<ScimResource> repository = repositoryRegistry.getRepository(getScimResourceClass(operationResult));
 
     switch (bulkOperationMethod) {
     case POST: {
@@ -415,37 +808,14 @@ public class BulkResourceImpl implements BulkResource {
       log.debug("Creating {}", scimResource);
 
       ScimResource newScimResource = repository.create(scimResource);
-      String bulkOperationPath = operationResult.getPath();
-      String newResourceId = newScimResource.getId();
-      String newResourceUri = uriInfo.getBaseUriBuilder()
-                                     .path(bulkOperationPath)
-                                     .path(newResourceId)
-                                     .build()
-                                     .toString();
-
-      if (bulkId != null) {
-        String bulkIdKey = "bulkId:" + bulkId;
-
-        log.debug("adding {} = {}", bulkIdKey, newResourceId);
-        bulkIdKeyToOperationResult.get(bulkIdKey)
-                                  .setData(newScimResource);
-      }
-      operationResult.setData(newScimResource);
-      operationResult.setLocation(newResourceUri);
-      operationResult.setPath(null);
-      operationResult.setStatus(StatusWrapper.wrap(Status.CREATED));
+      created(operationResult, newScimResource, bulkIdKeyToOperationResult, baseUri);
     }
       break;
 
     case DELETE: {
       log.debug("DELETE: {}", operationResult.getPath());
 
-      String scimResourceId = operationResult.getPath()
-                                             .substring(operationResult.getPath()
-                                                                       .lastIndexOf("/")
-                                                 + 1);
-
-      repository.delete(scimResourceId);
+      repository.delete(getResourceId(operationResult));
       operationResult.setStatus(StatusWrapper.wrap(Status.NO_CONTENT));
     }
       break;
@@ -454,13 +824,31 @@ public class BulkResourceImpl implements BulkResource {
       log.debug("PUT: {}", scimResource);
 
       this.resolveTopLevel(unresolveds, operationResult, bulkIdKeyToOperationResult);
-      String id = operationResult.getPath()
-                                 .substring(operationResult.getPath()
-                                                           .lastIndexOf("/")
-                                     + 1);
+      String id = getResourceId(operationResult);
+
+      try {
+        String version = EtagPreconditions.requestVersion(operationResult.getVersion(), EtagPreconditions.etagStrategy(serverConfiguration), repository, id);
+        repository.update(id, version, scimResource, Collections.emptySet(), Collections.emptySet());
+        operationResult.setStatus(StatusWrapper.wrap(Status.OK));
+      } catch (UnableToRetrieveResourceException e) {
+        operationResult.setStatus(StatusWrapper.wrap(Status.NOT_FOUND));
+      }
+    }
+      break;
+
+    case PATCH: {
+      log.debug("PATCH: {}", operationResult.getPath());
+
+      resolvePatchOperations(operationResult.getPatchOperations(), bulkIdKeyToOperationResult);
+      String id = getResourceId(operationResult);
 
       try {
-        repository.update(id, null, scimResource, Collections.emptySet(), Collections.emptySet());
+        String version = EtagPreconditions.requestVersion(operationResult.getVersion(), EtagPreconditions.etagStrategy(serverConfiguration), repository, id);
+        repository.patch(id, version, operationResult.getPatchOperations(), Collections.emptySet(), Collections.emptySet());
+        operationResult.setLocation(UriBuilder.fromUri(baseUri)
+                                              .path(operationResult.getPath())
+                                              .build()
+                                              .toString());
         operationResult.setStatus(StatusWrapper.wrap(Status.OK));
       } catch (UnableToRetrieveResourceException e) {
         operationResult.setStatus(StatusWrapper.wrap(Status.NOT_FOUND));
@@ -479,6 +867,46 @@ public class BulkResourceImpl implements BulkResource {
     }
   }
 
+  private static void created(BulkOperation operationResult, ScimResource newScimResource, Map<String, BulkOperation> bulkIdKeyToOperationResult, URI baseUri) {
+    String bulkId = operationResult.getBulkId();
+    String bulkOperationPath = operationResult.getPath();
+    String newResourceId = newScimResource.getId();
+    String newResourceUri = UriBuilder.fromUri(baseUri)
+                                   .path(bulkOperationPath)
+                                   .path(newResourceId)
+                                   .build()
+                                   .toString();
+
+    if (bulkId != null) {
+      String bulkIdKey = "bulkId:" + bulkId;
+
+      log.debug("adding {} = {}", bulkIdKey, newResourceId);
+      bulkIdKeyToOperationResult.get(bulkIdKey)
+                                .setData(newScimResource);
+    }
+    operationResult.setData(newScimResource);
+    operationResult.setLocation(newResourceUri);
+    operationResult.setPath(null);
+    operationResult.setStatus(StatusWrapper.wrap(Status.CREATED));
+  }
+
+  @SuppressWarnings("unchecked")
+  private Class<ScimResource> getScimResourceClass(BulkOperation operationResult) {
+    ScimResource scimResource = operationResult.getData();
+
+    if (scimResource == null) {
+      String path = operationResult.getPath();
+      String endPoint = path.substring(0, path.lastIndexOf('/'));
+      return (Class<ScimResource>) schemaRegistry.getScimResourceClassFromEndpoint(endPoint);
+    }
+    return (Class<ScimResource>) scimResource.getClass();
+  }
+
+  private static String getResourceId(BulkOperation operationResult) {
+    String path = operationResult.getPath();
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
   private static void createAndSetErrorResponse(BulkOperation operationResult, int statusCode, String detail) {
     createAndSetErrorResponse(operationResult, Status.fromStatusCode(statusCode), detail);
   }
@@ -490,6 +918,123 @@ public class BulkResourceImpl implements BulkResource {
     operationResult.setPath(null);
   }
 
+  /**
+   * State shared by the operations of one bulk request. Operations may run concurrently, failures are only recorded
+   * from the request thread.
+   */
+  private class BulkExecution {
+    final Map<String, BulkOperation> bulkIdKeyToOperationResult;
+    final Map<String, Set<String>> transitiveReverseDependencies;
+    final URI baseUri;
+    final int maxErrorCount;
+    final int errorCountIncrement;
+    final List<IWishJavaHadTuples> unresolveds = Collections.synchronizedList(new ArrayList<>());
+    int errorCount;
+    boolean errorCountExceeded;
+
+    BulkExecution(Map<String, BulkOperation> bulkIdKeyToOperationResult, Map<String, Set<String>> transitiveReverseDependencies, URI baseUri, int maxErrorCount, int errorCountIncrement) {
+      this.bulkIdKeyToOperationResult = bulkIdKeyToOperationResult;
+      this.transitiveReverseDependencies = transitiveReverseDependencies;
+      this.baseUri = baseUri;
+      this.maxErrorCount = maxErrorCount;
+      this.errorCountIncrement = errorCountIncrement;
+    }
+
+    int remainingErrors() {
+      return errorCountIncrement > 0 ? maxErrorCount - errorCount : Integer.MAX_VALUE;
+    }
+
+    void completed(List<BulkOperation> batch, List<Exception> failures) {
+      for (int i = 0; i < batch.size(); i++) {
+        completed(batch.get(i), failures.get(i));
+      }
+    }
+
+    void completed(BulkOperation operationResult, Exception failure) {
+      if (failure == null) {
+        return;
+      }
+      errorCount += errorCountIncrement;
+
+      if (failure instanceof ResourceException) {
+        ResourceException resourceException = (ResourceException) failure;
+        log.error("Failed to do bulk operation", resourceException);
+
+        errorCountExceeded = errorCount >= maxErrorCount;
+        createAndSetErrorResponse(operationResult, resourceException.getStatus(), resourceException.getLocalizedMessage());
+      } else {
+        log.error("Could not resolve bulkId during Bulk Operation method handling", failure);
+
+        createAndSetErrorResponse(operationResult, Status.CONFLICT, failure.getLocalizedMessage());
+      }
+
+      if (operationResult.getBulkId() != null) {
+        String bulkIdKey = "bulkId:" + operationResult.getBulkId();
+
+        cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
+        operationResult.setData(null);
+      }
+    }
+
+    void skipped(BulkOperation operationResult) {
+      // continue processing bulk operations to cleanup any dependencies
+      createAndSetErrorResponse(operationResult, Status.CONFLICT, "failOnErrors count reached");
+      if (operationResult.getBulkId() != null) {
+        String bulkIdKey = "bulkId:" + operationResult.getBulkId();
+
+        cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
+      }
+    }
+  }
+
+  /**
+   * Tarjan's algorithm, numbers the strongly connected components of the dependency graph.
+   */
+  private static class StronglyConnectedComponents {
+    private final Map<BulkOperation, Set<BulkOperation>> dependencies;
+    private final Map<BulkOperation, Integer> components;
+    private final Map<BulkOperation, Integer> indexes = new IdentityHashMap<>();
+    private final Map<BulkOperation, Integer> lowLinks = new IdentityHashMap<>();
+    private final Deque<BulkOperation> stack = new ArrayDeque<>();
+    private final Set<BulkOperation> onStack = Collections.newSetFromMap(new IdentityHashMap<>());
+    int count;
+
+    StronglyConnectedComponents(Map<BulkOperation, Set<BulkOperation>> dependencies, Map<BulkOperation, Integer> components) {
+      this.dependencies = dependencies;
+      this.components = components;
+    }
+
+    void visit(BulkOperation bulkOperation) {
+      if (indexes.containsKey(bulkOperation)) {
+        return;
+      }
+      int index = indexes.size();
+      indexes.put(bulkOperation, index);
+      lowLinks.put(bulkOperation, index);
+      stack.push(bulkOperation);
+      onStack.add(bulkOperation);
+
+      for (BulkOperation dependency : dependencies.get(bulkOperation)) {
+        if (!indexes.containsKey(dependency)) {
+          visit(dependency);
+          lowLinks.put(bulkOperation, Math.min(lowLinks.get(bulkOperation), lowLinks.get(dependency)));
+        } else if (onStack.contains(dependency)) {
+          lowLinks.put(bulkOperation, Math.min(lowLinks.get(bulkOperation), indexes.get(dependency)));
+        }
+      }
+
+      if (lowLinks.get(bulkOperation) == index) {
+        BulkOperation member;
+        do {
+          member = stack.pop();
+          onStack.remove(member);
+          components.put(member, count);
+        } while (member != bulkOperation);
+        count++;
+      }
+    }
+  }
+
   @AllArgsConstructor
   private static class IWishJavaHadTuples {
     public final String bulkIdKey;
@@ -764,6 +1309,9 @@ public class BulkResourceImpl implements BulkResource {
   }
 
   private static void generateReverseDependenciesGraph(Map<String, Set<String>> reverseDependenciesGraph, String dependentBulkId, Object scimObject, Set<Schema.Attribute> scimObjectAttributes) {
+    if (scimObject == null) {
+      return;
+    }
     for (Schema.Attribute scimObjectAttribute : scimObjectAttributes)
       if (scimObjectAttribute.isScimResourceIdReference()) {
         String reference = scimObjectAttribute.getAccessor().get(scimObject);
@@ -810,13 +1358,95 @@ public class BulkResourceImpl implements BulkResource {
 
       if (bulkId != null) {
         ScimResource scimResource = bulkOperation.getData();
-        String scimResourceBaseUrn = scimResource.getBaseUrn();
-        Schema schema = this.schemaRegistry.getSchema(scimResourceBaseUrn);
-        Set<Schema.Attribute> attributes = schema.getAttributes();
 
-        generateReverseDependenciesGraph(reverseDependenciesGraph, bulkId, scimResource, attributes);
+        if (scimResource != null) {
+          String scimResourceBaseUrn = scimResource.getBaseUrn();
+          Schema schema = this.schemaRegistry.getSchema(scimResourceBaseUrn);
+          Set<Schema.Attribute> attributes = schema.getAttributes();
+
+          generateReverseDependenciesGraph(reverseDependenciesGraph, bulkId, scimResource, attributes);
+        } else if (bulkOperation.getPatchOperations() != null) {
+          Set<String> references = new HashSet<>();
+          generatePatchReferences(references, bulkOperation.getPatchOperations());
+
+          for (String reference : references) {
+            reverseDependenciesGraph.computeIfAbsent(reference, (unused) -> new HashSet<>()).add("bulkId:" + bulkId);
+          }
+        }
       }
     }
     return reverseDependenciesGraph;
   }
+
+  /**
+   * Collects the bulkIds referenced by the values of {@code patchOperations}.
+   *
+   * @param references
+   * @param patchOperations
+   */
+  private static void generatePatchReferences(Set<String> references, List<PatchOperation> patchOperations) {
+    for (PatchOperation patchOperation : patchOperations) {
+      generatePatchReferences(references, patchOperation.getValue());
+    }
+  }
+
+  private static void generatePatchReferences(Set<String> references, Object value) {
+    if (value instanceof String) {
+      if (((String) value).startsWith("bulkId:")) {
+        references.add((String) value);
+      }
+    } else if (value instanceof Map) {
+      for (Object entryValue : ((Map<?, ?>) value).values()) {
+        generatePatchReferences(references, entryValue);
+      }
+    } else if (value instanceof Collection) {
+      for (Object item : (Collection<?>) value) {
+        generatePatchReferences(references, item);
+      }
+    }
+  }
+
+  /**
+   * Replaces the bulkIds in the values of {@code patchOperations} with the ids of the resources they refer to. The
+   * referenced operations run first, a bulkId that cannot be resolved by now refers to a failed operation.
+   *
+   * @param patchOperations
+   * @param bulkIdKeyToOperationResult
+   * @throws UnresolvableOperationException
+   */
+  private static void resolvePatchOperations(List<PatchOperation> patchOperations, Map<String, BulkOperation> bulkIdKeyToOperationResult) throws UnresolvableOperationException {
+    for (PatchOperation patchOperation : patchOperations) {
+      patchOperation.setValue(resolvePatchValue(patchOperation.getValue(), bulkIdKeyToOperationResult));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object resolvePatchValue(Object value, Map<String, BulkOperation> bulkIdKeyToOperationResult) throws UnresolvableOperationException {
+    if (value instanceof String) {
+      String bulkIdKey = (String) value;
+
+      if (!bulkIdKey.startsWith("bulkId:")) {
+        return value;
+      }
+      BulkOperation resolvedOperationResult = bulkIdKeyToOperationResult.get(bulkIdKey);
+      if (resolvedOperationResult == null) {
+        throw new UnresolvableOperationException(String.format(BULK_ID_DOES_NOT_EXIST, bulkIdKey));
+      }
+      ScimResource resolvedResource = resolvedOperationResult.getData();
+      if (resolvedOperationResult.getResponse() instanceof ErrorResponse || resolvedResource == null || resolvedResource.getId() == null) {
+        throw new UnresolvableOperationException(String.format(BULK_ID_REFERS_TO_FAILED_RESOURCE, bulkIdKey));
+      }
+      return resolvedResource.getId();
+    } else if (value instanceof Map) {
+      for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+        entry.setValue(resolvePatchValue(entry.getValue(), bulkIdKeyToOperationResult));
+      }
+    } else if (value instanceof List) {
+      ListIterator<Object> items = ((List<Object>) value).listIterator();
+      while (items.hasNext()) {
+        items.set(resolvePatchValue(items.next(), bulkIdKeyToOperationResult));
+      }
+    }
+    return value;
+  }
 }
@@ -0,0 +1,48 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.core.EntityTag;
+import org.apache.directory.scim.server.configuration.EtagStrategy;
+import org.apache.directory.scim.server.exception.EtagGenerationException;
+import org.apache.directory.scim.spec.resources.ScimResource;
+
+/**
+ * Uses a hash of the resource's JSON representation as a strong ETag, see {@link EtagGenerator}. Works with any
+ * repository, at the cost of serializing every resource an ETag is returned for. The hashes are no repository
+ * versions, the server checks them against the current resource before it modifies it.
+ */
+public class ContentHashEtagStrategy implements EtagStrategy {
+
+  private final EtagGenerator etagGenerator;
+
+  public ContentHashEtagStrategy() {
+    this(new EtagGenerator());
+  }
+
+  public ContentHashEtagStrategy(EtagGenerator etagGenerator) {
+    this.etagGenerator = etagGenerator;
+  }
+
+  @Override
+  public EntityTag getEtag(ScimResource resource) throws EtagGenerationException {
+    return etagGenerator.computeEtag(resource);
+  }
+}
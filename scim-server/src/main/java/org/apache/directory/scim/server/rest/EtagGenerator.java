@@ -19,52 +19,113 @@
 
 package org.apache.directory.scim.server.rest;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.module.jakarta.xmlbind.JakartaXmlBindAnnotationIntrospector;
 import jakarta.enterprise.context.ApplicationScoped;
-import org.apache.directory.scim.core.json.ObjectMapperFactory;
 import org.apache.directory.scim.server.exception.EtagGenerationException;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import org.apache.directory.scim.spec.schema.Meta;
 
 import jakarta.ws.rs.core.EntityTag;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 
+/**
+ * Generates ETags from the SHA-256 hash of a resource's JSON representation, excluding its {@code meta}.
+ * <p>
+ * The JSON is written straight into a per-thread digest, properties and extensions in alphabetical order, so equal
+ * resources always hash the same regardless of the order their extensions were added in.
+ */
 @ApplicationScoped
 public class EtagGenerator {
 
-  private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+  private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  });
+
+  // serializes like ObjectMapperFactory's mapper, with sorted properties
+  private final ObjectWriter objectWriter = JsonMapper.builder()
+    .annotationIntrospector(new AnnotationIntrospectorPair(
+      new JakartaXmlBindAnnotationIntrospector(TypeFactory.defaultInstance()),
+      new JacksonAnnotationIntrospector()))
+    .serializationInclusion(JsonInclude.Include.NON_NULL)
+    .addMixIn(ScimResource.class, IgnoreMeta.class)
+    .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+    .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+    .build()
+    .writer();
 
+  /**
+   * Returns the ETag of {@code resource} and sets it as the version of the resource's meta, creating the meta if the
+   * resource has none.
+   */
   public EntityTag generateEtag(ScimResource resource) throws EtagGenerationException {
+    EntityTag etag = computeEtag(resource);
 
+    Meta meta = resource.getMeta();
+    if (meta == null) {
+      meta = new Meta();
+      resource.setMeta(meta);
+    }
+    meta.setVersion(etag.getValue());
+
+    return etag;
+  }
+
+  /**
+   * Returns the ETag of {@code resource} without modifying it, safe to call while the resource is read concurrently.
+   */
+  public EntityTag computeEtag(ScimResource resource) throws EtagGenerationException {
+    MessageDigest digest = DIGESTS.get();
     try {
-      Meta meta = resource.getMeta();
+      objectWriter.writeValue(new DigestOutputStream(digest), resource);
+      return new EntityTag(Base64.getEncoder().encodeToString(digest.digest()));
+    } catch (IOException e) {
+      throw new EtagGenerationException("Failed to generate etag for SCIM resource: " + resource.getId(), e);
+    } finally {
+      digest.reset();
+    }
+  }
 
-      if (meta == null) {
-        meta = new Meta();
-      }
+  @JsonIgnoreProperties("meta")
+  private abstract static class IgnoreMeta {
+  }
 
-      resource.setMeta(null);
-      String writeValueAsString = objectMapper.writeValueAsString(resource);
+  /**
+   * Feeds everything written to it into a MessageDigest.
+   */
+  private static final class DigestOutputStream extends OutputStream {
 
-      EntityTag etag = hash(writeValueAsString);
-      meta.setVersion(etag.getValue());
+    private final MessageDigest digest;
 
-      resource.setMeta(meta);
+    DigestOutputStream(MessageDigest digest) {
+      this.digest = digest;
+    }
 
-      return etag;
-    } catch (JsonProcessingException | NoSuchAlgorithmException e) {
-      throw new EtagGenerationException("Failed to generate etag for SCIM resource: " + resource.getId(), e);
+    @Override
+    public void write(int b) {
+      digest.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      digest.update(b, off, len);
     }
-  }
-  
-  private static EntityTag hash(String input) throws NoSuchAlgorithmException {
-    MessageDigest digest = MessageDigest.getInstance("SHA-256");
-    digest.update(input.getBytes(StandardCharsets.UTF_8));
-    byte[] hash = digest.digest();
-    return new EntityTag(Base64.getEncoder().encodeToString(hash));
   }
 }
@@ -0,0 +1,99 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.ext.RuntimeDelegate;
+import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.server.configuration.EtagStrategy;
+import org.apache.directory.scim.server.configuration.RepositoryVersionEtagStrategy;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.server.exception.EtagGenerationException;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.resources.ScimResource;
+
+/**
+ * Maps the ETag a client sends with a modification, in an {@code If-Match} header or the {@code version} of a bulk
+ * operation, to the version passed to {@link Repository#update Repository.update} and
+ * {@link Repository#patch Repository.patch}.
+ */
+final class EtagPreconditions {
+
+  private static final EtagStrategy DEFAULT_ETAG_STRATEGY = new RepositoryVersionEtagStrategy();
+
+  private EtagPreconditions() {
+  }
+
+  /**
+   * Returns the configured strategy, the repository's version by default.
+   */
+  static EtagStrategy etagStrategy(ServerConfiguration serverConfiguration) {
+    if (serverConfiguration != null && serverConfiguration.getEtagStrategy() != null) {
+      return serverConfiguration.getEtagStrategy();
+    }
+    return DEFAULT_ETAG_STRATEGY;
+  }
+
+  /**
+   * Returns the version to pass to the repository, null if the client accepts any version.
+   * <p>
+   * The ETags of a strategy that maps them to repository versions are passed on for the repository to compare with the
+   * version it stores. Other ETags, like content hashes or modification times, mean nothing to the repository, they are
+   * compared with the ETag of the current resource here and the repository gets no version. That check and the write
+   * are not atomic, strict optimistic locking needs a strategy based on repository versions.
+   *
+   * @param etag The ETag sent by the client, {@code null}, blank and {@code *} accept any version.
+   * @throws ResourceException 412 if the ETag doesn't match the current resource, 404 if the resource doesn't exist.
+   */
+  static String requestVersion(String etag, EtagStrategy etagStrategy, Repository<?> repository, String id) throws ResourceException {
+    if (etag == null || etag.isBlank() || "*".equals(etag.trim())) {
+      return null;
+    }
+
+    EntityTag requestEtag;
+    try {
+      requestEtag = RuntimeDelegate.getInstance().createHeaderDelegate(EntityTag.class).fromString(etag.trim());
+    } catch (IllegalArgumentException e) {
+      // not a single entity-tag, let the repository decide
+      return etag;
+    }
+    String version = etagStrategy.toVersion(requestEtag);
+    if (version != null) {
+      return version;
+    }
+
+    ScimResource current = repository.get(id);
+    if (current == null) {
+      throw new ResourceException(Status.NOT_FOUND.getStatusCode(), "Resource " + id + " not found");
+    }
+    EntityTag currentEtag;
+    try {
+      currentEtag = etagStrategy.getEtag(current);
+    } catch (EtagGenerationException e) {
+      throw new ResourceException(Status.INTERNAL_SERVER_ERROR.getStatusCode(), "Failed to generate the etag", e);
+    }
+    // the opaque values are compared, weak ETags like modification times would otherwise never match
+    if (currentEtag == null || !currentEtag.getValue().equals(requestEtag.getValue())) {
+      throw new ResourceException(Status.PRECONDITION_FAILED.getStatusCode(), "Resource " + id + " has been modified, its ETag doesn't match");
+    }
+    return null;
+  }
+}
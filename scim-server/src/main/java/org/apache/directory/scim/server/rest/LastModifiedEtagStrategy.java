@@ -0,0 +1,47 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.core.EntityTag;
+import org.apache.directory.scim.server.configuration.EtagStrategy;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.Meta;
+
+import java.time.LocalDateTime;
+
+/**
+ * Uses {@code meta.lastModified} as a weak ETag, for repositories that track modification times but no version.
+ * Two modifications within the timestamp's resolution produce the same ETag, hence weak. The timestamps are no
+ * repository versions, the server checks them against the current resource before it modifies it.
+ */
+public class LastModifiedEtagStrategy implements EtagStrategy {
+
+  @Override
+  public EntityTag getEtag(ScimResource resource) {
+    Meta meta = resource.getMeta();
+    if (meta != null) {
+      LocalDateTime lastModified = meta.getLastModified();
+      if (lastModified != null) {
+        return new EntityTag(lastModified.toString(), true);
+      }
+    }
+    return null;
+  }
+}
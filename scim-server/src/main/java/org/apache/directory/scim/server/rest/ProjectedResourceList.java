@@ -0,0 +1,81 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import org.apache.directory.scim.server.exception.AttributeException;
+import org.apache.directory.scim.spec.resources.ScimResource;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read-only view of a page of resources that applies a {@link ProjectionPlan} to each resource as it is read.
+ * <p>
+ * Used as the {@code Resources} of a ListResponse, the projected copy of a resource only exists while the JSON
+ * provider writes it, instead of a projected copy of the whole page being held next to the repository's results for
+ * the lifetime of the response.
+ */
+final class ProjectedResourceList<T extends ScimResource> extends AbstractList<T> implements RandomAccess {
+
+  private final T first;
+
+  private final List<T> resources;
+
+  private final AttributeUtil attributeUtil;
+
+  private final ProjectionPlan projection;
+
+  /**
+   * @param first The first resource, already projected before the response is returned so that a projection that
+   *        can't be applied fails the request with a SCIM error.
+   */
+  ProjectedResourceList(T first, List<T> resources, AttributeUtil attributeUtil, ProjectionPlan projection) {
+    this.first = first;
+    this.resources = resources;
+    this.attributeUtil = attributeUtil;
+    this.projection = projection;
+  }
+
+  @Override
+  public T get(int index) {
+    if (index == 0) {
+      return first;
+    }
+    return project(attributeUtil, resources.get(index), projection, index);
+  }
+
+  /**
+   * Projects a resource of a page that is being written, the response can't be turned into a SCIM error anymore, the
+   * failure aborts it.
+   */
+  static <T extends ScimResource> T project(AttributeUtil attributeUtil, T resource, ProjectionPlan projection, int index) {
+    try {
+      return attributeUtil.applyProjection(resource, projection);
+    } catch (AttributeException e) {
+      throw new IllegalStateException("Failed to apply the attribute projection to resource at index " + index, e);
+    }
+  }
+
+  @Override
+  public int size() {
+    return resources.size();
+  }
+}
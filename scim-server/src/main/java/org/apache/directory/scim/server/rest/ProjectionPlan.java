@@ -0,0 +1,291 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.server.exception.AttributeException;
+import org.apache.directory.scim.spec.resources.ScimExtension;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.AttributeContainer;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schema.Attribute;
+import org.apache.directory.scim.spec.schema.Schema.Attribute.Type;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * The attributes and extensions to remove from resources of one resource type for a given {@code attributes} or
+ * {@code excludedAttributes} request parameter.
+ * <p>
+ * Attribute references are resolved against the schemas once, when the plan is built; applying the plan only walks a
+ * flat list of accessors to clear and the complex attributes that contain something to clear. Plans are immutable
+ * once built and are shared between requests by {@link AttributeUtil}.
+ */
+@Slf4j
+final class ProjectionPlan {
+
+  private static final Step[] NO_STEPS = new Step[0];
+
+  private final AttributeUtil.ProjectionKey key;
+
+  private final Schema schema;
+
+  private final Step[] steps;
+
+  private final Predicate<Attribute> remove;
+
+  // null when every extension is kept
+  private final Set<String> keptExtensionUrns;
+
+  private final SchemaRegistry schemaRegistry;
+
+  // extension schemas are resolved lazily, resources rarely carry more than a couple of extensions
+  private final Map<String, Step[]> extensionSteps = new ConcurrentHashMap<>();
+
+  ProjectionPlan(AttributeUtil.ProjectionKey key, SchemaRegistry schemaRegistry, Schema schema, Predicate<Attribute> remove, Set<String> keptExtensionUrns) {
+    this.key = key;
+    this.schemaRegistry = schemaRegistry;
+    this.schema = schema;
+    this.remove = remove;
+    this.keptExtensionUrns = keptExtensionUrns;
+    this.steps = compile(schema, remove);
+  }
+
+  AttributeUtil.ProjectionKey getKey() {
+    return key;
+  }
+
+  Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Returns {@code resource} without the attributes and extensions excluded by this plan. {@code resource} itself is
+   * never modified: the resource, and every object below it that loses an attribute, is shallow copied first. Objects
+   * the plan doesn't change are shared with {@code resource}, and {@code resource} is returned as is when nothing has
+   * to be removed.
+   */
+  <T extends ScimResource> T project(T resource, ShallowCopier copier) throws AttributeException {
+    try {
+      T copy = project(resource, steps, copier);
+
+      Map<String, ScimExtension> extensions = resource.getExtensions();
+      Map<String, ScimExtension> projectedExtensions = null;
+      for (Entry<String, ScimExtension> extensionEntry : extensions.entrySet()) {
+        String extensionUrn = extensionEntry.getKey();
+        ScimExtension extension = extensionEntry.getValue();
+
+        ScimExtension projected = null;
+        if (keptExtensionUrns == null || keptExtensionUrns.contains(extensionUrn.toLowerCase(Locale.ROOT))) {
+          projected = project(extension, extensionSteps(extensionUrn), copier);
+          if (projected == extension) {
+            if (projectedExtensions != null) {
+              projectedExtensions.put(extensionUrn, extension);
+            }
+            continue;
+          }
+        }
+        if (projectedExtensions == null) {
+          projectedExtensions = copyUntil(extensions, extensionUrn);
+        }
+        if (projected != null) {
+          projectedExtensions.put(extensionUrn, projected);
+        }
+      }
+
+      if (projectedExtensions != null) {
+        if (copy == resource) {
+          copy = copier.copy(resource);
+        }
+        copy.setExtensions(projectedExtensions);
+      }
+      return copy;
+    } catch (IllegalArgumentException e) {
+      throw new AttributeException(e);
+    }
+  }
+
+  private static Map<String, ScimExtension> copyUntil(Map<String, ScimExtension> extensions, String extensionUrn) {
+    Map<String, ScimExtension> copy = new LinkedHashMap<>();
+    for (Entry<String, ScimExtension> extensionEntry : extensions.entrySet()) {
+      if (extensionEntry.getKey().equals(extensionUrn)) {
+        break;
+      }
+      copy.put(extensionEntry.getKey(), extensionEntry.getValue());
+    }
+    return copy;
+  }
+
+  private Step[] extensionSteps(String extensionUrn) {
+    Step[] cached = extensionSteps.get(extensionUrn);
+    if (cached != null) {
+      return cached;
+    }
+    return extensionSteps.computeIfAbsent(extensionUrn, urn -> compile(schemaRegistry.getSchema(urn), remove));
+  }
+
+  private static <T> T project(T object, Step[] steps, ShallowCopier copier) {
+    if (object == null) {
+      return null;
+    }
+    T copy = object;
+    for (Step step : steps) {
+      Object value = step.accessor.get(object);
+      if (value == null) {
+        continue;
+      }
+      Object projected = step.project(value, copier);
+      if (projected != value) {
+        if (copy == object) {
+          copy = copier.copy(object);
+        }
+        step.accessor.set(copy, projected);
+      }
+    }
+    return copy;
+  }
+
+  private static Step[] compile(AttributeContainer attributeContainer, Predicate<Attribute> remove) {
+    if (attributeContainer == null || attributeContainer.getAttributes() == null) {
+      return NO_STEPS;
+    }
+    List<Step> steps = new ArrayList<>();
+    for (Attribute attribute : attributeContainer.getAttributes()) {
+      Schema.AttributeAccessor accessor = attribute.getAccessor();
+
+      if (remove.test(attribute)) {
+        if (!accessor.getType().isPrimitive()) {
+          steps.add(new ClearStep(accessor));
+        }
+      } else if (attribute.getType() == Type.COMPLEX) {
+        Step[] subSteps = compile(attributeContainer.getAttribute(attribute.getName()), remove);
+        // nothing to remove below this attribute, don't bother walking it
+        if (subSteps.length > 0) {
+          steps.add(attribute.isMultiValued()
+            ? new MultiValuedComplexStep(accessor, subSteps)
+            : new ComplexStep(accessor, subSteps));
+        }
+      }
+    }
+    return steps.toArray(NO_STEPS);
+  }
+
+  private abstract static class Step {
+
+    final Schema.AttributeAccessor accessor;
+
+    Step(Schema.AttributeAccessor accessor) {
+      this.accessor = accessor;
+    }
+
+    /**
+     * Returns the projection of the non-null attribute {@code value}, or {@code value} itself if it is unchanged.
+     */
+    abstract Object project(Object value, ShallowCopier copier);
+  }
+
+  private static final class ClearStep extends Step {
+
+    ClearStep(Schema.AttributeAccessor accessor) {
+      super(accessor);
+    }
+
+    @Override
+    Object project(Object value, ShallowCopier copier) {
+      log.debug("field to be set to null = {}", accessor.getType().getName());
+      return null;
+    }
+  }
+
+  private static final class ComplexStep extends Step {
+
+    private final Step[] steps;
+
+    ComplexStep(Schema.AttributeAccessor accessor, Step[] steps) {
+      super(accessor);
+      this.steps = steps;
+    }
+
+    @Override
+    Object project(Object value, ShallowCopier copier) {
+      return ProjectionPlan.project(value, steps, copier);
+    }
+  }
+
+  private static final class MultiValuedComplexStep extends Step {
+
+    private final Step[] steps;
+
+    MultiValuedComplexStep(Schema.AttributeAccessor accessor, Step[] steps) {
+      super(accessor);
+      this.steps = steps;
+    }
+
+    @Override
+    Object project(Object value, ShallowCopier copier) {
+      if (value instanceof Collection) {
+        Collection<?> values = (Collection<?>) value;
+        Collection<Object> projected = null;
+        int index = 0;
+        for (Object element : values) {
+          Object projectedElement = ProjectionPlan.project(element, steps, copier);
+          if (projected == null && projectedElement != element) {
+            projected = value instanceof Set ? new LinkedHashSet<>() : new ArrayList<>(values.size());
+            Iterator<?> unchanged = values.iterator();
+            for (int i = 0; i < index; i++) {
+              projected.add(unchanged.next());
+            }
+          }
+          if (projected != null) {
+            projected.add(projectedElement);
+          }
+          index++;
+        }
+        return projected != null ? projected : value;
+      } else if (value instanceof Object[]) {
+        Object[] values = (Object[]) value;
+        Object[] projected = null;
+        for (int i = 0; i < values.length; i++) {
+          Object projectedElement = ProjectionPlan.project(values[i], steps, copier);
+          if (projectedElement != values[i]) {
+            if (projected == null) {
+              projected = values.clone();
+            }
+            projected[i] = projectedElement;
+          }
+        }
+        return projected != null ? projected : value;
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+
+/**
+ * Runs the independent parts of a request concurrently: bulk operations when
+ * {@link ServerConfiguration#getBulkMaxParallelism() bulkMaxParallelism} is above 1, and the repositories of a search
+ * from the server root when {@link ServerConfiguration#getSearchMaxParallelism() searchMaxParallelism} is above 1.
+ * <p>
+ * Tasks run on the server configuration's {@link ServerConfiguration#getExecutor() executor}, typically a container
+ * managed executor that propagates the request context to the repositories. Without one, they run on a pool of daemon
+ * threads owned by this bean and shut down with it, repositories must then be thread safe and must not depend on
+ * request scoped state. The pool has as many threads as the larger parallelism, shared by all requests, and a bounded
+ * queue, once both are full tasks run on the thread of the request that submits them.
+ */
+@ApplicationScoped
+public class RequestExecutor implements AutoCloseable {
+
+  private static final int QUEUE_SIZE_PER_THREAD = 16;
+
+  private static final AtomicInteger THREADS = new AtomicInteger();
+
+  private final ServerConfiguration serverConfiguration;
+
+  private ThreadPoolExecutor pool;
+
+  private boolean closed;
+
+  @Inject
+  public RequestExecutor(ServerConfiguration serverConfiguration) {
+    this.serverConfiguration = serverConfiguration;
+  }
+
+  public RequestExecutor() {
+    // CDI
+    this(null);
+  }
+
+  /**
+   * Runs the tasks and waits for all of them, like {@link java.util.concurrent.ExecutorService#invokeAll}.
+   *
+   * @throws InterruptedException If interrupted while waiting, the tasks that didn't complete are cancelled.
+   */
+  public <T> List<Future<T>> invokeAll(List<? extends Callable<T>> tasks) throws InterruptedException {
+    Executor executor = executor();
+    List<Future<T>> futures = new ArrayList<>(tasks.size());
+    try {
+      for (Callable<T> task : tasks) {
+        FutureTask<T> future = new FutureTask<>(task);
+        futures.add(future);
+        executor.execute(future);
+      }
+      for (Future<T> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException | CancellationException e) {
+          // reported by the future to the caller
+        }
+      }
+      return futures;
+    } catch (InterruptedException | RuntimeException e) {
+      futures.forEach(future -> future.cancel(true));
+      throw e;
+    }
+  }
+
+  private Executor executor() {
+    Executor executor = serverConfiguration != null ? serverConfiguration.getExecutor() : null;
+    return executor != null ? executor : pool();
+  }
+
+  private synchronized ThreadPoolExecutor pool() {
+    if (closed) {
+      throw new IllegalStateException("The request executor has been closed");
+    }
+    if (pool == null) {
+      int threads = 1;
+      if (serverConfiguration != null) {
+        threads = Math.max(threads, Math.max(serverConfiguration.getBulkMaxParallelism(), serverConfiguration.getSearchMaxParallelism()));
+      }
+      pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * QUEUE_SIZE_PER_THREAD), runnable -> {
+        Thread thread = new Thread(runnable, "scim-request-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }, (runnable, rejectedBy) -> {
+        // unlike CallerRunsPolicy, also runs tasks rejected while shutting down, nothing waits on a dropped task
+        runnable.run();
+      });
+      pool.allowCoreThreadTimeOut(true);
+    }
+    return pool;
+  }
+
+  /**
+   * Shuts down the pool of this bean, an executor set in the server configuration is left running.
+   */
+  @PreDestroy
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+}
@@ -58,13 +58,21 @@ public final class ScimResourceHelper {
     GenericExceptionMapper.class);
 
   static final Set<Class<?>> MEDIA_TYPE_SUPPORT_CLASSES = Set.of(
-    ScimJacksonXmlBindJsonProvider.class
+    ScimJacksonXmlBindJsonProvider.class,
+    StreamedListResponseWriter.class,
+    BulkRequestReader.class
+  );
+
+  static final Set<Class<?>> FILTER_CLASSES = Set.of(
+    StreamedListResponseFilters.Track.class,
+    StreamedListResponseFilters.Release.class
   );
 
   static final Set<Class<?>> SCIMPLE_CLASSES = Stream.of(
       RESOURCE_CLASSES,
       EXCEPTION_MAPPER_CLASSES,
-      MEDIA_TYPE_SUPPORT_CLASSES)
+      MEDIA_TYPE_SUPPORT_CLASSES,
+      FILTER_CLASSES)
       .flatMap(Collection::stream)
       .collect(Collectors.toUnmodifiableSet());
 
@@ -19,8 +19,350 @@
 
 package org.apache.directory.scim.server.rest;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.RepositoryRegistry;
+import org.apache.directory.scim.core.repository.extensions.AttributeFilterExtension;
+import org.apache.directory.scim.core.repository.extensions.ClientFilterException;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
 import org.apache.directory.scim.protocol.SearchResource;
+import org.apache.directory.scim.protocol.data.ListResponse;
+import org.apache.directory.scim.protocol.data.SearchRequest;
+import org.apache.directory.scim.protocol.exception.ScimException;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.server.exception.AttributeException;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortComparators;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.StreamingFilterResponse;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.filter.attribute.ScimRequestContext;
+import org.apache.directory.scim.spec.resources.ScimResource;
 
+/**
+ * Searches every resource type from the server root, see
+ * <a href="https://datatracker.ietf.org/doc/html/rfc7644#section-3.4.3">RFC 7644 section 3.4.3</a>.
+ * <p>
+ * The search is sent to every registered repository at once, each one only returns the first
+ * {@code startIndex - 1 + count} resources in the requested order. Those are merged into a single order, and the
+ * requested page is taken from the merged results, the totals of the repositories add up to the total of the search.
+ * Repositories are searched one after the other, unless {@code searchMaxParallelism} is above one, they are then
+ * searched concurrently by the {@link RequestExecutor}.
+ */
+@Slf4j
+@ApplicationScoped
 public class SearchResourceImpl implements SearchResource {
 
+  private final SchemaRegistry schemaRegistry;
+
+  private final RepositoryRegistry repositoryRegistry;
+
+  private final ServerConfiguration serverConfiguration;
+
+  private final RequestExecutor requestExecutor;
+
+  private final AttributeUtil attributeUtil;
+
+  @Inject
+  public SearchResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ServerConfiguration serverConfiguration, RequestExecutor requestExecutor) {
+    this.schemaRegistry = schemaRegistry;
+    this.repositoryRegistry = repositoryRegistry;
+    this.serverConfiguration = serverConfiguration;
+    this.requestExecutor = requestExecutor;
+    this.attributeUtil = new AttributeUtil(schemaRegistry);
+  }
+
+  public SearchResourceImpl() {
+    // CDI
+    this(null, null, null, null);
+  }
+
+  @Override
+  public Response find(SearchRequest request) throws ScimException, ResourceException {
+    Set<AttributeReference> attributeReferences = Optional.ofNullable(request.getAttributes())
+                                                          .orElse(Collections.emptySet());
+    Set<AttributeReference> excludedAttributeReferences = Optional.ofNullable(request.getExcludedAttributes())
+                                                                  .orElse(Collections.emptySet());
+    if (!attributeReferences.isEmpty() && !excludedAttributeReferences.isEmpty()) {
+      throw new ScimException(Status.BAD_REQUEST, "Cannot include both attributes and excluded attributes in a single request");
+    }
+
+    PageRequest pageRequest = request.getPageRequest();
+    if (pageRequest.getCursor() != null) {
+      // a cursor belongs to a single repository, it can't continue a merged page
+      throw new ScimException(Status.BAD_REQUEST, "Cursor pagination is not supported when searching from the server root");
+    }
+    int startIndex = Math.max(Optional.ofNullable(pageRequest.getStartIndex()).orElse(1), 1);
+    Integer count = pageRequest.getCount() != null ? Math.max(pageRequest.getCount(), 0) : null;
+    if (serverConfiguration != null && serverConfiguration.getFilterMaxResults() > 0) {
+      // the advertised maximum page size also bounds the resources read from each repository
+      count = Math.min(count != null ? count : Integer.MAX_VALUE, serverConfiguration.getFilterMaxResults());
+    }
+
+    // the page can only contain each repository's first startIndex - 1 + count resources
+    PageRequest candidates = new PageRequest();
+    candidates.setStartIndex(1);
+    candidates.setCount(count != null ? (int) Math.min((long) startIndex - 1 + count, Integer.MAX_VALUE) : null);
+
+    SortRequest sortRequest = request.getSortRequest();
+    List<StreamingFilterResponse<? extends ScimResource>> responses = search(request.getFilter(), candidates, sortRequest);
+    try {
+      int totalResults = 0;
+      List<Iterator<? extends ScimResource>> resources = new ArrayList<>(responses.size());
+      for (StreamingFilterResponse<? extends ScimResource> response : responses) {
+        totalResults += response.getTotalResults();
+        resources.add(response.getResources().iterator());
+      }
+
+      Iterator<ScimResource> merged = new MergedIterator(resources, SortComparators.compile(sortRequest, schemaRegistry::getSchema));
+      for (int skipped = 1; skipped < startIndex && merged.hasNext(); skipped++) {
+        merged.next();
+      }
+      List<ScimResource> page = new ArrayList<>();
+      while ((count == null || page.size() < count) && merged.hasNext()) {
+        page.add(merged.next());
+      }
+      log.debug("Search returned {} of {} resources", page.size(), totalResults);
+
+      ListResponse<ScimResource> listResponse = new ListResponse<>();
+      listResponse.setTotalResults(totalResults);
+      listResponse.setStartIndex(startIndex);
+      listResponse.setItemsPerPage(page.size());
+      if (!page.isEmpty()) {
+        listResponse.setResources(project(processFilterAttributeExtensions(page, attributeReferences, excludedAttributeReferences),
+          attributeReferences, excludedAttributeReferences));
+      }
+      return Response.ok()
+                     .entity(listResponse)
+                     .build();
+    } finally {
+      responses.forEach(StreamingFilterResponse::close);
+    }
+  }
+
+  /**
+   * Sends the search to every repository, at most {@code searchMaxParallelism} at a time, returns their responses
+   * ordered by resource type so that resources that sort alike are paged in the same order by every request.
+   */
+  private List<StreamingFilterResponse<? extends ScimResource>> search(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws ResourceException {
+    List<Map.Entry<Class<? extends ScimResource>, Repository<? extends ScimResource>>> repositories = new ArrayList<>(repositoryRegistry.getRepositoryMap().entrySet());
+    repositories.sort(Comparator.comparing(entry -> entry.getKey().getName()));
+
+    List<Callable<StreamingFilterResponse<? extends ScimResource>>> searches = new ArrayList<>(repositories.size());
+    for (Map.Entry<Class<? extends ScimResource>, Repository<? extends ScimResource>> entry : repositories) {
+      Repository<? extends ScimResource> repository = entry.getValue();
+      searches.add(() -> {
+        StreamingFilterResponse<? extends ScimResource> response = repository.stream(filter, pageRequest, sortRequest);
+        if (response == null) {
+          response = StreamingFilterResponse.of(null);
+        }
+        // count while the other repositories search too
+        response.getTotalResults();
+        return response;
+      });
+    }
+
+    int parallelism = serverConfiguration != null ? Math.max(serverConfiguration.getSearchMaxParallelism(), 1) : 1;
+    List<StreamingFilterResponse<? extends ScimResource>> responses = new ArrayList<>(searches.size());
+    try {
+      for (int start = 0; start < searches.size(); start += parallelism) {
+        List<Callable<StreamingFilterResponse<? extends ScimResource>>> wave = searches.subList(start, Math.min(start + parallelism, searches.size()));
+        if (wave.size() == 1) {
+          responses.add(call(wave.get(0)));
+        } else {
+          responses.addAll(invokeAll(wave));
+        }
+      }
+    } catch (ResourceException | RuntimeException | Error e) {
+      close(responses, e);
+      throw e;
+    }
+    return responses;
+  }
+
+  private static <T> T call(Callable<T> search) throws ResourceException {
+    try {
+      return search.call();
+    } catch (ResourceException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Waits for every search, if one failed the responses of the others are closed and its exception is thrown.
+   */
+  private <T extends AutoCloseable> List<T> invokeAll(List<Callable<T>> searches) throws ResourceException {
+    List<T> responses = new ArrayList<>(searches.size());
+    Throwable failure = null;
+    try {
+      for (Future<T> future : requestExecutor.invokeAll(searches)) {
+        try {
+          responses.add(future.get());
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure = new IllegalStateException("Interrupted while waiting for the search", e);
+    }
+    if (failure == null) {
+      return responses;
+    }
+
+    close(responses, failure);
+    if (failure instanceof ResourceException) {
+      throw (ResourceException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new IllegalStateException(failure);
+  }
+
+  private static void close(List<? extends AutoCloseable> responses, Throwable failure) {
+    for (AutoCloseable response : responses) {
+      try {
+        response.close();
+      } catch (Exception e) {
+        failure.addSuppressed(e);
+      }
+    }
+  }
+
+  /**
+   * Runs the attribute filter extensions of each resource type on the resources of that type, in place.
+   */
+  private List<ScimResource> processFilterAttributeExtensions(List<ScimResource> page, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws ScimException {
+    Map<Class<? extends ScimResource>, List<Integer>> positions = new HashMap<>();
+    for (int i = 0; i < page.size(); i++) {
+      positions.computeIfAbsent(page.get(i).getClass(), type -> new ArrayList<>()).add(i);
+    }
+
+    List<ScimResource> results = new ArrayList<>(page);
+    for (Map.Entry<Class<? extends ScimResource>, List<Integer>> entry : positions.entrySet()) {
+      List<AttributeFilterExtension> attributeFilterExtensions = repositoryRegistry.getAttributeFilterExtensions(entry.getKey());
+      if (attributeFilterExtensions.isEmpty()) {
+        continue;
+      }
+      List<ScimResource> resources = new ArrayList<>();
+      entry.getValue().forEach(i -> resources.add(page.get(i)));
+
+      List<? extends ScimResource> filtered = resources;
+      ScimRequestContext scimRequestContext = new ScimRequestContext(attributeReferences, excludedAttributeReferences);
+      for (AttributeFilterExtension attributeFilterExtension : attributeFilterExtensions) {
+        try {
+          filtered = attributeFilterExtension.filterAttributes(filtered, scimRequestContext);
+        } catch (ClientFilterException e) {
+          throw new ScimException(Status.fromStatusCode(e.getStatus()), e.getMessage(), e);
+        }
+      }
+      for (int i = 0; i < entry.getValue().size(); i++) {
+        results.set(entry.getValue().get(i), filtered.get(i));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Projects the page, the attributes are resolved once for each resource type.
+   */
+  private List<ScimResource> project(List<ScimResource> page, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws ScimException {
+    Map<String, ProjectionPlan> projections = new HashMap<>();
+    List<ScimResource> projected = new ArrayList<>(page.size());
+    try {
+      for (ScimResource resource : page) {
+        ProjectionPlan projection = projections.get(resource.getResourceType());
+        if (projection == null) {
+          projection = attributeUtil.getProjection(resource.getResourceType(), attributeReferences, excludedAttributeReferences);
+          projections.put(resource.getResourceType(), projection);
+        }
+        projected.add(attributeUtil.applyProjection(resource, projection));
+      }
+    } catch (AttributeException e) {
+      throw new ScimException(Status.INTERNAL_SERVER_ERROR, "Failed to parse the attribute query value " + e.getMessage(), e);
+    }
+    return projected;
+  }
+
+  /**
+   * Merges the sorted results of the repositories, a k-way merge that holds the next resource of each repository in a
+   * heap. Without a sort, or between resources that sort alike, the repositories follow each other in order.
+   */
+  private static final class MergedIterator implements Iterator<ScimResource> {
+
+    private final PriorityQueue<Head> heads;
+
+    private MergedIterator(List<Iterator<? extends ScimResource>> resources, Comparator<ScimResource> order) {
+      Comparator<Head> byResource = order != null
+        ? Comparator.comparing(head -> head.resource, order)
+        : (left, right) -> 0;
+      this.heads = new PriorityQueue<>(Math.max(resources.size(), 1), byResource.thenComparingInt(head -> head.source));
+      for (int source = 0; source < resources.size(); source++) {
+        advance(new Head(resources.get(source), source));
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heads.isEmpty();
+    }
+
+    @Override
+    public ScimResource next() {
+      Head head = heads.remove();
+      ScimResource resource = head.resource;
+      advance(head);
+      return resource;
+    }
+
+    private void advance(Head head) {
+      if (head.resources.hasNext()) {
+        head.resource = head.resources.next();
+        heads.add(head);
+      }
+    }
+  }
+
+  private static final class Head {
+
+    private final Iterator<? extends ScimResource> resources;
+
+    private final int source;
+
+    private ScimResource resource;
+
+    private Head(Iterator<? extends ScimResource> resources, int source) {
+      this.resources = resources;
+      this.source = source;
+    }
+  }
 }
@@ -38,6 +38,7 @@ import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.AuthenticationSchema;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.BulkConfiguration;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.FilterConfiguration;
+import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.PaginationConfiguration;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.SupportedConfiguration;
 
 @ApplicationScoped
@@ -68,6 +69,7 @@ public class ServiceProviderConfigResourceImpl implements ServiceProviderConfigR
     FilterConfiguration filter = serverConfiguration.getFilterConfiguration();
     SupportedConfiguration patch = serverConfiguration.getPatchConfiguration();
     SupportedConfiguration sort = serverConfiguration.getSortConfiguration();
+    PaginationConfiguration pagination = serverConfiguration.getPaginationConfiguration();
     String documentationUrl = serverConfiguration.getDocumentationUri();
     String externalId = serverConfiguration.getId();
     String id = serverConfiguration.getId();
@@ -91,6 +93,7 @@ public class ServiceProviderConfigResourceImpl implements ServiceProviderConfigR
     serviceProviderConfiguration.setMeta(meta);
     serviceProviderConfiguration.setPatch(patch);
     serviceProviderConfiguration.setSort(sort);
+    serviceProviderConfiguration.setPagination(pagination);
     
     try {
       EntityTag etag = etagGenerator.generateEtag(serviceProviderConfiguration);
@@ -0,0 +1,108 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates shallow copies of resources, extensions and complex attribute values, so a {@link ProjectionPlan} only copies
+ * the objects it actually removes attributes from.
+ * <p>
+ * The constructor and fields of each class are looked up once. Classes without a no-arg constructor, or whose fields
+ * cannot be made accessible, are copied with a Jackson round trip instead.
+ */
+@Slf4j
+final class ShallowCopier {
+
+  private final ObjectMapper objectMapper;
+
+  private final ClassValue<Copier> copiers = new ClassValue<>() {
+    @Override
+    protected Copier computeValue(Class<?> type) {
+      return createCopier(type);
+    }
+  };
+
+  ShallowCopier(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  @SuppressWarnings("unchecked")
+  <T> T copy(T object) {
+    return (T) copiers.get(object.getClass()).copy(object);
+  }
+
+  private Copier createCopier(Class<?> type) {
+    try {
+      Constructor<?> constructor = type.getDeclaredConstructor();
+      constructor.setAccessible(true);
+
+      List<Field> fields = new ArrayList<>();
+      for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+        for (Field field : current.getDeclaredFields()) {
+          if (!Modifier.isStatic(field.getModifiers())) {
+            field.setAccessible(true);
+            fields.add(field);
+          }
+        }
+      }
+      return new FieldCopier(constructor, fields.toArray(new Field[0]));
+    } catch (NoSuchMethodException | RuntimeException e) {
+      log.debug("Unable to create a shallow copier for {}, falling back to Jackson", type.getName(), e);
+      return object -> objectMapper.convertValue(object, object.getClass());
+    }
+  }
+
+  private interface Copier {
+    Object copy(Object object);
+  }
+
+  private static final class FieldCopier implements Copier {
+
+    private final Constructor<?> constructor;
+
+    private final Field[] fields;
+
+    FieldCopier(Constructor<?> constructor, Field[] fields) {
+      this.constructor = constructor;
+      this.fields = fields;
+    }
+
+    @Override
+    public Object copy(Object object) {
+      try {
+        Object copy = constructor.newInstance();
+        for (Field field : fields) {
+          field.set(copy, field.get(object));
+        }
+        return copy;
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalArgumentException("Unable to copy " + object.getClass().getName(), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.directory.scim.server.rest;
+
+import org.apache.directory.scim.protocol.data.ListResponse;
+import org.apache.directory.scim.spec.filter.StreamingFilterResponse;
+import org.apache.directory.scim.spec.resources.ScimResource;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A ListResponse whose resources are read from a repository's stream while {@link StreamedListResponseWriter} writes
+ * it, each resource is projected with a {@link ProjectionPlan} as it is read.
+ * <p>
+ * Neither the repository's results nor their projected copies are held in memory. The resources are not a
+ * {@code List}, they can only be read once, and {@code itemsPerPage} is counted while they are written. The stream is
+ * closed by the writer, or by {@link StreamedListResponseFilters} if the response is not written.
+ */
+final class StreamedListResponse<T extends ScimResource> extends ListResponse<T> implements AutoCloseable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final transient T first;
+
+  private final transient Iterator<T> rest;
+
+  private final transient StreamingFilterResponse<T> source;
+
+  private final transient AttributeUtil attributeUtil;
+
+  private final transient ProjectionPlan projection;
+
+  private boolean read;
+
+  private boolean closed;
+
+  /**
+   * @param first The first resource, already projected before the response is returned.
+   * @param rest The remaining resources.
+   * @param source Closed with this response.
+   * @param projection The projection of the page's resource type, resolved before the response is written.
+   */
+  StreamedListResponse(T first, Iterator<T> rest, StreamingFilterResponse<T> source, AttributeUtil attributeUtil, ProjectionPlan projection) {
+    this.first = first;
+    this.rest = rest;
+    this.source = source;
+    this.attributeUtil = attributeUtil;
+    this.projection = projection;
+  }
+
+  /**
+   * Returns the projected resources, read from the stream as they are iterated. A resource that can't be projected
+   * aborts the response like one of a {@link ProjectedResourceList}, it is already partly written at that point.
+   *
+   * @throws IllegalStateException If the resources have already been read.
+   */
+  synchronized Iterator<T> readResources() {
+    if (read) {
+      throw new IllegalStateException("The resources of a streamed ListResponse can only be read once");
+    }
+    read = true;
+
+    return new Iterator<>() {
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        return index == 0 || rest.hasNext();
+      }
+
+      @Override
+      public T next() {
+        if (index == 0) {
+          index++;
+          return first;
+        }
+        if (!rest.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return ProjectedResourceList.project(attributeUtil, rest.next(), projection, index++);
+      }
+    };
+  }
+
+  @Override
+  public synchronized void close() {
+    if (!closed) {
+      closed = true;
+      source.close();
+    }
+  }
+
+  // equals, hashCode and toString must not read the resources
+
+  @Override
+  public boolean equals(Object o) {
+    return this == o;
+  }
+
+  @Override
+  public int hashCode() {
+    return System.identityHashCode(this);
+  }
+
+  @Override
+  public String toString() {
+    return "StreamedListResponse(totalResults=" + getTotalResults() + ")";
+  }
+}
@@ -0,0 +1,68 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.directory.scim.server.rest;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Closes the repository stream of a {@link StreamedListResponse} that is not written by
+ * {@link StreamedListResponseWriter}. This happens for a HEAD request, when a response filter replaces the entity, or
+ * when a failing filter is mapped to an error response.
+ * <p>
+ * Response filters run in descending order of priority, {@link Track} runs first and records the response returned
+ * by the resource, {@link Release} runs last and closes it unless it is still the entity that will be written.
+ */
+public final class StreamedListResponseFilters {
+
+  private static final String PROPERTY = StreamedListResponse.class.getName();
+
+  private StreamedListResponseFilters() {
+  }
+
+  @Provider
+  @Priority(Integer.MAX_VALUE)
+  public static class Track implements ContainerResponseFilter {
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+      if (responseContext.getEntity() instanceof StreamedListResponse) {
+        requestContext.setProperty(PROPERTY, responseContext.getEntity());
+      }
+    }
+  }
+
+  @Provider
+  @Priority(Integer.MIN_VALUE)
+  public static class Release implements ContainerResponseFilter {
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+      Object tracked = requestContext.getProperty(PROPERTY);
+      if (tracked instanceof StreamedListResponse
+        && (tracked != responseContext.getEntity() || HttpMethod.HEAD.equals(requestContext.getMethod()))) {
+        ((StreamedListResponse<?>) tracked).close();
+      }
+    }
+  }
+}
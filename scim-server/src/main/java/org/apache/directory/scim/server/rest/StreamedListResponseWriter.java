@@ -0,0 +1,99 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.directory.scim.server.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.protocol.Constants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes a {@link StreamedListResponse}, each resource is read from the repository's stream and written before the
+ * next one is read. {@code itemsPerPage} is written after the resources, it's the number of resources written.
+ * The stream is closed once written, or if writing fails.
+ */
+@Provider
+@Produces({Constants.SCIM_CONTENT_TYPE, MediaType.APPLICATION_JSON})
+@ApplicationScoped
+public class StreamedListResponseWriter implements MessageBodyWriter<StreamedListResponse<?>> {
+
+  private final ObjectMapper objectMapper;
+
+  public StreamedListResponseWriter() {
+    // CDI
+    this.objectMapper = null;
+  }
+
+  @Inject
+  public StreamedListResponseWriter(SchemaRegistry schemaRegistry) {
+    this.objectMapper = ObjectMapperFactory.createObjectMapper(schemaRegistry);
+  }
+
+  @Override
+  public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    return StreamedListResponse.class.isAssignableFrom(type);
+  }
+
+  @Override
+  public void writeTo(StreamedListResponse<?> listResponse, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+    try (listResponse) {
+      // the attributes of the ListResponse besides its resources, they are known before the resources are read
+      ObjectNode header = objectMapper.valueToTree(listResponse);
+
+      JsonGenerator generator = objectMapper.getFactory().createGenerator(entityStream);
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.writeStartObject();
+      for (Iterator<Map.Entry<String, JsonNode>> fields = header.fields(); fields.hasNext(); ) {
+        Map.Entry<String, JsonNode> field = fields.next();
+        generator.writeFieldName(field.getKey());
+        generator.writeTree(field.getValue());
+      }
+
+      int itemsPerPage = 0;
+      generator.writeArrayFieldStart("Resources");
+      for (Iterator<?> resources = listResponse.readResources(); resources.hasNext(); ) {
+        objectMapper.writeValue(generator, resources.next());
+        itemsPerPage++;
+      }
+      generator.writeEndArray();
+      generator.writeNumberField("itemsPerPage", itemsPerPage);
+      generator.writeEndObject();
+      generator.close();
+
+      listResponse.setItemsPerPage(itemsPerPage);
+    }
+  }
+}
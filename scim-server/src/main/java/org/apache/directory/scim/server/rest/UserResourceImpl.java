@@ -29,6 +29,7 @@ import org.apache.directory.scim.core.repository.RepositoryRegistry;
 import org.apache.directory.scim.protocol.UserResource;
 import org.apache.directory.scim.spec.resources.ScimUser;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
 
 /**
  * @author shawn
@@ -38,13 +39,17 @@ import org.apache.directory.scim.core.schema.SchemaRegistry;
 @ApplicationScoped
 public class UserResourceImpl extends BaseResourceTypeResourceImpl<ScimUser> implements UserResource {
 
-  @Inject
   public UserResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry) {
-    super(schemaRegistry, repositoryRegistry, ScimUser.class);
+    this(schemaRegistry, repositoryRegistry, new ServerConfiguration());
+  }
+
+  @Inject
+  public UserResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ServerConfiguration serverConfiguration) {
+    super(schemaRegistry, repositoryRegistry, serverConfiguration, ScimUser.class);
   }
 
   public UserResourceImpl() {
     // CDI
-    this(null, null);
+    this(null, null, null);
   }
 }
@@ -23,6 +23,7 @@ import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.server.exception.AttributeDoesNotExistException;
 import org.apache.directory.scim.test.stub.ExampleObjectExtension;
 import org.apache.directory.scim.test.stub.ExampleObjectExtension.ComplexObject;
 import org.apache.directory.scim.spec.extension.EnterpriseExtension;
@@ -228,6 +229,89 @@ public class AttributeUtilTest {
     Assertions.assertThat(extension.getDepartment()).isNotNull();
   }
 
+  @Test
+  public void testProjectionIsResolvedOnce() throws Exception {
+    Set<AttributeReference> attributeSet = new HashSet<>();
+    attributeSet.add(new AttributeReference("userName"));
+    attributeSet.add(new AttributeReference(EnterpriseExtension.URN + ":costCenter"));
+
+    ProjectionPlan projection = attributeUtil.getProjection(ScimUser.RESOURCE_NAME, attributeSet, Set.of());
+
+    Set<AttributeReference> sameAttributes = Set.of(new AttributeReference("userName"), new AttributeReference(EnterpriseExtension.URN + ":costCenter"));
+    Assertions.assertThat(attributeUtil.getProjection(ScimUser.RESOURCE_NAME, sameAttributes, Set.of())).isSameAs(projection);
+    Assertions.assertThat(attributeUtil.getProjection(ScimUser.RESOURCE_NAME, Set.of(), sameAttributes)).isNotSameAs(projection);
+
+    // mutating the request's references must not affect the cached projection
+    attributeSet.iterator().next().setAttributeName("active");
+    Assertions.assertThat(attributeUtil.getProjection(ScimUser.RESOURCE_NAME, sameAttributes, Set.of())).isSameAs(projection);
+
+    for (int i = 0; i < 3; i++) {
+      ScimUser original = getScimUser();
+      ScimUser resource = attributeUtil.applyProjection(original, projection);
+
+      Assertions.assertThat(resource).isNotSameAs(original);
+      Assertions.assertThat(original.getActive()).isNotNull();
+      Assertions.assertThat(resource.getUserName()).isNotNull();
+      Assertions.assertThat(resource.getActive()).isNull();
+      Assertions.assertThat(resource.getExtension(EnterpriseExtension.class).getCostCenter()).isNotNull();
+      Assertions.assertThat(resource.getExtension(EnterpriseExtension.class).getDepartment()).isNull();
+      Assertions.assertThat(resource.getExtension(ExampleObjectExtension.class)).isNull();
+    }
+  }
+
+  @Test
+  public void testProjectionCopiesOnlyWhatItChanges() throws Exception {
+    ScimUser original = getScimUser();
+    String password = original.getPassword();
+    ExampleObjectExtension exampleObjectExtension = original.getExtension(ExampleObjectExtension.class);
+
+    Set<AttributeReference> attributeSet = Set.of(new AttributeReference("addresses.country"));
+    ScimUser resource = attributeUtil.setExcludedAttributesForDisplay(original, attributeSet);
+
+    Assertions.assertThat(resource).isNotSameAs(original);
+    Assertions.assertThat(resource.getPassword()).isNull();
+    Assertions.assertThat(resource.getAddresses().get(0).getCountry()).isNull();
+    Assertions.assertThat(resource.getAddresses().get(0).getStreetAddress()).isEqualTo(original.getAddresses().get(0).getStreetAddress());
+    Assertions.assertThat(resource.getName()).isSameAs(original.getName());
+    Assertions.assertThat(resource.getExtension(EnterpriseExtension.class)).isSameAs(original.getExtension(EnterpriseExtension.class));
+    Assertions.assertThat(resource.getExtension(ExampleObjectExtension.class).getValueRequest()).isNull();
+
+    // the original is left untouched
+    Assertions.assertThat(original.getPassword()).isEqualTo(password);
+    Assertions.assertThat(original.getAddresses().get(0).getCountry()).isNotNull();
+    Assertions.assertThat(original.getExtension(ExampleObjectExtension.class)).isSameAs(exampleObjectExtension);
+    Assertions.assertThat(exampleObjectExtension.getValueRequest()).isNotNull();
+
+    // nothing to remove, nothing to copy
+    ScimUser displayed = attributeUtil.setAttributesForDisplay(resource);
+    Assertions.assertThat(displayed).isSameAs(resource);
+  }
+
+  @Test
+  public void testProjectedResourceList() throws Exception {
+    List<ScimUser> page = List.of(getScimUser(), getScimUser());
+    ProjectionPlan projection = attributeUtil.getProjection(ScimUser.RESOURCE_NAME, Set.of(new AttributeReference("userName")), Set.of());
+
+    List<ScimUser> projected = new ProjectedResourceList<>(attributeUtil.applyProjection(page.get(0), projection), page, attributeUtil, projection);
+
+    Assertions.assertThat(projected).hasSize(2);
+    Assertions.assertThat(projected).allSatisfy(user -> {
+      Assertions.assertThat(user.getUserName()).isNotNull();
+      Assertions.assertThat(user.getName()).isNull();
+    });
+    Assertions.assertThat(page).allSatisfy(user -> Assertions.assertThat(user.getName()).isNotNull());
+  }
+
+  @Test
+  public void testUnknownAttributeIsNotCached() {
+    Set<AttributeReference> attributeSet = Set.of(new AttributeReference("doesNotExist"));
+
+    Assertions.assertThatThrownBy(() -> attributeUtil.getProjection(ScimUser.RESOURCE_NAME, attributeSet, Set.of()))
+      .isInstanceOf(AttributeDoesNotExistException.class);
+    Assertions.assertThatThrownBy(() -> attributeUtil.getProjection(ScimUser.RESOURCE_NAME, attributeSet, Set.of()))
+      .isInstanceOf(AttributeDoesNotExistException.class);
+  }
+
   private void debugJson(Object resource) throws JsonGenerationException, JsonMappingException, IOException {
     StringWriter sw = new StringWriter();
     objectMapper.writeValue(sw, resource);
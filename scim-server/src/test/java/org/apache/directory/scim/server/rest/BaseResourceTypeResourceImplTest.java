@@ -24,11 +24,22 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
 import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 
@@ -40,6 +51,11 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 
 import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.RepositoryRegistry;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.protocol.data.ListResponse;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.spec.filter.StreamingFilterResponse;
 import org.apache.directory.scim.test.stub.ExampleObjectExtension;
 import org.apache.directory.scim.test.stub.ExampleObjectExtension.ComplexObject;
 import org.apache.directory.scim.spec.extension.EnterpriseExtension;
@@ -99,6 +115,88 @@ public class BaseResourceTypeResourceImplTest {
     assertEquals(response.getStatus(), Status.FORBIDDEN.getStatusCode());
   }
   
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testGetById_NotModifiedFromVersion() throws ScimException, ResourceException {
+    // given
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = mock(BaseResourceTypeResourceImpl.class);
+    UriInfo uriInfo = mock(UriInfo.class);
+    Request request = mock(Request.class);
+    HttpHeaders headers = mock(HttpHeaders.class);
+    baseResourceImpl.uriInfo = uriInfo;
+    baseResourceImpl.request = request;
+    baseResourceImpl.headers = headers;
+
+    when(uriInfo.getQueryParameters()).thenReturn(new MultivaluedHashMap<>());
+    when(headers.getHeaderString(HttpHeaders.IF_NONE_MATCH)).thenReturn("\"v1\"");
+    when(baseResourceImpl.getRepositoryInternal()).thenReturn(repository);
+    when(baseResourceImpl.getEtagStrategy()).thenCallRealMethod();
+    when(repository.getVersion("1")).thenReturn("v1");
+    when(request.evaluatePreconditions(new EntityTag("v1"))).thenReturn(Response.notModified());
+    when(baseResourceImpl.getById("1", null, null)).thenCallRealMethod();
+
+    // when
+    Response response = baseResourceImpl.getById("1", null, null);
+
+    // then
+    assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+    assertEquals(new EntityTag("v1"), response.getEntityTag());
+    verify(repository, never()).get(any());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testGetById_PreconditionFailedFromVersion() throws ScimException, ResourceException {
+    // given
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = mock(BaseResourceTypeResourceImpl.class);
+    UriInfo uriInfo = mock(UriInfo.class);
+    Request request = mock(Request.class);
+    HttpHeaders headers = mock(HttpHeaders.class);
+    baseResourceImpl.uriInfo = uriInfo;
+    baseResourceImpl.request = request;
+    baseResourceImpl.headers = headers;
+
+    when(uriInfo.getQueryParameters()).thenReturn(new MultivaluedHashMap<>());
+    when(headers.getHeaderString(HttpHeaders.IF_NONE_MATCH)).thenReturn(null);
+    when(headers.getHeaderString(HttpHeaders.IF_MATCH)).thenReturn("\"v0\"");
+    when(baseResourceImpl.getRepositoryInternal()).thenReturn(repository);
+    when(baseResourceImpl.getEtagStrategy()).thenCallRealMethod();
+    when(repository.getVersion("1")).thenReturn("v1");
+    when(request.evaluatePreconditions(new EntityTag("v1"))).thenReturn(Response.status(Status.PRECONDITION_FAILED));
+    when(baseResourceImpl.getById("1", null, null)).thenCallRealMethod();
+
+    // when
+    Response response = baseResourceImpl.getById("1", null, null);
+
+    // then
+    assertEquals(Status.PRECONDITION_FAILED.getStatusCode(), response.getStatus());
+    assertEquals(new EntityTag("v1"), response.getEntityTag());
+    verify(repository, never()).get(any());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testGetById_UnconditionalReadSkipsVersion() throws Exception {
+    // given
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = mock(BaseResourceTypeResourceImpl.class);
+    UriInfo uriInfo = mock(UriInfo.class);
+    baseResourceImpl.uriInfo = uriInfo;
+    baseResourceImpl.request = mock(Request.class);
+    baseResourceImpl.headers = mock(HttpHeaders.class);
+
+    when(uriInfo.getQueryParameters()).thenReturn(new MultivaluedHashMap<>());
+    when(baseResourceImpl.getRepositoryInternal()).thenReturn(repository);
+    when(repository.get("1")).thenReturn(null);
+    when(baseResourceImpl.getById("1", null, null)).thenCallRealMethod();
+
+    // when
+    assertThrows(ScimException.class, () -> baseResourceImpl.getById("1", null, null));
+
+    // then
+    verify(repository).get("1");
+    verify(repository, never()).getVersion(any());
+  }
+
   @Test
   public void testQuery_NullParametersValid() throws ScimException, ResourceException {
     // given
@@ -111,10 +209,10 @@ public class BaseResourceTypeResourceImplTest {
 
     when(baseResourceImpl.find(searchRequest)).thenReturn(Response.ok().build());
     
-    when(baseResourceImpl.query(null, null, null, null, null, null, null)).thenCallRealMethod();
+    when(baseResourceImpl.query(null, null, null, null, null, null, null, null)).thenCallRealMethod();
     
     // when
-    Response response = baseResourceImpl.query(null, null, null, null, null, null, null);
+    Response response = baseResourceImpl.query(null, null, null, null, null, null, null, null);
     
     // then
     verify(baseResourceImpl, times(1)).find(searchRequest);
@@ -160,6 +258,146 @@ public class BaseResourceTypeResourceImplTest {
     assertThat(exception.getError().getDetail(), is("Cannot include both attributes and excluded attributes in a single request"));
   }
   
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFind_StreamsResourcesWhileWriting() throws Exception {
+    // given
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+    repositoryRegistry.registerRepository(ScimUser.class, repository);
+
+    AtomicBoolean closed = new AtomicBoolean();
+    AtomicInteger read = new AtomicInteger();
+    Stream<ScimUser> users = Stream.of("alice", "bob")
+      .map(userName -> {
+        read.incrementAndGet();
+        return new ScimUser().setUserName(userName);
+      })
+      .onClose(() -> closed.set(true));
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setStartIndex(9);
+    searchRequest.setCount(5);
+    when(repository.stream(null, searchRequest.getPageRequest(), searchRequest.getSortRequest()))
+      .thenReturn(new StreamingFilterResponse<>(users, searchRequest.getPageRequest(), () -> 10));
+
+    UserResourceImpl userResource = new UserResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration());
+
+    // when
+    ListResponse<ScimUser> listResponse = (ListResponse<ScimUser>) userResource.find(searchRequest).getEntity();
+
+    // then
+    assertEquals(10, listResponse.getTotalResults());
+    assertEquals(9, listResponse.getStartIndex());
+    // only the first resource is read before the response is written, the resources are counted while written
+    assertNull(listResponse.getItemsPerPage());
+    assertEquals(1, read.get());
+    assertFalse(closed.get());
+
+    ByteArrayOutputStream entity = new ByteArrayOutputStream();
+    new StreamedListResponseWriter(schemaRegistry).writeTo((StreamedListResponse<?>) listResponse, listResponse.getClass(), listResponse.getClass(),
+      new Annotation[0], MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(), entity);
+
+    assertThat(entity.toString(StandardCharsets.UTF_8), allOf(containsString("\"alice\""), containsString("\"bob\""),
+      containsString("\"itemsPerPage\":2"), containsString("\"totalResults\":10")));
+    assertEquals(2, listResponse.getItemsPerPage());
+    assertEquals(2, read.get());
+    assertTrue(closed.get());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFind_CursorPagination() throws Exception {
+    // given
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+    repositoryRegistry.registerRepository(ScimUser.class, repository);
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setCursor("page-2");
+    searchRequest.setCount(1);
+    when(repository.supportsCursorPagination()).thenReturn(true);
+    when(repository.stream(null, searchRequest.getPageRequest(), searchRequest.getSortRequest()))
+      .thenReturn(new StreamingFilterResponse<>(Stream.of(new ScimUser().setUserName("bob")), searchRequest.getPageRequest(), () -> 3)
+        .setNextCursor("page-3")
+        .setPreviousCursor("page-1"));
+
+    UserResourceImpl userResource = new UserResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration()
+      .setSupportsCursorPagination(true));
+
+    // when
+    ListResponse<ScimUser> listResponse = (ListResponse<ScimUser>) userResource.find(searchRequest).getEntity();
+
+    // then
+    assertEquals(3, listResponse.getTotalResults());
+    assertNull(listResponse.getStartIndex());
+    assertEquals("page-3", listResponse.getNextCursor());
+    assertEquals("page-1", listResponse.getPreviousCursor());
+  }
+
+  @Test
+  public void testFind_ErrorIfCursorPaginationNotSupported() throws Exception {
+    // given
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+    repositoryRegistry.registerRepository(ScimUser.class, repository);
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setCursor("");
+
+    UserResourceImpl userResource = new UserResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration());
+
+    // when
+    ScimException exception = assertThrows(ScimException.class, () -> userResource.find(searchRequest));
+
+    // then
+    assertEquals(Status.BAD_REQUEST, exception.getStatus());
+    assertThat(exception.getError().getDetail(), is("Cursor pagination is not supported"));
+    verify(repository, never()).stream(any(), any(), any());
+  }
+
+  @Test
+  public void testFind_ErrorIfRepositoryDoesNotSupportCursorPagination() throws Exception {
+    // given
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+    repositoryRegistry.registerRepository(ScimUser.class, repository);
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setCursor("page-2");
+
+    UserResourceImpl userResource = new UserResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration()
+      .setSupportsCursorPagination(true));
+
+    // when
+    ScimException exception = assertThrows(ScimException.class, () -> userResource.find(searchRequest));
+
+    // then
+    assertEquals(Status.BAD_REQUEST, exception.getStatus());
+    assertThat(exception.getError().getDetail(), is("Cursor pagination is not supported"));
+    verify(repository, never()).stream(any(), any(), any());
+  }
+
+  @Test
+  public void testFind_ErrorIfCursorPaginationNotConfigured() throws Exception {
+    // given
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+    repositoryRegistry.registerRepository(ScimUser.class, repository);
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setCursor("");
+
+    UserResourceImpl userResource = new UserResourceImpl(schemaRegistry, repositoryRegistry, null);
+
+    // when
+    ScimException exception = assertThrows(ScimException.class, () -> userResource.find(searchRequest));
+
+    // then
+    assertEquals(Status.BAD_REQUEST, exception.getStatus());
+    verify(repository, never()).stream(any(), any(), any());
+  }
+
   @Test
   public void testUpdate_ErrorIfBothAttributesAndExcludedAttributesExist() throws ScimException, ResourceException, PhoneNumberParseException {
     // given
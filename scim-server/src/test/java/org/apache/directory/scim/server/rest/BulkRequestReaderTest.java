@@ -0,0 +1,152 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.RepositoryRegistry;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.protocol.data.BulkOperation;
+import org.apache.directory.scim.protocol.data.BulkRequest;
+import org.apache.directory.scim.protocol.data.PatchRequest;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+public class BulkRequestReaderTest {
+
+  private static final String OPERATION = "{\"method\":\"POST\",\"path\":\"/Users\",\"bulkId\":\"%s\","
+    + "\"data\":{\"schemas\":[\"urn:ietf:params:scim:schemas:core:2.0:User\"],\"userName\":\"%s\"}}";
+
+  private SchemaRegistry schemaRegistry;
+
+  private ServerConfiguration serverConfiguration;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    schemaRegistry = new SchemaRegistry();
+    new RepositoryRegistry(schemaRegistry).registerRepository(ScimUser.class, mock(Repository.class));
+    serverConfiguration = new ServerConfiguration();
+  }
+
+  @Test
+  public void readsOperations() throws Exception {
+    BulkRequest bulkRequest = read(request(2), new MultivaluedHashMap<>());
+
+    assertThat(bulkRequest.getFailOnErrors()).isEqualTo(1);
+    assertThat(bulkRequest.getSchemas()).containsOnly(BulkRequest.SCHEMA_URI);
+    assertThat(bulkRequest.getOperations())
+      .extracting(BulkOperation::getBulkId)
+      .containsExactly("bulk-0", "bulk-1");
+    assertThat(bulkRequest.getOperations().get(1).getData()).isInstanceOf(ScimUser.class);
+    assertThat(((ScimUser) bulkRequest.getOperations().get(1).getData()).getUserName()).isEqualTo("user-1");
+  }
+
+  @Test
+  public void readsPatchOperationsSharingPaths() throws Exception {
+    String patch = "{\"method\":\"PATCH\",\"path\":\"/Groups/%s\",\"data\":{\"schemas\":[\"" + PatchRequest.SCHEMA_URI + "\"],"
+      + "\"Operations\":[{\"op\":\"add\",\"path\":\"members\",\"value\":[{\"value\":\"%s\"}]}]}}";
+    String body = "{\"schemas\":[\"" + BulkRequest.SCHEMA_URI + "\"],\"Operations\":["
+      + String.format(patch, "group-1", "user-1") + "," + String.format(patch, "group-2", "user-2") + "]}";
+
+    List<BulkOperation> operations = read(body, new MultivaluedHashMap<>()).getOperations();
+
+    assertThat(operations).extracting(BulkOperation::getData).containsOnlyNulls();
+    PatchOperation first = operations.get(0).getPatchOperations().get(0);
+    PatchOperation second = operations.get(1).getPatchOperations().get(0);
+    assertThat(first.getOperation()).isEqualTo(PatchOperation.Type.ADD);
+    assertThat(first.getPath().toString()).isEqualTo("members");
+    assertThat(first.getValue()).isEqualTo(List.of(Map.of("value", "user-1")));
+    assertThat(second.getPath()).isSameAs(first.getPath());
+  }
+
+  @Test
+  public void rejectsTooManyOperations() {
+    serverConfiguration.setBulkMaxOperations(2);
+
+    assertThatThrownBy(() -> read(request(3), new MultivaluedHashMap<>()))
+      .isInstanceOf(WebApplicationException.class)
+      .extracting(e -> ((WebApplicationException) e).getResponse().getStatus())
+      .isEqualTo(413);
+  }
+
+  @Test
+  public void rejectsLargePayloadWhileReading() {
+    String body = request(10);
+    serverConfiguration.setBulkMaxPayloadSize(body.length() / 2);
+
+    assertThatThrownBy(() -> read(body, new MultivaluedHashMap<>()))
+      .isInstanceOf(WebApplicationException.class)
+      .extracting(e -> ((WebApplicationException) e).getResponse().getStatus())
+      .isEqualTo(413);
+  }
+
+  @Test
+  public void rejectsLargeContentLengthBeforeReading() {
+    serverConfiguration.setBulkMaxPayloadSize(100);
+    MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+    headers.putSingle(HttpHeaders.CONTENT_LENGTH, "101");
+    InputStream unread = new InputStream() {
+      @Override
+      public int read() {
+        throw new AssertionError("body should not be read");
+      }
+    };
+
+    assertThatThrownBy(() -> new BulkRequestReader(schemaRegistry, serverConfiguration)
+      .readFrom(BulkRequest.class, BulkRequest.class, null, MediaType.APPLICATION_JSON_TYPE, headers, unread))
+      .isInstanceOf(WebApplicationException.class)
+      .extracting(e -> ((WebApplicationException) e).getResponse().getStatus())
+      .isEqualTo(413);
+  }
+
+  private BulkRequest read(String body, MultivaluedMap<String, String> headers) throws IOException {
+    return new BulkRequestReader(schemaRegistry, serverConfiguration)
+      .readFrom(BulkRequest.class, BulkRequest.class, null, MediaType.APPLICATION_JSON_TYPE, headers,
+        new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String request(int operations) {
+    StringBuilder body = new StringBuilder("{\"schemas\":[\"" + BulkRequest.SCHEMA_URI + "\"],\"failOnErrors\":1,\"Operations\":[");
+    for (int i = 0; i < operations; i++) {
+      if (i > 0) {
+        body.append(',');
+      }
+      body.append(String.format(OPERATION, "bulk-" + i, "user-" + i));
+    }
+    return body.append("]}").toString();
+  }
+}
@@ -21,15 +21,18 @@ package org.apache.directory.scim.server.rest;
 
 import jakarta.enterprise.inject.Instance;
 import jakarta.ws.rs.core.Response;
-import jakarta.ws.rs.core.UriBuilder;
 import jakarta.ws.rs.core.UriInfo;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
 import org.apache.directory.scim.server.exception.UnableToCreateResourceException;
+import org.apache.directory.scim.core.repository.BatchResult;
 import org.apache.directory.scim.core.repository.Repository;
 import org.apache.directory.scim.core.repository.RepositoryRegistry;
 import org.apache.directory.scim.protocol.data.BulkOperation;
 import org.apache.directory.scim.protocol.data.BulkRequest;
 import org.apache.directory.scim.protocol.data.BulkResponse;
 import org.apache.directory.scim.protocol.data.ErrorResponse;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.patch.PatchOperationPath;
 import org.apache.directory.scim.spec.resources.GroupMembership;
 import org.apache.directory.scim.spec.resources.ScimGroup;
 import org.apache.directory.scim.spec.resources.ScimResource;
@@ -39,15 +42,23 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InOrder;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class BulkResourceImplTest {
@@ -100,17 +111,9 @@ public class BulkResourceImplTest {
     when(groupRepository.getExtensionList()).thenReturn(Collections.emptyList());
     when(groupRepository.create(any())).thenReturn(group);
 
-    BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry);
+    BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration(), new RequestExecutor());
     UriInfo uriInfo = mock(UriInfo.class);
-    UriBuilder uriBuilder = mock(UriBuilder.class);
-    when(uriInfo.getBaseUriBuilder()).thenReturn(uriBuilder);
-    when(uriBuilder.path("/Users")).thenReturn(uriBuilder);
-    when(uriBuilder.path("alice-id")).thenReturn(uriBuilder);
-    when(uriBuilder.build())
-      .thenReturn(URI.create("https://scim.example.com/Users/alice-id"))
-      .thenReturn(URI.create("https://scim.example.com/Groups/tour-guides"));
-    when(uriBuilder.path("/Groups")).thenReturn(uriBuilder);
-    when(uriBuilder.path("tour-guides")).thenReturn(uriBuilder);
+    when(uriInfo.getBaseUri()).thenReturn(URI.create("https://scim.example.com/"));
 
     Response response = impl.doBulk(bulkRequest, uriInfo);
     BulkResponse bulkResponse = (BulkResponse) response.getEntity();
@@ -191,16 +194,9 @@ public class BulkResourceImplTest {
       .thenThrow(new UnableToCreateResourceException(Response.Status.BAD_REQUEST, "Expected Test Exception when bob is created"));
 
 
-    BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry);
+    BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration(), new RequestExecutor());
     UriInfo uriInfo = mock(UriInfo.class);
-    UriBuilder uriBuilder = mock(UriBuilder.class);
-    when(uriInfo.getBaseUriBuilder()).thenReturn(uriBuilder);
-    when(uriBuilder.path("/Users")).thenReturn(uriBuilder);
-    when(uriBuilder.path("alice-id")).thenReturn(uriBuilder);
-    when(uriBuilder.path("bob-id")).thenReturn(uriBuilder);
-    when(uriBuilder.build())
-      .thenReturn(URI.create("https://scim.example.com/Users/alice-id"))
-      .thenReturn(URI.create("https://scim.example.com/Users/bob-id"));
+    when(uriInfo.getBaseUri()).thenReturn(URI.create("https://scim.example.com/"));
 
     Response response = impl.doBulk(bulkRequest, uriInfo);
     BulkResponse bulkResponse = (BulkResponse) response.getEntity();
@@ -223,4 +219,334 @@ public class BulkResourceImplTest {
         .setResponse(new ErrorResponse(Response.Status.BAD_REQUEST, "Expected Test Exception when bob is created"))
         .setStatus(new BulkOperation.StatusWrapper(Response.Status.BAD_REQUEST)));
   }
+
+  @Test
+  public void dependentsThatWereNeverCreatedAreNotDeleted() throws Exception {
+    ScimUser alice = new ScimUser()
+      .setUserName("Alice");
+    ScimGroup tourGuides = new ScimGroup()
+      .setDisplayName("Tour Guides")
+      .setMembers(List.of(new GroupMembership()
+        .setType(GroupMembership.Type.USER)
+        .setValue("bulkId:alice")));
+
+    BulkRequest bulkRequest = new BulkRequest()
+      .setOperations(List.of(
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Users")
+          .setBulkId("alice")
+          .setData(alice),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Groups")
+          .setBulkId("tour-guides")
+          .setData(tourGuides)));
+
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+
+    Repository<ScimUser> userRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimUser.class, userRepository);
+    when(userRepository.create(any())).thenThrow(new UnableToCreateResourceException(Response.Status.BAD_REQUEST, "Expected Test Exception when alice is created"));
+
+    Repository<ScimGroup> groupRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimGroup.class, groupRepository);
+
+    BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration(), new RequestExecutor());
+    UriInfo uriInfo = mock(UriInfo.class);
+    when(uriInfo.getBaseUri()).thenReturn(URI.create("https://scim.example.com/"));
+
+    Response response = impl.doBulk(bulkRequest, uriInfo);
+    BulkResponse bulkResponse = (BulkResponse) response.getEntity();
+
+    assertThat(bulkResponse.getOperations())
+      .extracting(operation -> operation.getStatus().getCode().getStatusCode())
+      .containsExactly(400, 409);
+    verify(groupRepository, never()).create(any());
+    verify(groupRepository, never()).delete(any());
+  }
+
+  @Test
+  public void independentOperationsRunConcurrently() throws Exception {
+    ScimUser alice = new ScimUser()
+      .setUserName("Alice");
+    ScimGroup admins = new ScimGroup()
+      .setDisplayName("Admins");
+    ScimGroup tourGuides = new ScimGroup()
+      .setDisplayName("Tour Guides")
+      .setMembers(List.of(new GroupMembership()
+        .setType(GroupMembership.Type.USER)
+        .setValue("bulkId:alice")));
+
+    BulkRequest bulkRequest = new BulkRequest()
+      .setOperations(List.of(
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Groups")
+          .setBulkId("guides")
+          .setData(tourGuides),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Users")
+          .setBulkId("alice")
+          .setData(alice),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Groups")
+          .setBulkId("admins")
+          .setData(admins)));
+
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+
+    // alice and admins have to be created at the same time for either create to return
+    CountDownLatch creating = new CountDownLatch(2);
+
+    Repository<ScimUser> userRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimUser.class, userRepository);
+    when(userRepository.create(any())).thenAnswer(invocation -> {
+      creating.countDown();
+      assertThat(creating.await(10, TimeUnit.SECONDS)).isTrue();
+      return new ScimUser().setId("alice-id");
+    });
+
+    Repository<ScimGroup> groupRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimGroup.class, groupRepository);
+    when(groupRepository.create(any())).thenAnswer(invocation -> {
+      ScimGroup group = invocation.getArgument(0);
+      if (group == admins) {
+        creating.countDown();
+        assertThat(creating.await(10, TimeUnit.SECONDS)).isTrue();
+        return new ScimGroup().setId("admins");
+      }
+      assertThat(group.getMembers().get(0).getValue()).isEqualTo("alice-id");
+      return new ScimGroup().setId("tour-guides");
+    });
+
+    ServerConfiguration serverConfiguration = new ServerConfiguration()
+      .setBulkMaxParallelism(4);
+    BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, serverConfiguration, new RequestExecutor(serverConfiguration));
+    UriInfo uriInfo = mock(UriInfo.class);
+    when(uriInfo.getBaseUri()).thenReturn(URI.create("https://scim.example.com/"));
+
+    Response response = impl.doBulk(bulkRequest, uriInfo);
+    BulkResponse bulkResponse = (BulkResponse) response.getEntity();
+
+    assertThat(bulkResponse.getStatus()).isEqualTo(Response.Status.OK);
+    // operations are reported in request order
+    assertThat(bulkResponse.getOperations())
+      .extracting(BulkOperation::getLocation)
+      .containsExactly(
+        "https://scim.example.com/Groups/tour-guides",
+        "https://scim.example.com/Users/alice-id",
+        "https://scim.example.com/Groups/admins");
+  }
+
+  @Test
+  public void consecutiveOperationsAreBatched() throws Exception {
+    ScimUser alice = new ScimUser()
+      .setUserName("Alice");
+    ScimUser bob = new ScimUser()
+      .setUserName("Bob");
+
+    BulkRequest bulkRequest = new BulkRequest()
+      .setOperations(List.of(
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Users")
+          .setBulkId("alice")
+          .setData(alice),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Users")
+          .setBulkId("bob")
+          .setData(bob),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.DELETE)
+          .setPath("/Users/carol-id"),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.DELETE)
+          .setPath("/Users/dave-id")));
+
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+
+    Repository<ScimUser> userRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimUser.class, userRepository);
+    when(userRepository.createAll(List.of(alice, bob))).thenReturn(List.of(
+      BatchResult.success(new ScimUser().setId("alice-id")),
+      BatchResult.failure(new UnableToCreateResourceException(Response.Status.CONFLICT, "bob already exists"))));
+    when(userRepository.deleteAll(List.of("carol-id", "dave-id"))).thenReturn(List.of(
+      BatchResult.success(null),
+      BatchResult.success(null)));
+
+    BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration(), new RequestExecutor());
+    UriInfo uriInfo = mock(UriInfo.class);
+    when(uriInfo.getBaseUri()).thenReturn(URI.create("https://scim.example.com/"));
+
+    Response response = impl.doBulk(bulkRequest, uriInfo);
+    BulkResponse bulkResponse = (BulkResponse) response.getEntity();
+
+    assertThat(bulkResponse.getOperations())
+      .extracting(operation -> operation.getStatus().getCode().getStatusCode())
+      .containsExactly(201, 409, 204, 204);
+    assertThat(bulkResponse.getOperations().get(0).getLocation()).isEqualTo("https://scim.example.com/Users/alice-id");
+    verify(userRepository, never()).create(any());
+    verify(userRepository, never()).delete(any());
+  }
+
+  @Test
+  public void batchedPutOperationsPassTheirVersion() throws Exception {
+    ScimUser alice = new ScimUser()
+      .setUserName("Alice");
+    ScimUser bob = new ScimUser()
+      .setUserName("Bob");
+
+    BulkRequest bulkRequest = new BulkRequest()
+      .setOperations(List.of(
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.PUT)
+          .setPath("/Users/alice-id")
+          .setVersion("W/\"3\"")
+          .setData(alice),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.PUT)
+          .setPath("/Users/bob-id")
+          .setData(bob)));
+
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+
+    Repository<ScimUser> userRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimUser.class, userRepository);
+    when(userRepository.updateAll(Map.of("alice-id", alice, "bob-id", bob), Map.of("alice-id", "3"))).thenReturn(List.of(
+      BatchResult.success(alice),
+      BatchResult.success(bob)));
+
+    BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration(), new RequestExecutor());
+    UriInfo uriInfo = mock(UriInfo.class);
+    when(uriInfo.getBaseUri()).thenReturn(URI.create("https://scim.example.com/"));
+
+    Response response = impl.doBulk(bulkRequest, uriInfo);
+    BulkResponse bulkResponse = (BulkResponse) response.getEntity();
+
+    assertThat(bulkResponse.getOperations())
+      .extracting(operation -> operation.getStatus().getCode().getStatusCode())
+      .containsExactly(200, 200);
+  }
+
+  @Test
+  public void forwardReferencesAreResolvedBeforeTheFirstWrite() throws Exception {
+    ScimUser alice = new ScimUser()
+      .setUserName("Alice");
+    ScimGroup tourGuides = new ScimGroup()
+      .setDisplayName("Tour Guides")
+      .setMembers(List.of(new GroupMembership()
+        .setType(GroupMembership.Type.USER)
+        .setValue("bulkId:alice")));
+
+    // the group references a user that comes later in the request
+    BulkRequest bulkRequest = new BulkRequest()
+      .setOperations(List.of(
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Groups")
+          .setBulkId("guides")
+          .setData(tourGuides),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Users")
+          .setBulkId("alice")
+          .setData(alice)));
+
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+
+    Repository<ScimUser> userRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimUser.class, userRepository);
+    when(userRepository.create(any())).thenReturn(new ScimUser().setId("alice-id"));
+
+    Repository<ScimGroup> groupRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimGroup.class, groupRepository);
+    when(groupRepository.create(any())).thenAnswer(invocation -> {
+      ScimGroup group = invocation.getArgument(0);
+      assertThat(group.getMembers()).extracting(GroupMembership::getValue).containsExactly("alice-id");
+      return new ScimGroup().setId("tour-guides");
+    });
+
+    BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration(), new RequestExecutor());
+    UriInfo uriInfo = mock(UriInfo.class);
+    when(uriInfo.getBaseUri()).thenReturn(URI.create("https://scim.example.com/"));
+
+    Response response = impl.doBulk(bulkRequest, uriInfo);
+    BulkResponse bulkResponse = (BulkResponse) response.getEntity();
+
+    assertThat(bulkResponse.getStatus()).isEqualTo(Response.Status.OK);
+    assertThat(bulkResponse.getOperations())
+      .extracting(BulkOperation::getLocation)
+      .containsExactly(
+        "https://scim.example.com/Groups/tour-guides",
+        "https://scim.example.com/Users/alice-id");
+
+    InOrder inOrder = inOrder(userRepository, groupRepository);
+    inOrder.verify(userRepository).create(alice);
+    inOrder.verify(groupRepository).create(tourGuides);
+    // no second pass to fill in the reference
+    verify(groupRepository, never()).update(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void patchOperationsResolveBulkIds() throws Exception {
+    ScimUser alice = new ScimUser()
+      .setUserName("Alice");
+    PatchOperation addMember = new PatchOperation();
+    addMember.setOperation(PatchOperation.Type.ADD);
+    addMember.setPath(PatchOperationPath.fromString("members"));
+    addMember.setValue(new ArrayList<>(List.of(new HashMap<>(Map.of("value", "bulkId:alice")))));
+
+    // the patch references a user that comes later in the request
+    BulkRequest bulkRequest = new BulkRequest()
+      .setOperations(List.of(
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.PATCH)
+          .setPath("/Groups/tour-guides")
+          .setPatchOperations(List.of(addMember)),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Users")
+          .setBulkId("alice")
+          .setData(alice),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.PATCH)
+          .setPath("/Groups/tour-guides")));
+
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+
+    Repository<ScimUser> userRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimUser.class, userRepository);
+    when(userRepository.create(any())).thenReturn(new ScimUser().setId("alice-id"));
+
+    Repository<ScimGroup> groupRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimGroup.class, groupRepository);
+    when(groupRepository.patch(eq("tour-guides"), any(), any(), any(), any())).thenReturn(new ScimGroup().setId("tour-guides"));
+
+    BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, new ServerConfiguration(), new RequestExecutor());
+    UriInfo uriInfo = mock(UriInfo.class);
+    when(uriInfo.getBaseUri()).thenReturn(URI.create("https://scim.example.com/"));
+
+    Response response = impl.doBulk(bulkRequest, uriInfo);
+    BulkResponse bulkResponse = (BulkResponse) response.getEntity();
+
+    assertThat(bulkResponse.getOperations())
+      .extracting(operation -> operation.getStatus().getCode().getStatusCode())
+      .containsExactly(200, 201, 400);
+    assertThat(bulkResponse.getOperations().get(0).getLocation()).isEqualTo("https://scim.example.com/Groups/tour-guides");
+    assertThat(addMember.getValue()).isEqualTo(List.of(Map.of("value", "alice-id")));
+
+    InOrder inOrder = inOrder(userRepository, groupRepository);
+    inOrder.verify(userRepository).create(alice);
+    inOrder.verify(groupRepository).patch("tour-guides", null, List.of(addMember), Collections.emptySet(), Collections.emptySet());
+  }
 }
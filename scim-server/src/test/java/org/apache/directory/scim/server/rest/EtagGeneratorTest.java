@@ -0,0 +1,103 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.core.EntityTag;
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Meta;
+import org.apache.directory.scim.test.stub.ExampleObjectExtension;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EtagGeneratorTest {
+
+  private final EtagGenerator etagGenerator = new EtagGenerator();
+
+  @Test
+  public void computeEtagDoesNotModifyTheResource() throws Exception {
+    ScimUser user = user("bjensen");
+    Meta meta = user.getMeta();
+    meta.setVersion("1");
+
+    EntityTag etag = etagGenerator.computeEtag(user);
+
+    assertThat(etag.getValue()).isNotBlank();
+    assertThat(user.getMeta()).isSameAs(meta);
+    assertThat(meta.getVersion()).isEqualTo("1");
+  }
+
+  @Test
+  public void generateEtagSetsTheVersion() throws Exception {
+    ScimUser user = user("bjensen");
+    user.setMeta(null);
+
+    EntityTag etag = etagGenerator.generateEtag(user);
+
+    assertThat(user.getMeta().getVersion()).isEqualTo(etag.getValue());
+    assertThat(etagGenerator.generateEtag(user)).isEqualTo(etag);
+  }
+
+  @Test
+  public void etagIgnoresMeta() throws Exception {
+    ScimUser user = user("bjensen");
+    EntityTag etag = etagGenerator.computeEtag(user);
+
+    user.getMeta().setLastModified(LocalDateTime.now());
+    user.getMeta().setVersion("changed");
+
+    assertThat(etagGenerator.computeEtag(user)).isEqualTo(etag);
+  }
+
+  @Test
+  public void etagReflectsContent() throws Exception {
+    assertThat(etagGenerator.computeEtag(user("bjensen"))).isEqualTo(etagGenerator.computeEtag(user("bjensen")));
+    assertThat(etagGenerator.computeEtag(user("bjensen"))).isNotEqualTo(etagGenerator.computeEtag(user("jsmith")));
+  }
+
+  @Test
+  public void etagDoesNotDependOnExtensionOrder() throws Exception {
+    EnterpriseExtension enterpriseExtension = new EnterpriseExtension();
+    enterpriseExtension.setCostCenter("CC-123");
+    ExampleObjectExtension exampleObjectExtension = new ExampleObjectExtension();
+    exampleObjectExtension.setValueDefault("default");
+
+    ScimUser user1 = user("bjensen");
+    user1.addExtension(enterpriseExtension);
+    user1.addExtension(exampleObjectExtension);
+
+    ScimUser user2 = user("bjensen");
+    user2.addExtension(exampleObjectExtension);
+    user2.addExtension(enterpriseExtension);
+
+    assertThat(etagGenerator.computeEtag(user1)).isEqualTo(etagGenerator.computeEtag(user2));
+  }
+
+  private static ScimUser user(String userName) {
+    ScimUser user = new ScimUser();
+    user.setId("1");
+    user.setUserName(userName);
+    user.setActive(true);
+    return user;
+  }
+}
@@ -0,0 +1,119 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.core.EntityTag;
+import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.server.configuration.RepositoryVersionEtagStrategy;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Meta;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EtagStrategyTest {
+
+  @Test
+  public void repositoryVersion() {
+    ScimUser user = user();
+
+    assertThat(new RepositoryVersionEtagStrategy().getEtag(user)).isEqualTo(new EntityTag("42"));
+    assertThat(new RepositoryVersionEtagStrategy(true).getEtag(user)).isEqualTo(new EntityTag("42", true));
+
+    user.getMeta().setVersion(null);
+    assertThat(new RepositoryVersionEtagStrategy().getEtag(user)).isNull();
+  }
+
+  @Test
+  public void lastModified() {
+    ScimUser user = user();
+
+    EntityTag etag = new LastModifiedEtagStrategy().getEtag(user);
+    assertThat(etag.isWeak()).isTrue();
+    assertThat(etag.getValue()).isEqualTo("2024-05-21T10:15:30");
+
+    user.setMeta(null);
+    assertThat(new LastModifiedEtagStrategy().getEtag(user)).isNull();
+  }
+
+  @Test
+  public void contentHash() throws Exception {
+    ScimUser user = user();
+
+    EntityTag etag = new ContentHashEtagStrategy().getEtag(user);
+    assertThat(etag.isWeak()).isFalse();
+    assertThat(etag).isEqualTo(new EtagGenerator().computeEtag(user));
+    assertThat(user.getMeta().getVersion()).isEqualTo("42");
+  }
+
+  @Test
+  public void toVersionUsesTheOpaqueValue() {
+    assertThat(new RepositoryVersionEtagStrategy().toVersion(new EntityTag("42", true))).isEqualTo("42");
+    assertThat(new LastModifiedEtagStrategy().toVersion(new EntityTag("2024-05-21T10:15:30", true))).isNull();
+    assertThat(new ContentHashEtagStrategy().toVersion(new EntityTag("abc"))).isNull();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void versionEtagsArePassedToTheRepository() throws Exception {
+    Repository<ScimUser> repository = mock(Repository.class);
+
+    assertThat(EtagPreconditions.requestVersion("\"42\"", new RepositoryVersionEtagStrategy(), repository, "1")).isEqualTo("42");
+    assertThat(EtagPreconditions.requestVersion("*", new RepositoryVersionEtagStrategy(), repository, "1")).isNull();
+    assertThat(EtagPreconditions.requestVersion(null, new LastModifiedEtagStrategy(), repository, "1")).isNull();
+    verify(repository, never()).get(any());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void otherEtagsAreCheckedAgainstTheCurrentResource() throws Exception {
+    Repository<ScimUser> repository = mock(Repository.class);
+    when(repository.get("1")).thenReturn(user());
+
+    assertThat(EtagPreconditions.requestVersion("W/\"2024-05-21T10:15:30\"", new LastModifiedEtagStrategy(), repository, "1")).isNull();
+    assertThatThrownBy(() -> EtagPreconditions.requestVersion("W/\"2024-05-21T10:00:00\"", new LastModifiedEtagStrategy(), repository, "1"))
+      .isInstanceOfSatisfying(ResourceException.class, e -> assertThat(e.getStatus()).isEqualTo(412));
+    assertThatThrownBy(() -> EtagPreconditions.requestVersion("\"abc\"", new ContentHashEtagStrategy(), repository, "2"))
+      .isInstanceOfSatisfying(ResourceException.class, e -> assertThat(e.getStatus()).isEqualTo(404));
+
+    String hash = "\"" + new ContentHashEtagStrategy().getEtag(user()).getValue() + "\"";
+    assertThat(EtagPreconditions.requestVersion(hash, new ContentHashEtagStrategy(), repository, "1")).isNull();
+  }
+
+  private static ScimUser user() {
+    ScimUser user = new ScimUser();
+    user.setId("1");
+    user.setUserName("bjensen");
+    Meta meta = new Meta();
+    meta.setVersion("42");
+    meta.setLastModified(LocalDateTime.of(2024, 5, 21, 10, 15, 30));
+    user.setMeta(meta);
+    return user;
+  }
+}
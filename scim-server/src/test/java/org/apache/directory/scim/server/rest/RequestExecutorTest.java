@@ -0,0 +1,116 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RequestExecutorTest {
+
+  @Test
+  public void usesTheConfiguredExecutor() throws Exception {
+    AtomicInteger executed = new AtomicInteger();
+    ServerConfiguration serverConfiguration = new ServerConfiguration();
+    serverConfiguration.setExecutor(runnable -> {
+      executed.incrementAndGet();
+      runnable.run();
+    });
+
+    try (RequestExecutor requestExecutor = new RequestExecutor(serverConfiguration)) {
+      List<Future<String>> futures = requestExecutor.invokeAll(List.of(() -> "a", () -> "b"));
+
+      assertThat(executed).hasValue(2);
+      assertThat(futures.get(0).get()).isEqualTo("a");
+      assertThat(futures.get(1).get()).isEqualTo("b");
+    }
+  }
+
+  @Test
+  public void reportsFailuresThroughTheFutures() throws Exception {
+    try (RequestExecutor requestExecutor = new RequestExecutor(new ServerConfiguration())) {
+      List<Future<String>> futures = requestExecutor.invokeAll(List.<Callable<String>>of(() -> {
+        throw new IllegalArgumentException("failed");
+      }, () -> "ok"));
+
+      assertThatThrownBy(() -> futures.get(0).get())
+        .isInstanceOf(ExecutionException.class)
+        .hasCauseInstanceOf(IllegalArgumentException.class);
+      assertThat(futures.get(1).get()).isEqualTo("ok");
+    }
+  }
+
+  @Test
+  public void boundsTheDefaultPool() throws Exception {
+    ServerConfiguration serverConfiguration = new ServerConfiguration();
+    serverConfiguration.setBulkMaxParallelism(2);
+    CountDownLatch started = new CountDownLatch(2);
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    try (RequestExecutor requestExecutor = new RequestExecutor(serverConfiguration)) {
+      // more tasks than the pool's threads and queue hold, the rest run on the calling thread
+      List<Callable<Integer>> tasks = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        int index = i;
+        tasks.add(() -> {
+          threads.add(Thread.currentThread());
+          if (Thread.currentThread().getName().startsWith("scim-request-")) {
+            started.countDown();
+            // hold the pool's threads so that the queue fills up
+            started.await(10, TimeUnit.SECONDS);
+          }
+          return index;
+        });
+      }
+
+      List<Future<Integer>> futures = requestExecutor.invokeAll(tasks);
+
+      for (int i = 0; i < futures.size(); i++) {
+        assertThat(futures.get(i).get()).isEqualTo(i);
+      }
+      assertThat(threads)
+        .contains(Thread.currentThread())
+        .filteredOn(thread -> thread != Thread.currentThread())
+        .hasSizeLessThanOrEqualTo(2);
+    }
+  }
+
+  @Test
+  public void closedExecutorRejectsTasks() throws Exception {
+    RequestExecutor requestExecutor = new RequestExecutor(new ServerConfiguration());
+    requestExecutor.close();
+
+    assertThatThrownBy(() -> requestExecutor.invokeAll(List.of(() -> "a")))
+      .isInstanceOf(IllegalStateException.class);
+  }
+}
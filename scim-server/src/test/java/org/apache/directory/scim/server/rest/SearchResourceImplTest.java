@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.core.Response.Status;
+import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.RepositoryRegistry;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.protocol.data.ListResponse;
+import org.apache.directory.scim.protocol.data.SearchRequest;
+import org.apache.directory.scim.protocol.exception.ScimException;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.StreamingFilterResponse;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SearchResourceImplTest {
+
+  private SchemaRegistry schemaRegistry;
+
+  private RepositoryRegistry repositoryRegistry;
+
+  private Repository<ScimUser> userRepository;
+
+  private Repository<ScimGroup> groupRepository;
+
+  @SuppressWarnings("unchecked")
+  @BeforeEach
+  public void setUp() throws Exception {
+    schemaRegistry = new SchemaRegistry();
+    repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+    userRepository = mock(Repository.class);
+    groupRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimUser.class, userRepository);
+    repositoryRegistry.registerRepository(ScimGroup.class, groupRepository);
+  }
+
+  @Test
+  public void mergesSortedResultsAndPagesGlobally() throws Exception {
+    when(userRepository.stream(any(), any(), any()))
+      .thenReturn(response(List.of(user("Alice"), user("carol"), user("Eve")), 3));
+    when(groupRepository.stream(any(), any(), any()))
+      .thenReturn(response(List.of(group("Bob"), group("Dave")), 2));
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setSortBy(new AttributeReference("displayName"));
+    searchRequest.setSortOrder(SortOrder.ASCENDING);
+    searchRequest.setStartIndex(2);
+    searchRequest.setCount(3);
+
+    ListResponse<ScimResource> listResponse = find(searchRequest);
+
+    assertThat(listResponse.getTotalResults()).isEqualTo(5);
+    assertThat(listResponse.getStartIndex()).isEqualTo(2);
+    assertThat(listResponse.getItemsPerPage()).isEqualTo(3);
+    assertThat(listResponse.getResources()).extracting(SearchResourceImplTest::displayName).containsExactly("Bob", "carol", "Dave");
+
+    // every repository is only asked for the resources up to the end of the page
+    PageRequest candidates = new PageRequest();
+    candidates.setStartIndex(1);
+    candidates.setCount(4);
+    verify(userRepository).stream(null, candidates, searchRequest.getSortRequest());
+    verify(groupRepository).stream(null, candidates, searchRequest.getSortRequest());
+  }
+
+  @Test
+  public void unsortedResultsFollowTheResourceTypes() throws Exception {
+    when(userRepository.stream(any(), any(), any()))
+      .thenReturn(response(List.of(user("Alice"), user("Carol")), 2));
+    when(groupRepository.stream(any(), any(), any()))
+      .thenReturn(response(List.of(group("Bob")), 1));
+
+    ListResponse<ScimResource> listResponse = find(new SearchRequest());
+
+    assertThat(listResponse.getTotalResults()).isEqualTo(3);
+    assertThat(listResponse.getResources()).extracting(SearchResourceImplTest::displayName).containsExactly("Bob", "Alice", "Carol");
+  }
+
+  @Test
+  public void countIsLimitedToFilterMaxResults() throws Exception {
+    when(userRepository.stream(any(), any(), any()))
+      .thenReturn(response(List.of(user("Alice"), user("Carol")), 2));
+    when(groupRepository.stream(any(), any(), any()))
+      .thenReturn(response(List.of(group("Bob"), group("Dave")), 2));
+
+    ServerConfiguration serverConfiguration = new ServerConfiguration();
+    serverConfiguration.setFilterMaxResults(2);
+    ListResponse<ScimResource> listResponse = find(new SearchRequest(), serverConfiguration);
+
+    assertThat(listResponse.getTotalResults()).isEqualTo(4);
+    assertThat(listResponse.getItemsPerPage()).isEqualTo(2);
+
+    PageRequest candidates = new PageRequest();
+    candidates.setStartIndex(1);
+    candidates.setCount(2);
+    verify(userRepository).stream(eq(null), eq(candidates), any());
+  }
+
+  @Test
+  public void emptyPage() throws Exception {
+    when(userRepository.stream(any(), any(), any())).thenReturn(null);
+    when(groupRepository.stream(any(), any(), any()))
+      .thenReturn(response(List.of(group("Bob")), 1));
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setStartIndex(5);
+    ListResponse<ScimResource> listResponse = find(searchRequest);
+
+    assertThat(listResponse.getTotalResults()).isEqualTo(1);
+    assertThat(listResponse.getItemsPerPage()).isEqualTo(0);
+    assertThat(listResponse.getResources()).isNull();
+  }
+
+  @Test
+  public void closesTheOtherResponsesWhenARepositoryFails() throws Exception {
+    AtomicBoolean closed = new AtomicBoolean();
+    when(groupRepository.stream(any(), any(), any()))
+      .thenReturn(new StreamingFilterResponse<>(Stream.of(group("Bob")).onClose(() -> closed.set(true)), null, () -> 1));
+    when(userRepository.stream(any(), any(), any()))
+      .thenThrow(new ResourceException(500, "User search failed"));
+
+    assertThatThrownBy(() -> find(new SearchRequest()))
+      .isInstanceOf(ResourceException.class)
+      .hasMessage("User search failed");
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  public void closesTheOtherResponsesWhenAConcurrentSearchFails() throws Exception {
+    AtomicBoolean closed = new AtomicBoolean();
+    when(userRepository.stream(any(), any(), any()))
+      .thenReturn(new StreamingFilterResponse<>(Stream.of(user("Alice")).onClose(() -> closed.set(true)), null, () -> 1));
+    when(groupRepository.stream(any(), any(), any()))
+      .thenThrow(new ResourceException(500, "Group search failed"));
+
+    ServerConfiguration serverConfiguration = new ServerConfiguration();
+    serverConfiguration.setSearchMaxParallelism(2);
+    assertThatThrownBy(() -> find(new SearchRequest(), serverConfiguration))
+      .isInstanceOf(ResourceException.class)
+      .hasMessage("Group search failed");
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  public void repositoriesAreSearchedOnTheRequestThreadByDefault() throws Exception {
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    when(userRepository.stream(any(), any(), any())).thenAnswer(invocation -> {
+      threads.add(Thread.currentThread());
+      return response(List.of(user("Alice")), 1);
+    });
+    when(groupRepository.stream(any(), any(), any())).thenAnswer(invocation -> {
+      threads.add(Thread.currentThread());
+      return response(List.of(group("Bob")), 1);
+    });
+
+    assertThat(find(new SearchRequest()).getTotalResults()).isEqualTo(2);
+    assertThat(threads).containsExactly(Thread.currentThread());
+  }
+
+  @Test
+  public void repositoriesAreSearchedConcurrentlyWhenEnabled() throws Exception {
+    // each search waits for the other, which only completes if both run at once
+    CountDownLatch searching = new CountDownLatch(2);
+    when(userRepository.stream(any(), any(), any())).thenAnswer(invocation -> {
+      searching.countDown();
+      assertThat(searching.await(10, TimeUnit.SECONDS)).isTrue();
+      return response(List.of(user("Alice")), 1);
+    });
+    when(groupRepository.stream(any(), any(), any())).thenAnswer(invocation -> {
+      searching.countDown();
+      assertThat(searching.await(10, TimeUnit.SECONDS)).isTrue();
+      return response(List.of(group("Bob")), 1);
+    });
+
+    ServerConfiguration serverConfiguration = new ServerConfiguration();
+    serverConfiguration.setSearchMaxParallelism(2);
+    ListResponse<ScimResource> listResponse = find(new SearchRequest(), serverConfiguration);
+
+    assertThat(listResponse.getResources()).extracting(SearchResourceImplTest::displayName).containsExactly("Bob", "Alice");
+  }
+
+  @Test
+  public void cursorPaginationIsRejected() throws Exception {
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setCursor("page-2");
+
+    assertThatThrownBy(() -> find(searchRequest))
+      .isInstanceOfSatisfying(ScimException.class, e -> assertThat(e.getStatus()).isEqualTo(Status.BAD_REQUEST));
+    verify(userRepository, never()).stream(any(), any(), any());
+    verify(groupRepository, never()).stream(any(), any(), any());
+  }
+
+  private ListResponse<ScimResource> find(SearchRequest searchRequest) throws Exception {
+    return find(searchRequest, new ServerConfiguration());
+  }
+
+  @SuppressWarnings("unchecked")
+  private ListResponse<ScimResource> find(SearchRequest searchRequest, ServerConfiguration serverConfiguration) throws Exception {
+    try (RequestExecutor requestExecutor = new RequestExecutor(serverConfiguration)) {
+      return (ListResponse<ScimResource>) new SearchResourceImpl(schemaRegistry, repositoryRegistry, serverConfiguration, requestExecutor)
+        .find(searchRequest)
+        .getEntity();
+    }
+  }
+
+  private static <T> StreamingFilterResponse<T> response(List<T> resources, int totalResults) {
+    return new StreamingFilterResponse<>(resources.stream(), null, () -> totalResults);
+  }
+
+  private static ScimUser user(String displayName) {
+    ScimUser user = new ScimUser();
+    user.setUserName(displayName.toLowerCase());
+    user.setDisplayName(displayName);
+    return user;
+  }
+
+  private static ScimGroup group(String displayName) {
+    return new ScimGroup().setDisplayName(displayName);
+  }
+
+  private static String displayName(ScimResource resource) {
+    return resource instanceof ScimUser ? ((ScimUser) resource).getDisplayName() : ((ScimGroup) resource).getDisplayName();
+  }
+}
@@ -0,0 +1,186 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.server.exception.AttributeException;
+import org.apache.directory.scim.spec.filter.StreamingFilterResponse;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+public class StreamedListResponseWriterTest {
+
+  private final SchemaRegistry schemaRegistry;
+
+  private final AttributeUtil attributeUtil;
+
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  public StreamedListResponseWriterTest() {
+    schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, null);
+    attributeUtil = spy(new AttributeUtil(schemaRegistry));
+  }
+
+  @Test
+  public void countsTheResourcesWhileWriting() throws Exception {
+    StreamedListResponse<ScimUser> listResponse = listResponse("alice", "bob", "carol");
+
+    String entity = write(listResponse);
+
+    assertThat(entity)
+      .contains("\"alice\"", "\"bob\"", "\"carol\"", "\"totalResults\":10", "\"startIndex\":4")
+      // itemsPerPage is written after the resources
+      .endsWith("],\"itemsPerPage\":3}");
+    assertThat(listResponse.getItemsPerPage()).isEqualTo(3);
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  public void abortsTheResponseIfAResourceCannotBeProjected() throws Exception {
+    doThrow(new AttributeException("Projection failed"))
+      .when(attributeUtil).applyProjection(argThat((ScimUser user) -> "bob".equals(user.getUserName())), any());
+    StreamedListResponse<ScimUser> listResponse = listResponse("alice", "bob", "carol");
+
+    assertThatThrownBy(() -> write(listResponse))
+      .isInstanceOf(IllegalStateException.class)
+      .hasCauseInstanceOf(AttributeException.class);
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  public void closesTheStreamIfWritingFails() throws Exception {
+    StreamedListResponse<ScimUser> listResponse = listResponse("alice", "bob");
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("Connection closed");
+      }
+    };
+
+    assertThatThrownBy(() -> new StreamedListResponseWriter(schemaRegistry).writeTo(listResponse, listResponse.getClass(),
+      listResponse.getClass(), new Annotation[0], MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(), failing))
+      .isInstanceOf(IOException.class);
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  public void resourcesCanOnlyBeReadOnce() throws Exception {
+    StreamedListResponse<ScimUser> listResponse = listResponse("alice");
+    listResponse.readResources();
+
+    assertThatThrownBy(listResponse::readResources).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void filtersLeaveTheWrittenResponseOpen() throws Exception {
+    StreamedListResponse<ScimUser> listResponse = listResponse("alice");
+
+    filter(HttpMethod.GET, listResponse, listResponse);
+
+    assertThat(closed).isFalse();
+  }
+
+  @Test
+  public void filtersCloseTheResponseOfAHeadRequest() throws Exception {
+    StreamedListResponse<ScimUser> listResponse = listResponse("alice");
+
+    filter(HttpMethod.HEAD, listResponse, listResponse);
+
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  public void filtersCloseAReplacedResponse() throws Exception {
+    StreamedListResponse<ScimUser> listResponse = listResponse("alice");
+
+    filter(HttpMethod.GET, listResponse, "error");
+
+    assertThat(closed).isTrue();
+  }
+
+  /**
+   * Runs the filters like the JAX-RS runtime, {@code written} is the entity once the filters in between ran.
+   */
+  private static void filter(String method, Object returned, Object written) {
+    Map<String, Object> properties = new HashMap<>();
+    ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
+    when(requestContext.getMethod()).thenReturn(method);
+    when(requestContext.getProperty(anyString())).thenAnswer(invocation -> properties.get(invocation.<String>getArgument(0)));
+    doAnswer(invocation -> properties.put(invocation.getArgument(0), invocation.getArgument(1)))
+      .when(requestContext).setProperty(anyString(), any());
+
+    ContainerResponseContext returnedContext = mock(ContainerResponseContext.class);
+    when(returnedContext.getEntity()).thenReturn(returned);
+    new StreamedListResponseFilters.Track().filter(requestContext, returnedContext);
+
+    ContainerResponseContext writtenContext = mock(ContainerResponseContext.class);
+    when(writtenContext.getEntity()).thenReturn(written);
+    new StreamedListResponseFilters.Release().filter(requestContext, writtenContext);
+  }
+
+  private StreamedListResponse<ScimUser> listResponse(String... userNames) throws AttributeException {
+    Iterator<ScimUser> users = Stream.of(userNames)
+      .map(userName -> new ScimUser().setUserName(userName))
+      .iterator();
+    StreamingFilterResponse<ScimUser> source = new StreamingFilterResponse<>(Stream.<ScimUser>empty().onClose(() -> closed.set(true)), null, () -> 10);
+
+    StreamedListResponse<ScimUser> listResponse = new StreamedListResponse<>(users.next(), users, source, attributeUtil,
+      attributeUtil.getProjection(ScimUser.RESOURCE_NAME, Collections.emptySet(), Collections.emptySet()));
+    listResponse.setTotalResults(10);
+    listResponse.setStartIndex(4);
+    return listResponse;
+  }
+
+  private String write(StreamedListResponse<ScimUser> listResponse) throws IOException {
+    ByteArrayOutputStream entity = new ByteArrayOutputStream();
+    new StreamedListResponseWriter(schemaRegistry).writeTo(listResponse, listResponse.getClass(), listResponse.getClass(),
+      new Annotation[0], MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(), entity);
+    return entity.toString(StandardCharsets.UTF_8);
+  }
+}
@@ -103,7 +103,8 @@ public interface BaseResourceTypeResource<T> {
                          @Parameter(name="sortBy") @QueryParam("sortBy") AttributeReference sortBy,
                          @Parameter(name="sortOrder") @QueryParam("sortOrder") SortOrder sortOrder,
                          @Parameter(name="startIndex") @QueryParam("startIndex") Integer startIndex,
-                         @Parameter(name="count") @QueryParam("count") Integer count) throws ScimException, ResourceException {
+                         @Parameter(name="count") @QueryParam("count") Integer count,
+                         @Parameter(name="cursor") @QueryParam("cursor") String cursor) throws ScimException, ResourceException {
     return Response.status(Status.NOT_IMPLEMENTED).build();
   }
 
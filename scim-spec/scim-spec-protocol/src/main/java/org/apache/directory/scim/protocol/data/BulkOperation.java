@@ -24,15 +24,18 @@ import jakarta.xml.bind.annotation.XmlAccessType;
 import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlElement;
 import jakarta.xml.bind.annotation.XmlEnumValue;
+import jakarta.xml.bind.annotation.XmlTransient;
 import jakarta.xml.bind.annotation.XmlType;
 import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 
+import org.apache.directory.scim.spec.patch.PatchOperation;
 import org.apache.directory.scim.spec.resources.BaseResource;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
 import java.io.Serializable;
+import java.util.List;
 
 @Data
 @XmlType(propOrder = {"method","path","bulkId","data"})
@@ -87,4 +90,10 @@ public class BulkOperation implements Serializable {
   
   @XmlElement
   StatusWrapper status;
+
+  /**
+   * The operations of a PATCH, read from the PatchOp message in {@code data}.
+   */
+  @XmlTransient
+  List<PatchOperation> patchOperations;
 }
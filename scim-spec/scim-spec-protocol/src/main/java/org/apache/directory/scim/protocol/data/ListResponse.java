@@ -49,6 +49,12 @@ public class ListResponse<T> extends BaseResource<ListResponse<T>> {
   @XmlElement
   Integer itemsPerPage;
 
+  @XmlElement
+  String nextCursor;
+
+  @XmlElement
+  String previousCursor;
+
   @XmlElement(name = "Resources")
   List<T> resources;
 
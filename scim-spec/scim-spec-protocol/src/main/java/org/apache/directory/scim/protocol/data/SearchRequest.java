@@ -79,6 +79,9 @@ public class SearchRequest extends BaseResource<SearchRequest> {
 
   @XmlElement
   Integer count;
+
+  @XmlElement
+  String cursor;
   
   public SearchRequest() {
     super(SCHEMA_URI);
@@ -88,6 +91,7 @@ public class SearchRequest extends BaseResource<SearchRequest> {
     PageRequest pageRequest = new PageRequest();
     pageRequest.setStartIndex(startIndex);
     pageRequest.setCount(count);
+    pageRequest.setCursor(cursor);
     return pageRequest;
   }
   
@@ -0,0 +1,77 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import lombok.Value;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Matches an attribute equal to any one of a list of values.  SCIM filters have no {@code in} operator, this expression
+ * is created by {@link FilterExpressionOptimizer} for {@code attribute eq "a" or attribute eq "b" or ...} and is
+ * rendered back as that chain of comparisons.
+ */
+@Value
+public class AttributeInExpression implements FilterExpression, ValueFilterExpression {
+  private static final long serialVersionUID = 3036315254935436183L;
+  AttributeReference attributePath;
+  List<Object> compareValues;
+
+  /**
+   * Returns the equivalent chain of {@code eq} comparisons, for mappers that do not handle this expression.
+   */
+  public FilterExpression toLogicalExpression() {
+    FilterExpression expression = null;
+    for (Object compareValue : compareValues) {
+      FilterExpression comparison = new AttributeComparisonExpression(attributePath, CompareOperator.EQ, compareValue);
+      expression = expression == null ? comparison : new LogicalExpression(expression, LogicalOperator.OR, comparison);
+    }
+    return expression;
+  }
+
+  @Override
+  public String toFilter() {
+    return toFilter(AttributeComparisonExpression::toFilter);
+  }
+
+  @Override
+  public String toUnqualifiedFilter() {
+    return toFilter(AttributeComparisonExpression::toUnqualifiedFilter);
+  }
+
+  private String toFilter(Function<AttributeComparisonExpression, String> comparisonFilter) {
+    String filter = compareValues.stream()
+      .map(compareValue -> comparisonFilter.apply(new AttributeComparisonExpression(attributePath, CompareOperator.EQ, compareValue)))
+      .collect(Collectors.joining(" " + LogicalOperator.OR + " "));
+    // filter level AND/OR chains have no precedence, keep the chain together
+    return compareValues.size() > 1 ? "(" + filter + ")" : filter;
+  }
+
+  @Override
+  public void setAttributePath(String urn, String parentAttributeName) {
+    this.attributePath.setUrn(urn);
+    String subAttributeName = this.attributePath.getAttributeName();
+    this.attributePath.setAttributeName(parentAttributeName);
+    this.attributePath.setSubAttributeName(subAttributeName);
+  }
+}
@@ -60,6 +60,10 @@ public abstract class BaseFilterExpressionMapper<R> implements BiFunction<Filter
     else if (expression instanceof ValuePathExpression) {
       return apply((ValuePathExpression) expression, attributeContainer);
     }
+    // attribute EQ "something" OR attribute EQ "something else"
+    else if (expression instanceof AttributeInExpression) {
+      return apply((AttributeInExpression) expression, attributeContainer);
+    }
     return unhandledExpression(expression, attributeContainer);
   }
 
@@ -88,6 +92,14 @@ public abstract class BaseFilterExpressionMapper<R> implements BiFunction<Filter
 
   protected abstract R apply(ValuePathExpression expression, AttributeContainer attributeContainer);
 
+  /**
+   * Maps the {@code in} expressions created by {@link FilterExpressionOptimizer}, by default as the equivalent chain of
+   * {@code eq} comparisons.
+   */
+  protected R apply(AttributeInExpression expression, AttributeContainer attributeContainer) {
+    return apply(expression.toLogicalExpression(), attributeContainer);
+  }
+
   protected R unhandledExpression(FilterExpression expression, AttributeContainer attributeContainer) {
     throw new IllegalArgumentException("FilterExpression '" + expression + "' is not supported");
   }
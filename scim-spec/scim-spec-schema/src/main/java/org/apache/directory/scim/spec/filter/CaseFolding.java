@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+/**
+ * Locale independent, case-insensitive string matching for the in-memory filter matcher.
+ * <p>
+ * Two characters are equal ignoring case when their folded forms are equal, the same rule as
+ * {@link String#equalsIgnoreCase(String)}.  Compare values are folded once when a filter is compiled, the kernels then
+ * fold each character of the attribute value as they go, without allocating.  {@link #fold(String)} is public so
+ * repositories can key values the way the filters compare them.
+ */
+public final class CaseFolding {
+
+  private CaseFolding() {
+  }
+
+  static char fold(char c) {
+    if (c < 0x80) {
+      return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  /**
+   * Returns {@code value} with each character folded, {@code value} itself if it is already folded.
+   */
+  public static String fold(String value) {
+    char[] chars = null;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      char folded = fold(c);
+      if (folded != c) {
+        if (chars == null) {
+          chars = value.toCharArray();
+        }
+        chars[i] = folded;
+      }
+    }
+    return chars != null ? new String(chars) : value;
+  }
+
+  /**
+   * Tests if {@code value} is equal to the already folded {@code folded}, ignoring case.
+   */
+  static boolean equals(CharSequence value, String folded) {
+    return value.length() == folded.length() && regionMatches(value, 0, folded);
+  }
+
+  static boolean startsWith(CharSequence value, String folded) {
+    return value.length() >= folded.length() && regionMatches(value, 0, folded);
+  }
+
+  static boolean endsWith(CharSequence value, String folded) {
+    int offset = value.length() - folded.length();
+    return offset >= 0 && regionMatches(value, offset, folded);
+  }
+
+  static boolean contains(CharSequence value, String folded) {
+    int length = folded.length();
+    if (length == 0) {
+      return true;
+    }
+    char first = folded.charAt(0);
+    for (int offset = 0, last = value.length() - length; offset <= last; offset++) {
+      if (fold(value.charAt(offset)) == first && regionMatches(value, offset, folded, 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compares two values ignoring case, in the order of their folded characters.
+   */
+  static int compare(CharSequence left, CharSequence right) {
+    int length = Math.min(left.length(), right.length());
+    for (int i = 0; i < length; i++) {
+      char l = fold(left.charAt(i));
+      char r = fold(right.charAt(i));
+      if (l != r) {
+        return l - r;
+      }
+    }
+    return left.length() - right.length();
+  }
+
+  private static boolean regionMatches(CharSequence value, int offset, String folded) {
+    return regionMatches(value, offset, folded, 0);
+  }
+
+  /**
+   * Compares the characters of {@code folded} from index {@code from} to those of {@code value} at the same index
+   * relative to {@code offset}.
+   */
+  private static boolean regionMatches(CharSequence value, int offset, String folded, int from) {
+    for (int i = from; i < folded.length(); i++) {
+      if (fold(value.charAt(offset + i)) != folded.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
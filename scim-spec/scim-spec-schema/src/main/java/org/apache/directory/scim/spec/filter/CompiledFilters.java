@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.schema.Schema;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Caches the Predicates compiled by {@link InMemoryScimFilterMatcher} by the shape of their filter.
+ * <p>
+ * The shape of a filter is its structure, attribute paths and operators, with the string literals left out.  Filters of
+ * the same shape, such as {@code userName eq "bjensen"} and {@code userName eq "jsmith"}, resolve their attributes and
+ * comparisons identically, so a cached Predicate only needs its literals replaced.  Other compare values (numbers,
+ * booleans, dates) are part of the shape.
+ * <p>
+ * The cache is a bounded LRU keyed by the {@link Schema} instance, evicted like a {@link FilterExpressionCache}: lookups
+ * don't lock and the thread that grows the cache past its maximum size evicts the least recently used tenth.  Schemas
+ * are only weakly referenced, the plans of a discarded Schema are evicted first.
+ */
+final class CompiledFilters {
+
+  static final int MAXIMUM_SIZE = 1000;
+
+  private static final Map<Key, Entry> PLANS = new ConcurrentHashMap<>();
+
+  private static final AtomicLong CLOCK = new AtomicLong();
+
+  private static final ReentrantLock EVICTION_LOCK = new ReentrantLock();
+
+  private CompiledFilters() {
+  }
+
+  static <R> Predicate<R> compile(FilterExpression expression, Schema schema) {
+    // the shape is taken after optimizing, merging duplicate terms depends on the literals
+    expression = FilterExpressionOptimizer.optimize(expression);
+    Shape shape = new Shape();
+    if (!shape.append(expression)) {
+      // unknown expression types are not cached
+      return InMemoryScimFilterMatcher.toPredicate(expression, schema);
+    }
+
+    Key key = new Key(schema, shape.key.toString());
+    String[] literals = shape.literals.toArray(new String[0]);
+
+    Entry entry = PLANS.get(key);
+    if (entry == null) {
+      // compiled from this expression, so the plan already has the right literals
+      Predicate<R> predicate = InMemoryScimFilterMatcher.toPredicate(expression, schema);
+      PLANS.put(key, new Entry(predicate, CLOCK.incrementAndGet()));
+      if (PLANS.size() > MAXIMUM_SIZE && EVICTION_LOCK.tryLock()) {
+        try {
+          evict(MAXIMUM_SIZE - MAXIMUM_SIZE / 10);
+        } finally {
+          EVICTION_LOCK.unlock();
+        }
+      }
+      return predicate;
+    }
+    entry.lastUsed = CLOCK.incrementAndGet();
+    return InMemoryScimFilterMatcher.bind(cast(entry.plan), literals);
+  }
+
+  static int size() {
+    return PLANS.size();
+  }
+
+  static void clear() {
+    PLANS.clear();
+  }
+
+  /**
+   * Removes the least recently used plans until at most {@code size} remain, called holding the eviction lock.
+   */
+  private static void evict(int size) {
+    int excess = PLANS.size() - size;
+    if (excess <= 0) {
+      return;
+    }
+    // sort by a snapshot of the use times, other threads keep updating them
+    List<Map.Entry<Key, Entry>> entries = new ArrayList<>(PLANS.entrySet());
+    entries.forEach(entry -> entry.getValue().evictionOrder = entry.getKey().schema.get() != null ? entry.getValue().lastUsed : -1);
+    entries.sort(Comparator.comparingLong(entry -> entry.getValue().evictionOrder));
+    for (Map.Entry<Key, Entry> entry : entries.subList(0, Math.min(excess, entries.size()))) {
+      PLANS.remove(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <R> Predicate<R> cast(Predicate<?> predicate) {
+    return (Predicate<R>) predicate;
+  }
+
+  /**
+   * Builds the shape of an expression, collecting its string literals in the order InMemoryScimFilterMatcher visits
+   * them.  Free-form text is length prefixed, so different expressions never share a shape.
+   */
+  private static final class Shape {
+
+    private final StringBuilder key = new StringBuilder();
+
+    private final List<String> literals = new ArrayList<>();
+
+    boolean append(FilterExpression expression) {
+      if (expression == null) {
+        key.append('-');
+      } else if (expression instanceof AttributeComparisonExpression) {
+        AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+        key.append('C');
+        append(comparison.getAttributePath());
+        key.append(comparison.getOperation().ordinal()).append(';');
+        appendCompareValue(comparison.getCompareValue());
+      } else if (expression instanceof AttributeInExpression) {
+        AttributeInExpression in = (AttributeInExpression) expression;
+        key.append('I');
+        append(in.getAttributePath());
+        for (Object compareValue : in.getCompareValues()) {
+          appendCompareValue(compareValue);
+        }
+      } else if (expression instanceof AttributePresentExpression) {
+        key.append('P');
+        append(((AttributePresentExpression) expression).getAttributePath());
+      } else if (expression instanceof LogicalExpression) {
+        LogicalExpression logical = (LogicalExpression) expression;
+        key.append(logical.getOperator() == LogicalOperator.AND ? 'A' : 'O').append('(');
+        if (!append(logical.getLeft()) || !append(logical.getRight())) {
+          return false;
+        }
+        key.append(')');
+      } else if (expression instanceof GroupExpression) {
+        GroupExpression group = (GroupExpression) expression;
+        key.append(group.isNot() ? 'N' : 'G').append('(');
+        if (!append(group.getFilterExpression())) {
+          return false;
+        }
+        key.append(')');
+      } else if (expression instanceof ValuePathExpression) {
+        ValuePathExpression valuePath = (ValuePathExpression) expression;
+        key.append('V');
+        append(valuePath.getAttributePath());
+        key.append('[');
+        if (!append(valuePath.getAttributeExpression())) {
+          return false;
+        }
+        key.append(']');
+      } else {
+        return false;
+      }
+      return true;
+    }
+
+    private void appendCompareValue(Object compareValue) {
+      if (compareValue instanceof String) {
+        key.append('?');
+        literals.add((String) compareValue);
+      } else if (compareValue == null) {
+        key.append('-');
+      } else {
+        append(compareValue.getClass().getName());
+        append(compareValue.toString());
+      }
+    }
+
+    private void append(AttributeReference attributeReference) {
+      append(attributeReference.getUrn());
+      append(attributeReference.getAttributeName());
+      append(attributeReference.getSubAttributeName());
+    }
+
+    private void append(String text) {
+      if (text == null) {
+        key.append('-');
+      } else {
+        key.append(text.length()).append(':').append(text);
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private final Predicate<?> plan;
+
+    private volatile long lastUsed;
+
+    // only used by the thread holding the eviction lock
+    private long evictionOrder;
+
+    private Entry(Predicate<?> plan, long lastUsed) {
+      this.plan = plan;
+      this.lastUsed = lastUsed;
+    }
+  }
+
+  private static final class Key {
+
+    private final WeakReference<Schema> schema;
+
+    private final String shape;
+
+    private final int hash;
+
+    private Key(Schema schema, String shape) {
+      this.schema = new WeakReference<>(schema);
+      this.shape = shape;
+      this.hash = 31 * System.identityHashCode(schema) + shape.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      // Schema's equals compares every attribute, the same instance is both cheaper and what the plans were built for,
+      // a discarded Schema matches no other key
+      Schema referent = schema.get();
+      return referent != null && hash == other.hash && referent == other.schema.get() && shape.equals(other.shape);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -23,9 +23,6 @@ import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 import java.io.Serializable;
 import java.net.URLDecoder;
@@ -67,30 +64,14 @@ public class Filter implements Serializable {
    */
   public void setFilter(String filter) throws FilterParseException {
     this.filter = filter;
-    this.expression = parseFilter(filter);
+    // subclasses may parse differently, only share cached expressions parsed by this class
+    this.expression = getClass() == Filter.class
+      ? FilterExpressionCache.filters().get(filter, this::parseFilter)
+      : parseFilter(filter);
   }
 
   protected FilterExpression parseFilter(String filter) throws FilterParseException {
-    FilterLexer l = new FilterLexer(CharStreams.fromString(filter));
-    FilterParser p = new FilterParser(new CommonTokenStream(l));
-    p.setBuildParseTree(true);
-
-    p.addErrorListener(new BaseErrorListener() {
-      @Override
-      public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-        throw new IllegalStateException("failed to parse at line " + line + ":" + charPositionInLine + " due to " + msg, e);
-      }
-    });
-
-    try {
-      ParseTree tree = p.filter();
-      ExpressionBuildingListener expListener = new ExpressionBuildingListener();
-      ParseTreeWalker.DEFAULT.walk(expListener, tree);
-      
-      return expListener.getFilterExpression();
-    } catch (IllegalStateException e) {
-      throw new FilterParseException("Failed to parse filter: " + filter, e);
-    }
+    return FilterParserEngine.getDefault().parseFilter(filter);
   }
   
   @Override
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, thread-safe, least-recently-used cache of parsed {@link FilterExpression}s keyed by their filter text.
+ * <p>
+ * String literals are stripped from the key before lookup, so filters that differ only in their compare values, for
+ * example {@code userName eq "bjensen"} and {@code userName eq "jsmith"}, share a single cached template.
+ * Because FilterExpressions are mutable, cached templates are never handed out directly; every lookup returns a fresh
+ * copy of the template with the literal values of the requested filter substituted back in. Copying a tree is a
+ * handful of allocations, considerably cheaper than running the ANTLR lexer, parser and listener.
+ * <p>
+ * Parse failures are never cached, and errors are always reported against the original filter text.
+ * <p>
+ * Lookups don't lock, the templates are held in a ConcurrentHashMap and each one records when it was last used.
+ * Once the cache grows past its maximum size, the thread that added the entry evicts the least recently used tenth of
+ * the cache, other threads keep reading and adding meanwhile, so the cache may briefly hold a few more entries.
+ */
+public final class FilterExpressionCache {
+
+  public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+  private static final FilterExpressionCache FILTERS = new FilterExpressionCache(DEFAULT_MAXIMUM_SIZE);
+
+  private static final FilterExpressionCache PATCH_PATHS = new FilterExpressionCache(DEFAULT_MAXIMUM_SIZE);
+
+  private final Map<String, Entry> templates = new ConcurrentHashMap<>();
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  private volatile int maximumSize;
+
+  public FilterExpressionCache(int maximumSize) {
+    setMaximumSize(maximumSize);
+  }
+
+  /**
+   * Returns the cache shared by {@link Filter} instances.
+   */
+  public static FilterExpressionCache filters() {
+    return FILTERS;
+  }
+
+  /**
+   * Returns the cache shared by {@link org.apache.directory.scim.spec.patch.PatchOperationPath PatchOperationPath}s.
+   */
+  public static FilterExpressionCache patchPaths() {
+    return PATCH_PATHS;
+  }
+
+  /**
+   * Returns a copy of the cached expression for {@code text}, parsing and caching it with {@code parser} when it is not
+   * already present.
+   *
+   * @param text the filter text to look up.
+   * @param parser the parser used when the filter's template is not cached.
+   * @return a new FilterExpression owned by the caller.
+   * @throws FilterParseException if {@code text} cannot be parsed.
+   */
+  public FilterExpression get(String text, Parser parser) throws FilterParseException {
+    Template template = Template.of(text);
+
+    FilterExpression expression;
+    Entry entry = templates.get(template.key);
+    if (entry != null) {
+      hits.increment();
+      entry.lastUsed = clock.incrementAndGet();
+      expression = entry.expression;
+    } else {
+      misses.increment();
+      expression = parse(template, text, parser);
+      templates.put(template.key, new Entry(expression, clock.incrementAndGet()));
+      if (templates.size() > maximumSize && evictionLock.tryLock()) {
+        try {
+          evict(maximumSize - maximumSize / 10);
+        } finally {
+          evictionLock.unlock();
+        }
+      }
+    }
+    return copy(expression, template.literals != null ? template.literals.iterator() : null);
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public void setMaximumSize(int maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("maximumSize must not be negative: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    evictionLock.lock();
+    try {
+      evict(maximumSize);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  public int size() {
+    return templates.size();
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * Removes all cached entries and resets the statistics.
+   */
+  public void clear() {
+    templates.clear();
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  /**
+   * Removes the least recently used entries until at most {@code size} remain, called holding the eviction lock.
+   */
+  private void evict(int size) {
+    int excess = templates.size() - size;
+    if (excess <= 0) {
+      return;
+    }
+    // sort by a snapshot of the use times, other threads keep updating them
+    List<Map.Entry<String, Entry>> entries = new ArrayList<>(templates.entrySet());
+    entries.forEach(entry -> entry.getValue().evictionOrder = entry.getValue().lastUsed);
+    entries.sort(Comparator.comparingLong(entry -> entry.getValue().evictionOrder));
+    for (Map.Entry<String, Entry> entry : entries.subList(0, Math.min(excess, entries.size()))) {
+      if (templates.remove(entry.getKey(), entry.getValue())) {
+        evictions.increment();
+      }
+    }
+  }
+
+  private static FilterExpression parse(Template template, String text, Parser parser) throws FilterParseException {
+    if (template.literals == null || template.literals.isEmpty()) {
+      return parser.parse(text);
+    }
+    try {
+      return parser.parse(template.key);
+    } catch (FilterParseException e) {
+      // re-parse the original text, so the error position and message refer to what the client actually sent
+      return parser.parse(text);
+    }
+  }
+
+  static FilterExpression copy(FilterExpression expression, Iterator<Object> literals) {
+    if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+      Object compareValue = comparison.getCompareValue();
+      if (literals != null && compareValue instanceof String) {
+        compareValue = literals.next();
+      }
+      return new AttributeComparisonExpression(copy(comparison.getAttributePath()), comparison.getOperation(), compareValue);
+    } else if (expression instanceof AttributePresentExpression) {
+      return new AttributePresentExpression(copy(((AttributePresentExpression) expression).getAttributePath()));
+    } else if (expression instanceof LogicalExpression) {
+      LogicalExpression logical = (LogicalExpression) expression;
+      FilterExpression left = copy(logical.getLeft(), literals);
+      FilterExpression right = copy(logical.getRight(), literals);
+      return new LogicalExpression(left, logical.getOperator(), right);
+    } else if (expression instanceof GroupExpression) {
+      GroupExpression group = (GroupExpression) expression;
+      return new GroupExpression(group.isNot(), copy(group.getFilterExpression(), literals));
+    } else if (expression instanceof ValuePathExpression) {
+      ValuePathExpression valuePath = (ValuePathExpression) expression;
+      FilterExpression attributeExpression = valuePath.getAttributeExpression();
+      return new ValuePathExpression(copy(valuePath.getAttributePath()), attributeExpression != null ? copy(attributeExpression, literals) : null);
+    }
+    throw new IllegalArgumentException("Unsupported FilterExpression type: " + expression.getClass());
+  }
+
+  private static AttributeReference copy(AttributeReference attributeReference) {
+    return new AttributeReference(attributeReference.getUrn(), attributeReference.getAttributeName(), attributeReference.getSubAttributeName());
+  }
+
+  private static final class Entry {
+
+    private final FilterExpression expression;
+
+    private volatile long lastUsed;
+
+    // only used by the thread holding the eviction lock
+    private long evictionOrder;
+
+    private Entry(FilterExpression expression, long lastUsed) {
+      this.expression = expression;
+      this.lastUsed = lastUsed;
+    }
+  }
+
+  @FunctionalInterface
+  public interface Parser {
+    FilterExpression parse(String text) throws FilterParseException;
+  }
+
+  /**
+   * A filter with its string literals replaced by empty strings ({@code ""}), and the decoded literal values in the
+   * order they appeared.  If any literal is not a valid JSON string as defined by the grammar, {@code literals} is
+   * {@code null} and the filter text is used as-is.
+   */
+  static final class Template {
+
+    final String key;
+
+    final List<Object> literals;
+
+    private Template(String key, List<Object> literals) {
+      this.key = key;
+      this.literals = literals;
+    }
+
+    static Template of(String text) {
+      int quote = text.indexOf('"');
+      if (quote < 0) {
+        return new Template(text, List.of());
+      }
+
+      StringBuilder key = new StringBuilder(text.length());
+      List<Object> literals = new ArrayList<>();
+      int position = 0;
+      while (quote >= 0) {
+        int end = endOfString(text, quote);
+        if (end < 0) {
+          return new Template(text, null);
+        }
+        key.append(text, position, quote).append("\"\"");
+        literals.add(ExpressionBuildingListener.parseJsonType(text.substring(quote, end + 1)));
+        position = end + 1;
+        quote = text.indexOf('"', position);
+      }
+      key.append(text, position, text.length());
+      return new Template(key.toString(), literals);
+    }
+
+    /**
+     * Returns the index of the closing quote of the JSON string starting at {@code start}, or {@code -1} if the string
+     * is unterminated or contains characters the filter grammar would reject.
+     */
+    private static int endOfString(String text, int start) {
+      for (int i = start + 1; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (c == '"') {
+          return i;
+        } else if (c == '\\') {
+          if (++i >= text.length() || "\"\\/bfnrt".indexOf(text.charAt(i)) < 0) {
+            return -1;
+          }
+        } else if (c < ' ' || c > '~') {
+          return -1;
+        }
+      }
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a {@link FilterExpression} into a smaller, equivalent one:
+ * <ul>
+ *   <li>groups are removed, and {@code NOT} is pushed down through {@code AND}/{@code OR} (De Morgan) so double
+ *   negations cancel out,</li>
+ *   <li>chains of the same logical operator are flattened and duplicate terms removed,</li>
+ *   <li>{@code OR} chains of at least {@value #MINIMUM_IN_SIZE} {@code eq} comparisons on the same attribute become a
+ *   single {@link AttributeInExpression}.</li>
+ * </ul>
+ * A negation is never pushed into a comparison, {@code not (title eq "x")} matches resources without a title while
+ * {@code title ne "x"} does not.
+ * <p>
+ * The given expression is not modified, the result may share its leaf expressions.
+ */
+public final class FilterExpressionOptimizer {
+
+  static final int MINIMUM_IN_SIZE = 3;
+
+  private FilterExpressionOptimizer() {
+  }
+
+  public static FilterExpression optimize(FilterExpression expression) {
+    return expression != null ? optimize(expression, false) : null;
+  }
+
+  private static FilterExpression optimize(FilterExpression expression, boolean negated) {
+    if (expression instanceof GroupExpression) {
+      GroupExpression group = (GroupExpression) expression;
+      return optimize(group.getFilterExpression(), negated != group.isNot());
+    }
+
+    if (expression instanceof LogicalExpression) {
+      LogicalExpression logical = (LogicalExpression) expression;
+      LogicalOperator operator = negated ? flip(logical.getOperator()) : logical.getOperator();
+
+      Set<FilterExpression> operands = new LinkedHashSet<>();
+      collect(logical, negated, operator, operands);
+      List<FilterExpression> terms = operator == LogicalOperator.OR
+        ? toInExpressions(operands)
+        : new ArrayList<>(operands);
+
+      FilterExpression result = terms.get(0);
+      for (int i = 1; i < terms.size(); i++) {
+        result = new LogicalExpression(result, operator, terms.get(i));
+      }
+      return result;
+    }
+
+    FilterExpression result = expression;
+    if (expression instanceof ValuePathExpression) {
+      ValuePathExpression valuePath = (ValuePathExpression) expression;
+      if (valuePath.getAttributeExpression() != null) {
+        result = new ValuePathExpression(valuePath.getAttributePath(), optimize(valuePath.getAttributeExpression(), false));
+      }
+    }
+    return negated ? new GroupExpression(true, result) : result;
+  }
+
+  /**
+   * Adds the optimized operands of a chain of {@code operator} to {@code operands}, looking through groups.
+   */
+  private static void collect(FilterExpression expression, boolean negated, LogicalOperator operator, Set<FilterExpression> operands) {
+    if (expression instanceof GroupExpression) {
+      GroupExpression group = (GroupExpression) expression;
+      collect(group.getFilterExpression(), negated != group.isNot(), operator, operands);
+    } else if (expression instanceof LogicalExpression
+      && (negated ? flip(((LogicalExpression) expression).getOperator()) : ((LogicalExpression) expression).getOperator()) == operator) {
+      LogicalExpression logical = (LogicalExpression) expression;
+      collect(logical.getLeft(), negated, operator, operands);
+      collect(logical.getRight(), negated, operator, operands);
+    } else {
+      FilterExpression operand = optimize(expression, negated);
+      if (operand instanceof LogicalExpression && ((LogicalExpression) operand).getOperator() == operator) {
+        // NOT pushed down into a nested chain may have produced more operands of this one
+        collect(operand, false, operator, operands);
+      } else {
+        operands.add(operand);
+      }
+    }
+  }
+
+  /**
+   * Replaces {@code eq} comparisons on the same attribute by an {@link AttributeInExpression}, in place of the first of
+   * them.
+   */
+  private static List<FilterExpression> toInExpressions(Set<FilterExpression> operands) {
+    Map<AttributeReference, Set<Object>> valuesByAttribute = new LinkedHashMap<>();
+    for (FilterExpression operand : operands) {
+      AttributeReference attributePath = equalityAttribute(operand);
+      if (attributePath != null) {
+        valuesByAttribute.computeIfAbsent(attributePath, key -> new LinkedHashSet<>()).addAll(equalityValues(operand));
+      }
+    }
+
+    List<FilterExpression> terms = new ArrayList<>(operands.size());
+    for (FilterExpression operand : operands) {
+      AttributeReference attributePath = equalityAttribute(operand);
+      Set<Object> values = attributePath != null ? valuesByAttribute.get(attributePath) : null;
+      if (values != null && values.isEmpty()) {
+        continue;
+      }
+      if (values == null || values.size() < MINIMUM_IN_SIZE) {
+        terms.add(operand);
+      } else {
+        terms.add(new AttributeInExpression(attributePath, new ArrayList<>(values)));
+        // the first of the comparisons is replaced, the others are dropped
+        valuesByAttribute.put(attributePath, Set.of());
+      }
+    }
+    return terms;
+  }
+
+  private static AttributeReference equalityAttribute(FilterExpression expression) {
+    if (expression instanceof AttributeInExpression) {
+      return ((AttributeInExpression) expression).getAttributePath();
+    }
+    if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+      // "eq null" is not the same as a missing attribute in every implementation, leave it alone
+      if (comparison.getOperation() == CompareOperator.EQ && comparison.getCompareValue() != null) {
+        return comparison.getAttributePath();
+      }
+    }
+    return null;
+  }
+
+  private static List<Object> equalityValues(FilterExpression expression) {
+    if (expression instanceof AttributeInExpression) {
+      return ((AttributeInExpression) expression).getCompareValues();
+    }
+    return List.of(((AttributeComparisonExpression) expression).getCompareValue());
+  }
+
+  private static LogicalOperator flip(LogicalOperator operator) {
+    return operator == LogicalOperator.AND ? LogicalOperator.OR : LogicalOperator.AND;
+  }
+}
@@ -45,22 +45,42 @@ public final class FilterExpressions {
     if (expression == null) {
       return x -> true;
     }
-    return InMemoryScimFilterMatcher.toPredicate(expression, schema);
+    return InMemoryScimFilterMatcher.toPredicate(FilterExpressionOptimizer.optimize(expression), schema);
   }
 
   public static <R> Predicate<R> inMemory(FilterExpression expression, Schema schema) {
-    return InMemoryScimFilterMatcher.toPredicate(expression, schema);
+    return InMemoryScimFilterMatcher.toPredicate(FilterExpressionOptimizer.optimize(expression), schema);
+  }
+
+  /**
+   * Like {@link #inMemory(Filter, Schema)}, but the attribute resolution done to build the Predicate is shared by all
+   * filters of the same shape, for example {@code userName eq "bjensen"} and {@code userName eq "jsmith"}.  Use this
+   * over {@code inMemory} when the same kinds of filters are evaluated repeatedly against one Schema instance.
+   */
+  public static Predicate<ScimResource> compiled(Filter filter, Schema schema) {
+    if (filter == null) {
+      return x -> true;
+    }
+    FilterExpression expression = filter.getExpression();
+    if (expression == null) {
+      return x -> true;
+    }
+    return CompiledFilters.compile(expression, schema);
+  }
+
+  public static <R> Predicate<R> compiled(FilterExpression expression, Schema schema) {
+    return CompiledFilters.compile(expression, schema);
   }
 
   public static <R> Predicate<R> inMemoryMap(FilterExpression expression, Schema schema) {
-    return new InMemoryMapScimFilterMatcher<R>().apply(expression, schema);
+    return new InMemoryMapScimFilterMatcher<R>().apply(FilterExpressionOptimizer.optimize(expression), schema);
   }
 
   static class InMemoryMapScimFilterMatcher<R> extends InMemoryScimFilterMatcher<R> {
     @Override
-    public <A> A get(Schema.Attribute attribute, A actual) {
-      Map<String, Object> map = (Map<String, Object>) actual;
-      return (A) map.get(attribute.getName());
+    protected ValueAccessor accessor(Schema.Attribute attribute) {
+      String name = attribute.getName();
+      return actual -> ((Map<String, Object>) actual).get(name);
     }
   }
 }
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.apache.directory.scim.spec.patch.PatchPathListener;
+
+import java.util.Objects;
+
+/**
+ * The implementations available to parse SCIM filters and PATCH paths.  Both produce the same expressions and report
+ * errors at the same position, {@link #RECURSIVE_DESCENT} does so without building a token stream and parse tree.
+ */
+public enum FilterParserEngine {
+
+  /**
+   * The parser generated from {@code Filter.g4}.
+   */
+  ANTLR {
+    @Override
+    public FilterExpression parseFilter(String filter) throws FilterParseException {
+      FilterLexer l = new FilterLexer(CharStreams.fromString(filter));
+      FilterParser p = new FilterParser(new CommonTokenStream(l));
+      p.setBuildParseTree(true);
+
+      p.addErrorListener(new BaseErrorListener() {
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+          throw new IllegalStateException("failed to parse at line " + line + ":" + charPositionInLine + " due to " + msg, e);
+        }
+      });
+
+      try {
+        ParseTree tree = p.filter();
+        ExpressionBuildingListener expListener = new ExpressionBuildingListener();
+        ParseTreeWalker.DEFAULT.walk(expListener, tree);
+
+        return expListener.getFilterExpression();
+      } catch (IllegalStateException e) {
+        throw new FilterParseException("Failed to parse filter: " + filter, e);
+      }
+    }
+
+    @Override
+    public ValuePathExpression parsePatchPath(String patchPath) throws FilterParseException {
+      FilterLexer l = new FilterLexer(CharStreams.fromString(patchPath));
+      FilterParser p = new FilterParser(new CommonTokenStream(l));
+      p.setBuildParseTree(true);
+
+      p.addErrorListener(new BaseErrorListener() {
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+          throw new IllegalStateException("failed to parse at line " + line + " due to " + msg, e);
+        }
+      });
+
+      try {
+        ParseTree tree = p.patchPath();
+        PatchPathListener patchPathListener = new PatchPathListener();
+        ParseTreeWalker.DEFAULT.walk(patchPathListener, tree);
+
+        return patchPathListener.getValuePathExpression();
+      } catch (IllegalStateException e) {
+        throw new FilterParseException(e);
+      }
+    }
+  },
+
+  /**
+   * A hand-written parser reading the filter text directly into a {@link FilterExpression}.
+   */
+  RECURSIVE_DESCENT {
+    @Override
+    public FilterExpression parseFilter(String filter) throws FilterParseException {
+      try {
+        return new RecursiveDescentFilterParser(filter).parseFilter();
+      } catch (IllegalStateException e) {
+        throw new FilterParseException("Failed to parse filter: " + filter, e);
+      }
+    }
+
+    @Override
+    public ValuePathExpression parsePatchPath(String patchPath) throws FilterParseException {
+      try {
+        return new RecursiveDescentFilterParser(patchPath).parsePatchPath();
+      } catch (IllegalStateException e) {
+        throw new FilterParseException(e);
+      }
+    }
+  };
+
+  private static volatile FilterParserEngine defaultEngine = ANTLR;
+
+  /**
+   * Parses a SCIM filter, e.g. {@code emails[type eq "work"].value co "@example.com"}.
+   */
+  public abstract FilterExpression parseFilter(String filter) throws FilterParseException;
+
+  /**
+   * Parses the path of a PATCH operation, e.g. {@code members[value eq "2819c223"].display}.
+   */
+  public abstract ValuePathExpression parsePatchPath(String patchPath) throws FilterParseException;
+
+  /**
+   * Returns the engine used by {@link Filter} and {@link org.apache.directory.scim.spec.patch.PatchOperationPath}.
+   */
+  public static FilterParserEngine getDefault() {
+    return defaultEngine;
+  }
+
+  /**
+   * Selects the engine used by {@link Filter} and {@link org.apache.directory.scim.spec.patch.PatchOperationPath}.
+   * Expressions cached by {@link FilterExpressionCache} are kept, as both engines parse to the same result.
+   */
+  public static void setDefault(FilterParserEngine engine) {
+    defaultEngine = Objects.requireNonNull(engine, "engine");
+  }
+}
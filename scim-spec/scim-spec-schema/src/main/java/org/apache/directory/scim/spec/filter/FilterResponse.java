@@ -33,6 +33,9 @@ public class FilterResponse<T> {
   private Collection<T> resources;
   private PageRequest pageRequest;
   private int totalResults;
+  // opaque cursors of the adjacent pages, when the repository serves cursor-based pagination
+  private String nextCursor;
+  private String previousCursor;
   
   public FilterResponse() {}
   
@@ -0,0 +1,130 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.schema.Schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Builds the {@link FilterResponse} of resources that are held in memory, for repositories that evaluate filters with
+ * {@link FilterExpressions#inMemory(Filter, Schema)} and sort them with {@link SortComparators}.
+ */
+public final class FilterResponses {
+
+  private FilterResponses() {
+  }
+
+  /**
+   * Returns the requested page of the {@code resources} matching {@code filter}.
+   * <p>
+   * Resources are filtered before they are paged and {@code totalResults} is the number of all matching resources,
+   * only the resources of the page are collected.  When an {@code order} is given only the first
+   * {@code startIndex + count} matches are kept, in a bounded heap, instead of sorting all of them.
+   *
+   * @param resources The resources to search.
+   * @param filter Selects the matching resources.
+   * @param pageRequest The page to return, all matching resources if {@code null}.
+   * @param order The order of the results, or {@code null} to keep the order of {@code resources}.
+   */
+  public static <T> FilterResponse<T> page(Iterable<? extends T> resources, Predicate<? super T> filter, PageRequest pageRequest, Comparator<? super T> order) {
+    int startIndex = pageRequest != null && pageRequest.getStartIndex() != null
+      ? Math.max(pageRequest.getStartIndex() - 1, 0) // SCIM is 1-based indexed
+      : 0;
+    int count = pageRequest != null && pageRequest.getCount() != null ? Math.max(pageRequest.getCount(), 0) : Integer.MAX_VALUE;
+
+    if (order == null) {
+      List<T> page = new ArrayList<>(Math.min(count, 64));
+      int total = 0;
+      for (T resource : resources) {
+        if (filter.test(resource)) {
+          if (total >= startIndex && page.size() < count) {
+            page.add(resource);
+          }
+          total++;
+        }
+      }
+      return new FilterResponse<>(page, pageRequest, total);
+    }
+
+    long limit = (long) startIndex + count;
+    if (limit >= Integer.MAX_VALUE) {
+      // an unbounded page needs every match
+      List<T> matches = new ArrayList<>();
+      for (T resource : resources) {
+        if (filter.test(resource)) {
+          matches.add(resource);
+        }
+      }
+      matches.sort(order);
+      return new FilterResponse<>(subList(matches, startIndex, count), pageRequest, matches.size());
+    }
+
+    // ties keep the order of resources, like a stable sort
+    Comparator<Ranked<T>> rankOrder = Comparator.<Ranked<T>, T>comparing(ranked -> ranked.resource, order)
+      .thenComparingLong(ranked -> ranked.rank);
+    // the head of the heap is the last of the kept matches, the first to be evicted
+    PriorityQueue<Ranked<T>> top = new PriorityQueue<>((int) Math.min(limit, 64) + 1, rankOrder.reversed());
+    int total = 0;
+    for (T resource : resources) {
+      if (filter.test(resource)) {
+        Ranked<T> ranked = new Ranked<>(resource, total++);
+        if (top.size() < limit) {
+          top.add(ranked);
+        } else if (limit > 0 && rankOrder.compare(ranked, top.peek()) < 0) {
+          top.poll();
+          top.add(ranked);
+        }
+      }
+    }
+
+    List<Ranked<T>> sorted = new ArrayList<>(top);
+    sorted.sort(rankOrder);
+    List<T> page = new ArrayList<>(Math.max(sorted.size() - startIndex, 0));
+    for (int i = startIndex; i < sorted.size(); i++) {
+      page.add(sorted.get(i).resource);
+    }
+    return new FilterResponse<>(page, pageRequest, total);
+  }
+
+  private static <T> List<T> subList(List<T> list, int startIndex, int count) {
+    if (startIndex >= list.size()) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<>(list.subList(startIndex, (int) Math.min(list.size(), (long) startIndex + count)));
+  }
+
+  private static final class Ranked<T> {
+
+    private final T resource;
+
+    private final long rank;
+
+    private Ranked(T resource, long rank) {
+      this.resource = resource;
+      this.rank = rank;
+    }
+  }
+}
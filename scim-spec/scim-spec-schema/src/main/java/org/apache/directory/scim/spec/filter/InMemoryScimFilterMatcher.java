@@ -19,21 +19,34 @@
 
 package org.apache.directory.scim.spec.filter;
 
-import org.apache.directory.scim.spec.exception.ScimResourceInvalidException;
 import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
 import org.apache.directory.scim.spec.schema.AttributeContainer;
 import org.apache.directory.scim.spec.schema.Schema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.function.Predicate;
 
+/**
+ * Compiles a FilterExpression into a tree of Predicates.  Attribute paths, accessors, case-exactness and the kind of
+ * comparison are all resolved once when the Predicate is built, testing a resource only reads the attribute values.
+ * <p>
+ * Expressions that can never match, for example those referring to an unknown attribute, compile to a Predicate that
+ * always returns {@code false}, and are folded away in {@code AND}/{@code OR} chains.  The operands of a chain are
+ * tested cheapest first, equality tests being both cheap and selective.
+ */
 class InMemoryScimFilterMatcher<R> extends BaseFilterExpressionMapper<Predicate<R>> {
 
   private static final Logger log = LoggerFactory.getLogger(InMemoryScimFilterMatcher.class);
 
+  // the number of string literals seen so far, see bind()
+  private int literals;
+
   /**
    * Converts a FilterExpression to a Predicate that can be used to later test a ScimResource (or child attribute).
    * <p>
@@ -51,219 +64,831 @@ class InMemoryScimFilterMatcher<R> extends BaseFilterExpressionMapper<Predicate<
     return new InMemoryScimFilterMatcher<R>().apply(expression, attributeContainer);
   }
 
+  /**
+   * Returns a copy of a Predicate built by this class, with the string literals of the expression it was built from
+   * replaced by {@code literals}.  The literals are given in the order they appear in the filter, and must be of an
+   * expression with the same shape.  Deciding which comparison to use does not depend on the value of a string literal,
+   * so the returned Predicate is the same as one compiled from the expression the literals were taken from.
+   */
+  static <R> Predicate<R> bind(Predicate<R> predicate, String[] literals) {
+    return cast(bind0(cast(predicate), literals));
+  }
+
+  private static Predicate<Object> bind0(Predicate<Object> predicate, String[] literals) {
+    if (predicate instanceof ComparisonPredicate) {
+      return ((ComparisonPredicate) predicate).bind(literals);
+    } else if (predicate instanceof AndPredicate) {
+      return new AndPredicate(bind(((AndPredicate) predicate).predicates, literals));
+    } else if (predicate instanceof OrPredicate) {
+      return new OrPredicate(bind(((OrPredicate) predicate).predicates, literals));
+    } else if (predicate instanceof NotPredicate) {
+      return new NotPredicate(bind0(((NotPredicate) predicate).predicate, literals));
+    } else if (predicate instanceof ValuePathPredicate) {
+      ValuePathPredicate valuePath = (ValuePathPredicate) predicate;
+      return new ValuePathPredicate(valuePath.reader, bind0(valuePath.nestedPredicate, literals));
+    } else if (predicate instanceof InPredicate) {
+      return ((InPredicate) predicate).bind(literals);
+    }
+    return predicate;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Predicate<Object>[] bind(Predicate<Object>[] predicates, String[] literals) {
+    Predicate<Object>[] bound = new Predicate[predicates.length];
+    for (int i = 0; i < predicates.length; i++) {
+      bound[i] = bind0(predicates[i], literals);
+    }
+    return bound;
+  }
+
   @Override
   protected Predicate<R> apply(AttributeComparisonExpression expression, AttributeContainer attributeContainer) {
-    return new AttributeComparisonPredicate<>(expression, attributeContainer);
+    // count every string literal, even those of expressions that never match, to keep bind() aligned with the filter
+    int literal = expression.getCompareValue() instanceof String ? literals++ : -1;
+
+    AttributeReader reader = reader(attributeContainer, expression.getAttributePath());
+    if (reader == null) {
+      return never();
+    }
+
+    Schema.Attribute attribute = reader.attribute;
+    if (attribute.isMultiValued()) {
+      log.warn("Invalid expression, target is collection");
+      return never();
+    }
+
+    CompareOperator op = expression.getOperation();
+    Object compareValue = expression.getCompareValue();
+    if (compareValue == null) {
+      // there is nothing to compare an attribute value against
+      return never();
+    }
+
+    boolean stringExpression = isStringExpression(attribute, compareValue);
+    boolean ignoreCase = ignoreCase(attribute, compareValue);
+    switch (op) {
+      case EQ:
+        return ignoreCase
+          ? cast(new EqualsIgnoreCasePredicate(reader, literal, compareValue.toString()))
+          : cast(new EqualsPredicate(reader, literal, compareValue));
+      case NE:
+        return ignoreCase
+          ? cast(new NotEqualsIgnoreCasePredicate(reader, literal, compareValue.toString()))
+          : cast(new NotEqualsPredicate(reader, literal, compareValue));
+      case SW:
+        if (!stringExpression) {
+          return never();
+        }
+        return ignoreCase
+          ? cast(new StartsWithIgnoreCasePredicate(reader, literal, compareValue.toString()))
+          : cast(new StartsWithPredicate(reader, literal, compareValue.toString()));
+      case EW:
+        if (!stringExpression) {
+          return never();
+        }
+        return ignoreCase
+          ? cast(new EndsWithIgnoreCasePredicate(reader, literal, compareValue.toString()))
+          : cast(new EndsWithPredicate(reader, literal, compareValue.toString()));
+      case CO:
+        if (!stringExpression) {
+          return never();
+        }
+        return ignoreCase
+          ? cast(new ContainsIgnoreCasePredicate(reader, literal, compareValue.toString()))
+          : cast(new ContainsPredicate(reader, literal, compareValue.toString()));
+      case GT:
+      case GE:
+      case LT:
+      case LE:
+        if (compareValue instanceof Comparable) {
+          return cast(new CompareOperatorPredicate(reader, literal, op, (Comparable<?>) compareValue));
+        }
+        log.debug("Invalid query, value for expression is not comparable: {}", compareValue);
+        return never();
+      default:
+        log.debug("Unsupported operation in filter: {}", op.name());
+        return never();
+    }
   }
 
   @Override
   protected Predicate<R> apply(LogicalOperator op, Predicate<R> left, Predicate<R> right) {
+    Predicate<R> absorbing = op == LogicalOperator.AND ? never() : always();
+    Predicate<R> neutral = op == LogicalOperator.AND ? always() : never();
+    if (left == absorbing || right == absorbing) {
+      return absorbing;
+    }
+    if (left == neutral) {
+      return right;
+    }
+    if (right == neutral) {
+      return left;
+    }
+
     if (op == LogicalOperator.AND) {
-      return left.and(right);
+      return cast(new AndPredicate(operands(AndPredicate.class, left, right)));
     } else {
-      return left.or(right);
+      return cast(new OrPredicate(operands(OrPredicate.class, left, right)));
     }
   }
 
   @Override
   protected Predicate<R> negate(Predicate<R> expression) {
-    return expression.negate();
+    if (expression == never()) {
+      return always();
+    }
+    if (expression == always()) {
+      return never();
+    }
+    if (expression instanceof NotPredicate) {
+      return cast(((NotPredicate) expression).predicate);
+    }
+    return cast(new NotPredicate(cast(expression)));
+  }
+
+  @Override
+  protected Predicate<R> apply(AttributeInExpression expression, AttributeContainer attributeContainer) {
+    // count the string literals the same way as the equivalent comparisons
+    int firstLiteral = literals;
+    Object[] compareValues = expression.getCompareValues().toArray();
+    for (Object compareValue : compareValues) {
+      if (compareValue instanceof String) {
+        literals++;
+      }
+    }
+
+    AttributeReader reader = reader(attributeContainer, expression.getAttributePath());
+    if (reader == null) {
+      return never();
+    }
+    if (reader.attribute.isMultiValued()) {
+      log.warn("Invalid expression, target is collection");
+      return never();
+    }
+    return cast(InPredicate.of(reader, firstLiteral, compareValues));
   }
 
   @Override
   protected Predicate<R> apply(AttributePresentExpression expression, AttributeContainer attributeContainer) {
-    return new AttributePresentPredicate<>(expression, attributeContainer);
+    AttributeReader reader = reader(attributeContainer, expression.getAttributePath());
+    if (reader == null) {
+      return never();
+    }
+    if (reader.attribute.isMultiValued()) {
+      log.debug("Invalid expression, target is collection");
+      return never();
+    }
+    return cast(new AttributePresentPredicate(reader));
   }
 
   @Override
   protected Predicate<R> apply(ValuePathExpression expression, AttributeContainer attributeContainer) {
-    Predicate<Object> nestedPredicate = new InMemoryScimFilterMatcher<>().apply(expression.getAttributeExpression(), attribute(attributeContainer, expression.getAttributePath()));
-    return new ValuePathPredicate<>(expression, attributeContainer, nestedPredicate);
+    AttributeReader reader = reader(attributeContainer, expression.getAttributePath());
+
+    // compiled by this matcher even if it can never match, so nested attributes are read the same way and the literals
+    // of the nested expression are counted
+    Predicate<Object> nestedPredicate = cast(apply(expression.getAttributeExpression(), reader != null ? reader.attribute : null));
+    if (reader == null || !reader.attribute.isMultiValued()) {
+      return never();
+    }
+    return cast(new ValuePathPredicate(reader, nestedPredicate));
   }
 
   @Override
   protected Predicate<R> unhandledExpression(FilterExpression expression, AttributeContainer attributeContainer) {
-    log.debug("Unsupported Filter expression of type: " + expression.getClass());
-    return scimResource -> false;
+    log.debug("Unsupported Filter expression: {}", expression);
+    return never();
   }
 
-  public <A> A get(Schema.Attribute attribute, A actual) {
-    return attribute.getAccessor().get(actual);
+  /**
+   * Returns an accessor reading the value of {@code attribute} from the resource (or complex attribute value) that
+   * contains it.
+   */
+  protected ValueAccessor accessor(Schema.Attribute attribute) {
+    Schema.AttributeAccessor accessor = attribute.getAccessor();
+    if (accessor == null) {
+      return actual -> null;
+    }
+    return accessor::get;
   }
 
-  private abstract class AbstractAttributePredicate<T extends FilterExpression, R> implements Predicate<R> {
+  /**
+   * Resolves the attribute path of an expression to the accessors needed to read its value, or {@code null} if the
+   * attribute cannot be filtered on.
+   */
+  private AttributeReader reader(AttributeContainer attributeContainer, AttributeReference attributeReference) {
+    if (attributeContainer == null) {
+      return null;
+    }
 
-    final T expression;
+    // get and validate attribute
+    Schema.Attribute resolvedAttribute = attribute(attributeContainer, attributeReference);
+    if (resolvedAttribute == null) {
+      return null;
+    }
 
-    final AttributeContainer attributeContainer;
+    // now walk the attribute path again to get the accessors
+    Schema.Attribute schemaAttribute = attributeContainer.getAttribute(attributeReference.getAttributeName());
 
-    final AttributeReference attributeReference;
+    // check if the filter is nested such as: `emails[type eq "work"].value`
+    ValueAccessor parent = !(attributeReference.hasSubAttribute() && schemaAttribute.isMultiValued())
+      ? accessor(schemaAttribute)
+      : null;
 
-    private AbstractAttributePredicate(T expression, AttributeContainer attributeContainer, AttributeReference attributeReference) {
-      this.expression = expression;
-      this.attributeContainer = attributeContainer;
-      this.attributeReference = attributeReference;
+    // if the attribute has a sub-level, continue on
+    String subAttribute = attributeReference.getSubAttributeName();
+    if (subAttribute != null) {
+      schemaAttribute = schemaAttribute.getAttribute(subAttribute);
+      return new AttributeReader(schemaAttribute, parent, accessor(schemaAttribute));
     }
+    return new AttributeReader(schemaAttribute, parent, null);
+  }
 
-    protected abstract boolean test(Schema.Attribute attribute, Object actualValue);
+  @SuppressWarnings("unchecked")
+  private static Predicate<Object>[] operands(Class<? extends LogicalPredicate> type, Predicate<?> left, Predicate<?> right) {
+    Predicate<Object>[] leftOperands = type.isInstance(left) ? ((LogicalPredicate) left).predicates : new Predicate[] {left};
+    Predicate<Object>[] rightOperands = type.isInstance(right) ? ((LogicalPredicate) right).predicates : new Predicate[] {right};
+
+    // both sides are already ordered by cost, merge them keeping the order of operands with the same cost
+    Predicate<Object>[] operands = new Predicate[leftOperands.length + rightOperands.length];
+    int l = 0;
+    int r = 0;
+    for (int i = 0; i < operands.length; i++) {
+      if (r == rightOperands.length || l < leftOperands.length && cost(leftOperands[l]) <= cost(rightOperands[r])) {
+        operands[i] = leftOperands[l++];
+      } else {
+        operands[i] = rightOperands[r++];
+      }
+    }
+    return operands;
+  }
 
-    @Override
-    public boolean test(R actual) {
+  /**
+   * Estimates the relative cost of testing a Predicate, lower for tests that are cheap or likely to decide a chain.
+   */
+  private static int cost(Predicate<?> predicate) {
+    if (predicate instanceof EqualsPredicate || predicate instanceof EqualsIgnoreCasePredicate || predicate instanceof InPredicate) {
+      return 1;
+    } else if (predicate instanceof AttributePresentPredicate) {
+      return 2;
+    } else if (predicate instanceof StartsWithPredicate || predicate instanceof EndsWithPredicate
+      || predicate instanceof StartsWithIgnoreCasePredicate || predicate instanceof EndsWithIgnoreCasePredicate
+      || predicate instanceof NotEqualsPredicate || predicate instanceof NotEqualsIgnoreCasePredicate) {
+      return 3;
+    } else if (predicate instanceof NotPredicate) {
+      return cost(((NotPredicate) predicate).predicate);
+    } else if (predicate instanceof LogicalPredicate) {
+      int cost = 0;
+      for (Predicate<Object> operand : ((LogicalPredicate) predicate).predicates) {
+        cost += cost(operand);
+      }
+      return cost;
+    } else if (predicate instanceof ValuePathPredicate) {
+      return 8 + cost(((ValuePathPredicate) predicate).nestedPredicate);
+    }
+    return 4;
+  }
 
-      try {
-        // get and validate attribute
-        Schema.Attribute resolvedAttribute = attribute(attributeContainer, attributeReference);
-        if (resolvedAttribute != null) {
+  @SuppressWarnings("unchecked")
+  private static <T> Predicate<T> cast(Predicate<?> predicate) {
+    return (Predicate<T>) predicate;
+  }
 
-          // now walk the attribute path again to get the accessor and value
-          Schema.Attribute schemaAttribute = attributeContainer.getAttribute(attributeReference.getAttributeName());
+  private static <T> Predicate<T> never() {
+    return cast(NeverPredicate.INSTANCE);
+  }
 
-          // check if the filter is nested such as: `emails[type eq "work"].value`
-          if (!(attributeReference.hasSubAttribute() && schemaAttribute.isMultiValued())) {
-            actual = get(schemaAttribute, actual);
-          }
-          // if the attribute has a sub-level, continue on
-          String subAttribute = attributeReference.getSubAttributeName();
-          if (subAttribute != null) {
-            schemaAttribute = schemaAttribute.getAttribute(subAttribute);
-            actual = get(schemaAttribute, actual);
-          }
-          return test(schemaAttribute, actual);
+  private static <T> Predicate<T> always() {
+    return cast(AlwaysPredicate.INSTANCE);
+  }
+
+  private static CharSequence charSequence(Object value) {
+    return value instanceof CharSequence ? (CharSequence) value : value.toString();
+  }
+
+  /**
+   * Reads the value of a single attribute.
+   */
+  @FunctionalInterface
+  interface ValueAccessor {
+    Object get(Object actual);
+  }
+
+  /**
+   * Reads the value of a resolved attribute path, a {@code null} value anywhere along the path reads as {@code null}.
+   */
+  private static final class AttributeReader {
+
+    final Schema.Attribute attribute;
+
+    private final ValueAccessor parent;
+
+    private final ValueAccessor subAttribute;
+
+    private AttributeReader(Schema.Attribute attribute, ValueAccessor parent, ValueAccessor subAttribute) {
+      this.attribute = attribute;
+      this.parent = parent;
+      this.subAttribute = subAttribute;
+    }
+
+    Object read(Object actual) {
+      try {
+        if (actual != null && parent != null) {
+          actual = parent.get(actual);
+        }
+        if (actual != null && subAttribute != null) {
+          actual = subAttribute.get(actual);
         }
-      } catch (Exception e) {
+        return actual;
+      } catch (RuntimeException e) {
         // The SCIM spec states to ignore the query instead of rejecting it - rfc7644 - 3.4.2
         log.debug("Invalid SCIM filter received", e);
+        return null;
       }
+    }
+  }
 
+  private static final class NeverPredicate implements Predicate<Object> {
+
+    private static final NeverPredicate INSTANCE = new NeverPredicate();
+
+    @Override
+    public boolean test(Object actual) {
       return false;
     }
   }
 
-  private class ValuePathPredicate<R> extends AbstractAttributePredicate<ValuePathExpression, R> {
+  private static final class AlwaysPredicate implements Predicate<Object> {
 
-    final private Predicate<Object> nestedPredicate;
+    private static final AlwaysPredicate INSTANCE = new AlwaysPredicate();
 
-    ValuePathPredicate(ValuePathExpression expression, AttributeContainer attributeContainer, Predicate<Object> nestedPredicate) {
-      super(expression, attributeContainer, expression.getAttributePath());
-      this.nestedPredicate = nestedPredicate;
+    @Override
+    public boolean test(Object actual) {
+      return true;
+    }
+  }
+
+  private abstract static class LogicalPredicate implements Predicate<Object> {
+
+    final Predicate<Object>[] predicates;
+
+    private LogicalPredicate(Predicate<Object>[] predicates) {
+      this.predicates = predicates;
+    }
+  }
+
+  private static final class AndPredicate extends LogicalPredicate {
+
+    private AndPredicate(Predicate<Object>[] predicates) {
+      super(predicates);
     }
 
     @Override
-    protected boolean test(Schema.Attribute attribute, Object actualValue) {
-      // actualValue must be a Collection
-      if (attribute.isMultiValued()) {
-        return ((Collection<?>) actualValue).stream().anyMatch(nestedPredicate);
+    public boolean test(Object actual) {
+      for (Predicate<Object> predicate : predicates) {
+        if (!predicate.test(actual)) {
+          return false;
+        }
       }
+      return true;
+    }
+  }
 
+  private static final class OrPredicate extends LogicalPredicate {
+
+    private OrPredicate(Predicate<Object>[] predicates) {
+      super(predicates);
+    }
+
+    @Override
+    public boolean test(Object actual) {
+      for (Predicate<Object> predicate : predicates) {
+        if (predicate.test(actual)) {
+          return true;
+        }
+      }
       return false;
     }
   }
 
-  private class AttributeComparisonPredicate<R> extends AbstractAttributePredicate<AttributeComparisonExpression, R> {
+  private static final class NotPredicate implements Predicate<Object> {
+
+    private final Predicate<Object> predicate;
 
-    private AttributeComparisonPredicate(AttributeComparisonExpression expression, AttributeContainer attributeContainer) {
-      super(expression, attributeContainer, expression.getAttributePath());
+    private NotPredicate(Predicate<Object> predicate) {
+      this.predicate = predicate;
     }
 
     @Override
-    protected boolean test(Schema.Attribute attribute, Object actualValue) {
+    public boolean test(Object actual) {
+      return !predicate.test(actual);
+    }
+  }
 
-      if (actualValue == null) {
-        return false;
-      }
+  private static final class ValuePathPredicate implements Predicate<Object> {
 
-      if (attribute.isMultiValued()) {
-        log.warn("Invalid expression, target is collection");
-        return false;
-      }
+    private final AttributeReader reader;
 
-      CompareOperator op = expression.getOperation();
-      Object compareValue = expression.getCompareValue();
+    private final Predicate<Object> nestedPredicate;
 
-      if (op == CompareOperator.EQ) {
+    private ValuePathPredicate(AttributeReader reader, Predicate<Object> nestedPredicate) {
+      this.reader = reader;
+      this.nestedPredicate = nestedPredicate;
+    }
 
-        if (isStringExpression(attribute, compareValue) && !attribute.isCaseExact()) {
-          return actualValue.toString().equalsIgnoreCase(compareValue.toString());
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      if (actualValue instanceof Collection) {
+        for (Object value : (Collection<?>) actualValue) {
+          if (nestedPredicate.test(value)) {
+            return true;
+          }
         }
-        return compareValue.equals(actualValue);
       }
-      if (op == CompareOperator.NE) {
-        if (isStringExpression(attribute, compareValue) && !attribute.isCaseExact()) {
-          return !actualValue.toString().equalsIgnoreCase(compareValue.toString());
+      return false;
+    }
+  }
+
+  /**
+   * Returns if {@code compareValue} is compared to values of {@code attribute} ignoring case, the same rule for
+   * comparisons and the values of an {@link AttributeInExpression}, so that the {@code in} the optimizer makes of
+   * {@code eq} comparisons matches the same resources.
+   */
+  private static boolean ignoreCase(Schema.Attribute attribute, Object compareValue) {
+    return isStringExpression(attribute, compareValue) && !attribute.isCaseExact();
+  }
+
+  /**
+   * Tests an attribute value against a set of values, the compiled form of an {@link AttributeInExpression}.
+   */
+  private static final class InPredicate implements Predicate<Object> {
+
+    private final AttributeReader reader;
+
+    // the compare values of the expression, and the index of the first string among the literals of the filter
+    private final Object[] compareValues;
+
+    private final int firstLiteral;
+
+    // the values compared like EqualsPredicate, and the folded values compared like EqualsIgnoreCasePredicate, ordered
+    // by length so only the values as long as the attribute value are compared
+    private final Set<Object> values = new HashSet<>();
+
+    private final String[] foldedValues;
+
+    private InPredicate(AttributeReader reader, int firstLiteral, Object[] compareValues) {
+      this.reader = reader;
+      this.firstLiteral = firstLiteral;
+      this.compareValues = compareValues;
+      Set<String> folded = new HashSet<>();
+      for (Object compareValue : compareValues) {
+        // "eq null" never matches
+        if (compareValue == null) {
+          continue;
+        }
+        if (ignoreCase(reader.attribute, compareValue)) {
+          folded.add(CaseFolding.fold(compareValue.toString()));
+        } else {
+          values.add(compareValue);
         }
-        return !compareValue.equals(actualValue);
-      }
-      if (op == CompareOperator.SW) {
-        return isStringExpression(attribute, compareValue)
-          && actualValue.toString().startsWith(compareValue.toString());
       }
-      if (op == CompareOperator.EW) {
-        return isStringExpression(attribute, compareValue)
-          && actualValue.toString().endsWith(compareValue.toString());
+      foldedValues = folded.toArray(new String[0]);
+      Arrays.sort(foldedValues, Comparator.comparingInt(String::length));
+    }
+
+    static InPredicate of(AttributeReader reader, int firstLiteral, Object[] compareValues) {
+      return new InPredicate(reader, firstLiteral, compareValues);
+    }
+
+    Predicate<Object> bind(String[] literals) {
+      Object[] bound = compareValues.clone();
+      int literal = firstLiteral;
+      for (int i = 0; i < bound.length; i++) {
+        if (bound[i] instanceof String) {
+          bound[i] = literals[literal++];
+        }
       }
-      if (op == CompareOperator.CO) {
-        return isStringExpression(attribute, compareValue)
-          && actualValue.toString().contains(compareValue.toString());
+      return new InPredicate(reader, firstLiteral, bound);
+    }
+
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      if (actualValue == null) {
+        return false;
       }
+      return values.contains(actualValue) || foldedValues.length > 0 && containsIgnoreCase(actualValue.toString());
+    }
 
-      if (actualValue instanceof Comparable) {
-        Comparable actual = (Comparable) actualValue;
-        Comparable compare = (Comparable) compareValue;
-        return CompareOperatorPredicate.naturalOrder(op, compare).test(actual);
+    private boolean containsIgnoreCase(String value) {
+      for (String folded : foldedValues) {
+        if (folded.length() > value.length()) {
+          return false;
+        }
+        if (CaseFolding.equals(value, folded)) {
+          return true;
+        }
       }
+      return false;
+    }
+  }
+
+  private static final class AttributePresentPredicate implements Predicate<Object> {
 
-      throw new ScimResourceInvalidException("Unsupported operation in filter: " + op.name());
+    private final AttributeReader reader;
+
+    private AttributePresentPredicate(AttributeReader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public boolean test(Object actual) {
+      return reader.read(actual) != null;
     }
   }
 
-  private static class CompareOperatorPredicate<T> implements Predicate<T> {
-    private final CompareOperator op;
+  /**
+   * A Predicate comparing an attribute value to the compare value of the expression.
+   */
+  private abstract static class ComparisonPredicate implements Predicate<Object> {
 
-    private final Comparator<T> comparator;
+    final AttributeReader reader;
 
-    private final T comparedValue;
+    // the index of the compare value among the string literals of the filter, or -1 if it is not a string
+    final int literal;
 
+    private ComparisonPredicate(AttributeReader reader, int literal) {
+      this.reader = reader;
+      this.literal = literal;
+    }
 
-    private CompareOperatorPredicate(CompareOperator op, T comparedValue, Comparator<T> comparator) {
-      this.op = op;
-      this.comparator = comparator;
-      this.comparedValue = comparedValue;
+    Predicate<Object> bind(String[] literals) {
+      return literal < 0 ? this : withCompareValue(literals[literal]);
+    }
+
+    abstract Predicate<Object> withCompareValue(String compareValue);
+  }
+
+  private static final class EqualsPredicate extends ComparisonPredicate {
+
+    private final Object compareValue;
+
+    private EqualsPredicate(AttributeReader reader, int literal, Object compareValue) {
+      super(reader, literal);
+      this.compareValue = compareValue;
     }
 
     @Override
-    public boolean test(T actualValue) {
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new EqualsPredicate(reader, literal, compareValue);
+    }
 
-      int compareResult = comparator.compare(actualValue, comparedValue);
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      return actualValue != null && compareValue.equals(actualValue);
+    }
+  }
 
-      if (op == CompareOperator.LT) {
-        return compareResult < 0;
-      } else if (op == CompareOperator.GT) {
-        return compareResult > 0;
-      } else if (op == CompareOperator.LE) {
-        return compareResult <= 0;
-      } else if (op == CompareOperator.GE) {
-        return compareResult >= 0;
-      }
-      return false;
+  private static final class NotEqualsPredicate extends ComparisonPredicate {
+
+    private final Object compareValue;
+
+    private NotEqualsPredicate(AttributeReader reader, int literal, Object compareValue) {
+      super(reader, literal);
+      this.compareValue = compareValue;
+    }
+
+    @Override
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new NotEqualsPredicate(reader, literal, compareValue);
+    }
+
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      return actualValue != null && !compareValue.equals(actualValue);
+    }
+  }
+
+  private static final class EqualsIgnoreCasePredicate extends ComparisonPredicate {
+
+    // folded once, see CaseFolding
+    private final String compareValue;
+
+    private EqualsIgnoreCasePredicate(AttributeReader reader, int literal, String compareValue) {
+      super(reader, literal);
+      this.compareValue = CaseFolding.fold(compareValue);
+    }
+
+    @Override
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new EqualsIgnoreCasePredicate(reader, literal, compareValue);
+    }
+
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      return actualValue != null && CaseFolding.equals(charSequence(actualValue), compareValue);
+    }
+  }
+
+
+  private static final class NotEqualsIgnoreCasePredicate extends ComparisonPredicate {
+
+    // folded once, see CaseFolding
+    private final String compareValue;
+
+    private NotEqualsIgnoreCasePredicate(AttributeReader reader, int literal, String compareValue) {
+      super(reader, literal);
+      this.compareValue = CaseFolding.fold(compareValue);
+    }
+
+    @Override
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new NotEqualsIgnoreCasePredicate(reader, literal, compareValue);
+    }
+
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      return actualValue != null && !CaseFolding.equals(charSequence(actualValue), compareValue);
+    }
+  }
+
+
+  private static final class StartsWithPredicate extends ComparisonPredicate {
+
+    private final String compareValue;
+
+    private StartsWithPredicate(AttributeReader reader, int literal, String compareValue) {
+      super(reader, literal);
+      this.compareValue = compareValue;
+    }
+
+    @Override
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new StartsWithPredicate(reader, literal, compareValue);
+    }
+
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      return actualValue != null && actualValue.toString().startsWith(compareValue);
+    }
+  }
+
+  private static final class EndsWithPredicate extends ComparisonPredicate {
+
+    private final String compareValue;
+
+    private EndsWithPredicate(AttributeReader reader, int literal, String compareValue) {
+      super(reader, literal);
+      this.compareValue = compareValue;
+    }
+
+    @Override
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new EndsWithPredicate(reader, literal, compareValue);
+    }
+
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      return actualValue != null && actualValue.toString().endsWith(compareValue);
+    }
+  }
+
+  private static final class ContainsPredicate extends ComparisonPredicate {
+
+    private final String compareValue;
+
+    private ContainsPredicate(AttributeReader reader, int literal, String compareValue) {
+      super(reader, literal);
+      this.compareValue = compareValue;
+    }
+
+    @Override
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new ContainsPredicate(reader, literal, compareValue);
     }
 
-    static <T extends Comparable<T>> CompareOperatorPredicate<T> naturalOrder(CompareOperator op, T comparedValue) {
-      return new CompareOperatorPredicate<>(op, comparedValue, Comparator.naturalOrder());
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      return actualValue != null && actualValue.toString().contains(compareValue);
     }
   }
+  private static final class StartsWithIgnoreCasePredicate extends ComparisonPredicate {
+
+    // folded once, see CaseFolding
+    private final String compareValue;
+
+    private StartsWithIgnoreCasePredicate(AttributeReader reader, int literal, String compareValue) {
+      super(reader, literal);
+      this.compareValue = CaseFolding.fold(compareValue);
+    }
 
-  private class AttributePresentPredicate<R> extends AbstractAttributePredicate<AttributePresentExpression, R> {
-    private AttributePresentPredicate(AttributePresentExpression expression, AttributeContainer attributeContainer) {
-      super(expression, attributeContainer, expression.getAttributePath());
+    @Override
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new StartsWithIgnoreCasePredicate(reader, literal, compareValue);
     }
 
     @Override
-    protected boolean test(Schema.Attribute attribute, Object actualValue) {
-      if (attribute.isMultiValued()) {
-        log.debug("Invalid expression, target is collection");
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      return actualValue != null && CaseFolding.startsWith(charSequence(actualValue), compareValue);
+    }
+  }
+
+  private static final class EndsWithIgnoreCasePredicate extends ComparisonPredicate {
+
+    // folded once, see CaseFolding
+    private final String compareValue;
+
+    private EndsWithIgnoreCasePredicate(AttributeReader reader, int literal, String compareValue) {
+      super(reader, literal);
+      this.compareValue = CaseFolding.fold(compareValue);
+    }
+
+    @Override
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new EndsWithIgnoreCasePredicate(reader, literal, compareValue);
+    }
+
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      return actualValue != null && CaseFolding.endsWith(charSequence(actualValue), compareValue);
+    }
+  }
+
+  private static final class ContainsIgnoreCasePredicate extends ComparisonPredicate {
+
+    // folded once, see CaseFolding
+    private final String compareValue;
+
+    private ContainsIgnoreCasePredicate(AttributeReader reader, int literal, String compareValue) {
+      super(reader, literal);
+      this.compareValue = CaseFolding.fold(compareValue);
+    }
+
+    @Override
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new ContainsIgnoreCasePredicate(reader, literal, compareValue);
+    }
+
+    @Override
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      return actualValue != null && CaseFolding.contains(charSequence(actualValue), compareValue);
+    }
+  }
+
+
+  private static final class CompareOperatorPredicate extends ComparisonPredicate {
+
+    private final CompareOperator op;
+
+    private final Comparable<?> compareValue;
+
+    private CompareOperatorPredicate(AttributeReader reader, int literal, CompareOperator op, Comparable<?> compareValue) {
+      super(reader, literal);
+      this.op = op;
+      this.compareValue = compareValue;
+    }
+
+    @Override
+    Predicate<Object> withCompareValue(String compareValue) {
+      return new CompareOperatorPredicate(reader, literal, op, compareValue);
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public boolean test(Object actual) {
+      Object actualValue = reader.read(actual);
+      if (!(actualValue instanceof Comparable)) {
+        return false;
+      }
+
+      int compareResult;
+      try {
+        compareResult = ((Comparable) actualValue).compareTo(compareValue);
+      } catch (ClassCastException e) {
+        log.debug("Invalid SCIM filter received, cannot compare {} to {}", actualValue.getClass(), compareValue.getClass());
         return false;
       }
-      return actualValue != null;
+
+      if (op == CompareOperator.LT) {
+        return compareResult < 0;
+      } else if (op == CompareOperator.GT) {
+        return compareResult > 0;
+      } else if (op == CompareOperator.LE) {
+        return compareResult <= 0;
+      } else {
+        return compareResult >= 0;
+      }
     }
   }
 }
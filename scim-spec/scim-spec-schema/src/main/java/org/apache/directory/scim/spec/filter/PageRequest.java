@@ -25,4 +25,6 @@ import lombok.Data;
 public class PageRequest {
   private Integer startIndex;
   private Integer count;
+  // an opaque cursor, an empty cursor requests the first page of cursor-based pagination
+  private String cursor;
 }
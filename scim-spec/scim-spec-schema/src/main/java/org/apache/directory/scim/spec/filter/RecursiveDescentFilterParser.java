@@ -0,0 +1,678 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+
+import java.util.Locale;
+
+/**
+ * A hand-written recursive-descent parser for SCIM filters and PATCH paths.  It reads directly from a
+ * {@link CharSequence} into a {@link FilterExpression}, without a token stream or a parse tree.
+ * <p>
+ * The results, including the quirks of the generated parser, are identical to the ANTLR implementation defined by
+ * {@code Filter.g4}:
+ * <ul>
+ *   <li>Tokens are the longest match of the grammar's lexer rules, ties are won by the rule defined first.  Characters
+ *   no lexer rule matches are skipped.</li>
+ *   <li>Neither {@code filter} nor {@code patchPath} is anchored to the end of input, anything that cannot continue the
+ *   expression is ignored.</li>
+ *   <li>AND/OR chains of {@code filterExpression} are left associative, while a chain of {@code attributeExpression}s is
+ *   consumed greedily as long as the next operand is an {@code attributeExpression}.</li>
+ *   <li>Errors are reported at the same token as the ANTLR parser would report them.</li>
+ * </ul>
+ */
+final class RecursiveDescentFilterParser {
+
+  // token types, named after the vocabulary of the generated FilterLexer
+  private static final int EOF = 0;
+  private static final int LBRACKET = 1;
+  private static final int RBRACKET = 2;
+  private static final int DOT = 3;
+  private static final int LPAREN = 4;
+  private static final int RPAREN = 5;
+  private static final int LOGIC_OP = 6;
+  private static final int COMP_VALUE = 7;
+  private static final int COMPARE_OP = 8;
+  private static final int PRESENT_OP = 9;
+  private static final int NOT_OP = 10;
+  private static final int FULL_ATTRIBUTE_PATH = 11;
+  private static final int URN_AND_NAME_ATTRIBUTE_PATH = 12;
+  private static final int PARENT_CHILD_ATTRIBUTE_PATH = 13;
+  private static final int ATTRIBUTE_NAME = 14;
+  private static final int SP = 15;
+  // any other lexer rule (NUMBER fragments, URN, ...), never expected by the parser
+  private static final int OTHER = 16;
+
+  private static final String[] TOKEN_NAMES = {
+    "<EOF>", "'['", "']'", "'.'", "'('", "')'", "LogicOp", "CompValue", "CompareOp", "PresentOp", "NotOp",
+    "FullAttributePath", "UrnAndNameAttributePath", "ParentChildAttributePath", "AttributeName", "SP", "OTHER"
+  };
+
+  private final CharSequence input;
+
+  private final int length;
+
+  // offset of the next unconsumed token
+  private int position;
+
+  // lexing is deterministic for an offset, the last token lexed is kept to avoid re-scanning on lookahead
+  private int lexedAt = -1;
+  private int type;
+  private int start;
+  private int end;
+
+  // like the ANTLR listener, compare values are only converted once the input has been parsed successfully
+  private IllegalStateException valueError;
+
+  // errors in PATCH paths have always been reported by line only
+  private boolean reportColumn = true;
+
+  RecursiveDescentFilterParser(CharSequence input) {
+    this.input = input;
+    this.length = input.length();
+  }
+
+  /**
+   * Parses the {@code filter} rule.
+   *
+   * @throws IllegalStateException if the input is not a valid filter.
+   */
+  FilterExpression parseFilter() {
+    FilterExpression expression = filterExpression();
+    if (valueError != null) {
+      throw valueError;
+    }
+    return expression;
+  }
+
+  /**
+   * Parses the {@code patchPath} rule.
+   *
+   * @throws IllegalStateException if the input is not a valid PATCH path.
+   */
+  ValuePathExpression parsePatchPath() {
+    reportColumn = false;
+    ValuePathExpression expression;
+    int first = peek();
+    if ((first == URN_AND_NAME_ATTRIBUTE_PATH || first == ATTRIBUTE_NAME) && peek(end) == LBRACKET) {
+      AttributeReference attributePath = new AttributeReference(consume());
+      consume();
+      FilterExpression attributeExpression = attributeExpression();
+      expect(RBRACKET);
+      attributeExpression.setAttributePath(attributePath.getUrn(), attributePath.getAttributeName());
+
+      if (peek() == DOT) {
+        consume();
+        String subAttributeName = expect(ATTRIBUTE_NAME);
+        attributePath.setSubAttributeName(subAttributeName);
+      }
+      expression = new ValuePathExpression(attributePath, attributeExpression);
+    } else if (first == FULL_ATTRIBUTE_PATH || first == URN_AND_NAME_ATTRIBUTE_PATH || first == PARENT_CHILD_ATTRIBUTE_PATH || first == ATTRIBUTE_NAME) {
+      expression = new ValuePathExpression(new AttributeReference(consume()));
+    } else {
+      throw syntaxError("FullAttributePath, UrnAndNameAttributePath, ParentChildAttributePath, AttributeName");
+    }
+
+    if (valueError != null) {
+      throw valueError;
+    }
+    return expression;
+  }
+
+  // filterExpression: filterExpression SP LogicOp SP filterExpression | ...
+  private FilterExpression filterExpression() {
+    FilterExpression left = filterPrimary();
+    // the loop of the left recursive rule commits as soon as it sees a space
+    while (peek() == SP) {
+      consume();
+      LogicalOperator operator = logicalOperator(expect(LOGIC_OP));
+      expect(SP);
+      left = new LogicalExpression(left, operator, filterPrimary());
+    }
+    return left;
+  }
+
+  private FilterExpression filterPrimary() {
+    switch (peek()) {
+      case NOT_OP:
+      case SP:
+      case LPAREN:
+        return group(false);
+      case FULL_ATTRIBUTE_PATH:
+      case PARENT_CHILD_ATTRIBUTE_PATH:
+        return attributeOperation(consume());
+      case URN_AND_NAME_ATTRIBUTE_PATH:
+        if (peek(end) == LBRACKET) {
+          return valuePath();
+        }
+        return attributeOperation(consume());
+      case ATTRIBUTE_NAME:
+        if (peek(end) == LBRACKET) {
+          return valuePath();
+        }
+        return attributeExpression();
+      default:
+        throw syntaxError("'(', NotOp, FullAttributePath, UrnAndNameAttributePath, ParentChildAttributePath, AttributeName, SP");
+    }
+  }
+
+  // partialAttributePath '[' attributeExpression ']'
+  private FilterExpression valuePath() {
+    AttributeReference attributeReference = new AttributeReference(consume());
+    consume();
+    FilterExpression attributeExpression = attributeExpression();
+    expect(RBRACKET);
+    attributeExpression.setAttributePath(attributeReference.getUrn(), attributeReference.getAttributeName());
+    return new ValuePathExpression(attributeReference, attributeExpression);
+  }
+
+  // attributeExpression: attributeExpression SP LogicOp SP attributeExpression | ...
+  private FilterExpression attributeExpression() {
+    FilterExpression left = attributePrimary();
+    // unlike filterExpression, the loop is only entered when the whole next operand is an attributeExpression,
+    // otherwise the chain is left to an enclosing filterExpression (or the caller fails on the space)
+    while (attributeOperandEnd(position) >= 0) {
+      consume();
+      LogicalOperator operator = logicalOperator(consume());
+      consume();
+      left = new LogicalExpression(left, operator, attributePrimary());
+    }
+    return left;
+  }
+
+  private FilterExpression attributePrimary() {
+    switch (peek()) {
+      case NOT_OP:
+      case SP:
+      case LPAREN:
+        return group(true);
+      case ATTRIBUTE_NAME:
+        return attributeOperation(consume());
+      default:
+        throw syntaxError("'(', NotOp, AttributeName, SP");
+    }
+  }
+
+  // not=NotOp? SP? '(' expression ')'
+  private FilterExpression group(boolean attributeExpression) {
+    boolean not = false;
+    if (peek() == NOT_OP) {
+      consume();
+      not = true;
+    }
+    if (peek() == SP) {
+      consume();
+    }
+    expect(LPAREN);
+    FilterExpression expression = attributeExpression ? attributeExpression() : filterExpression();
+    expect(RPAREN);
+    return new GroupExpression(not, expression);
+  }
+
+  // attributePath SP PresentOp | attributePath SP op=CompareOp SP compareValue=CompValue
+  private FilterExpression attributeOperation(String attributePath) {
+    expect(SP);
+    if (peek() == PRESENT_OP) {
+      consume();
+      return new AttributePresentExpression(new AttributeReference(attributePath));
+    }
+    if (peek() != COMPARE_OP) {
+      throw syntaxError("PresentOp, CompareOp");
+    }
+    CompareOperator operator = CompareOperator.valueOf(consume().toUpperCase(Locale.ROOT));
+    expect(SP);
+    String compareValue = expect(COMP_VALUE);
+    return new AttributeComparisonExpression(new AttributeReference(attributePath), operator, compareValue(compareValue));
+  }
+
+  private Object compareValue(String text) {
+    try {
+      return ExpressionBuildingListener.parseJsonType(text);
+    } catch (IllegalStateException e) {
+      if (valueError == null) {
+        valueError = e;
+      }
+      return null;
+    }
+  }
+
+  private static LogicalOperator logicalOperator(String text) {
+    return LogicalOperator.valueOf(text.toUpperCase(Locale.ROOT));
+  }
+
+  // --- lookahead used to predict the attributeExpression loop, these never throw or build expressions
+
+  /**
+   * Returns the end of {@code SP LogicOp SP attributeExpression} (without a trailing loop) starting at {@code offset},
+   * or {@code -1} if the input at {@code offset} is not such an operand.
+   */
+  private int attributeOperandEnd(int offset) {
+    if (peek(offset) != SP || peek(end) != LOGIC_OP || peek(end) != SP) {
+      return -1;
+    }
+    return attributePrimaryEnd(end);
+  }
+
+  private int attributePrimaryEnd(int offset) {
+    int next = peek(offset);
+    if (next == ATTRIBUTE_NAME) {
+      if (peek(end) != SP) {
+        return -1;
+      }
+      next = peek(end);
+      if (next == PRESENT_OP) {
+        return end;
+      }
+      if (next != COMPARE_OP || peek(end) != SP || peek(end) != COMP_VALUE) {
+        return -1;
+      }
+      return end;
+    }
+
+    if (next == NOT_OP) {
+      next = peek(end);
+    }
+    if (next == SP) {
+      next = peek(end);
+    }
+    if (next != LPAREN) {
+      return -1;
+    }
+    int expressionEnd = attributePrimaryEnd(end);
+    while (expressionEnd >= 0) {
+      int operandEnd = attributeOperandEnd(expressionEnd);
+      if (operandEnd < 0) {
+        break;
+      }
+      expressionEnd = operandEnd;
+    }
+    if (expressionEnd < 0 || peek(expressionEnd) != RPAREN) {
+      return -1;
+    }
+    return end;
+  }
+
+  // --- token handling
+
+  private int peek() {
+    return peek(position);
+  }
+
+  private int peek(int offset) {
+    lex(offset);
+    return type;
+  }
+
+  private String consume() {
+    lex(position);
+    position = end;
+    return input.subSequence(start, end).toString();
+  }
+
+  private String expect(int expected) {
+    if (peek() != expected) {
+      throw syntaxError(TOKEN_NAMES[expected]);
+    }
+    return consume();
+  }
+
+  private IllegalStateException syntaxError(String expected) {
+    lex(position);
+    String text = type == EOF ? "<EOF>" : input.subSequence(start, end).toString();
+    int line = 1;
+    int lineStart = 0;
+    for (int i = 0; i < start; i++) {
+      if (input.charAt(i) == '\n') {
+        line++;
+        lineStart = i + 1;
+      }
+    }
+    return new IllegalStateException("failed to parse at line " + line + (reportColumn ? ":" + (start - lineStart) : "") + " due to mismatched input '" + text + "' expecting " + (expected.contains(",") ? "{" + expected + "}" : expected));
+  }
+
+  // --- lexer, emulating the longest match semantics of the generated FilterLexer
+
+  private void lex(int offset) {
+    if (offset == lexedAt) {
+      return;
+    }
+    lexedAt = offset;
+    while (offset < length) {
+      int tokenEnd = match(offset);
+      if (tokenEnd >= 0) {
+        start = offset;
+        end = tokenEnd;
+        return;
+      }
+      // token recognition error: the generated lexer drops everything up to and including the offending character
+      int failedAt = -tokenEnd - 1;
+      offset = failedAt < length ? failedAt + 1 : length;
+    }
+    type = EOF;
+    start = length;
+    end = length;
+  }
+
+  /**
+   * Matches a single token at {@code offset}, setting {@link #type}.
+   *
+   * @return the end offset of the token, or {@code -(failedAt + 1)} if no lexer rule matches.
+   */
+  private int match(int offset) {
+    char c = input.charAt(offset);
+    switch (c) {
+      case '[':
+        type = LBRACKET;
+        return offset + 1;
+      case ']':
+        type = RBRACKET;
+        return offset + 1;
+      case '(':
+        type = LPAREN;
+        return offset + 1;
+      case ')':
+        type = RPAREN;
+        return offset + 1;
+      case '.':
+        // FRAC
+        if (isDigit(charAt(offset + 1))) {
+          type = OTHER;
+          return digits(offset + 2);
+        }
+        type = DOT;
+        return offset + 1;
+      case ' ':
+        type = SP;
+        int spaces = offset + 1;
+        while (charAt(spaces) == ' ') {
+          spaces++;
+        }
+        return spaces;
+      case '"':
+        return string(offset);
+      case '+':
+        type = OTHER;
+        return offset + 1;
+      default:
+        if (c == '-' || isDigit(c)) {
+          return number(offset);
+        }
+        if (isAlpha(c)) {
+          return word(offset);
+        }
+        return -offset - 1;
+    }
+  }
+
+  // STRING: '"' (UNESCAPED | ESCAPED)* '"'
+  private int string(int offset) {
+    for (int i = offset + 1; i < length; i++) {
+      char c = input.charAt(i);
+      if (c == '"') {
+        type = COMP_VALUE;
+        return i + 1;
+      }
+      if (c == '\\') {
+        if (++i >= length) {
+          break;
+        }
+        if ("\"\\/bfnrt".indexOf(input.charAt(i)) < 0) {
+          return -i - 1;
+        }
+      } else if (c < ' ' || c > '~') {
+        return -i - 1;
+      }
+    }
+    return -length - 1;
+  }
+
+  // NUMBER: (MINUS)? INT (FRAC)? (EXP)?, or a lone MINUS
+  private int number(int offset) {
+    int i = offset;
+    if (charAt(i) == '-') {
+      i++;
+    }
+    char c = charAt(i);
+    if (c == '0') {
+      i++;
+    } else if (c >= '1' && c <= '9') {
+      i = digits(i + 1);
+    } else {
+      type = OTHER;
+      return offset + 1;
+    }
+    if (charAt(i) == '.' && isDigit(charAt(i + 1))) {
+      i = digits(i + 2);
+    }
+    c = charAt(i);
+    if (c == 'e' || c == 'E') {
+      int exponent = i + 1;
+      c = charAt(exponent);
+      if (c == '+' || c == '-') {
+        exponent++;
+      }
+      if (isDigit(charAt(exponent))) {
+        i = digits(exponent + 1);
+      }
+    }
+    type = COMP_VALUE;
+    return i;
+  }
+
+  // keywords, attribute names and paths, all of which start with a letter
+  private int word(int offset) {
+    char first = input.charAt(offset);
+    // EXP: E (MINUS | PLUS)? DIGIT+, only longer than an AttributeName when it uses PLUS
+    if ((first == 'e' || first == 'E') && charAt(offset + 1) == '+' && isDigit(charAt(offset + 2))) {
+      type = OTHER;
+      return digits(offset + 3);
+    }
+
+    int nameEnd = nameChars(offset + 1);
+    int tokenEnd = nameEnd;
+    type = ATTRIBUTE_NAME;
+    if (charAt(nameEnd) == '.' && isAlpha(charAt(nameEnd + 1))) {
+      type = PARENT_CHILD_ATTRIBUTE_PATH;
+      tokenEnd = nameChars(nameEnd + 2);
+    } else {
+      int keyword = keyword(offset, nameEnd - offset);
+      if (keyword != ATTRIBUTE_NAME) {
+        type = keyword;
+      }
+    }
+
+    if (regionMatches(offset, "urn:")) {
+      tokenEnd = urn(offset, tokenEnd);
+    }
+    return tokenEnd;
+  }
+
+  /**
+   * Matches the URN based rules, FullAttributePath, UrnAndNameAttributePath and URN, against the best match so far.
+   * Sets {@link #type} when one of them wins.
+   *
+   * @return the end offset of the winning token.
+   */
+  private int urn(int offset, int bestEnd) {
+    // NID: LETNUM LETNUMHYP+
+    int nidEnd = offset + 4;
+    if (!isLetNum(charAt(nidEnd))) {
+      return bestEnd;
+    }
+    nidEnd++;
+    while (isLetNum(charAt(nidEnd)) || charAt(nidEnd) == '-') {
+      nidEnd++;
+    }
+    if (nidEnd - offset - 4 < 2 || charAt(nidEnd) != ':') {
+      return bestEnd;
+    }
+
+    // NSS: URNCHARS+
+    int nssStart = nidEnd + 1;
+    int nssEnd = nssStart;
+    while (true) {
+      char c = charAt(nssEnd);
+      if (isLetNum(c) || "()+,-.:=@;$_!*'".indexOf(c) >= 0) {
+        nssEnd++;
+      } else if (c == '%' && isHex(charAt(nssEnd + 1)) && isHex(charAt(nssEnd + 2))) {
+        nssEnd += 3;
+      } else {
+        break;
+      }
+    }
+    if (nssEnd == nssStart) {
+      return bestEnd;
+    }
+
+    // URN ':' AttributeName ('.' AttributeName)?, where the URN is any non-empty prefix of the NSS
+    int fullEnd = -1;
+    int urnAndNameEnd = -1;
+    for (int i = nssStart + 1; i < nssEnd; i++) {
+      if (input.charAt(i) == ':' && isAlpha(charAt(i + 1))) {
+        int nameEnd = nameChars(i + 2);
+        urnAndNameEnd = Math.max(urnAndNameEnd, nameEnd);
+        if (charAt(nameEnd) == '.' && isAlpha(charAt(nameEnd + 1))) {
+          fullEnd = Math.max(fullEnd, nameChars(nameEnd + 2));
+        }
+      }
+    }
+
+    // longest match wins, ties go to the rule defined first: FullAttributePath, UrnAndNameAttributePath, ..., URN
+    int tokenEnd = bestEnd;
+    int tokenType = -1;
+    if (fullEnd >= tokenEnd) {
+      tokenEnd = fullEnd;
+      tokenType = FULL_ATTRIBUTE_PATH;
+    }
+    if (urnAndNameEnd > tokenEnd || urnAndNameEnd == tokenEnd && tokenType == -1) {
+      tokenEnd = urnAndNameEnd;
+      tokenType = URN_AND_NAME_ATTRIBUTE_PATH;
+    }
+    if (nssEnd > tokenEnd) {
+      tokenEnd = nssEnd;
+      tokenType = OTHER;
+    }
+    if (tokenType == -1) {
+      return bestEnd;
+    }
+    type = tokenType;
+    return tokenEnd;
+  }
+
+  private int keyword(int offset, int length) {
+    switch (length) {
+      case 2:
+        char c1 = Character.toLowerCase(input.charAt(offset));
+        char c2 = Character.toLowerCase(input.charAt(offset + 1));
+        if (c1 == 'o' && c2 == 'r') {
+          return LOGIC_OP;
+        }
+        if (c1 == 'p' && c2 == 'r') {
+          return PRESENT_OP;
+        }
+        if (c1 == 'e' && (c2 == 'q' || c2 == 'w')
+          || c1 == 'n' && c2 == 'e'
+          || c1 == 'c' && c2 == 'o'
+          || c1 == 's' && c2 == 'w'
+          || (c1 == 'g' || c1 == 'l') && (c2 == 't' || c2 == 'e')) {
+          return COMPARE_OP;
+        }
+        return ATTRIBUTE_NAME;
+      case 3:
+        if (regionMatchesIgnoreCase(offset, "and")) {
+          return LOGIC_OP;
+        }
+        if (regionMatchesIgnoreCase(offset, "not")) {
+          return NOT_OP;
+        }
+        return ATTRIBUTE_NAME;
+      case 4:
+        return regionMatches(offset, "true") || regionMatches(offset, "null") ? COMP_VALUE : ATTRIBUTE_NAME;
+      case 5:
+        return regionMatches(offset, "false") ? COMP_VALUE : ATTRIBUTE_NAME;
+      default:
+        return ATTRIBUTE_NAME;
+    }
+  }
+
+  private boolean regionMatches(int offset, String text) {
+    if (offset + text.length() > length) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (input.charAt(offset + i) != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean regionMatchesIgnoreCase(int offset, String text) {
+    if (offset + text.length() > length) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (Character.toLowerCase(input.charAt(offset + i)) != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private char charAt(int offset) {
+    return offset < length ? input.charAt(offset) : 0;
+  }
+
+  private int digits(int offset) {
+    while (isDigit(charAt(offset))) {
+      offset++;
+    }
+    return offset;
+  }
+
+  // NAMECHAR: '-' | '_' | DIGIT | ALPHA
+  private int nameChars(int offset) {
+    while (true) {
+      char c = charAt(offset);
+      if (isAlpha(c) || isDigit(c) || c == '-' || c == '_') {
+        offset++;
+      } else {
+        return offset;
+      }
+    }
+  }
+
+  private static boolean isAlpha(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLetNum(char c) {
+    return isAlpha(c) || isDigit(c);
+  }
+
+  private static boolean isHex(char c) {
+    return isDigit(c) || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+  }
+}
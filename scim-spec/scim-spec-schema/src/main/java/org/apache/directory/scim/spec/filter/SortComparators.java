@@ -0,0 +1,294 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.AttributeContainer;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Compiles the {@link SortRequest} of a search into a Comparator of resources, following
+ * <a href="https://datatracker.ietf.org/doc/html/rfc7644#section-3.4.2.3">RFC 7644 section 3.4.2.3</a>.
+ * <ul>
+ *   <li>The {@code sortBy} attribute is resolved through the schema once, when the Comparator is compiled, comparisons
+ *   only read values with the attribute's accessors.</li>
+ *   <li>Strings are compared ignoring case unless the attribute is {@code caseExact}, other values by their type.</li>
+ *   <li>A multi-valued attribute sorts by its {@code primary} value, or else its first value.  A multi-valued complex
+ *   attribute without a sub-attribute, like {@code emails}, sorts by the {@code value} sub-attribute.</li>
+ *   <li>Resources without a value are ordered last, for both sort orders.  The RFC doesn't define where they go, last
+ *   keeps the resources that have a value on the first pages.</li>
+ * </ul>
+ */
+public final class SortComparators {
+
+  private static final Logger log = LoggerFactory.getLogger(SortComparators.class);
+
+  private SortComparators() {
+  }
+
+  /**
+   * Returns a Comparator ordering resources of {@code schema} as requested, or {@code null} if no sort is requested or
+   * the {@code sortBy} attribute can't be sorted by.
+   */
+  public static <T> Comparator<T> compile(SortRequest sortRequest, Schema schema) {
+    return compile(sortRequest, schema, Collections.emptyList());
+  }
+
+  /**
+   * Like {@link #compile(SortRequest, Schema)}, {@code sortBy} may also reference an attribute of one of the
+   * {@code extensionSchemas} by its URN.
+   */
+  public static <T> Comparator<T> compile(SortRequest sortRequest, Schema schema, Collection<Schema> extensionSchemas) {
+    AttributeReference sortBy = sortRequest != null ? sortRequest.getSortBy() : null;
+    if (sortBy == null || schema == null) {
+      return null;
+    }
+    SortKey key = resolve(sortBy, schema, extensionSchemas);
+    if (key == null) {
+      return null;
+    }
+    return new SortComparator<>(actual -> key, sortRequest.getSortOrder() == SortOrder.DESCENDING);
+  }
+
+  /**
+   * Returns a Comparator ordering resources of several resource types as requested, like the results of a search
+   * from the server root, or {@code null} if no sort is requested.  {@code sortBy} is resolved once for each
+   * resource type, through the schema of the resource's {@link ScimResource#getBaseUrn() base URN}.  Resources of a
+   * type that doesn't have the attribute are ordered like resources without a value.
+   *
+   * @param schemas Looks up a schema by its URN, base schemas as well as extension schemas.
+   */
+  public static Comparator<ScimResource> compile(SortRequest sortRequest, Function<String, Schema> schemas) {
+    AttributeReference sortBy = sortRequest != null ? sortRequest.getSortBy() : null;
+    if (sortBy == null || schemas == null) {
+      return null;
+    }
+    Map<String, Optional<SortKey>> keys = new ConcurrentHashMap<>();
+    Function<Object, SortKey> keyOf = actual -> {
+      String baseUrn = ((ScimResource) actual).getBaseUrn();
+      return baseUrn == null ? null : keys.computeIfAbsent(baseUrn, urn -> {
+        Schema schema = schemas.apply(urn);
+        Schema extensionSchema = sortBy.hasUrn() && !sortBy.getUrn().equals(urn) ? schemas.apply(sortBy.getUrn()) : null;
+        List<Schema> extensionSchemas = extensionSchema != null ? List.of(extensionSchema) : List.of();
+        return Optional.ofNullable(schema != null ? resolve(sortBy, schema, extensionSchemas) : null);
+      }).orElse(null);
+    };
+    return new SortComparator<>(keyOf, sortRequest.getSortOrder() == SortOrder.DESCENDING);
+  }
+
+  /**
+   * Resolves {@code sortBy} through the schema, returns {@code null} if it can't be sorted by.
+   */
+  private static SortKey resolve(AttributeReference sortBy, Schema schema, Collection<Schema> extensionSchemas) {
+    AttributeContainer container = schema;
+    Function<Object, Object> resource = Function.identity();
+    if (sortBy.hasUrn() && !sortBy.getUrn().equals(schema.getId())) {
+      container = extensionSchema(sortBy.getUrn(), extensionSchemas);
+      String urn = sortBy.getUrn();
+      resource = actual -> actual instanceof ScimResource ? ((ScimResource) actual).getExtension(urn) : null;
+    }
+    if (container == null) {
+      log.debug("Cannot sort by '{}', the schema is unknown", sortBy);
+      return null;
+    }
+
+    Schema.Attribute attribute = container.getAttribute(sortBy.getAttributeName());
+    if (attribute == null || attribute.getAccessor() == null || attribute.getReturned() == Schema.Attribute.Returned.NEVER) {
+      log.debug("Cannot sort by '{}', the attribute is unknown", sortBy);
+      return null;
+    }
+
+    Schema.Attribute valueAttribute = attribute;
+    Function<Object, Object> value;
+    if (attribute.getType() == Schema.Attribute.Type.COMPLEX) {
+      // a complex attribute sorts by a sub-attribute, multi-valued ones default to their value
+      String subAttributeName = sortBy.getSubAttributeName() != null ? sortBy.getSubAttributeName()
+        : attribute.isMultiValued() ? "value"
+        : null;
+      valueAttribute = subAttributeName != null ? attribute.getAttribute(subAttributeName) : null;
+      if (valueAttribute == null || valueAttribute.getAccessor() == null || valueAttribute.isMultiValued()) {
+        log.debug("Cannot sort by '{}', it is not a path to a sub-attribute", sortBy);
+        return null;
+      }
+      Schema.AttributeAccessor parent = attribute.getAccessor();
+      Schema.AttributeAccessor subAttribute = valueAttribute.getAccessor();
+      if (attribute.isMultiValued()) {
+        Schema.Attribute primaryAttribute = attribute.getAttribute("primary");
+        Schema.AttributeAccessor primary = primaryAttribute != null ? primaryAttribute.getAccessor() : null;
+        value = actual -> {
+          Object element = primaryValue(parent.get(actual), primary);
+          return element != null ? subAttribute.get(element) : null;
+        };
+      } else {
+        value = actual -> {
+          Object complex = parent.get(actual);
+          return complex != null ? subAttribute.get(complex) : null;
+        };
+      }
+    } else if (sortBy.getSubAttributeName() != null) {
+      log.debug("Cannot sort by '{}', '{}' has no sub-attributes", sortBy, attribute.getName());
+      return null;
+    } else if (attribute.isMultiValued()) {
+      Schema.AttributeAccessor accessor = attribute.getAccessor();
+      value = actual -> primaryValue(accessor.get(actual), null);
+    } else {
+      Schema.AttributeAccessor accessor = attribute.getAccessor();
+      value = accessor::get;
+    }
+
+    Function<Object, Object> read = resource.andThen(actual -> {
+      try {
+        return actual != null ? value.apply(actual) : null;
+      } catch (RuntimeException e) {
+        log.debug("Cannot read sortBy attribute '{}'", sortBy, e);
+        return null;
+      }
+    });
+    return new SortKey(read, valueOrder(valueAttribute));
+  }
+
+  /**
+   * Returns the element of a multi-valued attribute marked as primary, or else the first one.
+   */
+  private static Object primaryValue(Object values, Schema.AttributeAccessor primary) {
+    if (!(values instanceof Collection)) {
+      return null;
+    }
+    Object first = null;
+    for (Object element : (Collection<?>) values) {
+      if (element == null) {
+        continue;
+      }
+      if (primary == null) {
+        return element;
+      }
+      if (Boolean.TRUE.equals(primary.get(element))) {
+        return element;
+      }
+      if (first == null) {
+        first = element;
+      }
+    }
+    return first;
+  }
+
+  private static Schema extensionSchema(String urn, Collection<Schema> extensionSchemas) {
+    for (Schema extensionSchema : extensionSchemas) {
+      if (urn.equals(extensionSchema.getId())) {
+        return extensionSchema;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the order of the values of {@code attribute}, by its type.
+   */
+  private static Comparator<Object> valueOrder(Schema.Attribute attribute) {
+    switch (attribute.getType()) {
+      case STRING:
+        return attribute.isCaseExact()
+          ? (left, right) -> left.toString().compareTo(right.toString())
+          : (left, right) -> CaseFolding.compare(charSequence(left), charSequence(right));
+      case INTEGER:
+      case DECIMAL:
+        return SortComparators::compareNumbers;
+      case BINARY:
+      case REFERENCE:
+        return (left, right) -> left.toString().compareTo(right.toString());
+      default:
+        return SortComparators::compareValues;
+    }
+  }
+
+  private static int compareNumbers(Object left, Object right) {
+    if (left instanceof Number && right instanceof Number && left.getClass() != right.getClass()) {
+      return new BigDecimal(left.toString()).compareTo(new BigDecimal(right.toString()));
+    }
+    return compareValues(left, right);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int compareValues(Object left, Object right) {
+    if (left instanceof Comparable && left.getClass() == right.getClass()) {
+      return ((Comparable) left).compareTo(right);
+    }
+    return left.toString().compareTo(right.toString());
+  }
+
+  private static CharSequence charSequence(Object value) {
+    return value instanceof CharSequence ? (CharSequence) value : value.toString();
+  }
+
+  /**
+   * Reads the sortBy value of a resource of one type, and orders the values.
+   */
+  private static final class SortKey {
+
+    private final Function<Object, Object> read;
+
+    private final Comparator<Object> valueOrder;
+
+    private SortKey(Function<Object, Object> read, Comparator<Object> valueOrder) {
+      this.read = read;
+      this.valueOrder = valueOrder;
+    }
+  }
+
+  private static final class SortComparator<T> implements Comparator<T> {
+
+    private final Function<Object, SortKey> keys;
+
+    private final boolean descending;
+
+    private SortComparator(Function<Object, SortKey> keys, boolean descending) {
+      this.keys = keys;
+      this.descending = descending;
+    }
+
+    @Override
+    public int compare(T left, T right) {
+      SortKey leftKey = keys.apply(left);
+      SortKey rightKey = keys.apply(right);
+      Object leftValue = leftKey != null ? leftKey.read.apply(left) : null;
+      Object rightValue = rightKey != null ? rightKey.read.apply(right) : null;
+      if (leftValue == null || rightValue == null) {
+        // missing values are last in either order
+        return leftValue == null ? (rightValue == null ? 0 : 1) : -1;
+      }
+      // resources of different types share the order of the left one, a sortBy attribute is defined alike by each
+      int order = leftKey.valueOrder.compare(leftValue, rightValue);
+      return descending ? -order : order;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import java.util.Collection;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+
+/**
+ * A page of resources that is read while the response is written, instead of being collected first like the
+ * resources of a {@link FilterResponse}.
+ * <p>
+ * A repository can return a stream backed by a database cursor and release the cursor with
+ * {@link Stream#onClose(Runnable)}, the stream is closed once the response has been written. The total number of
+ * results is only computed when it's asked for, e.g. with a separate count query.
+ *
+ * @param <T> The type of the resources.
+ */
+public class StreamingFilterResponse<T> implements AutoCloseable {
+
+  private final Stream<T> resources;
+
+  private final PageRequest pageRequest;
+
+  private final IntSupplier totalResultsSupplier;
+
+  private Integer totalResults;
+
+  private String nextCursor;
+
+  private String previousCursor;
+
+  /**
+   * @param resources The resources of the page, read once.
+   * @param pageRequest The page that was returned.
+   * @param totalResults Computes the total number of resources matching the filter, called at most once.
+   */
+  public StreamingFilterResponse(Stream<T> resources, PageRequest pageRequest, IntSupplier totalResults) {
+    this.resources = resources;
+    this.pageRequest = pageRequest;
+    this.totalResultsSupplier = totalResults;
+  }
+
+  /**
+   * Streams the resources of a {@link FilterResponse}, an empty response if {@code filterResponse} is {@code null}.
+   */
+  public static <T> StreamingFilterResponse<T> of(FilterResponse<T> filterResponse) {
+    if (filterResponse == null || filterResponse.getResources() == null) {
+      return new StreamingFilterResponse<>(Stream.empty(), filterResponse != null ? filterResponse.getPageRequest() : null, () -> 0);
+    }
+    Collection<T> resources = filterResponse.getResources();
+    int totalResults = filterResponse.getTotalResults();
+    return new StreamingFilterResponse<>(resources.stream(), filterResponse.getPageRequest(), () -> totalResults)
+      .setNextCursor(filterResponse.getNextCursor())
+      .setPreviousCursor(filterResponse.getPreviousCursor());
+  }
+
+  public Stream<T> getResources() {
+    return resources;
+  }
+
+  public PageRequest getPageRequest() {
+    return pageRequest;
+  }
+
+  public synchronized int getTotalResults() {
+    if (totalResults == null) {
+      totalResults = totalResultsSupplier.getAsInt();
+    }
+    return totalResults;
+  }
+
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  /**
+   * Sets the opaque cursor of the next page, when the repository serves cursor-based pagination.
+   */
+  public StreamingFilterResponse<T> setNextCursor(String nextCursor) {
+    this.nextCursor = nextCursor;
+    return this;
+  }
+
+  public String getPreviousCursor() {
+    return previousCursor;
+  }
+
+  /**
+   * Sets the opaque cursor of the previous page, when the repository serves cursor-based pagination.
+   */
+  public StreamingFilterResponse<T> setPreviousCursor(String previousCursor) {
+    this.previousCursor = previousCursor;
+    return this;
+  }
+
+  @Override
+  public void close() {
+    resources.close();
+  }
+}
@@ -21,16 +21,9 @@ package org.apache.directory.scim.spec.patch;
 
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
-import org.antlr.v4.runtime.BaseErrorListener;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.RecognitionException;
-import org.antlr.v4.runtime.Recognizer;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
-import org.apache.directory.scim.spec.filter.FilterLexer;
-import org.apache.directory.scim.spec.filter.FilterParser;
+import org.apache.directory.scim.spec.filter.FilterExpressionCache;
+import org.apache.directory.scim.spec.filter.FilterParserEngine;
 import org.apache.directory.scim.spec.filter.FilterParseException;
 import org.apache.directory.scim.spec.filter.ValuePathExpression;
 import lombok.extern.slf4j.Slf4j;
@@ -51,26 +44,7 @@ public class PatchOperationPath implements Serializable {
   }
 
   static ValuePathExpression parsePatchPath(String patchPath) throws FilterParseException {
-    FilterLexer l = new FilterLexer(CharStreams.fromString(patchPath));
-    FilterParser p = new FilterParser(new CommonTokenStream(l));
-    p.setBuildParseTree(true);
-
-    p.addErrorListener(new BaseErrorListener() {
-      @Override
-      public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-        throw new IllegalStateException("failed to parse at line " + line + " due to " + msg, e);
-      }
-    });
-
-    try {
-      ParseTree tree = p.patchPath();
-      PatchPathListener patchPathListener = new PatchPathListener();
-      ParseTreeWalker.DEFAULT.walk(patchPathListener, tree);
-
-      return patchPathListener.getValuePathExpression();
-    } catch (IllegalStateException e) {
-      throw new FilterParseException(e);
-    }
+    return FilterParserEngine.getDefault().parsePatchPath(patchPath);
   }
 
   @Override
@@ -79,7 +53,7 @@ public class PatchOperationPath implements Serializable {
   }
 
   public static PatchOperationPath fromString(String patchPath) throws FilterParseException {
-    return new PatchOperationPath(parsePatchPath(patchPath));
+    return new PatchOperationPath((ValuePathExpression) FilterExpressionCache.patchPaths().get(patchPath, PatchOperationPath::parsePatchPath));
   }
 
 }
@@ -277,6 +277,10 @@ public class Schema implements AttributeContainer {
 
     private final Field field;
 
+    // setAccessible performs caller checks on every call, only do that once for fields read by in-memory filters
+    @EqualsAndHashCode.Exclude
+    private boolean accessible;
+
     public FieldAttributeAccessor(Field field) {
       this.field = field;
     }
@@ -284,7 +288,10 @@ public class Schema implements AttributeContainer {
     @Override
     public <T> T get(Object resource) {
       try {
-        field.setAccessible(true);
+        if (!accessible) {
+          field.setAccessible(true);
+          accessible = true;
+        }
         return (T) field.get(resource);
       } catch (IllegalAccessException e) {
         throw new ScimResourceInvalidException("Schema definition is invalid", e);
@@ -161,6 +161,41 @@ public class ServiceProviderConfiguration extends ScimResourceWithOptionalId {
     int maxResults;
   }
 
+  /**
+   * Pagination methods supported by the service provider, see
+   * <a href="https://datatracker.ietf.org/doc/draft-ietf-scim-cursor-pagination/">SCIM Cursor Pagination</a>.
+   */
+  @Data
+  @XmlType
+  @XmlAccessorType(XmlAccessType.NONE)
+  public static class PaginationConfiguration implements Serializable {
+    private static final long serialVersionUID = -2914330735361493126L;
+
+    public enum Method {
+      @XmlEnumValue("cursor") CURSOR,
+      @XmlEnumValue("index") INDEX
+    }
+
+    @XmlElement
+    boolean cursor;
+
+    @XmlElement
+    boolean index;
+
+    @XmlElement
+    Method defaultPaginationMethod;
+
+    @XmlElement
+    Integer defaultPageSize;
+
+    @XmlElement
+    Integer maxPageSize;
+
+    // in seconds
+    @XmlElement
+    Integer cursorTimeout;
+  }
+
   @XmlElement
   String documentationUrl;
 
@@ -182,6 +217,9 @@ public class ServiceProviderConfiguration extends ScimResourceWithOptionalId {
   @XmlElement
   SupportedConfiguration etag;
 
+  @XmlElement
+  PaginationConfiguration pagination;
+
   @XmlElement
   List<AuthenticationSchema> authenticationSchemes;
 
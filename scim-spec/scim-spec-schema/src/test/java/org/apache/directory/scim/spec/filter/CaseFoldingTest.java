@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CaseFoldingTest {
+
+  private static final String ALPHABET = "aAbBzZ09 -_éÉßµΜμİiıIſK";
+
+  @Test
+  public void kernelsMatchRegionMatchesIgnoreCase() {
+    Random random = new Random(42);
+    for (int i = 0; i < 20000; i++) {
+      String value = random(random, 8);
+      String compareValue = random(random, 3);
+      String folded = CaseFolding.fold(compareValue);
+
+      assertThat(CaseFolding.equals(value, folded)).as("'%s' eq '%s'", value, compareValue).isEqualTo(value.equalsIgnoreCase(compareValue));
+      assertThat(CaseFolding.startsWith(value, folded)).as("'%s' sw '%s'", value, compareValue)
+        .isEqualTo(value.regionMatches(true, 0, compareValue, 0, compareValue.length()));
+      assertThat(CaseFolding.endsWith(value, folded)).as("'%s' ew '%s'", value, compareValue)
+        .isEqualTo(value.length() >= compareValue.length() && value.regionMatches(true, value.length() - compareValue.length(), compareValue, 0, compareValue.length()));
+      assertThat(CaseFolding.contains(value, folded)).as("'%s' co '%s'", value, compareValue).isEqualTo(contains(value, compareValue));
+    }
+  }
+
+  @Test
+  public void foldingIsLocaleIndependent() {
+    assertThat(CaseFolding.fold("TITLE")).isEqualTo("title");
+    assertThat(CaseFolding.fold("already folded")).isSameAs("already folded");
+  }
+
+  private static boolean contains(String value, String compareValue) {
+    for (int offset = 0; offset + compareValue.length() <= value.length(); offset++) {
+      if (value.regionMatches(true, offset, compareValue, 0, compareValue.length())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String random(Random random, int maxLength) {
+    char[] chars = new char[random.nextInt(maxLength + 1)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+    }
+    return new String(chars);
+  }
+}
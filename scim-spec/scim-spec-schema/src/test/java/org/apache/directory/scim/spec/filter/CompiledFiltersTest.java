@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.resources.Address;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.Name;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompiledFiltersTest extends AbstractLexerParserTest {
+
+  private static final Schema SCHEMA = Schemas.schemaFor(ScimUser.class);
+
+  private static final List<ScimUser> USERS = List.of(
+    user("bjensen", "Barbara", "Jensen", "work", "bjensen@example.com"),
+    user("jsmith", "John", "Smith", "home", "jsmith@example.org"),
+    user("O'Malley", "Mary", "O'Malley", "work", "mary@example.com").setTitle("Tour Guide"),
+    new ScimUser().setUserName("noname")
+  );
+
+  @BeforeEach
+  public void clearCache() {
+    CompiledFilters.clear();
+  }
+
+  @Test
+  public void sameShapeSharesPlan() throws FilterParseException {
+    Predicate<ScimResource> first = FilterExpressions.compiled(new Filter("userName eq \"bjensen\""), SCHEMA);
+    Predicate<ScimResource> second = FilterExpressions.compiled(new Filter("userName eq \"JSMITH\""), SCHEMA);
+
+    assertThat(CompiledFilters.size()).isEqualTo(1);
+    assertThat(USERS).filteredOn(first).extracting(ScimUser::getUserName).containsExactly("bjensen");
+    assertThat(USERS).filteredOn(second).extracting(ScimUser::getUserName).containsExactly("jsmith");
+  }
+
+  @Test
+  public void differentShapesAreCachedSeparately() throws FilterParseException {
+    FilterExpressions.compiled(new Filter("userName eq \"bjensen\""), SCHEMA);
+    FilterExpressions.compiled(new Filter("userName sw \"bjensen\""), SCHEMA);
+    FilterExpressions.compiled(new Filter("title eq \"bjensen\""), SCHEMA);
+    FilterExpressions.compiled(new Filter("userName eq \"bjensen\""), Schemas.schemaFor(ScimUser.class));
+
+    assertThat(CompiledFilters.size()).isEqualTo(4);
+  }
+
+  @Test
+  public void literalsOfExpressionsThatNeverMatchAreSkipped() throws FilterParseException {
+    FilterExpressions.compiled(new Filter("unknown eq \"a\" or foo[type eq \"b\"] or userName eq \"c\""), SCHEMA);
+    Predicate<ScimResource> predicate = FilterExpressions.compiled(new Filter("unknown eq \"x\" or foo[type eq \"y\"] or userName eq \"jsmith\""), SCHEMA);
+
+    assertThat(CompiledFilters.size()).isEqualTo(1);
+    assertThat(USERS).filteredOn(predicate).extracting(ScimUser::getUserName).containsExactly("jsmith");
+  }
+
+  @Test
+  public void builtFiltersMatchLikeInMemory() {
+    Filter filter = FilterBuilder.create()
+      .attributeHas("addresses", f -> f.equalTo("type", "work"))
+      .and(f -> f.not(n -> n.endsWith("name.familyName", "Jensen")))
+      .build();
+    Filter other = FilterBuilder.create()
+      .attributeHas("addresses", f -> f.equalTo("type", "home"))
+      .and(f -> f.not(n -> n.endsWith("name.familyName", "Smith")))
+      .build();
+
+    assertSameMatches(filter);
+    assertSameMatches(other);
+    assertThat(CompiledFilters.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void matchesLikeInMemory() throws FilterParseException {
+    for (String filter : ALL) {
+      assertSameMatches(new Filter(filter));
+    }
+    String[] filters = {
+      "userName eq \"BJENSEN\"", "userName ne \"bjensen\"", "userName gt \"c\"", "userName le \"jsmith\"",
+      "name.familyName co \"Mall\"", "name.givenName sw \"J\" or name.givenName ew \"y\"", "title pr", "not (title pr)",
+      "emails.value co \"example.com\"", "userName eq 1", "userName gt 1", "active eq true", "name eq \"x\"",
+      "userName eq \"jsmith\" and (title pr or not (name.familyName eq \"Smith\"))"
+    };
+    for (String filter : filters) {
+      assertSameMatches(new Filter(filter));
+      // the second time binds the literals into the cached plan
+      assertSameMatches(new Filter(filter));
+    }
+  }
+
+  private static void assertSameMatches(Filter filter) {
+    Predicate<ScimResource> compiled = FilterExpressions.compiled(filter, SCHEMA);
+    Predicate<ScimResource> inMemory = FilterExpressions.inMemory(filter, SCHEMA);
+    for (ScimUser user : USERS) {
+      assertThat(compiled.test(user)).as("%s on %s", filter, user.getUserName()).isEqualTo(inMemory.test(user));
+    }
+  }
+
+  private static ScimUser user(String userName, String givenName, String familyName, String type, String email) {
+    return new ScimUser()
+      .setUserName(userName)
+      .setActive(true)
+      .setName(new Name().setGivenName(givenName).setFamilyName(familyName))
+      .setEmails(List.of(new Email().setType(type).setValue(email)))
+      .setAddresses(List.of(new Address().setType(type).setLocality("Springfield")));
+  }
+}
@@ -0,0 +1,159 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FilterExpressionCacheTest extends AbstractLexerParserTest {
+
+  private final AtomicInteger parseCount = new AtomicInteger();
+
+  private final FilterExpressionCache cache = new FilterExpressionCache(10);
+
+  private FilterExpression parse(String text) throws FilterParseException {
+    parseCount.incrementAndGet();
+    return new Filter() {
+      // a subclass bypasses the shared cache
+    }.parseFilter(text);
+  }
+
+  @Test
+  public void literalsShareTemplate() throws FilterParseException {
+    FilterExpression first = cache.get("userName eq \"bjensen\"", this::parse);
+    FilterExpression second = cache.get("userName eq \"jsmith\"", this::parse);
+
+    assertThat(parseCount).hasValue(1);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(first).isEqualTo(new AttributeComparisonExpression(new AttributeReference("userName"), CompareOperator.EQ, "bjensen"));
+    assertThat(second).isEqualTo(new AttributeComparisonExpression(new AttributeReference("userName"), CompareOperator.EQ, "jsmith"));
+  }
+
+  @Test
+  public void literalsAreSubstitutedInOrder() throws FilterParseException {
+    String template = "emails[type eq \"\" and value co \"\"] or name.familyName ew \"\"";
+    cache.get(template, this::parse);
+    String filter = "emails[type eq \"work\" and value co \"@example.com\"] or name.familyName ew \"O\\\"Malley\"";
+    FilterExpression expression = cache.get(filter, this::parse);
+
+    assertThat(parseCount).hasValue(1);
+    assertThat(expression).isEqualTo(parse(filter));
+  }
+
+  @Test
+  public void allFiltersMatchParser() throws FilterParseException {
+    for (String filter : ALL) {
+      assertThat(cache.get(filter, this::parse)).isEqualTo(parse(filter));
+      assertThat(cache.get(filter, this::parse)).isEqualTo(parse(filter));
+    }
+  }
+
+  @Test
+  public void copiesAreIndependent() throws FilterParseException {
+    FilterExpression first = cache.get("emails[type eq \"work\"]", this::parse);
+    ((ValuePathExpression) first).getAttributePath().setAttributeName("ims");
+
+    FilterExpression second = cache.get("emails[type eq \"work\"]", this::parse);
+    assertThat(second).isNotSameAs(first);
+    assertThat(second.toFilter()).isEqualTo("emails[type EQ \"work\"]");
+  }
+
+  @Test
+  public void leastRecentlyUsedEvicted() throws FilterParseException {
+    cache.setMaximumSize(2);
+    cache.get("title pr", this::parse);
+    cache.get("nickName pr", this::parse);
+    cache.get("title pr", this::parse);
+    cache.get("userType pr", this::parse);
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.getEvictionCount()).isEqualTo(1);
+
+    cache.get("title pr", this::parse);
+    assertThat(cache.getHitCount()).isEqualTo(2);
+    cache.get("nickName pr", this::parse);
+    assertThat(cache.getMissCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void concurrentLookups() throws Exception {
+    cache.setMaximumSize(50);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> lookups = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        int offset = thread;
+        lookups.add(executor.submit(() -> {
+          for (int i = 0; i < 500; i++) {
+            String attribute = "attribute" + ((i + offset) % 100);
+            FilterExpression expression = cache.get(attribute + " eq \"" + i + "\"", this::parse);
+            assertThat(expression.toFilter()).isEqualTo(attribute + " EQ \"" + i + "\"");
+          }
+          return null;
+        }));
+      }
+      for (Future<?> lookup : lookups) {
+        lookup.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(cache.getHitCount() + cache.getMissCount()).isEqualTo(4000);
+
+    // other threads may add entries while one evicts, the next miss evicts them
+    cache.get("title pr", this::parse);
+    assertThat(cache.size()).isLessThanOrEqualTo(50);
+  }
+
+  @Test
+  public void parseErrorsReportOriginalText() {
+    String filter = "userName eq \"bjensen\" and";
+    assertThatThrownBy(() -> cache.get(filter, this::parse))
+      .isInstanceOf(FilterParseException.class)
+      .hasMessageContaining(filter);
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void filterUsesSharedCache() throws FilterParseException {
+    long misses = FilterExpressionCache.filters().getMissCount();
+    long hits = FilterExpressionCache.filters().getHitCount();
+
+    Filter first = new Filter("externalId eq \"FilterExpressionCacheTest-1\"");
+    Filter second = new Filter("externalId eq \"FilterExpressionCacheTest-2\"");
+
+    assertThat(FilterExpressionCache.filters().getMissCount() - misses).isLessThanOrEqualTo(1);
+    assertThat(FilterExpressionCache.filters().getHitCount() - hits).isGreaterThanOrEqualTo(1);
+    assertThat(first.getExpression()).isNotEqualTo(second.getExpression());
+    assertThat(second.getFilter()).isEqualTo("externalId eq \"FilterExpressionCacheTest-2\"");
+  }
+}
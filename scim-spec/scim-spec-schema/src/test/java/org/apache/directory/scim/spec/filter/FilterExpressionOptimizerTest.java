@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.Name;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.AttributeContainer;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilterExpressionOptimizerTest extends AbstractLexerParserTest {
+
+  private static final Schema SCHEMA = Schemas.schemaFor(ScimUser.class);
+
+  private static final List<ScimUser> USERS = List.of(
+    user("bjensen", "Jensen", "Tour Guide", "work"),
+    user("jsmith", "Smith", null, "home"),
+    user("Mary", "O'Malley", "Employee", null),
+    new ScimUser().setUserName("noname")
+  );
+
+  @Test
+  public void groupsAndDoubleNegationsAreRemoved() throws FilterParseException {
+    assertThat(optimize("not (not ((title pr)))")).isEqualTo(expression("title pr"));
+  }
+
+  @Test
+  public void notIsPushedDownLogicalExpressions() throws FilterParseException {
+    assertThat(optimize("not (title pr and (userName eq \"a\" or not (nickName pr)))"))
+      .isEqualTo(new LogicalExpression(
+        not("title pr"),
+        LogicalOperator.OR,
+        new LogicalExpression(not("userName eq \"a\""), LogicalOperator.AND, expression("nickName pr"))));
+  }
+
+  @Test
+  public void notIsNotPushedIntoComparisons() throws FilterParseException {
+    assertThat(optimize("not (title eq \"x\")")).isEqualTo(not("title eq \"x\""));
+  }
+
+  @Test
+  public void chainsAreFlattenedAndDeduplicated() throws FilterParseException {
+    assertThat(optimize("(title pr and nickName pr) and (title pr and (userName pr and nickName pr))"))
+      .isEqualTo(expression("title pr and nickName pr and userName pr"));
+  }
+
+  @Test
+  public void equalityChainsBecomeIn() throws FilterParseException {
+    FilterExpression optimized = optimize("userName eq \"a\" or title pr or userName eq \"b\" or (userName eq \"c\" or userName eq \"a\")");
+
+    assertThat(optimized).isEqualTo(new LogicalExpression(
+      new AttributeInExpression(new AttributeReference("userName"), List.of("a", "b", "c")),
+      LogicalOperator.OR,
+      expression("title pr")));
+    assertThat(optimized.toFilter()).isEqualTo("(userName EQ \"a\" OR userName EQ \"b\" OR userName EQ \"c\") OR title PR");
+    assertThat(new Filter(optimized.toFilter()).getExpression()).isNotNull();
+  }
+
+  @Test
+  public void shortEqualityChainsAreKept() throws FilterParseException {
+    assertThat(optimize("userName eq \"a\" or userName eq \"b\"")).isEqualTo(expression("userName eq \"a\" or userName eq \"b\""));
+    assertThat(optimize("userName eq \"a\" and userName eq \"b\" and userName eq \"c\""))
+      .isEqualTo(expression("userName eq \"a\" and userName eq \"b\" and userName eq \"c\""));
+  }
+
+  @Test
+  public void valuePathsAreOptimized() throws FilterParseException {
+    FilterExpression optimized = optimize("emails[not (not (type eq \"work\"))]");
+
+    assertThat(optimized).isInstanceOf(ValuePathExpression.class);
+    assertThat(((ValuePathExpression) optimized).getAttributeExpression()).isInstanceOf(AttributeComparisonExpression.class);
+  }
+
+  @Test
+  public void inputIsNotModified() throws FilterParseException {
+    FilterExpression expression = expression("not (title pr and (userName eq \"a\" or userName eq \"b\" or userName eq \"c\"))");
+    String filter = expression.toFilter();
+
+    FilterExpressionOptimizer.optimize(expression);
+
+    assertThat(expression.toFilter()).isEqualTo(filter);
+  }
+
+  @Test
+  public void mappersExpandIn() {
+    FilterExpression in = new AttributeInExpression(new AttributeReference("userName"), List.of("a", "b", "c"));
+    String mapped = new BaseFilterExpressionMapper<String>() {
+      @Override
+      protected String apply(AttributeComparisonExpression expression, AttributeContainer attributeContainer) {
+        return expression.getCompareValue().toString();
+      }
+
+      @Override
+      protected String apply(LogicalOperator op, String left, String right) {
+        return left + op + right;
+      }
+
+      @Override
+      protected String negate(String expression) {
+        return "!" + expression;
+      }
+
+      @Override
+      protected String apply(AttributePresentExpression expression, AttributeContainer attributeContainer) {
+        return "?";
+      }
+
+      @Override
+      protected String apply(ValuePathExpression expression, AttributeContainer attributeContainer) {
+        return "[]";
+      }
+    }.apply(in, SCHEMA);
+
+    assertThat(mapped).isEqualTo("aORbORc");
+  }
+
+  @Test
+  public void optimizedFiltersMatchTheSame() throws FilterParseException {
+    for (String filter : ALL) {
+      assertSameMatches(expression(filter));
+    }
+    assertSameMatches(expression("userName eq \"BJENSEN\" or userName eq \"mary\" or title pr or userName eq \"x\""));
+    assertSameMatches(expression("not (title eq \"Employee\" or title eq \"Tour Guide\" or title eq \"tour guide\")"));
+    assertSameMatches(expression("name.familyName eq \"jensen\" or name.familyName eq \"x\" or name.familyName eq null"));
+
+    Random random = new Random(20240601L);
+    for (int i = 0; i < 2000; i++) {
+      assertSameMatches(expression(filter(random, 3)));
+    }
+  }
+
+  @Test
+  public void nonStringLiteralsMatchTheSame() throws FilterParseException {
+    List<ScimUser> users = List.of(
+      new ScimUser().setUserName("1").setTitle("TRUE").setActive(true),
+      new ScimUser().setUserName("2.5").setTitle("true").setActive(false),
+      new ScimUser().setUserName("TRUE").setTitle("1"));
+
+    assertThat(optimize("userName eq 1 or userName eq 2 or userName eq 3")).isInstanceOf(AttributeInExpression.class);
+    assertSameMatches(expression("userName eq 1 or userName eq 2 or userName eq 3"), users);
+    assertSameMatches(expression("userName eq 2.5 or userName eq true or userName eq \"x\""), users);
+    assertSameMatches(expression("title eq true or title eq 1 or title eq \"y\""), users);
+    assertSameMatches(expression("active eq true or active eq \"false\" or active eq 1"), users);
+    assertSameMatches(expression("active eq \"true\" or active eq \"TRUE\" or active eq null"), users);
+    assertSameMatches(expression("not (userName eq true or userName eq 1 or title eq 1 or userName eq \"2.5\")"), users);
+  }
+
+  private static void assertSameMatches(FilterExpression expression) {
+    assertSameMatches(expression, USERS);
+  }
+
+  private static void assertSameMatches(FilterExpression expression, List<ScimUser> users) {
+    Predicate<ScimUser> expected = InMemoryScimFilterMatcher.toPredicate(expression, SCHEMA);
+    Predicate<ScimUser> optimized = FilterExpressions.inMemory(expression, SCHEMA);
+    Predicate<ScimUser> compiled = FilterExpressions.compiled(expression, SCHEMA);
+    for (ScimUser user : users) {
+      boolean matches = expected.test(user);
+      assertThat(optimized.test(user)).as("%s on %s", expression.toFilter(), user.getUserName()).isEqualTo(matches);
+      assertThat(compiled.test(user)).as("compiled %s on %s", expression.toFilter(), user.getUserName()).isEqualTo(matches);
+    }
+  }
+
+  private static String filter(Random random, int depth) {
+    String[] attributes = {"userName", "title", "nickName", "name.familyName", "unknown"};
+    String[] values = {"\"bjensen\"", "\"JSMITH\"", "\"Jensen\"", "\"Tour Guide\"", "\"x\""};
+    String attribute = attributes[random.nextInt(attributes.length)];
+    switch (random.nextInt(depth > 0 ? 7 : 3)) {
+      case 0:
+        return attribute + " pr";
+      case 1:
+        return attribute + " eq " + values[random.nextInt(values.length)];
+      case 2:
+        return attribute + (random.nextBoolean() ? " sw " : " ne ") + values[random.nextInt(values.length)];
+      case 3:
+        return (random.nextBoolean() ? "not " : "") + "(" + filter(random, depth - 1) + ")";
+      case 4:
+        return "emails[type eq \"work\" or " + filter(random, 0).replace("name.familyName", "value") + "]";
+      default:
+        return "(" + filter(random, depth - 1) + (random.nextBoolean() ? " and " : " or ") + filter(random, depth - 1) + ")";
+    }
+  }
+
+  private static FilterExpression optimize(String filter) throws FilterParseException {
+    return FilterExpressionOptimizer.optimize(expression(filter));
+  }
+
+  private static FilterExpression not(String filter) throws FilterParseException {
+    return new GroupExpression(true, expression(filter));
+  }
+
+  private static FilterExpression expression(String filter) throws FilterParseException {
+    return new Filter(filter).getExpression();
+  }
+
+  private static ScimUser user(String userName, String familyName, String title, String emailType) {
+    ScimUser user = new ScimUser()
+      .setUserName(userName)
+      .setTitle(title)
+      .setName(new Name().setFamilyName(familyName));
+    if (emailType != null) {
+      user.setEmails(List.of(new Email().setType(emailType).setValue(userName + "@example.com")));
+    }
+    return user;
+  }
+}
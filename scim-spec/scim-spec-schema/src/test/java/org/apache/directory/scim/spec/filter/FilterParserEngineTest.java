@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import lombok.Value;
+import org.apache.directory.scim.spec.patch.PatchOperationPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Differential tests of {@link FilterParserEngine#RECURSIVE_DESCENT} against the parser generated from
+ * {@code Filter.g4}: both must build equal expressions, or fail at the same position.
+ */
+public class FilterParserEngineTest extends AbstractLexerParserTest {
+
+  private static final long SEED = 20240521L;
+
+  private static final Pattern ERROR_POSITION = Pattern.compile("failed to parse at line (\\d+(?::\\d+)?) ");
+
+  private static final String[] ATTRIBUTES = {
+    "title", "userName", "emails", "type", "value", "display", "x", "e5", "name.familyName", "meta.lastModified",
+    "urn:ietf:params:scim:schemas:core:2.0:User:userName",
+    "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:manager.value",
+    "urn:ietf:params:scim:schemas:core:2.0:User:name.givenName"
+  };
+
+  private static final String[] VALUES = {
+    "\"work\"", "\"\"", "\"O\\\"Malley\"", "\"a\\\\b\\/c\\n\"", "\"@example.com\"", "true", "false", "null", "0", "42",
+    "-7", "3.14", "-0.5", "1e5", "2.5E-3", "2147483648", "01"
+  };
+
+  private static final String[] COMPARE_OPERATORS = {"eq", "ne", "co", "sw", "ew", "gt", "ge", "lt", "le", "EQ", "Co"};
+
+  private static final String[] LOGICAL_OPERATORS = {"and", "or", "AND", "Or"};
+
+  // fragments used to corrupt generated filters
+  private static final String[] NOISE = {
+    " ", "  ", "(", ")", "[", "]", ".", "\"", "\\", "not", "not ", "pr", "and", "or", " and ", " or ", "eq", "e+5",
+    ".5", "-", "+", "#", "\n", "\t", "urn:", "urn:a:b", "urn:ietf:params:scim:x", ":", "true", "\"x", "é"
+  };
+
+  @AfterEach
+  public void resetEngine() {
+    FilterParserEngine.setDefault(FilterParserEngine.ANTLR);
+  }
+
+  @ParameterizedTest
+  @MethodSource("getAllFilters")
+  public void knownFilters(String filter) {
+    assertSameFilter(filter);
+  }
+
+  @Test
+  public void edgeCases() {
+    String[] filters = {
+      "", " ", "title", "title pr", "title pr)", "title pr and", "title pr and ", "title pr and x", "title pr and x pr",
+      "a.b pr and c pr or d pr", "(a pr) and b pr or c pr", "a.b pr and (b pr) or c pr", "a pr and (b pr and c.d pr)",
+      "emails[type eq \"work\"].value pr", "emails[type eq \"work\" and value.x pr]", "emails[type eq \"work\"",
+      "emails[type eq \"work\"] and x pr", "not(title pr)", "not (title pr)", "not  (title pr)", " (title pr)",
+      "title eq \"x\"and b pr", "title eq 1e5", "title eq 1e5 and", "emails[value eq 01]", "a\neq \"x\"",
+      "a eq \"x\"\n and \nb pr", "title eq \"unterminated", "title eq \"bad\\q\"", "title eq \"é\"", "title  pr",
+      "urn:a:b pr", "urn:ietf:params:scim:schemas:core:2.0:User:emails[type eq \"work\"]", "truex pr", "true pr",
+      "and pr", "pr pr", "eq eq \"eq\"", "e+5 pr", ".5 pr", "a.5 pr", "title eq -", "title eq .5", "[a pr]"
+    };
+    for (String filter : filters) {
+      assertSameFilter(filter);
+      assertSamePatchPath(filter);
+    }
+  }
+
+  @Test
+  public void generatedFilters() {
+    Random random = new Random(SEED);
+    for (int i = 0; i < 5000; i++) {
+      String filter = filter(random, 3);
+      assertSameFilter(filter);
+      assertSameFilter(mutate(random, filter));
+    }
+  }
+
+  @Test
+  public void generatedPatchPaths() {
+    Random random = new Random(SEED);
+    for (int i = 0; i < 5000; i++) {
+      String patchPath = patchPath(random);
+      assertSamePatchPath(patchPath);
+      assertSamePatchPath(mutate(random, patchPath));
+    }
+  }
+
+  @Test
+  public void randomTokens() {
+    Random random = new Random(SEED);
+    for (int i = 0; i < 5000; i++) {
+      StringBuilder text = new StringBuilder();
+      int tokens = random.nextInt(12);
+      for (int t = 0; t < tokens; t++) {
+        String[][] vocabularies = {ATTRIBUTES, VALUES, COMPARE_OPERATORS, LOGICAL_OPERATORS, NOISE, NOISE};
+        text.append(pick(random, vocabularies[random.nextInt(vocabularies.length)]));
+        if (random.nextInt(3) > 0) {
+          text.append(' ');
+        }
+      }
+      assertSameFilter(text.toString());
+      assertSamePatchPath(text.toString());
+    }
+  }
+
+  @Test
+  public void defaultEngineIsUsed() throws FilterParseException {
+    FilterParserEngine.setDefault(FilterParserEngine.RECURSIVE_DESCENT);
+
+    assertThat(FilterParserEngine.getDefault()).isEqualTo(FilterParserEngine.RECURSIVE_DESCENT);
+    assertThat(new Filter("userName eq \"bjensen\"").getExpression())
+      .isEqualTo(FilterParserEngine.ANTLR.parseFilter("userName eq \"bjensen\""));
+    assertThat(PatchOperationPath.fromString("members[value eq \"2819c223\"].display").getValuePathExpression())
+      .isEqualTo(FilterParserEngine.ANTLR.parsePatchPath("members[value eq \"2819c223\"].display"));
+    assertThatThrownBy(() -> new Filter("userName eq"))
+      .isInstanceOf(FilterParseException.class)
+      .hasMessage("Failed to parse filter: userName eq");
+  }
+
+  private static void assertSameFilter(String filter) {
+    Outcome expected = outcome(() -> FilterParserEngine.ANTLR.parseFilter(filter));
+    Outcome actual = outcome(() -> FilterParserEngine.RECURSIVE_DESCENT.parseFilter(filter));
+    assertThat(actual).as("filter '%s'", filter).isEqualTo(expected);
+  }
+
+  private static void assertSamePatchPath(String patchPath) {
+    Outcome expected = outcome(() -> FilterParserEngine.ANTLR.parsePatchPath(patchPath));
+    Outcome actual = outcome(() -> FilterParserEngine.RECURSIVE_DESCENT.parsePatchPath(patchPath));
+    assertThat(actual).as("patch path '%s'", patchPath).isEqualTo(expected);
+  }
+
+  private static Outcome outcome(Parse parse) {
+    try {
+      FilterExpression expression = parse.parse();
+      return new Outcome(expression, expression.toFilter(), null);
+    } catch (FilterParseException e) {
+      String message = e.getCause().getMessage();
+      Matcher matcher = ERROR_POSITION.matcher(message);
+      // errors from converting the compare value have no position
+      return new Outcome(null, null, matcher.find() ? matcher.group(1) : message);
+    }
+  }
+
+  private static String filter(Random random, int depth) {
+    int choice = random.nextInt(depth > 0 ? 7 : 3);
+    switch (choice) {
+      case 0:
+        return pick(random, ATTRIBUTES) + " pr";
+      case 1:
+      case 2:
+        return pick(random, ATTRIBUTES) + " " + pick(random, COMPARE_OPERATORS) + " " + pick(random, VALUES);
+      case 3:
+        return (random.nextBoolean() ? "not" : "") + (random.nextInt(4) == 0 ? " " : "") + "(" + filter(random, depth - 1) + ")";
+      case 4:
+        return pick(random, ATTRIBUTES) + "[" + filter(random, depth - 1) + "]";
+      default:
+        return filter(random, depth - 1) + " " + pick(random, LOGICAL_OPERATORS) + " " + filter(random, depth - 1);
+    }
+  }
+
+  private static String patchPath(Random random) {
+    String attribute = pick(random, ATTRIBUTES);
+    if (random.nextBoolean()) {
+      return attribute;
+    }
+    String patchPath = attribute + "[" + filter(random, 2) + "]";
+    return random.nextBoolean() ? patchPath + "." + pick(random, ATTRIBUTES) : patchPath;
+  }
+
+  private static String mutate(Random random, String text) {
+    StringBuilder mutated = new StringBuilder(text);
+    int mutations = 1 + random.nextInt(3);
+    for (int i = 0; i < mutations; i++) {
+      int offset = random.nextInt(mutated.length() + 1);
+      int mutation = random.nextInt(3);
+      if (mutation == 0) {
+        mutated.insert(offset, pick(random, NOISE));
+      } else if (mutation == 1) {
+        mutated.delete(offset, Math.min(mutated.length(), offset + 1 + random.nextInt(4)));
+      } else {
+        mutated.replace(offset, Math.min(mutated.length(), offset + 1), pick(random, NOISE));
+      }
+    }
+    return mutated.toString();
+  }
+
+  private static String pick(Random random, String[] values) {
+    return values[random.nextInt(values.length)];
+  }
+
+  private static String[] getAllFilters() {
+    return ALL;
+  }
+
+  @FunctionalInterface
+  private interface Parse {
+    FilterExpression parse() throws FilterParseException;
+  }
+
+  @Value
+  private static class Outcome {
+    FilterExpression expression;
+    String filter;
+    String error;
+  }
+}
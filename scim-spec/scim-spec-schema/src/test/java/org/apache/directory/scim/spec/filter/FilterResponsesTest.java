@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilterResponsesTest {
+
+  private static final Schema SCHEMA = Schemas.schemaFor(ScimUser.class);
+
+  private static final List<Integer> NUMBERS = IntStream.rangeClosed(1, 20).boxed().collect(Collectors.toList());
+
+  @Test
+  public void filtersBeforePaging() {
+    FilterResponse<Integer> response = FilterResponses.page(NUMBERS, n -> n % 2 == 0, page(2, 3), null);
+
+    assertThat(response.getResources()).containsExactly(4, 6, 8);
+    assertThat(response.getTotalResults()).isEqualTo(10);
+  }
+
+  @Test
+  public void pagesPastTheEndAreEmpty() {
+    FilterResponse<Integer> response = FilterResponses.page(NUMBERS, n -> n % 2 == 0, page(11, 3), Comparator.naturalOrder());
+
+    assertThat(response.getResources()).isEmpty();
+    assertThat(response.getTotalResults()).isEqualTo(10);
+    assertThat(FilterResponses.page(NUMBERS, n -> true, page(1, 0), Comparator.reverseOrder()).getResources()).isEmpty();
+  }
+
+  @Test
+  public void boundedSortMatchesFullSort() {
+    Random random = new Random(42);
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      values.add(random.nextInt(100));
+    }
+    Comparator<Integer> order = Comparator.reverseOrder();
+    List<Integer> sorted = values.stream().filter(n -> n > 10).sorted(order).collect(Collectors.toList());
+
+    for (int startIndex : new int[] {1, 7, 500, 880}) {
+      FilterResponse<Integer> response = FilterResponses.page(values, n -> n > 10, page(startIndex, 25), order);
+
+      assertThat(response.getTotalResults()).isEqualTo(sorted.size());
+      assertThat(response.getResources()).containsExactlyElementsOf(sorted.subList(Math.min(startIndex - 1, sorted.size()), Math.min(startIndex - 1 + 25, sorted.size())));
+    }
+  }
+
+  @Test
+  public void equalValuesKeepTheirOrder() {
+    List<ScimUser> users = List.of(user("b", "first"), user("a", "second"), user("b", "third"), user("a", "fourth"));
+    Comparator<ScimUser> order = SortComparators.compile(sortBy("userName", SortOrder.ASCENDING), SCHEMA);
+
+    assertThat(FilterResponses.page(users, user -> true, page(1, 3), order).getResources())
+      .extracting(ScimUser::getDisplayName).containsExactly("second", "fourth", "first");
+    assertThat(FilterResponses.page(users, user -> true, null, order).getResources())
+      .extracting(ScimUser::getDisplayName).containsExactly("second", "fourth", "first", "third");
+  }
+
+  private static PageRequest page(int startIndex, int count) {
+    return new PageRequest().setStartIndex(startIndex).setCount(count);
+  }
+
+  private static SortRequest sortBy(String attribute, SortOrder sortOrder) {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference(attribute));
+    sortRequest.setSortOrder(sortOrder);
+    return sortRequest;
+  }
+
+  private static ScimUser user(String userName, String displayName) {
+    ScimUser user = new ScimUser();
+    user.setUserName(userName);
+    user.setDisplayName(displayName);
+    return user;
+  }
+}
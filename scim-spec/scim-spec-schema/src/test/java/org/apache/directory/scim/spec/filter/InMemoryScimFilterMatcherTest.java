@@ -22,12 +22,16 @@ package org.apache.directory.scim.spec.filter;
 import org.apache.directory.scim.spec.LuckyNumberExtension;
 import org.apache.directory.scim.spec.resources.*;
 import org.apache.directory.scim.spec.schema.Meta;
+import org.apache.directory.scim.spec.schema.Schema;
 import org.apache.directory.scim.spec.schema.Schemas;
 import org.assertj.core.api.AbstractAssert;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 public class InMemoryScimFilterMatcherTest {
 
@@ -101,6 +105,35 @@ public class InMemoryScimFilterMatcherTest {
       .notMatches(USER1);
   }
 
+  @Test
+  public void stringMatchesIgnoreCase() {
+    FilterAssert.assertThat(FilterBuilder.create().startsWith("name.familyName", "tW"))
+      .matches(USER2)
+      .notMatches(USER1);
+    FilterAssert.assertThat(FilterBuilder.create().endsWith("name.familyName", "WO"))
+      .matches(USER2)
+      .notMatches(USER1);
+    FilterAssert.assertThat(FilterBuilder.create().contains("name.familyName", "W"))
+      .matches(USER2)
+      .notMatches(USER1);
+    FilterAssert.assertThat(FilterBuilder.create().notEqual("userName", "USER1"))
+      .matches(USER2)
+      .notMatches(USER1);
+  }
+
+  @Test
+  public void caseExactStringMatches() {
+    ScimUser user = user("user3", "User", "Three");
+    user.setExternalId("Ext-3");
+
+    FilterAssert.assertThat(FilterBuilder.create().startsWith("externalId", "Ext"))
+      .matches(user);
+    FilterAssert.assertThat(FilterBuilder.create().startsWith("externalId", "ext"))
+      .notMatches(user);
+    FilterAssert.assertThat(FilterBuilder.create().equalTo("externalId", "EXT-3"))
+      .notMatches(user);
+  }
+
   @Test
   public void givenAndFamilyNameMatches() {
 
@@ -158,6 +191,39 @@ public class InMemoryScimFilterMatcherTest {
 //      .notMatches(USER2);
 //  }
 
+  @Test
+  public void missingParentAttributeDoesNotMatch() {
+    ScimUser noName = user("user3", "User", "Three").setName(null);
+
+    FilterAssert.assertThat(FilterBuilder.create().equalTo("name.familyName", "Three"))
+      .notMatches(noName);
+    FilterAssert.assertThat(FilterBuilder.create().not(filter -> filter.equalTo("name.familyName", "Three")))
+      .matches(noName);
+  }
+
+  @Test
+  public void unknownAttributeNeverMatches() {
+    FilterAssert.assertThat(FilterBuilder.create().or(filter -> filter.equalTo("userName", "user1"), filter -> filter.present("unknown")))
+      .matches(USER1)
+      .notMatches(USER2);
+    FilterAssert.assertThat(FilterBuilder.create().and(filter -> filter.equalTo("userName", "user1"), filter -> filter.present("unknown")))
+      .notMatches(USER1);
+  }
+
+  @Test
+  public void mapMatches() {
+    Map<String, Object> user = Map.of(
+      "userName", "user1",
+      "name", Map.of("familyName", "One"),
+      "addresses", List.of(Map.of("type", "work")));
+    Schema schema = Schemas.schemaFor(ScimUser.class);
+
+    assertThat(FilterExpressions.inMemoryMap(FilterBuilder.create().equalTo("userName", "USER1").filter(), schema).test(user)).isTrue();
+    assertThat(FilterExpressions.inMemoryMap(FilterBuilder.create().equalTo("name.familyName", "one").filter(), schema).test(user)).isTrue();
+    assertThat(FilterExpressions.inMemoryMap(FilterBuilder.create().attributeHas("addresses", filter -> filter.equalTo("type", "work")).filter(), schema).test(user)).isTrue();
+    assertThat(FilterExpressions.inMemoryMap(FilterBuilder.create().present("nickName").filter(), schema).test(user)).isFalse();
+  }
+
   @Test
   public void metaMatches() {
     FilterAssert.assertThat(FilterBuilder.create().lessThan("meta.lastModified", LocalDateTime.now()))
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.Name;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SortComparatorsTest {
+
+  private static final Schema SCHEMA = Schemas.schemaFor(ScimUser.class);
+
+  private static final Schema GROUP_SCHEMA = Schemas.schemaFor(ScimGroup.class);
+
+  private static final Schema ENTERPRISE_SCHEMA = Schemas.schemaForExtension(EnterpriseExtension.class);
+
+  @Test
+  public void caseInsensitiveStrings() {
+    List<ScimUser> users = List.of(user("bob"), user("Alice"), user("carol"), user("BOB2"));
+
+    assertThat(sort(users, "userName", SortOrder.ASCENDING)).extracting(ScimUser::getUserName)
+      .containsExactly("Alice", "bob", "BOB2", "carol");
+    assertThat(sort(users, "userName", null)).extracting(ScimUser::getUserName)
+      .containsExactly("Alice", "bob", "BOB2", "carol");
+  }
+
+  @Test
+  public void caseExactStrings() {
+    List<ScimUser> users = List.of(user("a", user -> user.setExternalId("b")), user("b", user -> user.setExternalId("B")), user("c", user -> user.setExternalId("a")));
+
+    // externalId is case exact, upper case letters sort first
+    assertThat(sort(users, "externalId", SortOrder.ASCENDING)).extracting(ScimUser::getExternalId)
+      .containsExactly("B", "a", "b");
+  }
+
+  @Test
+  public void missingValuesAreLast() {
+    List<ScimUser> users = List.of(user("a").setDisplayName("B"), user("b"), user("c").setDisplayName("A"));
+
+    assertThat(sort(users, "displayName", SortOrder.ASCENDING)).extracting(ScimUser::getUserName)
+      .containsExactly("c", "a", "b");
+    assertThat(sort(users, "displayName", SortOrder.DESCENDING)).extracting(ScimUser::getUserName)
+      .containsExactly("a", "c", "b");
+  }
+
+  @Test
+  public void complexSubAttribute() {
+    List<ScimUser> users = List.of(
+      user("a").setName(new Name().setFamilyName("Smith")),
+      user("b"),
+      user("c").setName(new Name().setFamilyName("jensen")));
+
+    assertThat(sort(users, "name.familyName", SortOrder.ASCENDING)).extracting(ScimUser::getUserName)
+      .containsExactly("c", "a", "b");
+    assertThat(SortComparators.<ScimUser>compile(sortBy("name", SortOrder.ASCENDING), SCHEMA)).isNull();
+  }
+
+  @Test
+  public void multiValuedSortsByPrimaryValue() {
+    List<ScimUser> users = List.of(
+      user("a").setEmails(List.of(email("z@example.com", false), email("b@example.com", true))),
+      user("b").setEmails(List.of(email("c@example.com", null), email("a@example.com", null))),
+      user("c"));
+
+    // a sorts by its primary email, b has no primary and sorts by its first
+    assertThat(sort(users, "emails.value", SortOrder.ASCENDING)).extracting(ScimUser::getUserName)
+      .containsExactly("a", "b", "c");
+    assertThat(sort(users, "emails", SortOrder.DESCENDING)).extracting(ScimUser::getUserName)
+      .containsExactly("b", "a", "c");
+  }
+
+  @Test
+  public void extensionAttribute() {
+    List<ScimUser> users = List.of(
+      user("a", user -> user.addExtension(new EnterpriseExtension().setEmployeeNumber("2"))),
+      user("b"),
+      user("c", user -> user.addExtension(new EnterpriseExtension().setEmployeeNumber("1"))));
+
+    Comparator<ScimUser> order = SortComparators.compile(sortBy(EnterpriseExtension.URN + ":employeeNumber", SortOrder.ASCENDING), SCHEMA, List.of(ENTERPRISE_SCHEMA));
+    List<ScimUser> sorted = new ArrayList<>(users);
+    sorted.sort(order);
+    assertThat(sorted).extracting(ScimUser::getUserName).containsExactly("c", "a", "b");
+
+    assertThat(SortComparators.<ScimUser>compile(sortBy(EnterpriseExtension.URN + ":employeeNumber", SortOrder.ASCENDING), SCHEMA)).isNull();
+  }
+
+  @Test
+  public void severalResourceTypes() {
+    Map<String, Schema> schemas = Map.of(SCHEMA.getId(), SCHEMA, GROUP_SCHEMA.getId(), GROUP_SCHEMA);
+    List<ScimResource> resources = List.of(
+      user("a", user -> user.setDisplayName("Carol")),
+      group("Admins"),
+      user("b", user -> user.setDisplayName("bob")),
+      group("Users"));
+
+    List<ScimResource> sorted = new ArrayList<>(resources);
+    sorted.sort(SortComparators.compile(sortBy("displayName", SortOrder.ASCENDING), schemas::get));
+    assertThat(sorted).extracting(SortComparatorsTest::displayName).containsExactly("Admins", "bob", "Carol", "Users");
+
+    // groups have no userName, they are last
+    sorted.sort(SortComparators.compile(sortBy("userName", SortOrder.DESCENDING), schemas::get));
+    assertThat(sorted).extracting(SortComparatorsTest::displayName).containsExactly("bob", "Carol", "Admins", "Users");
+
+    assertThat(SortComparators.compile(new SortRequest(), schemas::get)).isNull();
+  }
+
+  @Test
+  public void unsortableRequests() {
+    assertThat(SortComparators.<ScimUser>compile(sortBy("unknown", SortOrder.ASCENDING), SCHEMA)).isNull();
+    assertThat(SortComparators.<ScimUser>compile(sortBy("userName.foo", SortOrder.ASCENDING), SCHEMA)).isNull();
+    assertThat(SortComparators.<ScimUser>compile(sortBy("password", SortOrder.ASCENDING), SCHEMA)).isNull();
+    assertThat(SortComparators.<ScimUser>compile(new SortRequest(), SCHEMA)).isNull();
+    assertThat(SortComparators.<ScimUser>compile(null, SCHEMA)).isNull();
+  }
+
+  private static List<ScimUser> sort(List<ScimUser> users, String attribute, SortOrder sortOrder) {
+    List<ScimUser> sorted = new ArrayList<>(users);
+    sorted.sort(SortComparators.compile(sortBy(attribute, sortOrder), SCHEMA));
+    return sorted;
+  }
+
+  private static SortRequest sortBy(String attribute, SortOrder sortOrder) {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference(attribute));
+    sortRequest.setSortOrder(sortOrder);
+    return sortRequest;
+  }
+
+  private static ScimUser user(String userName) {
+    ScimUser user = new ScimUser();
+    user.setUserName(userName);
+    return user;
+  }
+
+  private static ScimUser user(String userName, Consumer<ScimUser> values) {
+    ScimUser user = user(userName);
+    values.accept(user);
+    return user;
+  }
+
+  private static ScimGroup group(String displayName) {
+    ScimGroup group = new ScimGroup();
+    group.setDisplayName(displayName);
+    return group;
+  }
+
+  private static String displayName(ScimResource resource) {
+    return resource instanceof ScimUser ? ((ScimUser) resource).getDisplayName() : ((ScimGroup) resource).getDisplayName();
+  }
+
+  private static Email email(String value, Boolean primary) {
+    return new Email().setValue(value).setPrimary(primary);
+  }
+}
@@ -32,6 +32,7 @@ import org.apache.directory.scim.core.schema.SchemaRegistry;
 import org.apache.directory.scim.protocol.UserResource;
 import org.apache.directory.scim.server.configuration.ServerConfiguration;
 import org.apache.directory.scim.server.rest.EtagGenerator;
+import org.apache.directory.scim.server.rest.RequestExecutor;
 import org.apache.directory.scim.server.rest.ScimResourceHelper;
 import org.apache.directory.scim.server.rest.UserResourceImpl;
 import org.apache.directory.scim.spec.resources.ScimResource;
@@ -41,6 +42,7 @@ import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.jersey.JerseyAutoConfiguration;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -69,6 +71,12 @@ public class ScimpleSpringConfiguration {
     return new EtagGenerator();
   }
 
+  @Bean
+  @ConditionalOnMissingBean
+  RequestExecutor requestExecutor(ServerConfiguration serverConfiguration) {
+    return new RequestExecutor(serverConfiguration);
+  }
+
   @Bean
   @ConditionalOnMissingBean
   SchemaRegistry schemaRegistry() {
@@ -90,8 +98,9 @@ public class ScimpleSpringConfiguration {
 
   @Bean
   @ConditionalOnMissingBean
-  RepositoryRegistry repositoryRegistry(SchemaRegistry schemaRegistry, List<Repository<? extends ScimResource>> scimResources) {
+  RepositoryRegistry repositoryRegistry(SchemaRegistry schemaRegistry, List<Repository<? extends ScimResource>> scimResources, ApplicationContext applicationContext) {
     RepositoryRegistry registry = new RepositoryRegistry(schemaRegistry);
+    registry.setProcessingExtensionResolver(applicationContext::getBean);
     registry.registerRepositories(scimResources);
     return registry;
   }